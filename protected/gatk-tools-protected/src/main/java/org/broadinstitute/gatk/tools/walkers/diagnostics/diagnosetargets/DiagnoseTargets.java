@@ -142,7 +142,7 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
 
         // get all of the unique sample names for the VCF Header
         samples = ReadUtils.getSAMFileSamples(getToolkit().getSAMFileHeader());
-        vcfWriter.writeHeader(new VCFHeader(getHeaderInfo(), samples));
+        vcfWriter.writeHeader(new VCFHeader(getHeaderInfo(thresholds.reportDepthQuartiles), samples));
 
         // pre load all the statistics classes because it is costly to operate on the JVM and we only want to do it once.
         loadAllPlugins(thresholds);
@@ -259,6 +259,8 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
 
             SampleStratification sampleStat = stats.getSampleStatistics(sample);
             gb.attribute(GATKVCFConstants.AVG_INTERVAL_DP_BY_SAMPLE_KEY, sampleStat.averageCoverage(interval.size()));
+            if (thresholds.reportDepthQuartiles)
+                gb.attribute(GATKVCFConstants.INTERVAL_DP_QUARTILES_BY_SAMPLE_KEY, sampleStat.getDepthQuartiles());
             gb.attribute(GATKVCFConstants.LOW_COVERAGE_LOCI, sampleStat.getNLowCoveredLoci());
             gb.attribute(GATKVCFConstants.ZERO_COVERAGE_LOCI, sampleStat.getNUncoveredLoci());
             gb.filters(statusToStrings(stats.getSampleStatistics(sample).callableStatuses(), false));
@@ -382,9 +384,10 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
     /**
      * Gets the header lines for the VCF writer
      *
+     * @param reportDepthQuartiles whether the quartiles of the depth of each sample are reported
      * @return A set of VCF header lines
      */
-    private static Set<VCFHeaderLine> getHeaderInfo() {
+    private static Set<VCFHeaderLine> getHeaderInfo(final boolean reportDepthQuartiles) {
         Set<VCFHeaderLine> headerLines = new HashSet<>();
 
         // INFO fields for overall data
@@ -396,6 +399,8 @@ public class DiagnoseTargets extends LocusWalker<Long, Long> {
         // FORMAT fields for each genotype
         headerLines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_FILTER_KEY));
         headerLines.add(GATKVCFHeaderLines.getFormatLine(GATKVCFConstants.AVG_INTERVAL_DP_BY_SAMPLE_KEY));
+        if (reportDepthQuartiles)
+            headerLines.add(GATKVCFHeaderLines.getFormatLine(GATKVCFConstants.INTERVAL_DP_QUARTILES_BY_SAMPLE_KEY));
         headerLines.add(GATKVCFHeaderLines.getFormatLine(GATKVCFConstants.LOW_COVERAGE_LOCI));
         headerLines.add(GATKVCFHeaderLines.getFormatLine(GATKVCFConstants.ZERO_COVERAGE_LOCI));
 
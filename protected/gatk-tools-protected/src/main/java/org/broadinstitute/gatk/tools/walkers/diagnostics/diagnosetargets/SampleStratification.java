@@ -52,11 +52,13 @@
 package org.broadinstitute.gatk.tools.walkers.diagnostics.diagnosetargets;
 
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.QuantileSketch;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -66,6 +68,7 @@ import java.util.List;
 final class SampleStratification extends AbstractStratification {
     private final GenomeLoc interval;
     private final ArrayList<AbstractStratification> loci;
+    private final QuantileSketch depths; // the depths of the loci added so far, or null if the quartiles aren't reported
 
     private int nReads = -1;
     private int nBadMates = -1;
@@ -76,6 +79,7 @@ final class SampleStratification extends AbstractStratification {
         this.loci = new ArrayList<AbstractStratification>(interval.size());
         nReads = 0;
         nBadMates = 0;
+        depths = thresholds.reportDepthQuartiles ? new QuantileSketch() : null;
 
         // Initialize every loci (this way we don't have to worry about non-existent loci in the object
         for (int i = 0; i < interval.size(); i++)
@@ -106,6 +110,8 @@ final class SampleStratification extends AbstractStratification {
             final int coverage = pileup.getBaseAndMappingFilteredPileup(thresholds.minimumBaseQuality, thresholds.minimumMappingQuality).depthOfCoverage();
             final LocusStratification locusData = (LocusStratification) loci.get(locusIndex);
             locusData.addLocus(coverage, rawCoverage);
+            if (depths != null)
+                depths.add(coverage);
 
             // process all the reads in this pileup (tallying number of reads and bad mates)
             for (GATKSAMRecord read : pileup.getReads())
@@ -159,6 +165,20 @@ final class SampleStratification extends AbstractStratification {
         }
     }
 
+    /**
+     * Gets the quartiles of the "good" coverage of this sample across the interval, counting the loci that were
+     * never added as having no coverage
+     *
+     * @return the first quartile, median and third quartile of the coverage
+     */
+    public List<Long> getDepthQuartiles() {
+        if (depths == null)
+            throw new ReviewedGATKException("The depth quartiles are only tabulated when they are reported");
+        final QuantileSketch allDepths = new QuantileSketch(depths);
+        allDepths.add(0, interval.size() - depths.getCount());
+        return Arrays.asList(allDepths.getQuantile(0.25), allDepths.getMedian(), allDepths.getQuantile(0.75));
+    }
+
     public int getNLowCoveredLoci() {
         return getCallableStatusCount(CallableStatus.LOW_COVERAGE);
     }
@@ -121,6 +121,13 @@ final class ThresHolder {
     @Argument(fullName = "quality_status_threshold", shortName = "stQ", doc = "The proportion of the loci needed for calling POOR_QUALITY", required = false)
     public double qualityStatusThreshold = 0.50;
 
+    /**
+     * Report the first quartile, median and third quartile of the depth of each sample across each interval (IDQ). The depths
+     * are summarized as they are traversed, in a fixed amount of memory per sample, and are exact below 256.
+     */
+    @Argument(fullName = "depth_quartiles", shortName = "quartiles", doc = "Report the quartiles of the depth of each sample across each interval", required = false)
+    public boolean reportDepthQuartiles = false;
+
     @Output(fullName = "missing_intervals", shortName = "missing", defaultToStdout = false, doc ="Produces a file with the intervals that don't pass filters", required = false)
     public PrintStream missingTargets = null;
 
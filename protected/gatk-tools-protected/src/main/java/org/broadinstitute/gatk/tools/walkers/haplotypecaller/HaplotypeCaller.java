@@ -581,6 +581,10 @@ public class HaplotypeCaller extends ActiveRegionWalker<List<VariantContext>, In
     public void initialize() {
         super.initialize();
 
+        // the given alleles have to be able to activate their sites even outside of an -activityIndex
+        if ( HCAC.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES || USE_ALLELES_TRIGGER )
+            addPossiblyActiveSites(HCAC.alleles);
+
         if (HCAC.genotypeArgs.samplePloidy != HomoSapiensConstants.DEFAULT_PLOIDY && !doNotRunPhysicalPhasing) {
             doNotRunPhysicalPhasing = true;
             logger.info("Currently, physical phasing is not available when ploidy is different than " + HomoSapiensConstants.DEFAULT_PLOIDY + "; therefore it won't be performed");
@@ -0,0 +1,240 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.phasing;
+
+import htsjdk.variant.variantcontext.Genotype;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+/* Table of all 2^n local haplotypes of n diploid heterozygous SNPs, scored by the reads that span them, used to phase
+   the site at phasedIndex relative to the upstream site at upstreamIndex.
+
+   Each haplotype is packed into an int, where bit (n - 1 - i) is set iff the haplotype has the BOTTOM allele at site i.
+   A haplotype and its "complement" (all bits flipped) make up the same diploid phasing, so only the haplotype with the
+   TOP allele at upstreamIndex is kept, and it is scored as the sum of the two.
+   Marginalizing the table to [upstreamIndex, phasedIndex] leaves two phasings, distinguished by the bit at phasedIndex:
+   the TOP alleles at both sites are on the same chromosome ("in phase") or not ("out of phase").
+ */
+class PackedHaplotypeTable {
+    // The haplotypes are packed into the bits of an int, and all 2^n of them are enumerated:
+    public static final int MAX_SITES = 30;
+
+    private final byte[] topBases;
+    private final byte[] bottomBases;
+
+    private final int upstreamIndex;
+    private final int phasedIndex;
+    private final int phasedBit;
+
+    private final int[] haplotypes;
+    private final double[] log10Scores; // start out as the (uniform) prior
+
+    public PackedHaplotypeTable(Genotype[] hetGenotypes, int upstreamIndex, int phasedIndex) {
+        int numSites = hetGenotypes.length;
+        if (numSites > MAX_SITES)
+            throw new ReviewedGATKException("Cannot phase using more than " + MAX_SITES + " sites");
+        if (upstreamIndex >= phasedIndex)
+            throw new ReviewedGATKException("LOGICAL ERROR: must phase relative to an upstream site");
+
+        this.topBases = new byte[numSites];
+        this.bottomBases = new byte[numSites];
+        for (int i = 0; i < numSites; i++) {
+            SNPallelePair allelePair = new SNPallelePair(hetGenotypes[i]);
+            topBases[i] = allelePair.getTopBase();
+            bottomBases[i] = allelePair.getBottomBase();
+        }
+
+        this.upstreamIndex = upstreamIndex;
+        this.phasedIndex = phasedIndex;
+        this.phasedBit = siteBit(phasedIndex);
+        int upstreamBit = siteBit(upstreamIndex);
+
+        this.haplotypes = new int[1 << (numSites - 1)];
+        int entry = 0;
+        for (int hap = 0; hap < (1 << numSites); hap++) {
+            if ((hap & upstreamBit) == 0)
+                haplotypes[entry++] = hap;
+        }
+        this.log10Scores = new double[haplotypes.length]; // log10(1.0)
+    }
+
+    private int siteBit(int index) {
+        return 1 << (topBases.length - 1 - index);
+    }
+
+    public int size() {
+        return haplotypes.length;
+    }
+
+    // Multiply in the probability of rd, given each haplotype [and its complement]:
+    public void integrateReadScore(PhasingRead rd) {
+        int[] siteInds = rd.getNonNullIndices();
+        int numReadSites = siteInds.length;
+
+        /* The score of a haplotype only depends on its alleles at the sites covered by rd, so score each assignment of
+           alleles to these sites (where bit j is set iff the BOTTOM allele is at siteInds[j]):
+         */
+        double[] log10MatchScores = new double[1 << numReadSites];
+        for (int alleles = 0; alleles < log10MatchScores.length; alleles++) {
+            // Technically, this HAS NO EFFECT since it is multiplied in for ALL haplotype pairs, but do so for completeness:
+            double score = rd.getLog10MappingProb();
+            for (int j = 0; j < numReadSites; j++) {
+                int i = siteInds[j];
+                score += rd.getLog10BaseScore(i, ((alleles >>> j) & 1) == 0 ? topBases[i] : bottomBases[i]);
+            }
+            log10MatchScores[alleles] = score;
+        }
+
+        int complementAlleles = log10MatchScores.length - 1;
+        double[] log10ClassScores = new double[log10MatchScores.length];
+        for (int alleles = 0; alleles < log10ClassScores.length; alleles++)
+            log10ClassScores[alleles] = PreciseNonNegativeDouble.addInLogSpace(log10MatchScores[alleles], log10MatchScores[alleles ^ complementAlleles]);
+
+        int[] siteShifts = new int[numReadSites];
+        for (int j = 0; j < numReadSites; j++)
+            siteShifts[j] = topBases.length - 1 - siteInds[j];
+
+        for (int entry = 0; entry < haplotypes.length; entry++) {
+            int hap = haplotypes[entry];
+            int alleles = 0;
+            for (int j = 0; j < numReadSites; j++)
+                alleles |= ((hap >>> siteShifts[j]) & 1) << j;
+
+            log10Scores[entry] += log10ClassScores[alleles];
+        }
+    }
+
+    /* For phasing site X relative to site X-1, we sum the probabilities over all haplotypes of the phases of [X-1, X].
+       That is, we aggregate probability mass over all haplotypes consistent with a particular phase at the [X-1, X] pair.
+     */
+    public MarginalPhase marginalize() {
+        double log10InPhase = Double.NEGATIVE_INFINITY;
+        double log10OutOfPhase = Double.NEGATIVE_INFINITY;
+        for (int entry = 0; entry < haplotypes.length; entry++) {
+            if ((haplotypes[entry] & phasedBit) == 0)
+                log10InPhase = PreciseNonNegativeDouble.addInLogSpace(log10InPhase, log10Scores[entry]);
+            else
+                log10OutOfPhase = PreciseNonNegativeDouble.addInLogSpace(log10OutOfPhase, log10Scores[entry]);
+        }
+
+        return new MarginalPhase(new PreciseNonNegativeDouble(log10InPhase, true), new PreciseNonNegativeDouble(log10OutOfPhase, true));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("-------------------\n");
+        for (int entry = 0; entry < haplotypes.length; entry++) {
+            int hap = haplotypes[entry];
+            sb.append("Haplotypes:\t" + toString(hap) + " + " + toString(~hap) + "\tScore:\t" + new PreciseNonNegativeDouble(log10Scores[entry], true) + "\n");
+        }
+        sb.append("-------------------\n");
+        return sb.toString();
+    }
+
+    private String toString(int hap) {
+        StringBuilder sb = new StringBuilder(topBases.length);
+        for (int i = 0; i < topBases.length; i++)
+            sb.append((char) ((hap & siteBit(i)) == 0 ? topBases[i] : bottomBases[i]));
+        return sb.toString();
+    }
+
+    // The normalized probabilities of the two phasings of [upstreamIndex, phasedIndex]:
+    public class MarginalPhase {
+        private final PreciseNonNegativeDouble inPhase;
+        private final PreciseNonNegativeDouble outOfPhase;
+        private final boolean isOutOfPhase;
+
+        private MarginalPhase(PreciseNonNegativeDouble inPhase, PreciseNonNegativeDouble outOfPhase) {
+            // List the two phasings in the same order as their haplotypes [i.e., by the base at phasedIndex]:
+            PreciseNonNegativeDouble first = inPhase;
+            PreciseNonNegativeDouble second = outOfPhase;
+            if (new Haplotype(new byte[]{topBases[phasedIndex]}).compareTo(new Haplotype(new byte[]{bottomBases[phasedIndex]})) > 0) {
+                first = outOfPhase;
+                second = inPhase;
+            }
+
+            PreciseNonNegativeDouble normalizeBy = new PreciseNonNegativeDouble(0.0);
+            normalizeBy.plusEqual(first);
+            normalizeBy.plusEqual(second);
+            if (!normalizeBy.equals(new PreciseNonNegativeDouble(0.0))) { // prevent precision problems
+                first.divEqual(normalizeBy);
+                second.divEqual(normalizeBy);
+            }
+
+            this.inPhase = inPhase;
+            this.outOfPhase = outOfPhase;
+            this.isOutOfPhase = second.gt(first) ? second == outOfPhase : first == outOfPhase;
+        }
+
+        public boolean isOutOfPhase() {
+            return isOutOfPhase;
+        }
+
+        // The probability of the chosen phasing:
+        public PreciseNonNegativeDouble getPosteriorProb() {
+            return isOutOfPhase ? outOfPhase : inPhase;
+        }
+
+        // PHRED-scaled probability of the other phasing, but NOT capped as in QualityUtils.trueProbToQual(posteriorProb):
+        public double getPhaseQuality() {
+            return -10.0 * (isOutOfPhase ? inPhase : outOfPhase).getLog10Value();
+        }
+
+        // The alleles of the chosen phasing on the chromosome with the TOP allele at upstreamIndex:
+        public Haplotype getRepresentative() {
+            return new Haplotype(new byte[]{topBases[upstreamIndex], isOutOfPhase ? bottomBases[phasedIndex] : topBases[phasedIndex]});
+        }
+
+        public String toString() {
+            return "in phase: " + inPhase + "\tout of phase: " + outOfPhase;
+        }
+    }
+}
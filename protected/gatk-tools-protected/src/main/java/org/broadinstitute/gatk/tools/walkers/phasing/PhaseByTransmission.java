@@ -61,9 +61,12 @@ import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.engine.samples.Sample;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
+import org.broadinstitute.gatk.tools.walkers.variantutils.FamilyLikelihoodsKernel;
 import org.broadinstitute.gatk.utils.QualityUtils;
+import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
@@ -73,9 +76,12 @@ import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.utils.GeneralUtils;
 
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Compute the most likely genotype combination and phasing for trios and parent/child pairs
@@ -155,6 +161,13 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
     @Argument(shortName = "fatherAlleleFirst",required = false,fullName = "FatherAlleleFirst", doc="Ouputs the father allele as the first allele in phased child genotype. i.e. father|mother rather than mother|father.")
     private boolean fatherFAlleleFirst=false;
 
+    /**
+     * For large cohorts, phase the families at each site in parallel blocks with this many threads.
+     * The output does not depend on the number of threads.
+     */
+    @Argument(shortName = "familyThreads",required = false,fullName = "numFamilyThreads", doc="Number of threads used to phase the families at each site")
+    private int numFamilyThreads = 1;
+
     @Output
     protected VariantContextWriter vcfWriter = null;
 
@@ -164,11 +177,15 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
 
     private ArrayList<Sample> trios = new ArrayList<Sample>();
 
-    //Matrix of priors for all genotype combinations
-    private EnumMap<GenotypeType,EnumMap<GenotypeType,EnumMap<GenotypeType,Integer>>> mvCountMatrix;
+    //Priors for all called genotype combinations, indexed by FamilyLikelihoodsKernel configuration
+    private double[] transmissionPriors;
 
-    //Matrix of allele transmission
-    private EnumMap<GenotypeType,EnumMap<GenotypeType,EnumMap<GenotypeType,TrioPhase>>> transmissionMatrix;
+    //Matrix of allele transmission, indexed by the GenotypeType ordinals of the mother, father and child
+    private static final int NUM_GENOTYPE_TYPES = GenotypeType.values().length;
+    private TrioPhase[] transmissionMatrix;
+
+    //Phases the families at each site in parallel if not null
+    private ExecutorService familyExecutor = null;
 
     //Metrics counters hash keys
     private final Byte NUM_TRIO_GENOTYPES_CALLED = 0;
@@ -184,8 +201,8 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
     private final Byte NUM_PAIR_VIOLATIONS = 9;
     private final Byte NUM_GENOTYPES_MODIFIED = 11;
 
-    //Random number generator
-    private Random rand = new Random();
+    //Random number generator, seeded by the engine so that the output is reproducible
+    private final Random rand = Utils.getRandomGenerator();
 
     private enum FamilyMember {
         MOTHER,
@@ -459,6 +476,9 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
      * Parse the familial relationship specification, build the transmission matrices and initialize VCF writer
      */
     public void initialize() {
+        if(numFamilyThreads < 1)
+            throw new UserException.BadArgumentValue("numFamilyThreads", "must be at least 1");
+
         ArrayList<String> rodNames = new ArrayList<String>();
         rodNames.add(variantCollection.variants.getName());
         Map<String, VCFHeader> vcfRods = GATKVCFUtils.getVCFHeadersFromRods(getToolkit(), rodNames);
@@ -478,6 +498,9 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
 
         buildMatrices();
 
+        if(numFamilyThreads > 1)
+            familyExecutor = Executors.newFixedThreadPool(numFamilyThreads, new NamedThreadFactory("PhaseByTransmission-thread-%d"));
+
         if(mvFile != null)
             mvFile.println("CHROM\tPOS\tAC\tFAMILY\tTP\tMOTHER_GT\tMOTHER_DP\tMOTHER_AD\tMOTHER_PL\tFATHER_GT\tFATHER_DP\tFATHER_AD\tFATHER_PL\tCHILD_GT\tCHILD_DP\tCHILD_AD\tCHILD_PL");
 
@@ -526,78 +549,19 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
 
     //Create the transmission matrices
     private void buildMatrices(){
-        mvCountMatrix = new EnumMap<GenotypeType,EnumMap<GenotypeType,EnumMap<GenotypeType,Integer>>>(GenotypeType.class);
-        transmissionMatrix = new EnumMap<GenotypeType,EnumMap<GenotypeType,EnumMap<GenotypeType,TrioPhase>>>(GenotypeType.class);
+        transmissionPriors = FamilyLikelihoodsKernel.getTransmissionPriors(deNovoPrior, 1.0-11*deNovoPrior);
+        transmissionMatrix = new TrioPhase[NUM_GENOTYPE_TYPES*NUM_GENOTYPE_TYPES*NUM_GENOTYPE_TYPES];
         for(GenotypeType mother : GenotypeType.values()){
-            mvCountMatrix.put(mother,new EnumMap<GenotypeType,EnumMap<GenotypeType,Integer>>(GenotypeType.class));
-            transmissionMatrix.put(mother,new EnumMap<GenotypeType,EnumMap<GenotypeType,TrioPhase>>(GenotypeType.class));
             for(GenotypeType father : GenotypeType.values()){
-                mvCountMatrix.get(mother).put(father,new EnumMap<GenotypeType, Integer>(GenotypeType.class));
-                transmissionMatrix.get(mother).put(father,new EnumMap<GenotypeType,TrioPhase>(GenotypeType.class));
                 for(GenotypeType child : GenotypeType.values()){
-                    mvCountMatrix.get(mother).get(father).put(child, getCombinationMVCount(mother, father, child));
-                    transmissionMatrix.get(mother).get(father).put(child,new TrioPhase(mother,father,child));
+                    transmissionMatrix[getTransmissionMatrixIndex(mother,father,child)] = new TrioPhase(mother,father,child);
                 }
             }
         }
     }
 
-    //Returns the number of Mendelian Violations for a given genotype combination.
-    //If one of the parents genotype is missing, it will consider it as a parent/child pair
-    //If the child genotype or both parents genotypes are missing, 0 is returned.
-    private int getCombinationMVCount(GenotypeType mother, GenotypeType father, GenotypeType child){
-
-        //Child is no call => No MV
-        if(child == GenotypeType.NO_CALL || child == GenotypeType.UNAVAILABLE)
-            return 0;
-        //Add parents with genotypes for the evaluation
-        ArrayList<GenotypeType> parents = new ArrayList<GenotypeType>();
-        if (!(mother == GenotypeType.NO_CALL || mother == GenotypeType.UNAVAILABLE))
-            parents.add(mother);
-        if (!(father == GenotypeType.NO_CALL || father == GenotypeType.UNAVAILABLE))
-            parents.add(father);
-
-        //Both parents no calls => No MV
-        if (parents.isEmpty())
-            return 0;
-
-        //If at least one parent had a genotype, then count the number of ref and alt alleles that can be passed
-        int parentsNumRefAlleles = 0;
-        int parentsNumAltAlleles = 0;
-
-        for(GenotypeType parent : parents){
-            if(parent == GenotypeType.HOM_REF){
-                parentsNumRefAlleles++;
-            }
-            else if(parent == GenotypeType.HET){
-                parentsNumRefAlleles++;
-                parentsNumAltAlleles++;
-            }
-            else if(parent == GenotypeType.HOM_VAR){
-                parentsNumAltAlleles++;
-            }
-        }
-
-        //Case Child is HomRef
-        if(child == GenotypeType.HOM_REF){
-            if(parentsNumRefAlleles == parents.size())
-                return 0;
-            else return (parents.size()-parentsNumRefAlleles);
-        }
-
-        //Case child is HomVar
-        if(child == GenotypeType.HOM_VAR){
-            if(parentsNumAltAlleles == parents.size())
-                return 0;
-            else return parents.size()-parentsNumAltAlleles;
-        }
-
-        //Case child is Het
-        if(child == GenotypeType.HET && ((parentsNumRefAlleles > 0 && parentsNumAltAlleles > 0) || parents.size()<2))
-            return 0;
-
-        //MV
-        return 1;
+    private static int getTransmissionMatrixIndex(GenotypeType mother, GenotypeType father, GenotypeType child){
+        return (mother.ordinal()*NUM_GENOTYPE_TYPES + father.ordinal())*NUM_GENOTYPE_TYPES + child.ordinal();
     }
 
     //Given two trio genotypes combinations, returns the number of different genotypes between the two combinations.
@@ -612,17 +576,12 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
         return count;
     }
 
-    //Get a Map of genotype likelihoods.
+    //Get the (normalized) genotype likelihoods, indexed by called genotype.
     //In case of null, unavailable or no call, all likelihoods are 1/3.
-    private EnumMap<GenotypeType,Double> getLikelihoodsAsMapSafeNull(Genotype genotype){
-        if(genotype == null || !genotype.isCalled() || genotype.getLikelihoods() == null){
-            EnumMap<GenotypeType,Double> likelihoods = new EnumMap<GenotypeType, Double>(GenotypeType.class);
-            likelihoods.put(GenotypeType.HOM_REF,1.0/3.0);
-            likelihoods.put(GenotypeType.HET,1.0/3.0);
-            likelihoods.put(GenotypeType.HOM_VAR,1.0/3.0);
-            return likelihoods;
-        }
-        return genotype.getLikelihoods().getAsMap(true);
+    private double[] getLikelihoodsSafeNull(Genotype genotype){
+        if(genotype == null || !genotype.isCalled() || genotype.getLikelihoods() == null)
+            return new double[]{1.0/3.0, 1.0/3.0, 1.0/3.0};
+        return GeneralUtils.normalizeFromLog10(genotype.getLikelihoods().getAsVector());
     }
 
     //Returns the GenotypeType; returns UNVAILABLE if given null
@@ -640,35 +599,36 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
      * @param mother: Mother's genotype
      * @param father: Father's genotype
      * @param child: Child's genotype
+     * @param random: Random number generator used to pick one of multiple equally likely combinations
+     * @param configurationLikelihoods: Scratch array of FamilyLikelihoodsKernel.NUM_CONFIGURATIONS likelihoods
      * @param finalGenotypes: An ArrayList<Genotype> that will be added the genotypes phased by transmission in the following order: Mother, Father, Child
      * @return
      */
-    private int phaseTrioGenotypes(Allele ref, Allele alt, Genotype mother, Genotype father, Genotype child,ArrayList<Genotype> finalGenotypes) {
+    private int phaseTrioGenotypes(Allele ref, Allele alt, Genotype mother, Genotype father, Genotype child, Random random, double[] configurationLikelihoods, ArrayList<Genotype> finalGenotypes) {
 
         //Check whether it is  a pair or trio
         //Always assign the first parent as the parent having genotype information in pairs
         //Always assign the mother as the first parent in trios
         int parentsCalled = 0;
-        Map<GenotypeType,Double> firstParentLikelihoods;
-        Map<GenotypeType,Double> secondParentLikelihoods;
-        ArrayList<GenotypeType> bestFirstParentGenotype = new ArrayList<GenotypeType>();
-        ArrayList<GenotypeType> bestSecondParentGenotype = new ArrayList<GenotypeType>();
-        ArrayList<GenotypeType> bestChildGenotype = new ArrayList<GenotypeType>();
+        double[] firstParentLikelihoods;
+        double[] secondParentLikelihoods;
+        GenotypeType firstParentGenotype;
+        GenotypeType secondParentGenotype;
         GenotypeType pairSecondParentGenotype = null;
         if(mother == null || !mother.isCalled()){
-            firstParentLikelihoods = getLikelihoodsAsMapSafeNull(father);
-            secondParentLikelihoods = getLikelihoodsAsMapSafeNull(mother);
-            bestFirstParentGenotype.add(getTypeSafeNull(father));
-            bestSecondParentGenotype.add(getTypeSafeNull(mother));
+            firstParentLikelihoods = getLikelihoodsSafeNull(father);
+            secondParentLikelihoods = getLikelihoodsSafeNull(mother);
+            firstParentGenotype = getTypeSafeNull(father);
+            secondParentGenotype = getTypeSafeNull(mother);
             pairSecondParentGenotype = mother == null ? GenotypeType.UNAVAILABLE : mother.getType();
             if(father != null && father.isCalled())
                 parentsCalled = 1;
         }
         else{
-            firstParentLikelihoods = getLikelihoodsAsMapSafeNull(mother);
-            secondParentLikelihoods = getLikelihoodsAsMapSafeNull(father);
-            bestFirstParentGenotype.add(getTypeSafeNull(mother));
-            bestSecondParentGenotype.add(getTypeSafeNull(father));
+            firstParentLikelihoods = getLikelihoodsSafeNull(mother);
+            secondParentLikelihoods = getLikelihoodsSafeNull(father);
+            firstParentGenotype = getTypeSafeNull(mother);
+            secondParentGenotype = getTypeSafeNull(father);
             if(father == null || !father.isCalled()){
                 parentsCalled = 1;
                 pairSecondParentGenotype = father == null ? GenotypeType.UNAVAILABLE : father.getType();
@@ -676,54 +636,53 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
                 parentsCalled = 2;
             }
         }
-        Map<GenotypeType,Double> childLikelihoods = getLikelihoodsAsMapSafeNull(child);
-        bestChildGenotype.add(getTypeSafeNull(child));
+        double[] childLikelihoods = getLikelihoodsSafeNull(child);
+        GenotypeType childGenotype = getTypeSafeNull(child);
 
         //Prior vars
+        //The equally best combinations are kept as configuration indices (first parent, second parent, child),
+        //with NO_CONFIGURATION standing for the original genotypes
+        final int NO_CONFIGURATION = -1;
         double bestConfigurationLikelihood = 0.0;
         double norm = 0.0;
         int configuration_index =0;
-        ArrayList<Integer> bestMVCount = new ArrayList<Integer>();
-        bestMVCount.add(0);
+        final int[] bestConfigurations = new int[FamilyLikelihoodsKernel.NUM_CONFIGURATIONS+1];
+        final int[] bestMVCount = new int[FamilyLikelihoodsKernel.NUM_CONFIGURATIONS+1];
+        int numBestConfigurations = 1;
+        bestConfigurations[0] = NO_CONFIGURATION;
 
         //Get the most likely combination
         //Only check for most likely combination if at least a parent and the child have genotypes
         if(child.isCalled() && parentsCalled > 0){
+            FamilyLikelihoodsKernel.fillConfigurationLikelihoods(transmissionPriors, firstParentLikelihoods, secondParentLikelihoods, childLikelihoods, configurationLikelihoods);
             int mvCount;
             int cumulativeMVCount = 0;
             double configurationLikelihood = 0;
-            for(Map.Entry<GenotypeType,Double> childGenotype : childLikelihoods.entrySet()){
-                for(Map.Entry<GenotypeType,Double> firstParentGenotype : firstParentLikelihoods.entrySet()){
-                    for(Map.Entry<GenotypeType,Double> secondParentGenotype : secondParentLikelihoods.entrySet()){
-                        mvCount = mvCountMatrix.get(firstParentGenotype.getKey()).get(secondParentGenotype.getKey()).get(childGenotype.getKey());
+            int configuration;
+            for(int c = 0; c < FamilyLikelihoodsKernel.NUM_CALLED_GENOTYPES; c++){
+                for(int fp = 0; fp < FamilyLikelihoodsKernel.NUM_CALLED_GENOTYPES; fp++){
+                    for(int sp = 0; sp < FamilyLikelihoodsKernel.NUM_CALLED_GENOTYPES; sp++){
+                        configuration = FamilyLikelihoodsKernel.getConfigurationIndex(fp, sp, c);
+                        mvCount = FamilyLikelihoodsKernel.getMVCount(configuration);
                         //For parent/child pairs, sum over the possible genotype configurations of the missing parent
                         if(parentsCalled<2){
                             cumulativeMVCount += mvCount;
-                            configurationLikelihood += mvCount>0 ? Math.pow(deNovoPrior,mvCount)*firstParentGenotype.getValue()*secondParentGenotype.getValue()*childGenotype.getValue() : (1.0-11*deNovoPrior)*firstParentGenotype.getValue()*secondParentGenotype.getValue()*childGenotype.getValue();
+                            configurationLikelihood += configurationLikelihoods[configuration];
                         }
                         //Evaluate configurations of trios
                         else{
-                            configurationLikelihood =  mvCount>0 ? Math.pow(deNovoPrior,mvCount)*firstParentGenotype.getValue()*secondParentGenotype.getValue()*childGenotype.getValue() : (1.0-11*deNovoPrior)*firstParentGenotype.getValue()*secondParentGenotype.getValue()*childGenotype.getValue();
+                            configurationLikelihood = configurationLikelihoods[configuration];
                             norm += configurationLikelihood;
                             //Keep this combination if
                             //It has a better likelihood
                             //Or it has the same likelihood but requires less changes from original genotypes
                             if (configurationLikelihood > bestConfigurationLikelihood){
                                 bestConfigurationLikelihood = configurationLikelihood;
-                                bestMVCount.clear();
-                                bestMVCount.add(mvCount);
-                                bestFirstParentGenotype.clear();
-                                bestFirstParentGenotype.add(firstParentGenotype.getKey());
-                                bestSecondParentGenotype.clear();
-                                bestSecondParentGenotype.add(secondParentGenotype.getKey());
-                                bestChildGenotype.clear();
-                                bestChildGenotype.add(childGenotype.getKey());
+                                numBestConfigurations = 0;
                             }
-                            else if(configurationLikelihood == bestConfigurationLikelihood) {
-                                bestFirstParentGenotype.add(firstParentGenotype.getKey());
-                                bestSecondParentGenotype.add(secondParentGenotype.getKey());
-                                bestChildGenotype.add(childGenotype.getKey());
-                                bestMVCount.add(mvCount);
+                            if (configurationLikelihood == bestConfigurationLikelihood){
+                                bestConfigurations[numBestConfigurations] = configuration;
+                                bestMVCount[numBestConfigurations++] = mvCount;
                             }
                         }
                     }
@@ -735,20 +694,11 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
                         //Or it has the same likelihood but requires less changes from original genotypes
                         if (configurationLikelihood > bestConfigurationLikelihood){
                             bestConfigurationLikelihood = configurationLikelihood;
-                            bestMVCount.clear();
-                            bestMVCount.add(cumulativeMVCount/3);
-                            bestChildGenotype.clear();
-                            bestFirstParentGenotype.clear();
-                            bestSecondParentGenotype.clear();
-                            bestChildGenotype.add(childGenotype.getKey());
-                            bestFirstParentGenotype.add(firstParentGenotype.getKey());
-                            bestSecondParentGenotype.add(pairSecondParentGenotype);
+                            numBestConfigurations = 0;
                         }
-                        else if(configurationLikelihood == bestConfigurationLikelihood) {
-                            bestFirstParentGenotype.add(firstParentGenotype.getKey());
-                            bestSecondParentGenotype.add(pairSecondParentGenotype);
-                            bestChildGenotype.add(childGenotype.getKey());
-                            bestMVCount.add(cumulativeMVCount/3);
+                        if (configurationLikelihood == bestConfigurationLikelihood){
+                            bestConfigurations[numBestConfigurations] = FamilyLikelihoodsKernel.getConfigurationIndex(fp, 0, c);
+                            bestMVCount[numBestConfigurations++] = cumulativeMVCount/3;
                         }
                         configurationLikelihood = 0;
                     }
@@ -759,8 +709,16 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
             bestConfigurationLikelihood = bestConfigurationLikelihood / norm;
 
             //In case of multiple equally likely combinations, take a random one
-            if(bestFirstParentGenotype.size()>1){
-                configuration_index = rand.nextInt(bestFirstParentGenotype.size()-1);
+            if(numBestConfigurations>1){
+                configuration_index = random.nextInt(numBestConfigurations-1);
+            }
+
+            final int bestConfiguration = bestConfigurations[configuration_index];
+            if(bestConfiguration != NO_CONFIGURATION){
+                final int numCalledGenotypes = FamilyLikelihoodsKernel.NUM_CALLED_GENOTYPES;
+                firstParentGenotype = FamilyLikelihoodsKernel.getCalledGenotype(bestConfiguration / (numCalledGenotypes*numCalledGenotypes));
+                secondParentGenotype = parentsCalled<2 ? pairSecondParentGenotype : FamilyLikelihoodsKernel.getCalledGenotype(bestConfiguration / numCalledGenotypes % numCalledGenotypes);
+                childGenotype = FamilyLikelihoodsKernel.getCalledGenotype(bestConfiguration % numCalledGenotypes);
             }
 
         }
@@ -770,13 +728,13 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
 
         TrioPhase phasedTrioGenotypes;
         if(parentsCalled < 2 && mother == null || !mother.isCalled())
-            phasedTrioGenotypes = transmissionMatrix.get(bestSecondParentGenotype.get(configuration_index)).get(bestFirstParentGenotype.get(configuration_index)).get(bestChildGenotype.get(configuration_index));
+            phasedTrioGenotypes = transmissionMatrix[getTransmissionMatrixIndex(secondParentGenotype,firstParentGenotype,childGenotype)];
         else
-            phasedTrioGenotypes = transmissionMatrix.get(bestFirstParentGenotype.get(configuration_index)).get(bestSecondParentGenotype.get(configuration_index)).get(bestChildGenotype.get(configuration_index));
+            phasedTrioGenotypes = transmissionMatrix[getTransmissionMatrixIndex(firstParentGenotype,secondParentGenotype,childGenotype)];
 
         //Return the phased genotypes
         phasedTrioGenotypes.getPhasedGenotypes(ref,alt,mother,father,child,bestConfigurationLikelihood,finalGenotypes);
-        return bestMVCount.get(configuration_index);
+        return bestMVCount[configuration_index];
 
     }
 
@@ -865,17 +823,42 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
         final VariantContextBuilder builder = new VariantContextBuilder(vc);
 
         final GenotypesContext genotypesContext = GenotypesContext.copy(vc.getGenotypes());
-        for (Sample sample : trios) {
-            Genotype mother = vc.getGenotype(sample.getMaternalID());
-            Genotype father = vc.getGenotype(sample.getPaternalID());
-            Genotype child = vc.getGenotype(sample.getID());
 
-            //Keep only trios and parent/child pairs
-            if(mother == null && father == null || child == null)
+        //Phase the families (in parallel blocks if there is an executor), then collect their genotypes and metrics in order
+        final Allele alt = vc.getAltAlleleWithHighestAlleleCount();
+        final List<ArrayList<Genotype>> familyGenotypes = new ArrayList<ArrayList<Genotype>>(Collections.<ArrayList<Genotype>>nCopies(trios.size(), null));
+        final int[] mvCounts = new int[trios.size()];
+        final Random[] randoms = getFamilyBlockRandomGenerators(trios.size());
+        FamilyLikelihoodsKernel.applyToFamilyBlocks(familyExecutor, trios.size(), new FamilyLikelihoodsKernel.FamilyBlockFunction() {
+            public void apply(final int blockIndex, final int fromIndex, final int toIndex) {
+                final double[] configurationLikelihoods = new double[FamilyLikelihoodsKernel.NUM_CONFIGURATIONS];
+                for (int i = fromIndex; i < toIndex; i++) {
+                    final Sample sample = trios.get(i);
+                    Genotype mother = vc.getGenotype(sample.getMaternalID());
+                    Genotype father = vc.getGenotype(sample.getPaternalID());
+                    Genotype child = vc.getGenotype(sample.getID());
+
+                    //Keep only trios and parent/child pairs
+                    if(mother == null && father == null || child == null)
+                        continue;
+
+                    ArrayList<Genotype> trioGenotypes = new ArrayList<Genotype>(3);
+                    mvCounts[i] = phaseTrioGenotypes(vc.getReference(), alt, mother, father, child, randoms[i / FamilyLikelihoodsKernel.FAMILY_BLOCK_SIZE], configurationLikelihoods, trioGenotypes);
+                    familyGenotypes.set(i, trioGenotypes);
+                }
+            }
+        });
+
+        for (int i = 0; i < trios.size(); i++) {
+            final ArrayList<Genotype> trioGenotypes = familyGenotypes.get(i);
+            if(trioGenotypes == null)
                 continue;
 
-            ArrayList<Genotype> trioGenotypes = new ArrayList<Genotype>(3);
-            final int mvCount = phaseTrioGenotypes(vc.getReference(), vc.getAltAlleleWithHighestAlleleCount(), mother, father, child,trioGenotypes);
+            final Sample sample = trios.get(i);
+            Genotype mother = vc.getGenotype(sample.getMaternalID());
+            Genotype father = vc.getGenotype(sample.getPaternalID());
+            Genotype child = vc.getGenotype(sample.getID());
+            final int mvCount = mvCounts[i];
 
             Genotype phasedMother = trioGenotypes.get(0);
             Genotype phasedFather = trioGenotypes.get(1);
@@ -929,6 +912,22 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
         return metricsCounters;
     }
 
+    /**
+     * Get a random number generator for each of the blocks of families phased at a site
+     *
+     * These are the blocks of FAMILY_BLOCK_SIZE families phased in parallel, even when phasing with a single thread,
+     * so that each family draws from the same generator, in the same order, for any number of threads.
+     * With a single block this is the walker's generator. Otherwise each block gets its own generator,
+     * seeded from the walker's one in the order of the blocks.
+     */
+    private Random[] getFamilyBlockRandomGenerators(final int numFamilies) {
+        final int blockSize = FamilyLikelihoodsKernel.FAMILY_BLOCK_SIZE;
+        final Random[] randoms = new Random[Math.max(1, (numFamilies + blockSize - 1) / blockSize)];
+        for (int blockIndex = 0; blockIndex < randoms.length; blockIndex++)
+            randoms[blockIndex] = randoms.length == 1 ? rand : new Random(rand.nextLong());
+        return randoms;
+    }
+
     private static String printAD(final int[] AD) {
         if ( AD == null || AD.length == 0 )
             return ".";
@@ -997,6 +996,9 @@ public class PhaseByTransmission extends RodWalker<HashMap<Byte,Integer>, HashMa
      */
     @Override
     public void onTraversalDone(HashMap<Byte,Integer> result) {
+        if(familyExecutor != null)
+            familyExecutor.shutdown();
+
         logger.info("Number of complete trio-genotypes: " + result.get(NUM_TRIO_GENOTYPES_CALLED));
         logger.info("Number of trio-genotypes containing no call(s): " + result.get(NUM_TRIO_GENOTYPES_NOCALL));
         logger.info("Number of trio-genotypes phased: " + result.get(NUM_TRIO_GENOTYPES_PHASED));
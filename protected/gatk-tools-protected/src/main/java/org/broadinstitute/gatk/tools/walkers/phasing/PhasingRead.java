@@ -53,7 +53,6 @@ package org.broadinstitute.gatk.tools.walkers.phasing;
 
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.QualityUtils;
-import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
 import java.util.Arrays;
 
@@ -86,35 +85,15 @@ class PhasingRead extends BaseArray {
         baseErrorProbs[index] = new PreciseNonNegativeDouble(errProb / 3.0); // DIVIDE up the error probability EQUALLY over the 3 non-called bases
     }
 
-    public PhasingScore matchHaplotypeClassScore(HaplotypeClass hapClass) {
-        PreciseNonNegativeDouble value = new PreciseNonNegativeDouble(0.0);
-        for (Haplotype h : hapClass)
-            value.plusEqual(matchHaplotypeScore(h));
-
-        return new PhasingScore(value);
+    public double getLog10MappingProb() {
+        return mappingProb.getLog10Value();
     }
 
-    private PreciseNonNegativeDouble matchHaplotypeScore(Haplotype hap) {
-        PreciseNonNegativeDouble score = new PreciseNonNegativeDouble(1.0);
-
-        int sz = this.bases.length;
-        if (sz != hap.bases.length)
-            throw new ReviewedGATKException("Read and Haplotype should have same length to be compared!");
-
-        // Technically, this HAS NO EFFECT since it is multiplied in for ALL haplotype pairs, but do so for completeness:
-        score.timesEqual(mappingProb);
-
-        for (int i = 0; i < sz; i++) {
-            Byte thisBase = this.getBase(i);
-            Byte hapBase = hap.getBase(i);
-            if (thisBase != null && hapBase != null) {
-                if (BaseUtils.basesAreEqual(thisBase, hapBase))
-                    score.timesEqual(baseProbs[i]);
-                else
-                    score.timesEqual(baseErrorProbs[i]);
-            }
-        }
-
-        return score;
+    // The probability of this read's base at index, if the true base there is hapBase:
+    public double getLog10BaseScore(int index, byte hapBase) {
+        if (BaseUtils.basesAreEqual(this.getBase(index), hapBase))
+            return baseProbs[index].getLog10Value();
+        else
+            return baseErrorProbs[index].getLog10Value();
     }
 }
@@ -145,7 +145,7 @@ class PreciseNonNegativeDouble implements Comparable<PreciseNonNegativeDouble> {
     }
 
     // If x = log(a), y = log(b), returns log(a+b)
-    private static double addInLogSpace(double x, double y) {
+    static double addInLogSpace(double x, double y) {
         if (x == INFINITY || y == INFINITY) return INFINITY; // log(e^INFINITY + e^y) = INFINITY
 
         if (x == -INFINITY) return y;
@@ -79,12 +79,14 @@ import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.SortingVariantContextWriter;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.broadinstitute.gatk.engine.GATKVCFUtils.getVCFHeadersFromRods;
 
@@ -176,6 +178,16 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
     @Argument(fullName = "phaseQualityThresh", shortName = "phaseThresh", doc = "The minimum phasing quality score required to output phasing", required = false)
     protected Double phaseQualityThresh = 20.0; // PQ = 20.0 <=> P(error) = 10^(-20/10) = 0.01, P(correct) = 0.99
 
+    /**
+     * Sites more than cacheWindow bases apart are never used to phase each other, so the sites to be phased are cut into
+     * independent blocks wherever two consecutive ones are further apart than that, and these blocks are phased in
+     * parallel.  The output is the same as with a single thread.  However, a block is only phased once all of its
+     * sites have been reached, so all of its reads are kept in memory until then: this pays off for sparse callsets
+     * (or a small cacheWindow), but not when the sites are rarely cacheWindow bases apart.
+     */
+    @Argument(fullName = "numPhasingThreads", shortName = "phasingThreads", doc = "Number of threads used to phase independent blocks of sites", required = false)
+    protected int numPhasingThreads = 1;
+
     @Hidden
     @Argument(fullName = "variantStatsFilePrefix", shortName = "variantStats", doc = "The prefix of the VCF/phasing statistics files [For DEBUGGING purposes only - DO NOT USE!]", required = false)
     protected String variantStatsFilePrefix = null;
@@ -196,10 +208,13 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
 
     private GenomeLoc mostDownstreamLocusReached = null;
 
-    private LinkedList<VariantAndReads> unphasedSiteQueue = null;
-    private CloneableIteratorLinkedList<UnfinishedVariantAndReads> partiallyPhasedSites = null; // the phased VCs to be emitted, and the alignment bases at these positions
+    private PhasingBlock phasingBlock = null; // the sites currently being phased
 
-    private static PreciseNonNegativeDouble ZERO = new PreciseNonNegativeDouble(0.0);
+    // The blocks being phased in parallel (in order), if numPhasingThreads > 1:
+    private ExecutorService phasingExecutor = null;
+    private LinkedList<Future<PhasingStatsAndOutput>> phasedBlocks = null;
+    private LinkedList<VariantAndReads> unbatchedSites = null; // the sites that a single thread would not have started phasing yet
+    private static final int MAX_QUEUED_BLOCKS_PER_THREAD = 2;
 
     // In order to detect phase inconsistencies:
     private static final double FRACTION_OF_MEAN_PQ_CHANGES = 0.1; // If the PQ decreases by this fraction of the mean PQ changes (thus far), then this read is inconsistent with previous reads
@@ -219,6 +234,8 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
     public void initialize() {
         if (maxPhaseSites <= 2)
             maxPhaseSites = 2; // by definition, must phase a site relative to previous site [thus, 2 in total]
+        if (maxPhaseSites > PackedHaplotypeTable.MAX_SITES)
+            throw new UserException.BadArgumentValue("maxPhaseSites", "cannot be more than " + PackedHaplotypeTable.MAX_SITES + " sites, since all 2^maxPhaseSites haplotypes are enumerated");
 
         /*
          Since we cap each base quality (BQ) by its read's mapping quality (MQ) [in Read.updateBaseAndQuality()], then:
@@ -229,8 +246,18 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
          */
         MIN_MAPPING_QUALITY_SCORE = Math.max(MIN_MAPPING_QUALITY_SCORE, MIN_BASE_QUALITY_SCORE);
 
-        unphasedSiteQueue = new LinkedList<VariantAndReads>();
-        partiallyPhasedSites = new CloneableIteratorLinkedList<UnfinishedVariantAndReads>();
+        phasingBlock = new PhasingBlock();
+
+        if (numPhasingThreads < 1)
+            throw new UserException.BadArgumentValue("numPhasingThreads", "must be at least 1");
+        if (numPhasingThreads > 1) {
+            if (variantStatsFilePrefix != null || outputMultipleBaseCountsFile != null)
+                throw new UserException.BadArgumentValue("numPhasingThreads", "the debugging outputs require phasing with a single thread");
+
+            phasingExecutor = Executors.newFixedThreadPool(numPhasingThreads, new NamedThreadFactory("ReadBackedPhasing-thread-%d"));
+            phasedBlocks = new LinkedList<Future<PhasingStatsAndOutput>>();
+            unbatchedSites = new LinkedList<VariantAndReads>();
+        }
 
         initializeVcfWriter();
 
@@ -309,12 +336,21 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         PhasingStats phaseStats = new PhasingStats();
         List<VariantContext> unprocessedList = new LinkedList<VariantContext>();
 
+        if (phasingExecutor != null)
+            markSerialBatch(false); // before any site is added, so that the block being phased next is already marked
+
         for (VariantContext vc : tracker.getValues(variantCollection.variants, context.getLocation())) {
             if (samplesToPhase != null) vc = reduceVCToSamples(vc, samplesToPhase);
 
             if (ReadBackedPhasing.processVariantInPhasing(vc)) {
                 VariantAndReads vr = new VariantAndReads(vc, context);
-                unphasedSiteQueue.add(vr);
+                if (phasingExecutor != null && phasingBlock.isIndependentOf(vr)) {
+                    phaseInParallel(phasingBlock);
+                    phasingBlock = new PhasingBlock();
+                }
+                phasingBlock.unphasedSiteQueue.add(vr);
+                if (phasingExecutor != null)
+                    unbatchedSites.add(vr);
 
                 if (DEBUG)
                     logger.debug("Added variant to queue = " + GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), vr.variant));
@@ -331,7 +367,13 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
             phaseStats.addIn(addInPhaseStats);
         }
 
-        List<VariantContext> completedList = processQueue(phaseStats, false);
+        if (phasingExecutor != null) {
+            // Emit the unprocessed variants in order with the phased ones, since a block may take long to be phased:
+            phasingBlock.unprocessedSites.addAll(unprocessedList);
+            return new PhasingStatsAndOutput(phaseStats, collectPhasedBlocks(phaseStats, false));
+        }
+
+        List<VariantContext> completedList = processQueue(phasingBlock, phaseStats, false);
         completedList.addAll(unprocessedList); // add unprocessedList on to the END of completedList so that the processQueue() results, which are necessarily more upstream, are first!
 
         return new PhasingStatsAndOutput(phaseStats, completedList);
@@ -349,7 +391,8 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
     }
 
     // Phase all "waiting" genotypes in the unphasedSiteQueue, but only if we have sufficient downstream genotypes with which to phase them
-    private List<VariantContext> processQueue(PhasingStats phaseStats, boolean processAll) {
+    private List<VariantContext> processQueue(PhasingBlock block, PhasingStats phaseStats, boolean processAll) {
+        final LinkedList<VariantAndReads> unphasedSiteQueue = block.unphasedSiteQueue;
         List<VariantContext> oldPhasedList = new LinkedList<VariantContext>();
 
         VariantAndReads prevVr = null;
@@ -366,10 +409,12 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
                 // Already saw all variant positions within cacheWindow startDistance ahead of vc (on its contig)
             }
             // Update partiallyPhasedSites before it's used in phaseSite:
-            oldPhasedList.addAll(discardIrrelevantPhasedSites());
+            oldPhasedList.addAll(discardIrrelevantPhasedSites(block));
             if (DEBUG) logger.debug("oldPhasedList(1st) = " + toStringVCL(oldPhasedList));
 
             final VariantAndReads vr = unphasedSiteQueue.remove();
+            if (vr.startsSerialBatch) // phasing a whole block at once, so only merge vr with the sites a single thread would phase along with it
+                prevVr = null;
 
             // should try to merge variants if they are SNPs that are within the minimum merging distance from each other
             final boolean shouldTryToMerge = enableMergePhasedSegregatingPolymorphismsToMNP &&
@@ -394,24 +439,26 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
                 logger.debug("Performing phasing for " + GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), vr.variant));
 
             // phase the variant site, cannot phase if trying to merge variants that do not have any common reads
-            phaseSite(vr, phaseStats, !(shouldTryToMerge && !commonReads));
+            phaseSite(block, vr, phaseStats, !(shouldTryToMerge && !commonReads));
 
             // save previous variant reads for next iteration
             prevVr = vr;
         }
 
         // Update partiallyPhasedSites after phaseSite is done:
-        oldPhasedList.addAll(discardIrrelevantPhasedSites());
+        oldPhasedList.addAll(discardIrrelevantPhasedSites(block));
         if (DEBUG) logger.debug("oldPhasedList(2nd) = " + toStringVCL(oldPhasedList));
 
         if (outputMultipleBaseCountsWriter != null)
-            outputMultipleBaseCountsWriter.outputMultipleBaseCounts();
+            outputMultipleBaseCountsWriter.outputMultipleBaseCounts(unphasedSiteQueue);
 
         return oldPhasedList;
     }
 
     // Flush out sites with (possibly) phased genotypes, if those sites are no longer needed to phase other downstream sites
-    private List<VariantContext> discardIrrelevantPhasedSites() {
+    private List<VariantContext> discardIrrelevantPhasedSites(PhasingBlock block) {
+        final LinkedList<VariantAndReads> unphasedSiteQueue = block.unphasedSiteQueue;
+        final CloneableIteratorLinkedList<UnfinishedVariantAndReads> partiallyPhasedSites = block.partiallyPhasedSites;
         List<VariantContext> vcList = new LinkedList<VariantContext>();
 
         GenomeLoc nextToPhaseLoc = null;
@@ -442,11 +489,13 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
     /**
      * Phase the variant site relative to the previous site
      *
+     * @param block         The sites being phased together with vr
      * @param vr            A variant and the reads for each sample at that site:
      * @param phaseStats    Summary statistics about phasing rates for each sample
      * @param canPhase      Can phase variant site relative to the previous site
      */
-    private void phaseSite(final VariantAndReads vr, final PhasingStats phaseStats, final boolean canPhase) {
+    private void phaseSite(final PhasingBlock block, final VariantAndReads vr, final PhasingStats phaseStats, final boolean canPhase) {
+        final CloneableIteratorLinkedList<UnfinishedVariantAndReads> partiallyPhasedSites = block.partiallyPhasedSites;
         VariantContext vc = vr.variant;
         logger.debug("Will phase vc = " + GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), vc));
 
@@ -482,7 +531,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
                     boolean phasedCurGenotypeRelativeToPrevious = false;
                     if ( canPhase ) {
                         for (int goBackFromEndOfPrevHets = 0; goBackFromEndOfPrevHets < prevHetGenotypes.size(); goBackFromEndOfPrevHets++) {
-                            PhasingWindow phaseWindow = new PhasingWindow(vr, samp, prevHetGenotypes, goBackFromEndOfPrevHets);
+                            PhasingWindow phaseWindow = new PhasingWindow(vr, samp, prevHetGenotypes, goBackFromEndOfPrevHets, block.unphasedSiteQueue);
 
                             PhaseResult pr = phaseSampleAtSite(phaseWindow);
                             phasedCurGenotypeRelativeToPrevious = passesPhasingThreshold(pr.phaseQuality);
@@ -603,7 +652,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
 
         // ASSUMES that: isUnfilteredCalledDiploidGenotype(vrGt) && vrGt.isHet() [vrGt = vr.variant.getGenotype(sample)]
 
-        public PhasingWindow(VariantAndReads vr, String sample, List<GenotypeAndReadBases> prevHetGenotypes, int goBackFromEndOfPrevHets) {
+        public PhasingWindow(VariantAndReads vr, String sample, List<GenotypeAndReadBases> prevHetGenotypes, int goBackFromEndOfPrevHets, List<VariantAndReads> unphasedSiteQueue) {
             if (prevHetGenotypes.isEmpty() || goBackFromEndOfPrevHets >= prevHetGenotypes.size()) // no previous sites against which to phase
                 throw new ReviewedGATKException("Should never get empty set of previous sites to phase against");
 
@@ -1038,11 +1087,9 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
     // Phase a particular sample's het genotype using a constructed PhasingWindow:
     private PhaseResult phaseSampleAtSite(PhasingWindow phaseWindow) {
         /* Will map a phase and its "complement" to a single representative phase,
-          and marginalizeAsNewTable() marginalizes to 2 positions [starting at the previous position, and then the current position]:
+          and marginalize() marginalizes to 2 positions [starting at the previous position, and then the current position]:
         */
-        int[] marginalizeInds = {phaseWindow.phaseRelativeToIndex, phaseWindow.phasingSiteIndex};
-        HaplotypeTableCreator tabCreator = new TableCreatorOfHaplotypeAndComplementForDiploidAlleles(phaseWindow.hetGenotypes, marginalizeInds);
-        PhasingTable sampleHaps = tabCreator.getNewTable();
+        PackedHaplotypeTable sampleHaps = new PackedHaplotypeTable(phaseWindow.hetGenotypes, phaseWindow.phaseRelativeToIndex, phaseWindow.phasingSiteIndex);
 
         if (DEBUG && logger.isDebugEnabled()) {
             logger.debug("Number of USED reads [connecting the two positions to be phased] at sites: " + phaseWindow.readsAtHetSites.size());
@@ -1055,7 +1102,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         }
 
         // Update the phasing table based on each of the sub-reads for this sample:
-        MaxHaplotypeAndQuality prevMaxHapAndQual = null;
+        PackedHaplotypeTable.MarginalPhase prevMaxPhase = null;
 
         int numHighQualityIterations = 0;
         int numInconsistentIterations = 0;
@@ -1067,22 +1114,18 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
             PhasingRead rd = nameToReads.getValue();
             if (DEBUG) logger.debug("\nrd = " + rd + "\tname = " + nameToReads.getKey());
 
-            for (PhasingTable.PhasingTableEntry pte : sampleHaps) {
-                PhasingScore score = rd.matchHaplotypeClassScore(pte.getHaplotypeClass());
-                pte.getScore().integrateReadScore(score);
-                if (DEBUG) logger.debug("score(" + rd + ", " + pte.getHaplotypeClass() + ") = " + score);
-            }
+            sampleHaps.integrateReadScore(rd);
 
             // Check the current best haplotype assignment and compare it to the previous one:
-            MaxHaplotypeAndQuality curMaxHapAndQual = new MaxHaplotypeAndQuality(sampleHaps, false);
+            PackedHaplotypeTable.MarginalPhase curMaxPhase = sampleHaps.marginalize();
             if (DEBUG)
-                logger.debug("CUR MAX hap:\t" + curMaxHapAndQual.maxEntry.getHaplotypeClass() + "\tcurPhaseQuality:\t" + curMaxHapAndQual.phaseQuality);
-            if (prevMaxHapAndQual != null) {
-                double changeInPQ = prevMaxHapAndQual.phaseQuality - curMaxHapAndQual.phaseQuality;
+                logger.debug("CUR MAX hap:\t" + curMaxPhase.getRepresentative() + "\tcurPhaseQuality:\t" + curMaxPhase.getPhaseQuality());
+            if (prevMaxPhase != null) {
+                double changeInPQ = prevMaxPhase.getPhaseQuality() - curMaxPhase.getPhaseQuality();
 
-                if (passesPhasingThreshold(prevMaxHapAndQual.phaseQuality)) {
+                if (passesPhasingThreshold(prevMaxPhase.getPhaseQuality())) {
                     numHighQualityIterations++;
-                    if (!curMaxHapAndQual.hasSameRepresentativeHaplotype(prevMaxHapAndQual) || // switched phase
+                    if (curMaxPhase.isOutOfPhase() != prevMaxPhase.isOutOfPhase() || // switched phase
                             (numPQchangesObserved > 0 && changeInPQ > FRACTION_OF_MEAN_PQ_CHANGES * (totalAbsPQchange / numPQchangesObserved))) { // a "significant" decrease in PQ
                         if (DEBUG) logger.debug("Inconsistent read found!");
                         numInconsistentIterations++;
@@ -1092,15 +1135,16 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
                 totalAbsPQchange += Math.abs(changeInPQ);
                 numPQchangesObserved++;
             }
-            prevMaxHapAndQual = curMaxHapAndQual;
+            prevMaxPhase = curMaxPhase;
         }
 
         if (DEBUG) logger.debug("\nPhasing table [AFTER CALCULATION]:\n" + sampleHaps + "\n");
-        MaxHaplotypeAndQuality maxHapQual = new MaxHaplotypeAndQuality(sampleHaps, DEBUG);
-        double posteriorProb = maxHapQual.maxEntry.getScore().getValue();
+        PackedHaplotypeTable.MarginalPhase maxPhase = sampleHaps.marginalize();
+        if (DEBUG) logger.debug("\nPhasing table [AFTER MAPPING AND NORMALIZATION]:\n" + maxPhase + "\n");
+        double posteriorProb = maxPhase.getPosteriorProb().getValue();
 
         if (DEBUG)
-            logger.debug("MAX hap:\t" + maxHapQual.maxEntry.getHaplotypeClass() + "\tposteriorProb:\t" + posteriorProb + "\tphaseQuality:\t" + maxHapQual.phaseQuality);
+            logger.debug("MAX hap:\t" + maxPhase.getRepresentative() + "\tposteriorProb:\t" + posteriorProb + "\tphaseQuality:\t" + maxPhase.getPhaseQuality());
         if (DEBUG)
             logger.debug("Number of used reads " + phaseWindow.readsAtHetSites.size() + "; number of high PQ iterations " + numHighQualityIterations + "; number of inconsistencies " + numInconsistentIterations);
 
@@ -1108,49 +1152,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         if (numInconsistentIterations / (double) numHighQualityIterations > MAX_FRACTION_OF_INCONSISTENT_READS)
             phasingContainsInconsistencies = true;
 
-        return new PhaseResult(maxHapQual.getRepresentative(), maxHapQual.phaseQuality, phasingContainsInconsistencies);
-    }
-
-    // Object represents the maximum-scoring haplotype and its corresponding quality score
-    private static class MaxHaplotypeAndQuality {
-        public PhasingTable.PhasingTableEntry maxEntry;
-        public double phaseQuality;
-
-        public MaxHaplotypeAndQuality(PhasingTable hapTable, boolean printDebug) {
-            // Marginalize each haplotype to its first 2 positions:
-            hapTable = HaplotypeTableCreator.marginalizeAsNewTable(hapTable);
-            if (printDebug)
-                logger.debug("\nPhasing table [AFTER MAPPING]:\n" + hapTable + "\n");
-
-            calculateMaxHapAndPhasingQuality(hapTable, printDebug);
-        }
-
-        // Calculates maxEntry and its PQ (within table hapTable):
-        private void calculateMaxHapAndPhasingQuality(PhasingTable hapTable, boolean printDebug) {
-            hapTable.normalizeScores();
-            if (printDebug)
-                logger.debug("\nPhasing table [AFTER NORMALIZATION]:\n" + hapTable + "\n");
-
-            // Determine the phase at this position:
-            this.maxEntry = hapTable.maxEntry();
-
-            // convert posteriorProb to PHRED scale, but do NOT cap the quality as in QualityUtils.trueProbToQual(posteriorProb):
-            PreciseNonNegativeDouble sumErrorProbs = new PreciseNonNegativeDouble(ZERO);
-            for (PhasingTable.PhasingTableEntry pte : hapTable) {
-                if (pte != maxEntry)
-                    sumErrorProbs.plusEqual(pte.getScore());
-            }
-            this.phaseQuality = -10.0 * (sumErrorProbs.getLog10Value());
-        }
-
-        // Comparator that compares if 2 haplotypes map back to the same "representative" haplotype (accounts for reverse complementarity)
-        public boolean hasSameRepresentativeHaplotype(MaxHaplotypeAndQuality that) {
-            return this.getRepresentative().equals(that.getRepresentative());
-        }
-
-        private Haplotype getRepresentative() {
-            return maxEntry.getHaplotypeClass().getRepresentative();
-        }
+        return new PhaseResult(maxPhase.getRepresentative(), maxPhase.getPhaseQuality(), phasingContainsInconsistencies);
     }
 
     /*
@@ -1206,7 +1208,16 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
      * @param result the number of reads and VariantContexts seen.
      */
     public void onTraversalDone(PhasingStats result) {
-        List<VariantContext> finalList = processQueue(result, true); // process all remaining data
+        List<VariantContext> finalList;
+        if (phasingExecutor != null) {
+            markSerialBatch(true);
+            phaseInParallel(phasingBlock);
+            finalList = collectPhasedBlocks(result, true);
+            phasingExecutor.shutdown();
+        }
+        else {
+            finalList = processQueue(phasingBlock, result, true); // process all remaining data
+        }
         writeVcList(finalList);
         writer.close();
 
@@ -1230,6 +1241,65 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         System.out.println("");
     }
 
+    /* With a single thread, processQueue() only tries to merge a site into an MNP with the previous site if both are phased in the same call.
+       So mark the first of the sites that a single thread would phase now [all remaining sites if processAll], for the blocks phased in parallel to give the same output.
+     */
+    private void markSerialBatch(boolean processAll) {
+        boolean startsBatch = true;
+        while (!unbatchedSites.isEmpty()) {
+            if (!processAll && startDistancesAreInWindowRange(mostDownstreamLocusReached, GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), unbatchedSites.peek().variant)))
+                break; // as in processQueue()
+            unbatchedSites.remove().startsSerialBatch = startsBatch;
+            startsBatch = false;
+        }
+    }
+
+    // Phase all sites of block in the background, as it is independent of any sites that are yet to come:
+    private void phaseInParallel(final PhasingBlock block) {
+        phasedBlocks.add(phasingExecutor.submit(new Callable<PhasingStatsAndOutput>() {
+            public PhasingStatsAndOutput call() {
+                PhasingStats phaseStats = new PhasingStats();
+                List<VariantContext> blockList = processQueue(block, phaseStats, true);
+                blockList.addAll(block.unprocessedSites);
+                sortByLocation(blockList);
+                return new PhasingStatsAndOutput(phaseStats, blockList);
+            }
+        }));
+    }
+
+    /* Collect the blocks phased in parallel, in order, as long as they are done [or all of them if waitForAll].
+       Also waits for them if too many blocks are queued up, so as not to hold on to the reads of the whole input.
+     */
+    private List<VariantContext> collectPhasedBlocks(PhasingStats phaseStats, boolean waitForAll) {
+        List<VariantContext> phasedList = new LinkedList<VariantContext>();
+        while (!phasedBlocks.isEmpty() && (waitForAll || phasedBlocks.peek().isDone() || phasedBlocks.size() > MAX_QUEUED_BLOCKS_PER_THREAD * numPhasingThreads)) {
+            PhasingStatsAndOutput phasedBlock;
+            try {
+                phasedBlock = phasedBlocks.remove().get();
+            } catch (InterruptedException e) {
+                throw new ReviewedGATKException("Interrupted while phasing in parallel", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new ReviewedGATKException("Failed to phase in parallel", e.getCause());
+            }
+            phaseStats.addIn(phasedBlock.ps);
+            phasedList.addAll(phasedBlock.output);
+        }
+        return phasedList;
+    }
+
+    private void sortByLocation(List<VariantContext> vcList) {
+        Collections.sort(vcList, new Comparator<VariantContext>() {
+            public int compare(VariantContext vc1, VariantContext vc2) {
+                GenomeLoc loc1 = GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), vc1);
+                GenomeLoc loc2 = GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), vc2);
+                int comparison = loc1.compareContigs(loc2);
+                return comparison != 0 ? comparison : Integer.compare(loc1.getStart(), loc2.getStart());
+            }
+        });
+    }
+
     private void writeVcList(List<VariantContext> varContList) {
         for (VariantContext vc : varContList)
             writeVCF(vc);
@@ -1256,6 +1326,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         public VariantContext variant;
         public HashMap<String, ReadBasesAtPosition> sampleReadBases;
         public Set<String> variantReadNames;
+        public boolean startsSerialBatch = false; // see markSerialBatch()
 
         public VariantAndReads(VariantContext variant, HashMap<String, ReadBasesAtPosition> sampleReadBases) {
             this.variant = variant;
@@ -1303,6 +1374,20 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         }
     }
 
+    /* The sites being phased together: those yet to be phased, and those already phased that are still needed to phase the former.
+       Since sites more than cacheWindow apart are never used to phase each other, sites beyond such a gap can be phased in a new, independent, block.
+     */
+    private class PhasingBlock {
+        public LinkedList<VariantAndReads> unphasedSiteQueue = new LinkedList<VariantAndReads>();
+        public CloneableIteratorLinkedList<UnfinishedVariantAndReads> partiallyPhasedSites = new CloneableIteratorLinkedList<UnfinishedVariantAndReads>(); // the phased VCs to be emitted, and the alignment bases at these positions
+        public List<VariantContext> unprocessedSites = new LinkedList<VariantContext>(); // to be emitted with the phased VCs, when phasing blocks in parallel
+
+        // Assumes that vr is downstream of all sites in this block:
+        public boolean isIndependentOf(VariantAndReads vr) {
+            return !unphasedSiteQueue.isEmpty() && !startDistancesAreInWindowRange(unphasedSiteQueue.getLast().variant, vr.variant);
+        }
+    }
+
     // Object to represent a variant that has yet to be phased, along with its underlying base pileups:
     private class UnfinishedVariantAndReads {
         public UnfinishedVariantContext unfinishedVariant;
@@ -1403,214 +1488,6 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
 // AN ArrayList OF Allele [OR SIMILAR OBJECT], and WON'T USE: getSingleBase(alleleI)
 //
 
-    /* Creates table of all 2^n local haplotypes,
-       where n is the number of heterozygous SNPs in the local region we expected to find phase-informative reads
-     */
-    private static abstract class HaplotypeTableCreator {
-        protected Genotype[] genotypes;
-
-        public HaplotypeTableCreator(Genotype[] hetGenotypes) {
-            this.genotypes = hetGenotypes;
-        }
-
-        abstract public PhasingTable getNewTable();
-
-        protected List<Haplotype> getAllHaplotypes() {
-            int numSites = genotypes.length;
-            int[] genotypeCards = new int[numSites];
-            for (int i = 0; i < numSites; i++)
-                genotypeCards[i] = genotypes[i].getPloidy();
-
-            LinkedList<Haplotype> allHaps = new LinkedList<Haplotype>();
-            CardinalityCounter alleleCounter = new CardinalityCounter(genotypeCards);
-            for (int[] alleleInds : alleleCounter) {
-                byte[] hapBases = new byte[numSites];
-                for (int i = 0; i < numSites; i++) {
-                    Allele alleleI = genotypes[i].getAllele(alleleInds[i]);
-                    hapBases[i] = SNPallelePair.getSingleBase(alleleI);
-                }
-                allHaps.add(new Haplotype(hapBases));
-            }
-            return allHaps;
-        }
-
-        /* For phasing site X relative to site X-1, we sum the probabilities over all haplotypes of the phases of [X-1, X].
-           That is, we aggregate probability mass over all haplotypes consistent with a particular phase at the [X-1, X] pair.
-         */
-        public static PhasingTable marginalizeAsNewTable(PhasingTable table) {
-            TreeMap<Haplotype, PreciseNonNegativeDouble> hapMap = new TreeMap<Haplotype, PreciseNonNegativeDouble>();
-            for (PhasingTable.PhasingTableEntry pte : table) {
-                Haplotype rep = pte.getHaplotypeClass().getRepresentative();
-                PreciseNonNegativeDouble score = hapMap.get(rep);
-                if (score == null) {
-                    score = new PreciseNonNegativeDouble(ZERO);
-                    hapMap.put(rep, score);
-                }
-                score.plusEqual(pte.getScore());
-            }
-
-            PhasingTable margTable = new PhasingTable();
-            for (Map.Entry<Haplotype, PreciseNonNegativeDouble> hapClassAndScore : hapMap.entrySet()) {
-                Haplotype rep = hapClassAndScore.getKey();
-                ArrayList<Haplotype> hapList = new ArrayList<Haplotype>();
-                hapList.add(rep);
-
-                HaplotypeClass hc = new HaplotypeClass(hapList, rep);
-                margTable.addEntry(hc, hapClassAndScore.getValue());
-            }
-            return margTable;
-        }
-    }
-
-    // Implementation for diploid alleles (thus assuming 2^n haplotypes):
-    private static class TableCreatorOfHaplotypeAndComplementForDiploidAlleles extends HaplotypeTableCreator {
-        private SNPallelePair[] SNPallelePairs;
-        Set<Integer> marginalizeInds;
-
-        public TableCreatorOfHaplotypeAndComplementForDiploidAlleles(Genotype[] hetGenotypes, int[] marginalizeInds) {
-            super(hetGenotypes);
-
-            this.SNPallelePairs = new SNPallelePair[genotypes.length];
-            for (int i = 0; i < genotypes.length; i++)
-                SNPallelePairs[i] = new SNPallelePair(genotypes[i]);
-
-            this.marginalizeInds = new TreeSet<Integer>();
-            for (int mind : marginalizeInds)
-                this.marginalizeInds.add(mind);
-        }
-
-        public PhasingTable getNewTable() {
-            int startIndex = marginalizeInds.iterator().next();
-
-            PhasingTable table = new PhasingTable();
-            for (Haplotype hap : getAllHaplotypes()) {
-                if (SNPallelePairs[startIndex].matchesTopBase(hap.getBase(startIndex))) {
-                    /* hap is the "representative" haplotype [DEFINED here to be
-                      the one with the top base at the startIndex position.
-                      NOTE that it is CRITICAL that this definition be consistent with the representative sub-haplotypes defined below!]
-                    */
-                    ArrayList<Haplotype> hapList = new ArrayList<Haplotype>();
-                    hapList.add(hap);
-                    hapList.add(complement(hap));
-
-                    Haplotype rep = hap.subHaplotype(marginalizeInds);
-                    double hapClassPrior = getHaplotypeRepresentativePrior(rep); // Note that prior is ONLY a function of the representative haplotype
-
-                    HaplotypeClass hapClass = new HaplotypeClass(hapList, rep);
-                    table.addEntry(hapClass, hapClassPrior);
-                }
-            }
-            return table;
-        }
-
-        // Can change later to weight the representative Haplotypes differently:
-
-        private double getHaplotypeRepresentativePrior(Haplotype rep) {
-            return 1.0;
-        }
-
-        /* Since assuming biallelic genotypes, we use this to map a haplotype to the corresponding haplotype,
-           where the other allele is chosen at each site
-         */
-        private Haplotype complement(Haplotype hap) {
-            int numSites = SNPallelePairs.length;
-            if (hap.size() != numSites)
-                throw new ReviewedGATKException("INTERNAL ERROR: hap.size() != numSites");
-
-            // Take the other base at EACH position of the Haplotype:
-            byte[] complementBases = new byte[numSites];
-            for (int i = 0; i < numSites; i++)
-                complementBases[i] = SNPallelePairs[i].getOtherBase(hap.getBase(i));
-
-            return new Haplotype(complementBases);
-        }
-    }
-
-    // Table to represent the list of all haplotypes and their scores:
-    private static class PhasingTable implements Iterable<PhasingTable.PhasingTableEntry> {
-        private LinkedList<PhasingTableEntry> table;
-
-        public PhasingTable() {
-            this.table = new LinkedList<PhasingTableEntry>();
-        }
-
-        public PhasingTableEntry addEntry(HaplotypeClass haplotypeClass, PreciseNonNegativeDouble initialScore) {
-            PhasingTableEntry pte = new PhasingTableEntry(haplotypeClass, new PhasingScore(initialScore));
-            table.add(pte);
-            return pte;
-        }
-
-        public PhasingTableEntry addEntry(HaplotypeClass haplotypeClass, double initialScore) {
-            return addEntry(haplotypeClass, new PreciseNonNegativeDouble(initialScore));
-        }
-
-        public Iterator<PhasingTableEntry> iterator() {
-            return table.iterator();
-        }
-
-        public boolean isEmpty() {
-            return table.isEmpty();
-        }
-
-        public PhasingTableEntry maxEntry() {
-            if (table.isEmpty())
-                return null;
-
-            PhasingTableEntry maxPte = null;
-            for (PhasingTableEntry pte : table) {
-                if (maxPte == null || pte.getScore().gt(maxPte.getScore())) {
-                    maxPte = pte;
-                }
-            }
-            return maxPte;
-        }
-
-        // Normalize all the scores of the phasing table by their sum total:
-        public void normalizeScores() {
-            PreciseNonNegativeDouble normalizeBy = new PreciseNonNegativeDouble(ZERO);
-            for (PhasingTableEntry pte : table)
-                normalizeBy.plusEqual(pte.getScore());
-
-            if (!normalizeBy.equals(ZERO)) { // prevent precision problems
-                for (PhasingTableEntry pte : table)
-                    pte.getScore().divEqual(normalizeBy);
-            }
-        }
-
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("-------------------\n");
-            for (PhasingTableEntry pte : this) {
-                sb.append("Haplotypes:\t" + pte.getHaplotypeClass() + "\tScore:\t" + pte.getScore() + "\n");
-            }
-            sb.append("-------------------\n");
-            return sb.toString();
-        }
-
-        // An entry in the phasing table for a particular set of equivalent haplotypes (e.g., a haplotype and its "complement" -- see above)
-        public static class PhasingTableEntry implements Comparable<PhasingTableEntry> {
-            private HaplotypeClass haplotypeClass;
-            private PhasingScore score;
-
-            public PhasingTableEntry(HaplotypeClass haplotypeClass, PhasingScore score) {
-                this.haplotypeClass = haplotypeClass;
-                this.score = score;
-            }
-
-            public HaplotypeClass getHaplotypeClass() {
-                return haplotypeClass;
-            }
-
-            public PhasingScore getScore() {
-                return score;
-            }
-
-            public int compareTo(PhasingTableEntry that) {
-                return this.getScore().compareTo(that.getScore());
-            }
-        }
-    }
-
     private static class PhaseResult {
         public Haplotype haplotype;
         public double phaseQuality;
@@ -1660,7 +1537,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
 
         }
 
-        public void outputMultipleBaseCounts() {
+        public void outputMultipleBaseCounts(LinkedList<VariantAndReads> unphasedSiteQueue) {
             GenomeLoc nextToPhaseLoc = null;
             if (!unphasedSiteQueue.isEmpty())
                 nextToPhaseLoc = GATKVariantContextUtils.getLocation(getToolkit().getGenomeLocParser(), unphasedSiteQueue.peek().variant);
@@ -1687,7 +1564,7 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
         }
 
         public void close() {
-            outputMultipleBaseCounts(null);
+            outputMultipleBaseCounts((GenomeLoc) null);
 
             try {
                 writer.flush();
@@ -1700,54 +1577,6 @@ public class ReadBackedPhasing extends RodWalker<PhasingStatsAndOutput, PhasingS
 }
 
 
-class PhasingScore extends PreciseNonNegativeDouble {
-    public PhasingScore(double score) {
-        super(score);
-    }
-
-    public PhasingScore(PreciseNonNegativeDouble val) {
-        super(val);
-    }
-
-    public PhasingScore integrateReadScore(PhasingScore score) {
-        timesEqual(score);
-        return this;
-    }
-}
-
-class HaplotypeClass implements Iterable<Haplotype> {
-    private ArrayList<Haplotype> haps;
-    private Haplotype rep;
-
-    public HaplotypeClass(ArrayList<Haplotype> haps, Haplotype rep) {
-        this.haps = haps;
-        this.rep = rep;
-    }
-
-    public Iterator<Haplotype> iterator() {
-        return haps.iterator();
-    }
-
-    public Haplotype getRepresentative() {
-        return rep;
-    }
-
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        boolean isFirst = true;
-        for (Haplotype h : haps) {
-            if (isFirst)
-                isFirst = false;
-            else
-                sb.append(" + ");
-
-            sb.append(h);
-        }
-        sb.append(" [").append(rep).append("]");
-        return sb.toString();
-    }
-}
-
 // Summary statistics about phasing rates, for each sample
 class PhasingStats {
     private int numReads;
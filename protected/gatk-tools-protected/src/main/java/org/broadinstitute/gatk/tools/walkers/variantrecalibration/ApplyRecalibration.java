@@ -179,8 +179,14 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      */
     @Input(fullName="input", shortName = "input", doc="The raw input variants to be recalibrated", required=true)
     public List<RodBinding<VariantContext>> input;
-    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=true)
+    @Input(fullName="recal_file", shortName="recalFile", doc="The input recal file used by ApplyRecalibration", required=false)
     protected RodBinding<VariantContext> recal;
+    /**
+     * The binary recal index written by VariantRecalibrator with -recalIndex can be given instead of the recal file.
+     * It is memory-mapped and looked up directly, so that the recal file doesn't have to be decoded alongside the input.
+     */
+    @Input(fullName="recal_index", shortName="recalIndex", doc="The input binary recal index, which can be used instead of the recal file", required=false)
+    protected File RECAL_INDEX_FILE = null;
     @Input(fullName="tranches_file", shortName="tranchesFile", doc="The input tranches file describing where to cut the data", required=false)
     protected File TRANCHES_FILE;
 
@@ -230,6 +236,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
     final static private String arrayParseRegex = "[\\[\\]\\s]";
     final static private String emptyStringValue = "NA";
     final static private String emptyFloatValue = "NaN";
+    private RecalibrationIndex recalIndex = null;
 
 
     //---------------------------------------------------------------------------------------------------------------
@@ -249,6 +256,14 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
             Collections.reverse(tranches); // this algorithm wants the tranches ordered from best (lowest truth sensitivity) to worst (highest truth sensitivity)
         }
 
+        if( recal.isBound() == (RECAL_INDEX_FILE != null) ) {
+            throw new UserException.CommandLineException("Exactly one of --recal_file and --recal_index must be specified.");
+        }
+        if( RECAL_INDEX_FILE != null ) {
+            recalIndex = new RecalibrationIndex(RECAL_INDEX_FILE);
+            logger.info("Read " + recalIndex.size() + " variants from the recal index");
+        }
+
         for( final RodBinding rod : input ) {
             inputNames.add( rod.getName() );
         }
@@ -372,7 +387,7 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
         }
 
         final List<VariantContext> VCs =  tracker.getValues(input, context.getLocation());
-        final List<VariantContext> recals =  tracker.getValues(recal, context.getLocation());
+        final List<VariantContext> recals =  recalIndex == null ? tracker.getValues(recal, context.getLocation()) : Collections.<VariantContext>emptyList();
 
         for( final VariantContext vc : VCs ) {
 
@@ -514,6 +529,60 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
         return filterString;
     }
 
+    /**
+     * The VQSR values of the variant of the recal file which matches an input variant
+     */
+    private static final class RecalDatum {
+        private final double lod;
+        private final String culprit;
+        private final boolean positiveTrainingSite;
+        private final boolean negativeTrainingSite;
+
+        private RecalDatum(final double lod, final String culprit, final boolean positiveTrainingSite, final boolean negativeTrainingSite) {
+            this.lod = lod;
+            this.culprit = culprit;
+            this.positiveTrainingSite = positiveTrainingSite;
+            this.negativeTrainingSite = negativeTrainingSite;
+        }
+    }
+
+    /**
+     * Find the values of the variant matching target, in the recal index if there is one and among recalVCs otherwise
+     * @param target the input variant
+     * @param recalVCs the variants of the recal file at the position of target
+     * @param allele the alternate allele of target in allele-specific mode
+     * @return the values of the matching variant, or null if there is none
+     */
+    private RecalDatum getMatchingRecalDatum(final VariantContext target, final List<VariantContext> recalVCs, final Allele allele) {
+        if (recalIndex != null) {
+            final int record = recalIndex.find(target.getContig(), target.getStart(), target.getEnd(), useASannotations ? allele : null);
+            if (record == -1)
+                return null;
+            return new RecalDatum(recalIndex.getLod(record), recalIndex.getCulprit(record), recalIndex.isPositiveTrainingSite(record), recalIndex.isNegativeTrainingSite(record));
+        }
+
+        final VariantContext recalVC = getMatchingRecalVC(target, recalVCs, allele);
+        if (recalVC == null)
+            return null;
+
+        final double lod;
+        if (useASannotations) {
+            lod = recalVC.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
+        } else {
+            final String lodString = recalVC.getAttributeAsString(GATKVCFConstants.VQS_LOD_KEY, null);
+            if( lodString == null ) {
+                throw new UserException("Encountered a malformed record in the input recal file. There is no lod for the record at: " + target );
+            }
+            try {
+                lod = Double.valueOf(lodString);
+            } catch (NumberFormatException e) {
+                throw new UserException("Encountered a malformed record in the input recal file. The lod is unreadable for the record at: " + target );
+            }
+        }
+        return new RecalDatum(lod, recalVC.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, null),
+                recalVC.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY), recalVC.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY));
+    }
+
     private VariantContext getMatchingRecalVC(final VariantContext target, final List<VariantContext> recalVCs, final Allele allele) {
         for( final VariantContext recalVC : recalVCs ) {
             if ( target.getEnd() == recalVC.getEnd() ) {
@@ -597,26 +666,24 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
 
             //if it's not a spanning deletion, replace those allele strings with the real values
             if (!allele.equals(Allele.SPAN_DEL)) {
-                VariantContext recalDatum = getMatchingRecalVC(vc, recals, allele);
+                final RecalDatum recalDatum = getMatchingRecalDatum(vc, recals, allele);
                 if (recalDatum == null) {
                     throw new UserException("Encountered input allele which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants with flag -AS. First seen at: " + vc);
                 }
 
                 //compare VQSLODs for all alleles in the current mode for filtering later
-                final double lod = recalDatum.getAttributeAsDouble(GATKVCFConstants.VQS_LOD_KEY, VariantRecalibratorEngine.MIN_ACCEPTABLE_LOD_SCORE);
+                final double lod = recalDatum.lod;
                 if (lod > bestLod)
                     bestLod = lod;
 
                 alleleLodString = String.format("%.4f", lod);
                 alleleFilterString = generateFilterString(lod);
-                alleleCulpritString = recalDatum.getAttributeAsString(GATKVCFConstants.CULPRIT_KEY, ".");
+                alleleCulpritString = recalDatum.culprit == null ? "." : recalDatum.culprit;
 
-                if(recalDatum != null) {
-                    if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-                    if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                        builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-                }
+                if (recalDatum.positiveTrainingSite)
+                    builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+                if (recalDatum.negativeTrainingSite)
+                    builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
             }
 
             //append per-allele VQSR annotations
@@ -644,32 +711,19 @@ public class ApplyRecalibration extends RodWalker<Integer, Integer> implements T
      * @return a String with the filter status for this site
      */
     private String doSiteSpecificFiltering(final VariantContext vc, final List<VariantContext> recals, final VariantContextBuilder builder) {
-        VariantContext recalDatum = getMatchingRecalVC(vc, recals, null);
+        final RecalDatum recalDatum = getMatchingRecalDatum(vc, recals, null);
         if( recalDatum == null ) {
             throw new UserException("Encountered input variant which isn't found in the input recal file. Please make sure VariantRecalibrator and ApplyRecalibration were run on the same set of input variants. First seen at: " + vc );
         }
 
-        final String lodString = recalDatum.getAttributeAsString(GATKVCFConstants.VQS_LOD_KEY, null);
-        if( lodString == null ) {
-            throw new UserException("Encountered a malformed record in the input recal file. There is no lod for the record at: " + vc );
-        }
-        final double lod;
-        try {
-            lod = Double.valueOf(lodString);
-        } catch (NumberFormatException e) {
-            throw new UserException("Encountered a malformed record in the input recal file. The lod is unreadable for the record at: " + vc );
-        }
-
-        builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lod);
-        builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalDatum.getAttribute(GATKVCFConstants.CULPRIT_KEY));
-        if(recalDatum != null) {
-            if (recalDatum.hasAttribute(GATKVCFConstants.POSITIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
-            if (recalDatum.hasAttribute(GATKVCFConstants.NEGATIVE_LABEL_KEY))
-                builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
-        }
+        builder.attribute(GATKVCFConstants.VQS_LOD_KEY, recalDatum.lod);
+        builder.attribute(GATKVCFConstants.CULPRIT_KEY, recalDatum.culprit);
+        if (recalDatum.positiveTrainingSite)
+            builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
+        if (recalDatum.negativeTrainingSite)
+            builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
 
-        return generateFilterString(lod);
+        return generateFilterString(recalDatum.lod);
     }
 
     //---------------------------------------------------------------------------------------------------------------
@@ -55,11 +55,17 @@ import Jama.Matrix;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by IntelliJ IDEA.
@@ -71,6 +77,11 @@ public class GaussianMixtureModel {
 
     protected final static Logger logger = Logger.getLogger(GaussianMixtureModel.class);
 
+    /**
+     * The number of data in each of the blocks that are processed in parallel when there is an executor
+     */
+    protected final static int DATA_BLOCK_SIZE = 10000;
+
     private final List<MultivariateGaussian> gaussians;
     private final double shrinkage;
     private final double dirichletParameter;
@@ -79,6 +90,7 @@ public class GaussianMixtureModel {
     private final Matrix empiricalSigma;
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
+    private ExecutorService executor = null;
 
     public GaussianMixtureModel( final int numGaussians, final int numAnnotations,
                                  final double shrinkage, final double dirichletParameter, final double priorCounts ) {
@@ -184,31 +196,101 @@ public class GaussianMixtureModel {
         }
     }
 
+    /**
+     * Run the expectation and maximization steps over blocks of the data on this executor, or serially if it is null
+     */
+    protected void setExecutor( final ExecutorService executor ) {
+        this.executor = executor;
+    }
+
     public void expectationStep( final List<VariantDatum> data ) {
+        final List<VariantDatum> randomAccessData = asRandomAccess( data );
 
         for( final MultivariateGaussian gaussian : gaussians ) {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
+            gaussian.resetPVarInGaussian( data.size() );
         }
 
-        for( final VariantDatum datum : data ) {
+        applyToDataBlocks( executor, data.size(), (fromIndex, toIndex) -> {
             final double[] pVarInGaussianLog10 = new double[gaussians.size()];
+            for( int datumIndex = fromIndex; datumIndex < toIndex; datumIndex++ ) {
+                final VariantDatum datum = randomAccessData.get(datumIndex);
+                int gaussianIndex = 0;
+                for( final MultivariateGaussian gaussian : gaussians ) {
+                    final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
+                    pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
+                }
+                final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
+                gaussianIndex = 0;
+                for( final MultivariateGaussian gaussian : gaussians ) {
+                    gaussian.assignPVarInGaussian( datumIndex, pVarInGaussianNormalized[gaussianIndex++] );
+                }
+            }
+            return null;
+        } );
+    }
+
+    public void maximizationStep( final List<VariantDatum> data ) {
+        final double[][] sigmaSums = calculateWeightedMeansAndScatter( asRandomAccess(data), 1E-10 );
+        int gaussianIndex = 0;
+        for( final MultivariateGaussian gaussian : gaussians ) {
+            gaussian.maximizeGaussian( sigmaSums[gaussianIndex++], empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+        }
+    }
+
+    /**
+     * Set the mean of each Gaussian to the mean of the data weighted by the probability that they belong to it
+     *
+     * The sums are taken over each block of the data and then added up in the order of the blocks, so that the
+     * results don't depend on the number of threads. When run serially they are taken in a single block, in
+     * exactly the order in which they were always taken.
+     *
+     * @param data random access data, whose probabilities were assigned by the last expectation step
+     * @param initialSumProb the value the sum of the probabilities starts from
+     * @return the row-major weighted scatter matrix of the data around the new mean of each Gaussian
+     */
+    private double[][] calculateWeightedMeansAndScatter( final List<VariantDatum> data, final double initialSumProb ) {
+        final int numAnnotations = empiricalMu.length;
+
+        // the sum of the probabilities is kept after the weighted annotations
+        final List<double[][]> blockMuSums = applyToDataBlocks( executor, data.size(), (fromIndex, toIndex) -> {
+            final double[][] muSums = new double[gaussians.size()][numAnnotations + 1];
             int gaussianIndex = 0;
             for( final MultivariateGaussian gaussian : gaussians ) {
-                final double pVarLog10 = gaussian.evaluateDatumLog10( datum );
-                pVarInGaussianLog10[gaussianIndex++] = pVarLog10;
+                final double[] muSum = muSums[gaussianIndex++];
+                muSum[numAnnotations] = gaussian.sumWeightedAnnotations( data, fromIndex, toIndex, fromIndex == 0 ? initialSumProb : 0.0, muSum );
             }
-            final double[] pVarInGaussianNormalized = MathUtils.normalizeFromLog10( pVarInGaussianLog10, false );
-            gaussianIndex = 0;
+            return muSums;
+        } );
+        final double[][] muSums = sumBlocks( blockMuSums );
+        int gaussianIndex = 0;
+        for( final MultivariateGaussian gaussian : gaussians ) {
+            final double[] muSum = muSums[gaussianIndex++];
+            gaussian.setWeightedMean( muSum[numAnnotations], muSum );
+        }
+
+        final List<double[][]> blockSigmaSums = applyToDataBlocks( executor, data.size(), (fromIndex, toIndex) -> {
+            final double[][] sigmaSums = new double[gaussians.size()][numAnnotations * numAnnotations];
+            int index = 0;
             for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
+                gaussian.sumWeightedScatter( data, fromIndex, toIndex, sigmaSums[index++] );
             }
-        }
+            return sigmaSums;
+        } );
+        return sumBlocks( blockSigmaSums );
     }
 
-    public void maximizationStep( final List<VariantDatum> data ) {
-        for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts);
+    private static double[][] sumBlocks( final List<double[][]> blockSums ) {
+        final double[][] sums = blockSums.get(0);
+        for( int blockIndex = 1; blockIndex < blockSums.size(); blockIndex++ ) {
+            final double[][] blockSum = blockSums.get(blockIndex);
+            for( int iii = 0; iii < sums.length; iii++ ) {
+                for( int jjj = 0; jjj < sums[iii].length; jjj++ ) {
+                    sums[iii][jjj] += blockSum[iii][jjj];
+                }
+            }
         }
+        return sums;
     }
 
     private double getSumHyperParameterLambda() {
@@ -220,8 +302,10 @@ public class GaussianMixtureModel {
     }
 
     public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+        final double[][] sigmaSums = calculateWeightedMeansAndScatter( asRandomAccess(data), 0.0 );
+        int gaussianIndex = 0;
         for( final MultivariateGaussian gaussian : gaussians ) {
-            gaussian.evaluateFinalModelParameters(data);
+            gaussian.evaluateFinalModelParameters( sigmaSums[gaussianIndex++] );
         }
         normalizePMixtureLog10();
     }
@@ -271,8 +355,15 @@ public class GaussianMixtureModel {
     }
 
     public double evaluateDatum( final VariantDatum datum ) {
+        return evaluateDatum( datum, Utils.getRandomGenerator() );
+    }
+
+    /**
+     * @param random the random number generator used to marginalize over missing annotations
+     */
+    public double evaluateDatum( final VariantDatum datum, final Random random ) {
         for( final boolean isNull : datum.isNull ) {
-            if( isNull ) { return evaluateDatumMarginalized( datum ); }
+            if( isNull ) { return evaluateDatumMarginalized( datum, random ); }
         }
         // Fill an array with the log10 probability coming from each Gaussian and then use MathUtils to sum them up correctly
         final double[] pVarInGaussianLog10 = new double[gaussians.size()];
@@ -296,6 +387,10 @@ public class GaussianMixtureModel {
     }
 
     public double evaluateDatumMarginalized( final VariantDatum datum ) {
+        return evaluateDatumMarginalized( datum, Utils.getRandomGenerator() );
+    }
+
+    public double evaluateDatumMarginalized( final VariantDatum datum, final Random random ) {
         int numRandomDraws = 0;
         double sumPVarInGaussian = 0.0;
         final int numIterPerMissingAnnotation = 20; // Trade off here between speed of computation and accuracy of the marginalization
@@ -305,7 +400,7 @@ public class GaussianMixtureModel {
             // if it is missing marginalize over the missing dimension by drawing X random values for the missing annotation and averaging the lod
             if( datum.isNull[iii] ) {
                 for( int ttt = 0; ttt < numIterPerMissingAnnotation; ttt++ ) {
-                    datum.annotations[iii] = Utils.getRandomGenerator().nextGaussian(); // draw a random sample from the standard normal distribution
+                    datum.annotations[iii] = random.nextGaussian(); // draw a random sample from the standard normal distribution
 
                     // evaluate this random data point
                     int gaussianIndex = 0;
@@ -325,4 +420,73 @@ public class GaussianMixtureModel {
     protected List<MultivariateGaussian> getModelGaussians() {return Collections.unmodifiableList(gaussians);}
 
     protected int getNumAnnotations() {return empiricalMu.length;}
+
+    /**
+     * A function of the data from fromIndex (inclusive) to toIndex (exclusive)
+     */
+    protected interface DataBlockFunction<T> {
+        T apply( final int fromIndex, final int toIndex );
+    }
+
+    /**
+     * Apply a function to consecutive blocks of numData data
+     *
+     * Without an executor the function is applied once, to all of the data. With one, it is applied in parallel to
+     * blocks of DATA_BLOCK_SIZE data, so that the blocks don't depend on how many threads the executor has.
+     *
+     * @param executor the executor to run the blocks on, or null to run serially
+     * @return the results for the blocks, in the order of the data
+     */
+    protected static <T> List<T> applyToDataBlocks( final ExecutorService executor, final int numData, final DataBlockFunction<T> function ) {
+        final List<T> results = new ArrayList<>();
+        if( executor == null ) {
+            results.add( function.apply( 0, numData ) );
+            return results;
+        }
+
+        final List<Future<T>> blocks = new ArrayList<>();
+        for( int blockIndex = 0; blockIndex < getNumDataBlocks( executor, numData ); blockIndex++ ) {
+            final int fromIndex = blockIndex * DATA_BLOCK_SIZE;
+            final int toIndex = Math.min( numData, fromIndex + DATA_BLOCK_SIZE );
+            blocks.add( executor.submit( () -> function.apply( fromIndex, toIndex ) ) );
+        }
+
+        try {
+            for( final Future<T> block : blocks ) {
+                results.add( block.get() );
+            }
+        } catch( InterruptedException e ) {
+            throw new ReviewedGATKException("Interrupted while processing the data in parallel", e);
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new ReviewedGATKException("Failed to process the data in parallel", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * @return the number of blocks applyToDataBlocks splits numData data into
+     */
+    protected static int getNumDataBlocks( final ExecutorService executor, final int numData ) {
+        return executor == null ? 1 : Math.max( 1, (numData + DATA_BLOCK_SIZE - 1) / DATA_BLOCK_SIZE );
+    }
+
+    /**
+     * Get a random number generator for each of the blocks applyToDataBlocks splits numData data into
+     *
+     * Without an executor this is the GATK random number generator. With one, each block gets its own generator,
+     * seeded from the GATK one in the order of the blocks, so that the random numbers don't depend on the threads.
+     */
+    protected static Random[] getDataBlockRandomGenerators( final ExecutorService executor, final int numData ) {
+        final Random[] randoms = new Random[getNumDataBlocks( executor, numData )];
+        for( int blockIndex = 0; blockIndex < randoms.length; blockIndex++ ) {
+            randoms[blockIndex] = executor == null ? Utils.getRandomGenerator() : new Random( Utils.getRandomGenerator().nextLong() );
+        }
+        return randoms;
+    }
+
+    private static List<VariantDatum> asRandomAccess( final List<VariantDatum> data ) {
+        return data instanceof RandomAccess ? data : new ArrayList<>( data );
+    }
 }
\ No newline at end of file
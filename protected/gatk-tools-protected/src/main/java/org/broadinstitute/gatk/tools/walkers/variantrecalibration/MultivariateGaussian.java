@@ -54,7 +54,6 @@ package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 import Jama.Matrix;
 import org.apache.commons.math.special.Gamma;
 import org.broadinstitute.gatk.utils.MathUtils;
-import org.broadinstitute.gatk.utils.collections.ExpandingArrayList;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
 import java.util.Arrays;
@@ -76,13 +75,14 @@ public class MultivariateGaussian {
     public double hyperParameter_b;
     public double hyperParameter_lambda;
     private double cachedDenomLog10;
-    private Matrix cachedSigmaInverse;
-    final private ExpandingArrayList<Double> pVarInGaussian;
+    private double[] cachedSigmaInverse; // row-major, so that evaluating a datum doesn't go through Matrix.get
+    private double[] pVarInGaussian;
+    private int numPVarInGaussian;
 
     public MultivariateGaussian( final int numAnnotations ) {
         mu = new double[numAnnotations];
         sigma = new Matrix(numAnnotations, numAnnotations);
-        pVarInGaussian = new ExpandingArrayList<>();
+        resetPVarInGaussian();
     }
 
     public void zeroOutMu() {
@@ -142,7 +142,7 @@ public class MultivariateGaussian {
 
     private void precomputeInverse() {
         try {
-            cachedSigmaInverse = sigma.inverse();
+            cachedSigmaInverse = sigma.inverse().getRowPackedCopy();
         } catch( Exception e ) {
             throw new UserException("Error during clustering. Most likely there are too few variants used during Gaussian mixture modeling. Please consider raising the number of variants used to train the negative model (via --percentBadVariants 0.05, for example) or lowering the maximum number of Gaussians to use in the model (via --maxGaussians 4, for example).");
         }
@@ -158,7 +158,9 @@ public class MultivariateGaussian {
 
         // Variational Bayes calculations from Bishop
         precomputeInverse();
-        cachedSigmaInverse.timesEquals( hyperParameter_a );
+        for( int iii = 0; iii < cachedSigmaInverse.length; iii++ ) {
+            cachedSigmaInverse[iii] *= hyperParameter_a;
+        }
         double sum = 0.0;
         for(int jjj = 1; jjj <= mu.length; jjj++) {
             sum += Gamma.digamma( (hyperParameter_a + 1.0 - jjj) / 2.0 );
@@ -177,7 +179,7 @@ public class MultivariateGaussian {
         Arrays.fill(crossProdTmp, 0.0);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse[jjj * mu.length + iii];
             }
         }
         for( int iii = 0; iii < mu.length; iii++ ) {
@@ -188,28 +190,47 @@ public class MultivariateGaussian {
     }
 
     public void assignPVarInGaussian( final double pVar ) {
-        pVarInGaussian.add( pVar );
+        if( numPVarInGaussian == pVarInGaussian.length ) {
+            pVarInGaussian = Arrays.copyOf( pVarInGaussian, Math.max(16, 2 * pVarInGaussian.length) );
+        }
+        pVarInGaussian[numPVarInGaussian++] = pVar;
+    }
+
+    /**
+     * Set the probability that the datumIndex'th datum belongs to this Gaussian, after resetPVarInGaussian(numData)
+     */
+    protected void assignPVarInGaussian( final int datumIndex, final double pVar ) {
+        pVarInGaussian[datumIndex] = pVar;
     }
 
     public void resetPVarInGaussian() {
-        pVarInGaussian.clear();
+        resetPVarInGaussian( 0 );
+    }
+
+    /**
+     * Make room for the probabilities that each of numData data belong to this Gaussian
+     */
+    protected void resetPVarInGaussian( final int numData ) {
+        pVarInGaussian = new double[numData];
+        numPVarInGaussian = numData;
     }
 
     public void maximizeGaussian( final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
                                   final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
-        sumProb = 1E-10;
-        final Matrix wishart = new Matrix(mu.length, mu.length);
-        zeroOutMu();
-        zeroOutSigma();
-        
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            sumProb += prob;
-            incrementMu( datum, prob );
-        }
-        divideEqualsMu( sumProb );
+        final double[] muSum = new double[mu.length];
+        setWeightedMean( sumWeightedAnnotations( data, 0, data.size(), 1E-10, muSum ), muSum );
+        final double[] sigmaSum = new double[mu.length * mu.length];
+        sumWeightedScatter( data, 0, data.size(), sigmaSum );
+        maximizeGaussian( sigmaSum, empiricalMu, empiricalSigma, SHRINKAGE, DIRICHLET_PARAMETER, DEGREES_OF_FREEDOM );
+    }
 
+    /**
+     * Finish the maximization step given the weighted mean set by setWeightedMean and the weighted scatter matrix
+     * of the data around it, as summed by sumWeightedScatter
+     */
+    protected void maximizeGaussian( final double[] sigmaSum, final double[] empiricalMu, final Matrix empiricalSigma,
+                                     final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
+        final Matrix wishart = new Matrix(mu.length, mu.length);
         final double shrinkageFactor = (SHRINKAGE * sumProb) / (SHRINKAGE + sumProb);
         for( int iii = 0; iii < mu.length; iii++ ) {
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
@@ -217,18 +238,7 @@ public class MultivariateGaussian {
             }
         }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
-            for( int iii = 0; iii < mu.length; iii++ ) {
-                for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
-                }
-            }
-            sigma.plusEquals( pVarSigma );
-        }
-
+        setSigma( sigmaSum );
         sigma.plusEquals( empiricalSigma );
         sigma.plusEquals( wishart );
 
@@ -244,32 +254,73 @@ public class MultivariateGaussian {
     }
 
     public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        sumProb = 0.0;
-        zeroOutMu();
-        zeroOutSigma();
+        final double[] muSum = new double[mu.length];
+        setWeightedMean( sumWeightedAnnotations( data, 0, data.size(), 0.0, muSum ), muSum );
+        final double[] sigmaSum = new double[mu.length * mu.length];
+        sumWeightedScatter( data, 0, data.size(), sigmaSum );
+        evaluateFinalModelParameters( sigmaSum );
+    }
+
+    /**
+     * Finish evaluating the final model parameters given the weighted mean set by setWeightedMean and the weighted
+     * scatter matrix of the data around it, as summed by sumWeightedScatter
+     */
+    protected void evaluateFinalModelParameters( final double[] sigmaSum ) {
+        setSigma( sigmaSum );
+        sigma.timesEquals( 1.0 / sumProb );
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
+        resetPVarInGaussian(); // clean up some memory
+    }
+
+    /**
+     * Add the annotations of the data from fromIndex to toIndex, weighted by the probability that they belong to this
+     * Gaussian, to muSum
+     *
+     * @return sumProb plus the probabilities that these data belong to this Gaussian
+     */
+    protected double sumWeightedAnnotations( final List<VariantDatum> data, final int fromIndex, final int toIndex, double sumProb, final double[] muSum ) {
+        for( int datumIndex = fromIndex; datumIndex < toIndex; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final double[] annotations = data.get(datumIndex).annotations;
             sumProb += prob;
-            incrementMu( datum, prob );
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                muSum[jjj] += prob * annotations[jjj];
+            }
         }
+        return sumProb;
+    }
+
+    /**
+     * Set mu to the weighted mean of the data given the sums of their probabilities and weighted annotations
+     */
+    protected void setWeightedMean( final double sumProb, final double[] muSum ) {
+        this.sumProb = sumProb;
+        System.arraycopy( muSum, 0, mu, 0, mu.length );
         divideEqualsMu( sumProb );
+    }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian.get(datumIndex++);
+    /**
+     * Add the scatter of the data from fromIndex to toIndex around mu, weighted by the probability that they belong to
+     * this Gaussian, to the row-major sigmaSum
+     */
+    protected void sumWeightedScatter( final List<VariantDatum> data, final int fromIndex, final int toIndex, final double[] sigmaSum ) {
+        for( int datumIndex = fromIndex; datumIndex < toIndex; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final double[] annotations = data.get(datumIndex).annotations;
             for( int iii = 0; iii < mu.length; iii++ ) {
                 for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
+                    sigmaSum[iii * mu.length + jjj] += prob * (annotations[iii]-mu[iii]) * (annotations[jjj]-mu[jjj]);
                 }
             }
-            sigma.plusEquals( pVarSigma );
         }
-        sigma.timesEquals( 1.0 / sumProb );
+    }
 
-        resetPVarInGaussian(); // clean up some memory
+    private void setSigma( final double[] sigmaSum ) {
+        for( int iii = 0; iii < mu.length; iii++ ) {
+            for( int jjj = 0; jjj < mu.length; jjj++ ) {
+                sigma.set(iii, jjj, sigmaSum[iii * mu.length + jjj]);
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,363 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary version of the recal file, which ApplyRecalibration can memory-map and look up variants in
+ * without decoding the recal file as a ROD
+ *
+ * The file starts with a magic number and version, followed by one fixed-size record per variant of the recal file,
+ * in the order of the recal file: the contig, start and stop of the variant, a hash of its alternate allele in
+ * allele-specific mode, its VQSLOD, its culprit and its training site labels. The contig and culprit names are
+ * stored after the records, followed by the offset at which they start.
+ */
+public class RecalibrationIndex {
+    private final static int MAGIC = 0x56515352; // "VQSR"
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 8;
+
+    private final static int CONTIG_OFFSET = 0;
+    private final static int START_OFFSET = 4;
+    private final static int STOP_OFFSET = 8;
+    private final static int ALLELE_HASH_OFFSET = 12;
+    private final static int LOD_OFFSET = 20;
+    private final static int CULPRIT_OFFSET = 28;
+    private final static int FLAGS_OFFSET = 30;
+    private final static int RECORD_SIZE = 32;
+
+    private final static byte POSITIVE_TRAINING_SITE = 1;
+    private final static byte NEGATIVE_TRAINING_SITE = 2;
+
+    // each mapped chunk of records has to stay under 2GB
+    private final static int RECORDS_PER_CHUNK_LOG2 = 25;
+    private final static int RECORDS_PER_CHUNK = 1 << RECORDS_PER_CHUNK_LOG2;
+
+    private final File file;
+    private final ByteBuffer[] chunks;
+    private final int numRecords;
+    private final Map<String, Integer> contigIndices = new HashMap<>();
+    private final List<String> culprits = new ArrayList<>();
+
+    // the record found by the last lookup of each thread, from which the next lookup gallops
+    private final ThreadLocal<int[]> lastRecord = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Memory-map a recal index
+     *
+     * @param file a recal index written by a RecalibrationIndex.Writer
+     */
+    public RecalibrationIndex( final File file ) {
+        this.file = file;
+        try ( final RandomAccessFile in = new RandomAccessFile(file, "r") ) {
+            final long length = in.length();
+            if ( length < HEADER_SIZE + 8 || in.readInt() != MAGIC )
+                throw new UserException.MalformedFile(file, "it is not a recal index");
+            if ( in.readInt() != VERSION )
+                throw new UserException.MalformedFile(file, "it is an unsupported version of the recal index format");
+
+            in.seek(length - 8);
+            final long namesOffset = in.readLong();
+            if ( namesOffset < HEADER_SIZE || namesOffset > length - 8 || (namesOffset - HEADER_SIZE) % RECORD_SIZE != 0 )
+                throw new UserException.MalformedFile(file, "the recal index is truncated");
+            in.seek(namesOffset);
+            final int numContigs = in.readInt();
+            for ( int iii = 0; iii < numContigs; iii++ ) {
+                contigIndices.put(in.readUTF(), iii);
+            }
+            final int numCulprits = in.readInt();
+            for ( int iii = 0; iii < numCulprits; iii++ ) {
+                culprits.add(in.readUTF());
+            }
+
+            final long numRecords = (namesOffset - HEADER_SIZE) / RECORD_SIZE;
+            if ( numRecords > Integer.MAX_VALUE )
+                throw new UserException.MalformedFile(file, "the recal index has too many records");
+            this.numRecords = (int) numRecords;
+            chunks = new ByteBuffer[(this.numRecords + RECORDS_PER_CHUNK - 1) >>> RECORDS_PER_CHUNK_LOG2];
+            for ( int iii = 0; iii < chunks.length; iii++ ) {
+                final long firstRecord = (long) iii << RECORDS_PER_CHUNK_LOG2;
+                final long chunkRecords = Math.min(RECORDS_PER_CHUNK, numRecords - firstRecord);
+                chunks[iii] = in.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRecord * RECORD_SIZE, chunkRecords * RECORD_SIZE);
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /**
+     * @return the number of variants in the index
+     */
+    public int size() {
+        return numRecords;
+    }
+
+    /**
+     * Find the first variant of the recal file at this position, and with this alternate allele in allele-specific mode
+     *
+     * Lookups are fastest when each thread looks up variants in coordinate order, since each lookup gallops from the
+     * variant found by the thread's previous one.
+     *
+     * @param contig the contig of the variant
+     * @param start the start of the variant
+     * @param stop the stop of the variant
+     * @param alternateAllele the alternate allele in allele-specific mode, or null to match any variant at the position
+     * @return the index of the variant, or -1 if there is none
+     */
+    public int find( final String contig, final int start, final int stop, final Allele alternateAllele ) {
+        final Integer contigIndex = contigIndices.get(contig);
+        if ( contigIndex == null )
+            return -1;
+
+        final int[] last = lastRecord.get();
+        final int first = lowerBound(contigIndex, start, last[0]);
+        last[0] = first;
+        final long alleleHash = alternateAllele == null ? 0 : hashAllele(alternateAllele);
+        for ( int record = first; record < numRecords && compareToRecord(record, contigIndex, start) == 0; record++ ) {
+            if ( getInt(record, STOP_OFFSET) == stop && (alternateAllele == null || getLong(record, ALLELE_HASH_OFFSET) == alleleHash) )
+                return record;
+        }
+        return -1;
+    }
+
+    public double getLod( final int record ) {
+        return chunk(record).getDouble(offset(record) + LOD_OFFSET);
+    }
+
+    public String getCulprit( final int record ) {
+        final short culprit = chunk(record).getShort(offset(record) + CULPRIT_OFFSET);
+        if ( culprit < 0 || culprit >= culprits.size() )
+            throw new UserException.MalformedFile(file, "a record has an unknown culprit");
+        return culprits.get(culprit);
+    }
+
+    public boolean isPositiveTrainingSite( final int record ) {
+        return (chunk(record).get(offset(record) + FLAGS_OFFSET) & POSITIVE_TRAINING_SITE) != 0;
+    }
+
+    public boolean isNegativeTrainingSite( final int record ) {
+        return (chunk(record).get(offset(record) + FLAGS_OFFSET) & NEGATIVE_TRAINING_SITE) != 0;
+    }
+
+    /**
+     * Find the first record at or after the position by galloping away from the hint and then searching binarily
+     */
+    private int lowerBound( final int contigIndex, final int start, final int hint ) {
+        int low, high; // the answer is in (low, high]
+        if ( hint < numRecords && compareToRecord(hint, contigIndex, start) < 0 ) {
+            low = hint;
+            int step = 1;
+            high = hint + step;
+            while ( high < numRecords && compareToRecord(high, contigIndex, start) < 0 ) {
+                low = high;
+                step <<= 1;
+                high = (int) Math.min((long) low + step, numRecords);
+            }
+            high = Math.min(high, numRecords);
+        } else {
+            high = Math.min(hint, numRecords);
+            int step = 1;
+            low = high - step;
+            while ( low >= 0 && compareToRecord(low, contigIndex, start) >= 0 ) {
+                high = low;
+                step <<= 1;
+                low = high - step;
+            }
+            low = Math.max(low, -1);
+        }
+        while ( high - low > 1 ) {
+            final int middle = (low + high) >>> 1;
+            if ( compareToRecord(middle, contigIndex, start) < 0 )
+                low = middle;
+            else
+                high = middle;
+        }
+        return high;
+    }
+
+    private int compareToRecord( final int record, final int contigIndex, final int start ) {
+        final int recordContig = getInt(record, CONTIG_OFFSET);
+        if ( recordContig != contigIndex )
+            return recordContig < contigIndex ? -1 : 1;
+        final int recordStart = getInt(record, START_OFFSET);
+        return recordStart < start ? -1 : (recordStart == start ? 0 : 1);
+    }
+
+    private int getInt( final int record, final int fieldOffset ) {
+        return chunk(record).getInt(offset(record) + fieldOffset);
+    }
+
+    private long getLong( final int record, final int fieldOffset ) {
+        return chunk(record).getLong(offset(record) + fieldOffset);
+    }
+
+    private ByteBuffer chunk( final int record ) {
+        return chunks[record >>> RECORDS_PER_CHUNK_LOG2];
+    }
+
+    private static int offset( final int record ) {
+        return (record & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * @return a 64-bit FNV-1a hash of the allele's display bases, nonzero so that it can't be confused with no allele
+     */
+    protected static long hashAllele( final Allele allele ) {
+        long hash = 0xcbf29ce484222325L;
+        for ( final byte base : allele.getDisplayBases() ) {
+            hash ^= base & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Writes a recal index, given the variants of the recal file in coordinate order
+     */
+    public static class Writer implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private final Map<String, Integer> contigIndices = new HashMap<>();
+        private final List<String> contigs = new ArrayList<>();
+        private final Map<String, Short> culpritIndices = new HashMap<>();
+        private final List<String> culprits = new ArrayList<>();
+        private long numRecords = 0;
+        private int lastContigIndex = -1;
+        private int lastStart = 0;
+
+        public Writer( final File file ) {
+            this.file = file;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, "unable to write the recal index", e);
+            }
+        }
+
+        /**
+         * Add the next variant of the recal file
+         *
+         * @param alternateAllele the alternate allele in allele-specific mode, or null
+         * @param lod the VQSLOD, as it is written to the recal file
+         */
+        public void add( final String contig, final int start, final int stop, final Allele alternateAllele,
+                         final double lod, final String culprit, final boolean positiveTrainingSite, final boolean negativeTrainingSite ) {
+            Integer contigIndex = contigIndices.get(contig);
+            if ( contigIndex == null ) {
+                contigIndex = contigs.size();
+                contigIndices.put(contig, contigIndex);
+                contigs.add(contig);
+            }
+            if ( contigIndex < lastContigIndex || (contigIndex == lastContigIndex && start < lastStart) )
+                throw new ReviewedGATKException("Variants must be added to the recal index in coordinate order but " + contig + ":" + start + " came after " + contigs.get(lastContigIndex) + ":" + lastStart);
+            lastContigIndex = contigIndex;
+            lastStart = start;
+
+            Short culpritIndex = culpritIndices.get(culprit);
+            if ( culpritIndex == null ) {
+                culpritIndex = (short) culprits.size();
+                culpritIndices.put(culprit, culpritIndex);
+                culprits.add(culprit);
+            }
+
+            try {
+                out.writeInt(contigIndex);
+                out.writeInt(start);
+                out.writeInt(stop);
+                out.writeLong(alternateAllele == null ? 0 : hashAllele(alternateAllele));
+                out.writeDouble(lod);
+                out.writeShort(culpritIndex);
+                out.writeByte((positiveTrainingSite ? POSITIVE_TRAINING_SITE : 0) | (negativeTrainingSite ? NEGATIVE_TRAINING_SITE : 0));
+                out.writeByte(0);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, "unable to write the recal index", e);
+            }
+            numRecords++;
+        }
+
+        @Override
+        public void close() {
+            try {
+                out.writeInt(contigs.size());
+                for ( final String contig : contigs ) {
+                    out.writeUTF(contig);
+                }
+                out.writeInt(culprits.size());
+                for ( final String culprit : culprits ) {
+                    out.writeUTF(culprit);
+                }
+                out.writeLong(HEADER_SIZE + numRecords * RECORD_SIZE);
+                out.close();
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, "unable to write the recal index", e);
+            }
+        }
+    }
+}
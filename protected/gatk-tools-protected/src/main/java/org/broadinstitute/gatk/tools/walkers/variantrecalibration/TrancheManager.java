@@ -172,7 +172,10 @@ public class TrancheManager {
     public static List<Tranche> findTranches( final List<VariantDatum> data, final List<Double> trancheThresholds, final SelectionMetric metric, final VariantRecalibratorArgumentCollection.Mode model, final File debugFile ) {
         logger.info(String.format("Finding %d tranches for %d variants", trancheThresholds.size(), data.size()));
 
-        Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
+        if ( data instanceof VariantDataColumns )
+            ((VariantDataColumns) data).sortByLod();
+        else
+            Collections.sort( data, new VariantDatum.VariantDatumLODComparator() );
         metric.calculateRunningMetric(data);
 
         if ( debugFile != null) { writeTranchesDebuggingInfo(debugFile, data, metric); }
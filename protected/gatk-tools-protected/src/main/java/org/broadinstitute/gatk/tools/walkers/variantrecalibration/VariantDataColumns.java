@@ -0,0 +1,553 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
+
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.collections.ExpandingArrayList;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A list of variant data stored as columns of primitives, memory-mapped from a temporary file
+ *
+ * Each annotation, the LOD, the prior and the location get a column mapped in chunks from a temporary file in
+ * java.io.tmpdir, so that the whole callset doesn't have to fit on the heap.  The boolean fields of the data are kept
+ * in one bitset each.
+ *
+ * get returns a new VariantDatum holding the values of the variant, so that changes to it are not stored in the list;
+ * use the setters instead.  The originalQual, consensusCount, worstValue and assignment fields are not stored.
+ *
+ * The list can't be modified except by adding variants at the end, but it can be reordered (sorted or have the
+ * aggregate data dropped) without moving the columns.
+ *
+ * The temporary file is closed (and deleted, if that wasn't possible right away) by close, after which the list can
+ * no longer be used.
+ */
+public class VariantDataColumns extends AbstractList<VariantDatum> implements RandomAccess, Closeable {
+    private static final int DEFAULT_ROWS_PER_CHUNK_LOG2 = 20;
+
+    private static final int IS_KNOWN = 0;
+    private static final int AT_TRUTH_SITE = 1;
+    private static final int AT_TRAINING_SITE = 2;
+    private static final int AT_ANTI_TRAINING_SITE = 3;
+    private static final int IS_TRANSITION = 4;
+    private static final int IS_SNP = 5;
+    private static final int FAILING_STD_THRESHOLD = 6;
+    private static final int IS_AGGREGATE = 7;
+    private static final int NUM_FLAGS = 8;
+
+    private final int rowsPerChunkLog2;
+    private final int rowsPerChunk;
+    private final GenomeLocParser genomeLocParser;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    // the temporary file, if it couldn't be deleted while it was open
+    private File file;
+    private long channelSize = 0;
+
+    private final DoubleColumn[] annotations;
+    private final BitSet[] isNull;
+    private final BitSet[] flags = new BitSet[NUM_FLAGS];
+    private final DoubleColumn lod = new DoubleColumn();
+    private final DoubleColumn prior = new DoubleColumn();
+    private final IntColumn contigIndex = new IntColumn();
+    private final IntColumn start = new IntColumn();
+    private final IntColumn stop = new IntColumn();
+    private final IntColumn worstAnnotation = new IntColumn();
+
+    // in allele-specific mode, the alleles of each row are stored as indices into the list of distinct alleles
+    private final IntColumn referenceAllele;
+    private final IntColumn alternateAllele;
+    private final List<Allele> alleles = new ArrayList<>();
+    private final Map<Allele, Integer> alleleIndices = new HashMap<>();
+
+    private int numRows = 0;
+    private int capacity = 0;
+
+    // the rows in list order, or null if the list holds all of the rows in the order they were added
+    private int[] order = null;
+
+    /**
+     * @param numAnnotations the number of annotations of each variant
+     * @param storeAlleles should the reference and alternate alleles of the variants be stored (allele-specific mode)?
+     * @param genomeLocParser parser used to create the locations of the variants
+     */
+    public VariantDataColumns( final int numAnnotations, final boolean storeAlleles, final GenomeLocParser genomeLocParser ) {
+        this(numAnnotations, storeAlleles, genomeLocParser, DEFAULT_ROWS_PER_CHUNK_LOG2);
+    }
+
+    protected VariantDataColumns( final int numAnnotations, final boolean storeAlleles, final GenomeLocParser genomeLocParser, final int rowsPerChunkLog2 ) {
+        this.rowsPerChunkLog2 = rowsPerChunkLog2;
+        this.rowsPerChunk = 1 << rowsPerChunkLog2;
+        this.genomeLocParser = genomeLocParser;
+
+        annotations = new DoubleColumn[numAnnotations];
+        isNull = new BitSet[numAnnotations];
+        for ( int iii = 0; iii < numAnnotations; iii++ ) {
+            annotations[iii] = new DoubleColumn();
+            isNull[iii] = new BitSet();
+        }
+        for ( int flag = 0; flag < NUM_FLAGS; flag++ ) {
+            flags[flag] = new BitSet();
+        }
+        referenceAllele = storeAlleles ? new IntColumn() : null;
+        alternateAllele = storeAlleles ? new IntColumn() : null;
+
+        try {
+            file = File.createTempFile("VariantDataColumns.", ".tmp");
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            // the mappings stay valid once the file is deleted
+            if ( file.delete() )
+                file = null;
+        } catch ( IOException e ) {
+            throw new UserException.BadTmpDir(e.getMessage());
+        }
+    }
+
+    /**
+     * Release the columns and close (and if need be delete) the temporary file they are mapped from
+     *
+     * The mappings themselves are unmapped once they are garbage collected.  Closing the list more than once does nothing.
+     */
+    @Override
+    public void close() {
+        for ( final DoubleColumn column : annotations ) column.chunks.clear();
+        lod.chunks.clear();
+        prior.chunks.clear();
+        contigIndex.chunks.clear();
+        start.chunks.clear();
+        stop.chunks.clear();
+        worstAnnotation.chunks.clear();
+        if ( referenceAllele != null ) {
+            referenceAllele.chunks.clear();
+            alternateAllele.chunks.clear();
+        }
+        numRows = 0;
+        capacity = 0;
+        order = null;
+
+        try {
+            raf.close();
+        } catch ( IOException e ) {
+            // nothing was written through the file itself, so there's nothing to lose
+        }
+        if ( file != null ) {
+            if ( ! file.delete() )
+                file.deleteOnExit();
+            file = null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return order == null ? numRows : order.length;
+    }
+
+    public int getNumAnnotations() {
+        return annotations.length;
+    }
+
+    /**
+     * Add a variant at the end of the list
+     *
+     * @param datum the variant to add, whose annotations must be non-null unless there are no annotations
+     * @return true
+     */
+    @Override
+    public boolean add( final VariantDatum datum ) {
+        if ( order != null ) throw new IllegalStateException("Variants cannot be added to reordered VariantDataColumns");
+        if ( numRows == Integer.MAX_VALUE ) throw new IllegalStateException("VariantDataColumns cannot hold more than " + Integer.MAX_VALUE + " variants");
+        if ( numRows == capacity ) {
+            for ( final DoubleColumn column : annotations ) column.grow();
+            lod.grow();
+            prior.grow();
+            contigIndex.grow();
+            start.grow();
+            stop.grow();
+            worstAnnotation.grow();
+            if ( referenceAllele != null ) {
+                referenceAllele.grow();
+                alternateAllele.grow();
+            }
+            capacity += rowsPerChunk;
+        }
+
+        final int row = numRows++;
+        for ( int iii = 0; iii < annotations.length; iii++ ) {
+            annotations[iii].set(row, datum.annotations[iii]);
+            isNull[iii].set(row, datum.isNull[iii]);
+        }
+        flags[IS_KNOWN].set(row, datum.isKnown);
+        flags[AT_TRUTH_SITE].set(row, datum.atTruthSite);
+        flags[AT_TRAINING_SITE].set(row, datum.atTrainingSite);
+        flags[AT_ANTI_TRAINING_SITE].set(row, datum.atAntiTrainingSite);
+        flags[IS_TRANSITION].set(row, datum.isTransition);
+        flags[IS_SNP].set(row, datum.isSNP);
+        flags[FAILING_STD_THRESHOLD].set(row, datum.failingSTDThreshold);
+        flags[IS_AGGREGATE].set(row, datum.isAggregate);
+        lod.set(row, datum.lod);
+        prior.set(row, datum.prior);
+        if ( datum.loc == null ) {
+            contigIndex.set(row, -1);
+        } else {
+            contigIndex.set(row, datum.loc.getContigIndex());
+            start.set(row, datum.loc.getStart());
+            stop.set(row, datum.loc.getStop());
+        }
+        worstAnnotation.set(row, datum.worstAnnotation);
+        if ( referenceAllele != null ) {
+            referenceAllele.set(row, getAlleleIndex(datum.referenceAllele));
+            alternateAllele.set(row, getAlleleIndex(datum.alternateAllele));
+        }
+        return true;
+    }
+
+    private int getAlleleIndex( final Allele allele ) {
+        if ( allele == null )
+            return -1;
+        Integer index = alleleIndices.get(allele);
+        if ( index == null ) {
+            index = alleles.size();
+            alleles.add(allele);
+            alleleIndices.put(allele, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param index the index of the variant in the list
+     * @return a new VariantDatum holding the values of the variant
+     */
+    @Override
+    public VariantDatum get( final int index ) {
+        return get(index, new VariantDatum());
+    }
+
+    /**
+     * Set the fields of datum to the values of a variant, reusing its annotation arrays if they have the right size
+     *
+     * @param index the index of the variant in the list
+     * @param datum the datum to fill in
+     * @return datum
+     */
+    public VariantDatum get( final int index, final VariantDatum datum ) {
+        return getRowData(getRow(index), datum);
+    }
+
+    private VariantDatum getRowData( final int row, final VariantDatum datum ) {
+        if ( datum.annotations == null || datum.annotations.length != annotations.length ) {
+            datum.annotations = new double[annotations.length];
+            datum.isNull = new boolean[annotations.length];
+        }
+        for ( int iii = 0; iii < annotations.length; iii++ ) {
+            datum.annotations[iii] = annotations[iii].get(row);
+            datum.isNull[iii] = isNull[iii].get(row);
+        }
+        datum.isKnown = flags[IS_KNOWN].get(row);
+        datum.atTruthSite = flags[AT_TRUTH_SITE].get(row);
+        datum.atTrainingSite = flags[AT_TRAINING_SITE].get(row);
+        datum.atAntiTrainingSite = flags[AT_ANTI_TRAINING_SITE].get(row);
+        datum.isTransition = flags[IS_TRANSITION].get(row);
+        datum.isSNP = flags[IS_SNP].get(row);
+        datum.failingSTDThreshold = flags[FAILING_STD_THRESHOLD].get(row);
+        datum.isAggregate = flags[IS_AGGREGATE].get(row);
+        datum.lod = lod.get(row);
+        datum.prior = prior.get(row);
+        datum.loc = getLocation(row);
+        datum.worstAnnotation = worstAnnotation.get(row);
+        if ( referenceAllele != null ) {
+            datum.referenceAllele = getAllele(referenceAllele.get(row));
+            datum.alternateAllele = getAllele(alternateAllele.get(row));
+        }
+        return datum;
+    }
+
+    private GenomeLoc getLocation( final int row ) {
+        final int contig = contigIndex.get(row);
+        if ( contig == -1 )
+            return null;
+        return genomeLocParser.createGenomeLoc(genomeLocParser.getContigs().getSequence(contig).getSequenceName(), contig, start.get(row), stop.get(row));
+    }
+
+    private Allele getAllele( final int alleleIndex ) {
+        return alleleIndex == -1 ? null : alleles.get(alleleIndex);
+    }
+
+    protected int getRow( final int index ) {
+        if ( index < 0 || index >= size() ) throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for " + size() + " variants");
+        return order == null ? index : order[index];
+    }
+
+    public double getAnnotation( final int index, final int annotation ) {
+        return annotations[annotation].get(getRow(index));
+    }
+
+    public void setAnnotation( final int index, final int annotation, final double value ) {
+        annotations[annotation].set(getRow(index), value);
+    }
+
+    public boolean isNull( final int index, final int annotation ) {
+        return isNull[annotation].get(getRow(index));
+    }
+
+    public double getLod( final int index ) {
+        return lod.get(getRow(index));
+    }
+
+    public void setLod( final int index, final double value ) {
+        lod.set(getRow(index), value);
+    }
+
+    public double getPrior( final int index ) {
+        return prior.get(getRow(index));
+    }
+
+    public void setWorstAnnotation( final int index, final int annotation ) {
+        worstAnnotation.set(getRow(index), annotation);
+    }
+
+    public boolean isAtTrainingSite( final int index ) {
+        return flags[AT_TRAINING_SITE].get(getRow(index));
+    }
+
+    public boolean isAtAntiTrainingSite( final int index ) {
+        return flags[AT_ANTI_TRAINING_SITE].get(getRow(index));
+    }
+
+    public void setAtAntiTrainingSite( final int index, final boolean value ) {
+        flags[AT_ANTI_TRAINING_SITE].set(getRow(index), value);
+    }
+
+    public boolean isFailingSTDThreshold( final int index ) {
+        return flags[FAILING_STD_THRESHOLD].get(getRow(index));
+    }
+
+    public void setFailingSTDThreshold( final int index, final boolean value ) {
+        flags[FAILING_STD_THRESHOLD].set(getRow(index), value);
+    }
+
+    /**
+     * Reorder the annotations of all the variants
+     *
+     * @param theOrder the old index of each annotation in the new order
+     */
+    public void reorderAnnotations( final List<Integer> theOrder ) {
+        final DoubleColumn[] oldAnnotations = annotations.clone();
+        final BitSet[] oldIsNull = isNull.clone();
+        for ( int iii = 0; iii < theOrder.size(); iii++ ) {
+            annotations[iii] = oldAnnotations[theOrder.get(iii)];
+            isNull[iii] = oldIsNull[theOrder.get(iii)];
+        }
+    }
+
+    /**
+     * Remove the variants marked as aggregate data from the list
+     */
+    public void dropAggregateData() {
+        final int[] remaining = new int[size() - countAggregateData()];
+        int nRemaining = 0;
+        for ( int iii = 0; iii < size(); iii++ ) {
+            final int row = getRow(iii);
+            if ( ! flags[IS_AGGREGATE].get(row) )
+                remaining[nRemaining++] = row;
+        }
+        order = remaining;
+    }
+
+    private int countAggregateData() {
+        if ( order == null )
+            return flags[IS_AGGREGATE].cardinality();
+        int count = 0;
+        for ( final int row : order )
+            count += flags[IS_AGGREGATE].get(row) ? 1 : 0;
+        return count;
+    }
+
+    /**
+     * Stable sort of the variants by increasing LOD, as with VariantDatum.VariantDatumLODComparator
+     */
+    public void sortByLod() {
+        sort(new RowComparator() {
+            @Override
+            public int compare(final int row1, final int row2) {
+                return Double.compare(lod.get(row1), lod.get(row2));
+            }
+        });
+    }
+
+    /**
+     * Stable sort of the variants by location, as with GenomeLoc.compareTo
+     */
+    public void sortByLocation() {
+        sort(new RowComparator() {
+            @Override
+            public int compare(final int row1, final int row2) {
+                int result = Integer.compare(contigIndex.get(row1), contigIndex.get(row2));
+                if ( result == 0 ) result = Integer.compare(start.get(row1), start.get(row2));
+                if ( result == 0 ) result = Integer.compare(stop.get(row1), stop.get(row2));
+                return result;
+            }
+        });
+    }
+
+    private interface RowComparator {
+        int compare(int row1, int row2);
+    }
+
+    private void sort( final RowComparator comparator ) {
+        final int[] rows = new int[size()];
+        for ( int iii = 0; iii < rows.length; iii++ ) {
+            rows[iii] = getRow(iii);
+        }
+        mergeSort(rows, rows.clone(), 0, rows.length, comparator);
+        order = rows;
+    }
+
+    /**
+     * Stable sort of rows[from, to), using the same range of buffer, which holds the same rows, as scratch space
+     */
+    private static void mergeSort( final int[] rows, final int[] buffer, final int from, final int to, final RowComparator comparator ) {
+        if ( to - from < 2 )
+            return;
+        final int middle = (from + to) >>> 1;
+        mergeSort(buffer, rows, from, middle, comparator);
+        mergeSort(buffer, rows, middle, to, comparator);
+        int left = from;
+        int right = middle;
+        for ( int iii = from; iii < to; iii++ ) {
+            if ( right >= to || left < middle && comparator.compare(buffer[left], buffer[right]) <= 0 )
+                rows[iii] = buffer[left++];
+            else
+                rows[iii] = buffer[right++];
+        }
+    }
+
+    /**
+     * @return the row of each variant of the list, in list order, which identifies the variant for getRowData even
+     * after the list is reordered
+     */
+    protected int[] getRows() {
+        final int[] rows = new int[size()];
+        for ( int iii = 0; iii < rows.length; iii++ ) {
+            rows[iii] = getRow(iii);
+        }
+        return rows;
+    }
+
+    /**
+     * @param rows rows of variants, whether they are still in the list or not
+     * @param numRows the number of rows to get, from the start of rows
+     * @return a list of new VariantDatums holding the values of the variants in these rows
+     */
+    protected List<VariantDatum> getRowData( final int[] rows, final int numRows ) {
+        final List<VariantDatum> data = new ExpandingArrayList<>(numRows);
+        for ( int iii = 0; iii < numRows; iii++ ) {
+            data.add(getRowData(rows[iii], new VariantDatum()));
+        }
+        return data;
+    }
+
+    private ByteBuffer map( final long bytes ) {
+        try {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, channelSize, bytes).order(ByteOrder.nativeOrder());
+            channelSize += bytes;
+            return buffer;
+        } catch ( IOException e ) {
+            throw new UserException.BadTmpDir(e.getMessage());
+        }
+    }
+
+    private final class DoubleColumn {
+        private final List<DoubleBuffer> chunks = new ArrayList<>();
+
+        private void grow() {
+            chunks.add(map(8L * rowsPerChunk).asDoubleBuffer());
+        }
+
+        private double get( final int row ) {
+            return chunks.get(row >>> rowsPerChunkLog2).get(row & (rowsPerChunk - 1));
+        }
+
+        private void set( final int row, final double value ) {
+            chunks.get(row >>> rowsPerChunkLog2).put(row & (rowsPerChunk - 1), value);
+        }
+    }
+
+    private final class IntColumn {
+        private final List<IntBuffer> chunks = new ArrayList<>();
+
+        private void grow() {
+            chunks.add(map(4L * rowsPerChunk).asIntBuffer());
+        }
+
+        private int get( final int row ) {
+            return chunks.get(row >>> rowsPerChunkLog2).get(row & (rowsPerChunk - 1));
+        }
+
+        private void set( final int row, final int value ) {
+            chunks.get(row >>> rowsPerChunkLog2).put(row & (rowsPerChunk - 1), value);
+        }
+    }
+}
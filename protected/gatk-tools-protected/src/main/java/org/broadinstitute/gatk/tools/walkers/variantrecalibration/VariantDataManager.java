@@ -77,6 +77,9 @@ import java.util.*;
 
 public class VariantDataManager {
     private List<VariantDatum> data = Collections.emptyList();
+    private VariantDataColumns columns = null; // the data if it is stored as columns, in which case it is processed column by column
+    private int[] trainingRows = new int[0]; // rows of the columns returned by the last call to getTrainingData
+    private int[] antiTrainingRows = new int[0]; // rows of the columns returned by the last call to selectWorstVariants
     private double[] meanVector;
     private double[] varianceVector; // this is really the standard deviation
     public List<String> annotationKeys;
@@ -97,6 +100,7 @@ public class VariantDataManager {
 
     public void setData( final List<VariantDatum> data ) {
         this.data = data;
+        this.columns = data instanceof VariantDataColumns ? (VariantDataColumns) data : null;
     }
 
     public void setNormalization(final Map<String, Double> anMeans, final Map<String, Double> anStdDevs) {
@@ -138,9 +142,15 @@ public class VariantDataManager {
                 theSTD = varianceVector[iii];
             }
             logger.info(annotationKeys.get(iii) + String.format(": \t mean = %.2f\t standard deviation = %.2f", theMean, theSTD));
-            for( final VariantDatum datum : data ) {
-                // Transform each data point via: (x - mean) / standard deviation
-                datum.annotations[iii] = ( datum.isNull[iii] ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( datum.annotations[iii] - theMean ) / theSTD );
+            if( columns != null ) {
+                for( int jjj = 0; jjj < columns.size(); jjj++ ) {
+                    columns.setAnnotation(jjj, iii, ( columns.isNull(jjj, iii) ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( columns.getAnnotation(jjj, iii) - theMean ) / theSTD ));
+                }
+            } else {
+                for( final VariantDatum datum : data ) {
+                    // Transform each data point via: (x - mean) / standard deviation
+                    datum.annotations[iii] = ( datum.isNull[iii] ? 0.1 * Utils.getRandomGenerator().nextGaussian() : ( datum.annotations[iii] - theMean ) / theSTD );
+                }
             }
         }
         if( foundZeroVarianceAnnotation ) {
@@ -148,12 +158,22 @@ public class VariantDataManager {
         }
 
         // trim data by standard deviation threshold and mark failing data for exclusion later
-        for( final VariantDatum datum : data ) {
-            boolean remove = false;
-            for( final double val : datum.annotations ) {
-                remove = remove || (Math.abs(val) > VRAC.STD_THRESHOLD);
+        if( columns != null ) {
+            for( int jjj = 0; jjj < columns.size(); jjj++ ) {
+                boolean remove = false;
+                for( int iii = 0; iii < columns.getNumAnnotations(); iii++ ) {
+                    remove = remove || (Math.abs(columns.getAnnotation(jjj, iii)) > VRAC.STD_THRESHOLD);
+                }
+                columns.setFailingSTDThreshold(jjj, remove);
+            }
+        } else {
+            for( final VariantDatum datum : data ) {
+                boolean remove = false;
+                for( final double val : datum.annotations ) {
+                    remove = remove || (Math.abs(val) > VRAC.STD_THRESHOLD);
+                }
+                datum.failingSTDThreshold = remove;
             }
-            datum.failingSTDThreshold = remove;
         }
 
         // re-order the data by increasing standard deviation so that the results don't depend on the order things were specified on the command line
@@ -165,9 +185,13 @@ public class VariantDataManager {
         annotationKeys = reorderList(annotationKeys, theOrder);
         varianceVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(varianceVector), theOrder));
         meanVector = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(meanVector), theOrder));
-        for( final VariantDatum datum : data ) {
-            datum.annotations = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.annotations), theOrder));
-            datum.isNull = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.isNull), theOrder));
+        if( columns != null ) {
+            columns.reorderAnnotations(theOrder);
+        } else {
+            for( final VariantDatum datum : data ) {
+                datum.annotations = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.annotations), theOrder));
+                datum.isNull = ArrayUtils.toPrimitive(reorderArray(ArrayUtils.toObject(datum.isNull), theOrder));
+            }
         }
         logger.info("Annotation order is: " + annotationKeys.toString());
 
@@ -276,6 +300,8 @@ public class VariantDataManager {
     }
 
     public List<VariantDatum> getTrainingData() {
+        if( columns != null ) { return getTrainingDataFromColumns(); }
+
         final List<VariantDatum> trainingData = new ExpandingArrayList<>();
         for( final VariantDatum datum : data ) {
             if( datum.atTrainingSite && !datum.failingSTDThreshold ) {
@@ -293,7 +319,48 @@ public class VariantDataManager {
         return trainingData;
     }
 
+    /**
+     * Get the training data out of the columns, shuffling and downsampling them exactly as getTrainingData does a list
+     *
+     * @return new VariantDatums holding the training data, which are not stored back into the columns
+     */
+    private List<VariantDatum> getTrainingDataFromColumns() {
+        int[] rows = new int[1024];
+        int numRows = 0;
+        for( int iii = 0; iii < columns.size(); iii++ ) {
+            if( columns.isAtTrainingSite(iii) && !columns.isFailingSTDThreshold(iii) ) {
+                if( numRows == rows.length ) { rows = Arrays.copyOf(rows, 2 * rows.length); }
+                rows[numRows++] = columns.getRow(iii);
+            }
+        }
+        logger.info( "Training with " + numRows + " variants after standard deviation thresholding." );
+        if( numRows < VRAC.MIN_NUM_BAD_VARIANTS ) {
+            logger.warn( "WARNING: Training with very few variant sites! Please check the model reporting PDF to ensure the quality of the model is reliable." );
+        } else if( numRows > VRAC.MAX_NUM_TRAINING_DATA ) {
+            logger.warn( "WARNING: Very large training set detected. Downsampling to " + VRAC.MAX_NUM_TRAINING_DATA + " training variants." );
+            shuffle(rows, numRows);
+            numRows = VRAC.MAX_NUM_TRAINING_DATA;
+        }
+        trainingRows = Arrays.copyOf(rows, numRows);
+        return columns.getRowData(trainingRows, numRows);
+    }
+
+    /**
+     * Shuffle the first numRows rows with the random number generator exactly as Collections.shuffle would shuffle a list of them
+     */
+    private static void shuffle( final int[] rows, final int numRows ) {
+        final Random random = Utils.getRandomGenerator();
+        for( int iii = numRows; iii > 1; iii-- ) {
+            final int jjj = random.nextInt(iii);
+            final int row = rows[iii - 1];
+            rows[iii - 1] = rows[jjj];
+            rows[jjj] = row;
+        }
+    }
+
     public List<VariantDatum> selectWorstVariants() {
+        if( columns != null ) { return selectWorstVariantsFromColumns(); }
+
         final List<VariantDatum> trainingData = new ExpandingArrayList<>();
 
         for( final VariantDatum datum : data ) {
@@ -308,6 +375,24 @@ public class VariantDataManager {
         return trainingData;
     }
 
+    private List<VariantDatum> selectWorstVariantsFromColumns() {
+        int[] rows = new int[1024];
+        int numRows = 0;
+        for( int iii = 0; iii < columns.size(); iii++ ) {
+            final double lod = columns.getLod(iii);
+            if( !columns.isFailingSTDThreshold(iii) && !Double.isInfinite(lod) && lod < VRAC.BAD_LOD_CUTOFF ) {
+                columns.setAtAntiTrainingSite(iii, true);
+                if( numRows == rows.length ) { rows = Arrays.copyOf(rows, 2 * rows.length); }
+                rows[numRows++] = columns.getRow(iii);
+            }
+        }
+
+        logger.info( "Selected worst " + numRows + " scoring variants --> variants with LOD <= " + String.format("%.4f", VRAC.BAD_LOD_CUTOFF) + "." );
+
+        antiTrainingRows = Arrays.copyOf(rows, numRows);
+        return columns.getRowData(antiTrainingRows, numRows);
+    }
+
     public List<VariantDatum> getEvaluationData() {
         final List<VariantDatum> evaluationData = new ExpandingArrayList<>();
 
@@ -324,6 +409,10 @@ public class VariantDataManager {
      * Remove all VariantDatum's from the data list which are marked as aggregate data
      */
     public void dropAggregateData() {
+        if( columns != null ) {
+            columns.dropAggregateData();
+            return;
+        }
         final Iterator<VariantDatum> iter = data.iterator();
         while (iter.hasNext()) {
             final VariantDatum datum = iter.next();
@@ -345,9 +434,47 @@ public class VariantDataManager {
         return returnData;
     }
 
+    /**
+     * Get random training, anti-training and evaluation data for plotting, with the training and anti-training data
+     * returned by the last calls to getTrainingData and selectWorstVariants
+     *
+     * When the data is stored as columns, the variants are read again from the columns, so that they have their
+     * final values, and the evaluation data is never held in memory.
+     */
+    public List<VariantDatum> getRandomDataForPlotting( final int numToAdd, final List<VariantDatum> trainingData, final List<VariantDatum> antiTrainingData ) {
+        if( columns == null ) {
+            return getRandomDataForPlotting(numToAdd, trainingData, antiTrainingData, getEvaluationData());
+        }
+
+        int[] evaluationRows = new int[1024];
+        int numEvaluationRows = 0;
+        for( int iii = 0; iii < columns.size(); iii++ ) {
+            if( !columns.isFailingSTDThreshold(iii) && !columns.isAtTrainingSite(iii) && !columns.isAtAntiTrainingSite(iii) ) {
+                if( numEvaluationRows == evaluationRows.length ) { evaluationRows = Arrays.copyOf(evaluationRows, 2 * evaluationRows.length); }
+                evaluationRows[numEvaluationRows++] = columns.getRow(iii);
+            }
+        }
+
+        final List<VariantDatum> returnData = new ExpandingArrayList<>();
+        shuffle(trainingRows, trainingRows.length);
+        shuffle(antiTrainingRows, antiTrainingRows.length);
+        shuffle(evaluationRows, numEvaluationRows);
+        returnData.addAll(columns.getRowData(trainingRows, Math.min(numToAdd, trainingRows.length)));
+        returnData.addAll(columns.getRowData(antiTrainingRows, Math.min(numToAdd, antiTrainingRows.length)));
+        returnData.addAll(columns.getRowData(evaluationRows, Math.min(numToAdd, numEvaluationRows)));
+        Collections.shuffle(returnData, Utils.getRandomGenerator());
+        return returnData;
+    }
+
     protected double mean( final int index, final boolean trainingData ) {
         double sum = 0.0;
         int numNonNull = 0;
+        if( columns != null ) {
+            for( int iii = 0; iii < columns.size(); iii++ ) {
+                if( (trainingData == columns.isAtTrainingSite(iii)) && !columns.isNull(iii, index) ) { sum += columns.getAnnotation(iii, index); numNonNull++; }
+            }
+            return sum / ((double) numNonNull);
+        }
         for( final VariantDatum datum : data ) {
             if( (trainingData == datum.atTrainingSite) && !datum.isNull[index] ) { sum += datum.annotations[index]; numNonNull++; }
         }
@@ -357,6 +484,12 @@ public class VariantDataManager {
     protected double standardDeviation( final double mean, final int index, final boolean trainingData ) {
         double sum = 0.0;
         int numNonNull = 0;
+        if( columns != null ) {
+            for( int iii = 0; iii < columns.size(); iii++ ) {
+                if( (trainingData == columns.isAtTrainingSite(iii)) && !columns.isNull(iii, index) ) { final double value = columns.getAnnotation(iii, index); sum += ((value - mean)*(value - mean)); numNonNull++; }
+            }
+            return Math.sqrt( sum / ((double) numNonNull) );
+        }
         for( final VariantDatum datum : data ) {
             if( (trainingData == datum.atTrainingSite) && !datum.isNull[index] ) { sum += ((datum.annotations[index] - mean)*(datum.annotations[index] - mean)); numNonNull++; }
         }
@@ -499,11 +632,24 @@ public class VariantDataManager {
     }
 
     public void writeOutRecalibrationTable( final VariantContextWriter recalWriter ) {
+        writeOutRecalibrationTable( recalWriter, null );
+    }
+
+    /**
+     * Write out the recal file, and the same variants to a binary recal index if there is one
+     *
+     * @param recalIndexWriter the writer of the recal index, or null
+     */
+    public void writeOutRecalibrationTable( final VariantContextWriter recalWriter, final RecalibrationIndex.Writer recalIndexWriter ) {
         // we need to sort in coordinate order in order to produce a valid VCF
-        Collections.sort( data, new Comparator<VariantDatum>() {
-            public int compare(VariantDatum vd1, VariantDatum vd2) {
-                return vd1.loc.compareTo(vd2.loc);
-            }} );
+        if( columns != null ) {
+            columns.sortByLocation();
+        } else {
+            Collections.sort( data, new Comparator<VariantDatum>() {
+                public int compare(VariantDatum vd1, VariantDatum vd2) {
+                    return vd1.loc.compareTo(vd2.loc);
+                }} );
+        }
 
         // create dummy alleles to be used
         List<Allele> alleles = Arrays.asList(Allele.create("N", true), Allele.create("<VQSR>", false));
@@ -512,14 +658,21 @@ public class VariantDataManager {
             if (VRAC.useASannotations)
                 alleles = Arrays.asList(datum.referenceAllele, datum.alternateAllele); //use the alleles to distinguish between multiallelics in AS mode
             VariantContextBuilder builder = new VariantContextBuilder("VQSR", datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), alleles);
+            final String lodString = String.format("%.4f", datum.lod);
+            final String culprit = (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL");
             builder.attribute(VCFConstants.END_KEY, datum.loc.getStop());
-            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, String.format("%.4f", datum.lod));
-            builder.attribute(GATKVCFConstants.CULPRIT_KEY, (datum.worstAnnotation != -1 ? annotationKeys.get(datum.worstAnnotation) : "NULL"));
+            builder.attribute(GATKVCFConstants.VQS_LOD_KEY, lodString);
+            builder.attribute(GATKVCFConstants.CULPRIT_KEY, culprit);
 
             if ( datum.atTrainingSite ) builder.attribute(GATKVCFConstants.POSITIVE_LABEL_KEY, true);
             if ( datum.atAntiTrainingSite ) builder.attribute(GATKVCFConstants.NEGATIVE_LABEL_KEY, true);
 
             recalWriter.add(builder.make());
+            if ( recalIndexWriter != null ) {
+                // the index holds the lod exactly as ApplyRecalibration would parse it out of the recal file
+                recalIndexWriter.add(datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), VRAC.useASannotations ? datum.alternateAllele : null,
+                        Double.parseDouble(lodString), culprit, datum.atTrainingSite, datum.atAntiTrainingSite);
+            }
         }
     }
 }
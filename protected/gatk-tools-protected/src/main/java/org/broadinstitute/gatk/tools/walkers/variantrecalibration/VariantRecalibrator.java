@@ -191,7 +191,7 @@ import java.io.IOException;
 
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARDISC, extraDocs = {CommandLineGATK.class} )
 @PartitionBy(PartitionType.NONE)
-public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, ExpandingArrayList<VariantDatum>> implements TreeReducible<ExpandingArrayList<VariantDatum>> {
+public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDatum>, AbstractList<VariantDatum>> implements TreeReducible<AbstractList<VariantDatum>> {
 
     private static final String PLOT_TRANCHES_RSCRIPT = "plot_Tranches.R";
 
@@ -236,6 +236,14 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     @Output(fullName="tranches_file", shortName="tranchesFile", doc="The output tranches file used by ApplyRecalibration", required=true)
     protected File TRANCHES_FILE;
 
+    /**
+     * A compact binary copy of the recal file, which ApplyRecalibration can memory-map with -recalIndex instead of
+     * reading the recal file with -recalFile. This saves decoding a file about as large as the callset while applying
+     * the recalibration.
+     */
+    @Output(fullName="recal_index", shortName="recalIndex", doc="The output binary recal index which can be used by ApplyRecalibration instead of the recal file", required=false, defaultToStdout=false)
+    protected File RECAL_INDEX_FILE = null;
+
     /////////////////////////////
     // Additional Command Line Arguments
     /////////////////////////////
@@ -306,6 +314,16 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     @Argument(fullName="max_attempts", shortName = "max_attempts", doc="Number of attempts to build a model before failing", required=false)
     protected int max_attempts = 1;
 
+    /**
+     * Instead of holding a VariantDatum for each variant on the heap until the end of the traversal, store the
+     * annotations, training and truth flags and locations of the variants in compact columns that are memory-mapped
+     * from temporary files in java.io.tmpdir. Only the variants used to train the models are then loaded on the heap,
+     * and the rest are evaluated straight from the columns. The results are the same either way.
+     */
+    @Advanced
+    @Argument(fullName = "memory_mapped_data", shortName = "mmapData", doc = "Store the variant data in memory-mapped temporary files rather than on the heap, for callsets too large to fit in memory", required = false)
+    protected boolean MEMORY_MAPPED_DATA = false;
+
     /////////////////////////////
     // Debug Arguments
     /////////////////////////////
@@ -336,6 +354,9 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     public void initialize() {
         dataManager = new VariantDataManager( new ArrayList<>(USE_ANNOTATIONS), VRAC );
 
+        if( VRAC.NUM_MODEL_THREADS < 1 )
+            throw new UserException.BadArgumentValue("numModelThreads", "must be at least 1");
+
         if (RSCRIPT_FILE != null && !RScriptExecutor.RSCRIPT_EXISTS)
             Utils.warnUser(logger, String.format(
                     "Rscript not found in environment path. %s will be generated but PDF plots will not.",
@@ -518,19 +539,23 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //---------------------------------------------------------------------------------------------------------------
 
     @Override
-    public ExpandingArrayList<VariantDatum> reduceInit() {
+    public AbstractList<VariantDatum> reduceInit() {
+        if( MEMORY_MAPPED_DATA ) {
+            return new VariantDataColumns( USE_ANNOTATIONS.size(), VRAC.useASannotations, getToolkit().getGenomeLocParser() );
+        }
         return new ExpandingArrayList<>();
     }
 
     @Override
-    public ExpandingArrayList<VariantDatum> reduce( final ExpandingArrayList<VariantDatum> mapValue, final ExpandingArrayList<VariantDatum> reduceSum ) {
+    public AbstractList<VariantDatum> reduce( final ExpandingArrayList<VariantDatum> mapValue, final AbstractList<VariantDatum> reduceSum ) {
         reduceSum.addAll( mapValue );
         return reduceSum;
     }
 
     @Override
-    public ExpandingArrayList<VariantDatum> treeReduce( final ExpandingArrayList<VariantDatum> lhs, final ExpandingArrayList<VariantDatum> rhs ) {
+    public AbstractList<VariantDatum> treeReduce( final AbstractList<VariantDatum> lhs, final AbstractList<VariantDatum> rhs ) {
         rhs.addAll( lhs );
+        releaseData( lhs );
         return rhs;
     }
 
@@ -541,7 +566,7 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
     //---------------------------------------------------------------------------------------------------------------
 
     @Override
-    public void onTraversalDone( final ExpandingArrayList<VariantDatum> reduceSum ) {
+    public void onTraversalDone( final AbstractList<VariantDatum> reduceSum ) {
         for (int i = 1; i <= max_attempts; i++) {
             try {
                 dataManager.setData(reduceSum);
@@ -589,10 +614,16 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
                 tranchesStream.print(Tranche.tranchesString(tranches));
 
                 logger.info("Writing out recalibration table...");
-                dataManager.writeOutRecalibrationTable(recalWriter);
+                if (RECAL_INDEX_FILE != null) {
+                    try (RecalibrationIndex.Writer recalIndexWriter = new RecalibrationIndex.Writer(RECAL_INDEX_FILE)) {
+                        dataManager.writeOutRecalibrationTable(recalWriter, recalIndexWriter);
+                    }
+                } else {
+                    dataManager.writeOutRecalibrationTable(recalWriter);
+                }
                 if (RSCRIPT_FILE != null) {
                     logger.info("Writing out visualization Rscript file...");
-                    createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingData, negativeTrainingData, dataManager.getEvaluationData()), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
+                    createVisualizationScript(dataManager.getRandomDataForPlotting(1000, positiveTrainingData, negativeTrainingData), goodModel, badModel, 0.0, dataManager.getAnnotationKeys().toArray(new String[USE_ANNOTATIONS.size()]));
                 }
 
                 if (VRAC.MODE == VariantRecalibratorArgumentCollection.Mode.INDEL) {
@@ -607,9 +638,11 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
                     logger.info("Executing: " + executor.getApproximateCommandLine());
                     executor.exec();
                 }
+                releaseData( reduceSum );
                 return;
             } catch (Exception e) {
                 if (i == max_attempts) {
+                    releaseData( reduceSum );
                     throw e;
                 } else {
                     logger.info(String.format("Exception occurred on attempt %d of %d. Trying again. Message was: '%s'", i, max_attempts, e.getMessage()));
@@ -618,6 +651,16 @@ public class VariantRecalibrator extends RodWalker<ExpandingArrayList<VariantDat
         }
     }
 
+    /**
+     * Close the memory-mapped data, if that's where it was collected
+     * @param data data that is no longer needed
+     */
+    private void releaseData( final AbstractList<VariantDatum> data ) {
+        if ( data instanceof VariantDataColumns ) {
+            ((VariantDataColumns) data).close();
+        }
+    }
+
     /**
      * Rebuild a Gaussian Mixture Model from gaussian means and co-variates stored in a GATKReportTables
      * @param muTable           Table of Gaussian means
@@ -166,6 +166,17 @@ public class VariantRecalibratorArgumentCollection {
     @Argument(fullName="badLodCutoff", shortName="badLodCutoff", doc="LOD score cutoff for selecting bad variants", required=false)
     public double BAD_LOD_CUTOFF = -5.0;
 
+    /**
+     * The variational Bayes training of the Gaussian mixture models and the evaluation of the variants with them are
+     * split over blocks of variants, which are processed by this many threads. With more than one thread the sums over
+     * the variants are taken in a different order, and each block draws its own random numbers for the marginalization
+     * over missing annotations, so the results differ from a single-threaded run. They do not depend on the number of
+     * threads, however.
+     */
+    @Advanced
+    @Argument(fullName="numModelThreads", shortName="modelThreads", doc="Number of threads used to train and evaluate the Gaussian mixture models", required=false)
+    public int NUM_MODEL_THREADS = 1;
+
     /**
      * MQ is capped at a "max" value (60 for bwa-mem) when the alignment is considered perfect. Typically, a huge
      * proportion of the reads in a dataset are perfectly mapped, which yields a distribution of MQ values with a
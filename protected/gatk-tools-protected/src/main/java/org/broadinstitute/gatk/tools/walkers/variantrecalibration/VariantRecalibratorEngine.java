@@ -52,9 +52,13 @@
 package org.broadinstitute.gatk.tools.walkers.variantrecalibration;
 
 import org.apache.log4j.Logger;
-import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 
 import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by IntelliJ IDEA.
@@ -89,7 +93,14 @@ public class VariantRecalibratorEngine {
         if( maxGaussians <= 0 ) { throw new IllegalArgumentException("maxGaussians must be a positive integer but found: " + maxGaussians); }
 
         final GaussianMixtureModel model = new GaussianMixtureModel( maxGaussians, data.get(0).annotations.length, VRAC.SHRINKAGE, VRAC.DIRICHLET_PARAMETER, VRAC.PRIOR_COUNTS );
-        variationalBayesExpectationMaximization( model, data );
+        final ExecutorService executor = createExecutor();
+        try {
+            model.setExecutor( executor );
+            variationalBayesExpectationMaximization( model, data );
+        } finally {
+            model.setExecutor( null );
+            shutdown( executor );
+        }
         return model;
     }
 
@@ -105,38 +116,102 @@ public class VariantRecalibratorEngine {
         }
         
         logger.info("Evaluating full set of " + data.size() + " variants...");
+        final ExecutorService executor = data instanceof RandomAccess ? createExecutor() : null;
+        try {
+            final Random[] randoms = GaussianMixtureModel.getDataBlockRandomGenerators( executor, data.size() );
+            final List<Boolean> evaluated = GaussianMixtureModel.applyToDataBlocks( executor, data.size(), (fromIndex, toIndex) -> {
+                final Random random = randoms[fromIndex / GaussianMixtureModel.DATA_BLOCK_SIZE];
+                return data instanceof VariantDataColumns ? evaluateColumns( (VariantDataColumns) data, fromIndex, toIndex, model, evaluateContrastively, random )
+                                                          : evaluateData( data.subList(fromIndex, toIndex), model, evaluateContrastively, random );
+            } );
+            if( evaluated.contains( false ) ) {
+                model.failedToConverge = true;
+            }
+        } finally {
+            shutdown( executor );
+        }
+    }
+
+    /**
+     * @return false if the model failed to evaluate a datum, in which case the rest of the data are left unevaluated
+     */
+    private boolean evaluateData( final List<VariantDatum> data, final GaussianMixtureModel model, final boolean evaluateContrastively, final Random random ) {
         for( final VariantDatum datum : data ) {
-            final double thisLod = evaluateDatum( datum, model );
+            final double thisLod = evaluateDatum( datum, model, random );
             if( Double.isNaN(thisLod) ) {
                 logger.warn("Evaluate datum returned a NaN.");
-                model.failedToConverge = true;
-                return;
+                return false;
             }
 
-            datum.lod = ( evaluateContrastively ?
-                            ( Double.isInfinite(datum.lod) ? // positive model said negative infinity
-                                    ( MIN_ACCEPTABLE_LOD_SCORE + Utils.getRandomGenerator().nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
-                                    : datum.prior + datum.lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
-                            : thisLod ); // positive model only so set the lod and return
+            datum.lod = calculateLod( datum, thisLod, evaluateContrastively, random );
         }
+        return true;
+    }
+
+    private boolean evaluateColumns( final VariantDataColumns data, final int fromIndex, final int toIndex, final GaussianMixtureModel model, final boolean evaluateContrastively, final Random random ) {
+        final VariantDatum datum = new VariantDatum();
+        for( int iii = fromIndex; iii < toIndex; iii++ ) {
+            data.get(iii, datum);
+            final double thisLod = evaluateDatum( datum, model, random );
+            // marginalizing over the missing annotations leaves random draws in them, which are kept as with a list of data
+            for( int jjj = 0; jjj < datum.isNull.length; jjj++ ) {
+                if( datum.isNull[jjj] ) { data.setAnnotation(iii, jjj, datum.annotations[jjj]); }
+            }
+            if( Double.isNaN(thisLod) ) {
+                logger.warn("Evaluate datum returned a NaN.");
+                return false;
+            }
+
+            data.setLod(iii, calculateLod( datum, thisLod, evaluateContrastively, random ));
+        }
+        return true;
+    }
+
+    private double calculateLod( final VariantDatum datum, final double thisLod, final boolean evaluateContrastively, final Random random ) {
+        return ( evaluateContrastively ?
+                ( Double.isInfinite(datum.lod) ? // positive model said negative infinity
+                        ( MIN_ACCEPTABLE_LOD_SCORE + random.nextDouble() * MIN_ACCEPTABLE_LOD_SCORE ) // Negative infinity lod values are possible when covariates are extremely far away from their tight Gaussians
+                        : datum.prior + datum.lod - thisLod) // contrastive evaluation: (prior + positive model - negative model)
+                : thisLod ); // positive model only so set the lod and return
     }
 
     public void calculateWorstPerformingAnnotation( final List<VariantDatum> data, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
-        for( final VariantDatum datum : data ) {
-            int worstAnnotation = -1;
-            double minProb = Double.MAX_VALUE;
-            double worstValue = -1;
-            for( int iii = 0; iii < datum.annotations.length; iii++ ) {
-                final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
-                final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
-                if( goodProbLog10 != null && badProbLog10 != null ) {
-                    final double prob = goodProbLog10 - badProbLog10;
-                    if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
+        final ExecutorService executor = data instanceof RandomAccess ? createExecutor() : null;
+        try {
+            GaussianMixtureModel.applyToDataBlocks( executor, data.size(), (fromIndex, toIndex) -> {
+                if( data instanceof VariantDataColumns ) {
+                    final VariantDataColumns columns = (VariantDataColumns) data;
+                    final VariantDatum datum = new VariantDatum();
+                    for( int iii = fromIndex; iii < toIndex; iii++ ) {
+                        calculateWorstPerformingAnnotation( columns.get(iii, datum), goodModel, badModel );
+                        columns.setWorstAnnotation(iii, datum.worstAnnotation);
+                    }
+                } else {
+                    for( final VariantDatum datum : data.subList(fromIndex, toIndex) ) {
+                        calculateWorstPerformingAnnotation( datum, goodModel, badModel );
+                    }
                 }
+                return null;
+            } );
+        } finally {
+            shutdown( executor );
+        }
+    }
+
+    private void calculateWorstPerformingAnnotation( final VariantDatum datum, final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel ) {
+        int worstAnnotation = -1;
+        double minProb = Double.MAX_VALUE;
+        double worstValue = -1;
+        for( int iii = 0; iii < datum.annotations.length; iii++ ) {
+            final Double goodProbLog10 = goodModel.evaluateDatumInOneDimension(datum, iii);
+            final Double badProbLog10 = badModel.evaluateDatumInOneDimension(datum, iii);
+            if( goodProbLog10 != null && badProbLog10 != null ) {
+                final double prob = goodProbLog10 - badProbLog10;
+                if(prob < minProb) { minProb = prob; worstAnnotation = iii; worstValue = datum.annotations[iii];}
             }
-            datum.worstAnnotation = worstAnnotation;
-            datum.worstValue = worstValue;
         }
+        datum.worstAnnotation = worstAnnotation;
+        datum.worstValue = worstValue;
     }
 
 
@@ -175,7 +250,20 @@ public class VariantRecalibratorEngine {
     // Private Methods used for evaluating data given a GaussianMixtureModel
     /////////////////////////////
 
-    private double evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model ) {
-        return model.evaluateDatum( datum );
+    private double evaluateDatum( final VariantDatum datum, final GaussianMixtureModel model, final Random random ) {
+        return model.evaluateDatum( datum, random );
+    }
+
+    /**
+     * @return an executor with the requested number of model threads, or null to train and evaluate the models serially
+     */
+    private ExecutorService createExecutor() {
+        return VRAC.NUM_MODEL_THREADS > 1 ? Executors.newFixedThreadPool(VRAC.NUM_MODEL_THREADS, new NamedThreadFactory("VariantRecalibrator-thread-%d")) : null;
+    }
+
+    private static void shutdown( final ExecutorService executor ) {
+        if( executor != null ) {
+            executor.shutdown();
+        }
     }
 }
@@ -65,6 +65,7 @@ import org.broadinstitute.gatk.engine.SampleUtils;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import org.broadinstitute.gatk.utils.help.HelpConstants;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 import org.broadinstitute.gatk.engine.GATKVCFUtils;
 import org.broadinstitute.gatk.utils.variant.GATKVCFConstants;
 import org.broadinstitute.gatk.utils.variant.GATKVCFHeaderLines;
@@ -75,6 +76,8 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.*;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Calculate genotype posterior likelihoods given panel data
@@ -266,12 +269,24 @@ public class CalculateGenotypePosteriors extends RodWalker<Integer,Integer> {
     @Argument(fullName="skipFamilyPriors",shortName="skipFam",doc="Skip application of family-based priors", required=false)
     public boolean skipFamilyPriors = false;
 
+    /**
+     * When applying family priors to many families, evaluate the families at each site in parallel blocks with this
+     * many threads.
+     */
+    @Argument(fullName="numFamilyThreads",shortName="familyThreads",doc="Number of threads used to evaluate the families at each site", required=false)
+    public int numFamilyThreads = 1;
+
     @Output(doc="File to which variants should be written")
     protected VariantContextWriter vcfWriter = null;
 
     private FamilyLikelihoodsUtils famUtils = new FamilyLikelihoodsUtils();
 
+    private ExecutorService familyExecutor = null;
+
     public void initialize() {
+        if (numFamilyThreads < 1)
+            throw new UserException.BadArgumentValue("numFamilyThreads", "must be at least 1");
+
         // Get list of samples to include in the output
         final List<String> rodNames = Arrays.asList(variantCollection.variants.getName());
 
@@ -322,6 +337,10 @@ public class CalculateGenotypePosteriors extends RodWalker<Integer,Integer> {
 
         Map<String,Set<Sample>> families = this.getSampleDB().getFamilies(vcfSamples);
         famUtils.initialize(deNovoPrior, vcfSamples, families);
+        if (!skipFamilyPriors && numFamilyThreads > 1) {
+            familyExecutor = Executors.newFixedThreadPool(numFamilyThreads, new NamedThreadFactory("CalculateGenotypePosteriors-thread-%d"));
+            famUtils.setExecutor(familyExecutor);
+        }
     }
 
     public Integer reduceInit() { return 0; }
@@ -364,5 +383,10 @@ public class CalculateGenotypePosteriors extends RodWalker<Integer,Integer> {
     }
 
     public Integer reduce(Integer l, Integer r) { return r + l; }
+
+    public void onTraversalDone(Integer result) {
+        if (familyExecutor != null)
+            familyExecutor.shutdown();
+    }
 }
 
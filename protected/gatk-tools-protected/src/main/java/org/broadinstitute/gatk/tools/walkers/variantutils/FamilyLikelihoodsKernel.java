@@ -0,0 +1,279 @@
+/*
+* By downloading the PROGRAM you agree to the following terms of use:
+* 
+* BROAD INSTITUTE
+* SOFTWARE LICENSE AGREEMENT
+* FOR ACADEMIC NON-COMMERCIAL RESEARCH PURPOSES ONLY
+* 
+* This Agreement is made between the Broad Institute, Inc. with a principal address at 415 Main Street, Cambridge, MA 02142 ("BROAD") and the LICENSEE and is effective at the date the downloading is completed ("EFFECTIVE DATE").
+* 
+* WHEREAS, LICENSEE desires to license the PROGRAM, as defined hereinafter, and BROAD wishes to have this PROGRAM utilized in the public interest, subject only to the royalty-free, nonexclusive, nontransferable license rights of the United States Government pursuant to 48 CFR 52.227-14; and
+* WHEREAS, LICENSEE desires to license the PROGRAM and BROAD desires to grant a license on the following terms and conditions.
+* NOW, THEREFORE, in consideration of the promises and covenants made herein, the parties hereto agree as follows:
+* 
+* 1. DEFINITIONS
+* 1.1 PROGRAM shall mean copyright in the object code and source code known as GATK3 and related documentation, if any, as they exist on the EFFECTIVE DATE and can be downloaded from http://www.broadinstitute.org/gatk on the EFFECTIVE DATE.
+* 
+* 2. LICENSE
+* 2.1 Grant. Subject to the terms of this Agreement, BROAD hereby grants to LICENSEE, solely for academic non-commercial research purposes, a non-exclusive, non-transferable license to: (a) download, execute and display the PROGRAM and (b) create bug fixes and modify the PROGRAM. LICENSEE hereby automatically grants to BROAD a non-exclusive, royalty-free, irrevocable license to any LICENSEE bug fixes or modifications to the PROGRAM with unlimited rights to sublicense and/or distribute.  LICENSEE agrees to provide any such modifications and bug fixes to BROAD promptly upon their creation.
+* The LICENSEE may apply the PROGRAM in a pipeline to data owned by users other than the LICENSEE and provide these users the results of the PROGRAM provided LICENSEE does so for academic non-commercial purposes only. For clarification purposes, academic sponsored research is not a commercial use under the terms of this Agreement.
+* 2.2 No Sublicensing or Additional Rights. LICENSEE shall not sublicense or distribute the PROGRAM, in whole or in part, without prior written permission from BROAD. LICENSEE shall ensure that all of its users agree to the terms of this Agreement. LICENSEE further agrees that it shall not put the PROGRAM on a network, server, or other similar technology that may be accessed by anyone other than the LICENSEE and its employees and users who have agreed to the terms of this agreement.
+* 2.3 License Limitations. Nothing in this Agreement shall be construed to confer any rights upon LICENSEE by implication, estoppel, or otherwise to any computer software, trademark, intellectual property, or patent rights of BROAD, or of any other entity, except as expressly granted herein. LICENSEE agrees that the PROGRAM, in whole or part, shall not be used for any commercial purpose, including without limitation, as the basis of a commercial software or hardware product or to provide services. LICENSEE further agrees that the PROGRAM shall not be copied or otherwise adapted in order to circumvent the need for obtaining a license for use of the PROGRAM.
+* 
+* 3. PHONE-HOME FEATURE
+* LICENSEE expressly acknowledges that the PROGRAM contains an embedded automatic reporting system ("PHONE-HOME") which is enabled by default upon download. Unless LICENSEE requests disablement of PHONE-HOME, LICENSEE agrees that BROAD may collect limited information transmitted by PHONE-HOME regarding LICENSEE and its use of the PROGRAM.  Such information shall include LICENSEE'S user identification, version number of the PROGRAM and tools being run, mode of analysis employed, and any error reports generated during run-time.  Collection of such information is used by BROAD solely to monitor usage rates, fulfill reporting requirements to BROAD funding agencies, drive improvements to the PROGRAM, and facilitate adjustments to PROGRAM-related documentation.
+* 
+* 4. OWNERSHIP OF INTELLECTUAL PROPERTY
+* LICENSEE acknowledges that title to the PROGRAM shall remain with BROAD. The PROGRAM is marked with the following BROAD copyright notice and notice of attribution to contributors. LICENSEE shall retain such notice on all copies. LICENSEE agrees to include appropriate attribution if any results obtained from use of the PROGRAM are included in any publication.
+* Copyright 2012-2016 Broad Institute, Inc.
+* Notice of attribution: The GATK3 program was made available through the generosity of Medical and Population Genetics program at the Broad Institute, Inc.
+* LICENSEE shall not use any trademark or trade name of BROAD, or any variation, adaptation, or abbreviation, of such marks or trade names, or any names of officers, faculty, students, employees, or agents of BROAD except as states above for attribution purposes.
+* 
+* 5. INDEMNIFICATION
+* LICENSEE shall indemnify, defend, and hold harmless BROAD, and their respective officers, faculty, students, employees, associated investigators and agents, and their respective successors, heirs and assigns, (Indemnitees), against any liability, damage, loss, or expense (including reasonable attorneys fees and expenses) incurred by or imposed upon any of the Indemnitees in connection with any claims, suits, actions, demands or judgments arising out of any theory of liability (including, without limitation, actions in the form of tort, warranty, or strict liability and regardless of whether such action has any factual basis) pursuant to any right or license granted under this Agreement.
+* 
+* 6. NO REPRESENTATIONS OR WARRANTIES
+* THE PROGRAM IS DELIVERED AS IS. BROAD MAKES NO REPRESENTATIONS OR WARRANTIES OF ANY KIND CONCERNING THE PROGRAM OR THE COPYRIGHT, EXPRESS OR IMPLIED, INCLUDING, WITHOUT LIMITATION, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NONINFRINGEMENT, OR THE ABSENCE OF LATENT OR OTHER DEFECTS, WHETHER OR NOT DISCOVERABLE. BROAD EXTENDS NO WARRANTIES OF ANY KIND AS TO PROGRAM CONFORMITY WITH WHATEVER USER MANUALS OR OTHER LITERATURE MAY BE ISSUED FROM TIME TO TIME.
+* IN NO EVENT SHALL BROAD OR ITS RESPECTIVE DIRECTORS, OFFICERS, EMPLOYEES, AFFILIATED INVESTIGATORS AND AFFILIATES BE LIABLE FOR INCIDENTAL OR CONSEQUENTIAL DAMAGES OF ANY KIND, INCLUDING, WITHOUT LIMITATION, ECONOMIC DAMAGES OR INJURY TO PROPERTY AND LOST PROFITS, REGARDLESS OF WHETHER BROAD SHALL BE ADVISED, SHALL HAVE OTHER REASON TO KNOW, OR IN FACT SHALL KNOW OF THE POSSIBILITY OF THE FOREGOING.
+* 
+* 7. ASSIGNMENT
+* This Agreement is personal to LICENSEE and any rights or obligations assigned by LICENSEE without the prior written consent of BROAD shall be null and void.
+* 
+* 8. MISCELLANEOUS
+* 8.1 Export Control. LICENSEE gives assurance that it will comply with all United States export control laws and regulations controlling the export of the PROGRAM, including, without limitation, all Export Administration Regulations of the United States Department of Commerce. Among other things, these laws and regulations prohibit, or require a license for, the export of certain types of software to specified countries.
+* 8.2 Termination. LICENSEE shall have the right to terminate this Agreement for any reason upon prior written notice to BROAD. If LICENSEE breaches any provision hereunder, and fails to cure such breach within thirty (30) days, BROAD may terminate this Agreement immediately. Upon termination, LICENSEE shall provide BROAD with written assurance that the original and all copies of the PROGRAM have been destroyed, except that, upon prior written authorization from BROAD, LICENSEE may retain a copy for archive purposes.
+* 8.3 Survival. The following provisions shall survive the expiration or termination of this Agreement: Articles 1, 3, 4, 5 and Sections 2.2, 2.3, 7.3, and 7.4.
+* 8.4 Notice. Any notices under this Agreement shall be in writing, shall specifically refer to this Agreement, and shall be sent by hand, recognized national overnight courier, confirmed facsimile transmission, confirmed electronic mail, or registered or certified mail, postage prepaid, return receipt requested. All notices under this Agreement shall be deemed effective upon receipt.
+* 8.5 Amendment and Waiver; Entire Agreement. This Agreement may be amended, supplemented, or otherwise modified only by means of a written instrument signed by all parties. Any waiver of any rights or failure to act in a specific instance shall relate only to such instance and shall not be construed as an agreement to waive any rights or fail to act in any other instance, whether or not similar. This Agreement constitutes the entire agreement among the parties with respect to its subject matter and supersedes prior agreements or understandings between the parties relating to its subject matter.
+* 8.6 Binding Effect; Headings. This Agreement shall be binding upon and inure to the benefit of the parties and their respective permitted successors and assigns. All headings are for convenience only and shall not affect the meaning of any provision of this Agreement.
+* 8.7 Governing Law. This Agreement shall be construed, governed, interpreted and applied in accordance with the internal laws of the Commonwealth of Massachusetts, U.S.A., without regard to conflict of laws principles.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.variant.variantcontext.GenotypeType;
+import org.broadinstitute.gatk.utils.MathUtils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Mendelian transmission tables and the tight loops over them shared by PhaseByTransmission and FamilyLikelihoodsUtils
+ *
+ * A trio genotype configuration is indexed by the called genotype indices (HOM_REF=0, HET=1, HOM_VAR=2) of the mother,
+ * father and child as mother*9 + father*3 + child, so that the per-configuration tables and likelihoods of a family are
+ * flat double[NUM_CONFIGURATIONS] arrays rather than nested maps.
+ */
+public final class FamilyLikelihoodsKernel {
+
+    public static final int NUM_CALLED_GENOTYPES = 3; //HOM_REF, HET, and HOM_VAR
+    public static final int NUM_CONFIGURATIONS = NUM_CALLED_GENOTYPES * NUM_CALLED_GENOTYPES * NUM_CALLED_GENOTYPES;
+
+    public static final int MOTHER = 0;
+    public static final int FATHER = 1;
+    public static final int CHILD = 2;
+
+    /**
+     * The number of families in each of the blocks that are evaluated in parallel when there is an executor
+     */
+    public static final int FAMILY_BLOCK_SIZE = 256;
+
+    //Stride of each family member's genotype index in a configuration index
+    private static final int[] MEMBER_STRIDES = {NUM_CALLED_GENOTYPES * NUM_CALLED_GENOTYPES, NUM_CALLED_GENOTYPES, 1};
+
+    private static final GenotypeType[] CALLED_GENOTYPES = {GenotypeType.HOM_REF, GenotypeType.HET, GenotypeType.HOM_VAR};
+
+    //Number of Mendelian violations of each configuration
+    private static final int[] MV_COUNTS = new int[NUM_CONFIGURATIONS];
+
+    static {
+        for ( int mother = 0; mother < NUM_CALLED_GENOTYPES; mother++ )
+            for ( int father = 0; father < NUM_CALLED_GENOTYPES; father++ )
+                for ( int child = 0; child < NUM_CALLED_GENOTYPES; child++ )
+                    MV_COUNTS[getConfigurationIndex(mother, father, child)] = getCombinationMVCount(mother, father, child);
+    }
+
+    private FamilyLikelihoodsKernel() {}
+
+    /**
+     * @return the index of the configuration of the given called genotype indices
+     */
+    public static int getConfigurationIndex(final int mother, final int father, final int child) {
+        return mother * NUM_CALLED_GENOTYPES * NUM_CALLED_GENOTYPES + father * NUM_CALLED_GENOTYPES + child;
+    }
+
+    /**
+     * @return the called genotype index of the given type, or -1 for NO_CALL, UNAVAILABLE or MIXED
+     */
+    public static int getCalledGenotypeIndex(final GenotypeType type) {
+        if (type == GenotypeType.HOM_REF) return 0;
+        if (type == GenotypeType.HET) return 1;
+        if (type == GenotypeType.HOM_VAR) return 2;
+        return -1;
+    }
+
+    /**
+     * @return the called genotype type of the given index
+     */
+    public static GenotypeType getCalledGenotype(final int index) {
+        return CALLED_GENOTYPES[index];
+    }
+
+    /**
+     * @return the number of Mendelian violations of the given configuration
+     */
+    public static int getMVCount(final int configurationIndex) {
+        return MV_COUNTS[configurationIndex];
+    }
+
+    /**
+     * Get the prior of each configuration: deNovoPrior^MVs for configurations with Mendelian violations
+     *
+     * @param deNovoPrior the prior for a de novo mutation
+     * @param noViolationPrior the prior of the configurations without any Mendelian violation
+     * @return the priors, indexed by configuration
+     */
+    public static double[] getTransmissionPriors(final double deNovoPrior, final double noViolationPrior) {
+        final double[] priors = new double[NUM_CONFIGURATIONS];
+        for ( int i = 0; i < NUM_CONFIGURATIONS; i++ )
+            priors[i] = MV_COUNTS[i] > 0 ? Math.pow(deNovoPrior, MV_COUNTS[i]) : noViolationPrior;
+        return priors;
+    }
+
+    /**
+     * @return the log10 of the given priors, indexed by configuration
+     */
+    public static double[] toLog10TransmissionPriors(final double[] priors) {
+        final double[] log10Priors = new double[NUM_CONFIGURATIONS];
+        for ( int i = 0; i < NUM_CONFIGURATIONS; i++ )
+            log10Priors[i] = Math.log10(priors[i]);
+        return log10Priors;
+    }
+
+    /**
+     * Fill in the likelihood of each configuration: prior * mother * father * child
+     *
+     * @param priors the transmission priors, indexed by configuration
+     * @param mother the mother's (normalized) genotype likelihoods, indexed by called genotype
+     * @param father the father's (normalized) genotype likelihoods, indexed by called genotype
+     * @param child the child's (normalized) genotype likelihoods, indexed by called genotype
+     * @param configurationLikelihoods the array of NUM_CONFIGURATIONS likelihoods to fill in
+     */
+    public static void fillConfigurationLikelihoods(final double[] priors, final double[] mother, final double[] father, final double[] child, final double[] configurationLikelihoods) {
+        int index = 0;
+        for ( int m = 0; m < NUM_CALLED_GENOTYPES; m++ )
+            for ( int f = 0; f < NUM_CALLED_GENOTYPES; f++ )
+                for ( int c = 0; c < NUM_CALLED_GENOTYPES; c++, index++ )
+                    configurationLikelihoods[index] = priors[index] * mother[m] * father[f] * child[c];
+    }
+
+    /**
+     * Fill in the log10 likelihood of each configuration: log10(prior) + (mother + father + child)
+     *
+     * @param log10Priors the log10 transmission priors, indexed by configuration
+     * @param mother the mother's log10 genotype likelihoods, indexed by called genotype
+     * @param father the father's log10 genotype likelihoods, indexed by called genotype
+     * @param child the child's log10 genotype likelihoods, indexed by called genotype
+     * @param configurationLog10Likelihoods the array of NUM_CONFIGURATIONS log10 likelihoods to fill in
+     */
+    public static void fillConfigurationLog10Likelihoods(final double[] log10Priors, final double[] mother, final double[] father, final double[] child, final double[] configurationLog10Likelihoods) {
+        int index = 0;
+        for ( int m = 0; m < NUM_CALLED_GENOTYPES; m++ )
+            for ( int f = 0; f < NUM_CALLED_GENOTYPES; f++ )
+                for ( int c = 0; c < NUM_CALLED_GENOTYPES; c++, index++ )
+                    configurationLog10Likelihoods[index] = log10Priors[index] + (mother[m] + father[f] + child[c]);
+    }
+
+    /**
+     * Marginalize the configuration log10 likelihoods over the genotypes of the other two family members
+     *
+     * The configurations are summed in mother, father, child order of the other two members.
+     *
+     * @param configurationLog10Likelihoods the log10 likelihoods, indexed by configuration
+     * @param member MOTHER, FATHER or CHILD
+     * @return the log10 posteriors of the member, indexed by called genotype and scaled so that the largest is 0
+     */
+    public static double[] getMarginalLog10Posteriors(final double[] configurationLog10Likelihoods, final int member) {
+        final int memberStride = MEMBER_STRIDES[member];
+        final int outerStride = MEMBER_STRIDES[member == MOTHER ? FATHER : MOTHER];
+        final int innerStride = MEMBER_STRIDES[member == CHILD ? FATHER : CHILD];
+
+        final double[] marginal = new double[NUM_CALLED_GENOTYPES * NUM_CALLED_GENOTYPES];
+        final double[] log10Posteriors = new double[NUM_CALLED_GENOTYPES];
+        for ( int genotype = 0; genotype < NUM_CALLED_GENOTYPES; genotype++ ) {
+            int counter = 0;
+            for ( int outer = 0; outer < NUM_CALLED_GENOTYPES; outer++ )
+                for ( int inner = 0; inner < NUM_CALLED_GENOTYPES; inner++ )
+                    marginal[counter++] = configurationLog10Likelihoods[genotype * memberStride + outer * outerStride + inner * innerStride];
+            log10Posteriors[genotype] = MathUtils.log10sumLog10(marginal, 0);
+        }
+
+        return MathUtils.normalizeFromLog10(log10Posteriors, true, true);
+    }
+
+    /**
+     * A function of the families from fromIndex (inclusive) to toIndex (exclusive), which make up block blockIndex
+     */
+    public interface FamilyBlockFunction {
+        void apply(final int blockIndex, final int fromIndex, final int toIndex);
+    }
+
+    /**
+     * Apply a function to consecutive blocks of numFamilies families
+     *
+     * Without an executor the function is applied once, to all of the families. With one, it is applied in parallel to
+     * blocks of FAMILY_BLOCK_SIZE families, so that the blocks don't depend on how many threads the executor has.
+     *
+     * @param executor the executor to run the blocks on, or null to run serially
+     */
+    public static void applyToFamilyBlocks(final ExecutorService executor, final int numFamilies, final FamilyBlockFunction function) {
+        final int numBlocks = getNumFamilyBlocks(executor, numFamilies);
+        if (numBlocks == 1) {
+            function.apply(0, 0, numFamilies);
+            return;
+        }
+
+        final List<Future<?>> blocks = new ArrayList<>(numBlocks);
+        for ( int blockIndex = 0; blockIndex < numBlocks; blockIndex++ ) {
+            final int block = blockIndex;
+            final int fromIndex = blockIndex * FAMILY_BLOCK_SIZE;
+            final int toIndex = Math.min(numFamilies, fromIndex + FAMILY_BLOCK_SIZE);
+            blocks.add(executor.submit(() -> function.apply(block, fromIndex, toIndex)));
+        }
+
+        try {
+            for ( final Future<?> block : blocks )
+                block.get();
+        } catch (InterruptedException e) {
+            throw new ReviewedGATKException("Interrupted while evaluating the families in parallel", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new ReviewedGATKException("Failed to evaluate the families in parallel", e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of blocks applyToFamilyBlocks splits numFamilies families into
+     */
+    public static int getNumFamilyBlocks(final ExecutorService executor, final int numFamilies) {
+        return executor == null ? 1 : Math.max(1, (numFamilies + FAMILY_BLOCK_SIZE - 1) / FAMILY_BLOCK_SIZE);
+    }
+
+    //Returns the number of Mendelian violations of a configuration of called genotype indices
+    private static int getCombinationMVCount(final int mother, final int father, final int child) {
+        //Count the parents that can pass a ref and an alt allele
+        final int parentsWithRefAllele = (mother < 2 ? 1 : 0) + (father < 2 ? 1 : 0);
+        final int parentsWithAltAllele = (mother > 0 ? 1 : 0) + (father > 0 ? 1 : 0);
+
+        if (child == 0)
+            return 2 - parentsWithRefAllele;
+        if (child == 2)
+            return 2 - parentsWithAltAllele;
+        return parentsWithRefAllele > 0 && parentsWithAltAllele > 0 ? 0 : 1;
+    }
+}
@@ -63,8 +63,8 @@ import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 import htsjdk.variant.utils.GeneralUtils;
 import htsjdk.variant.variantcontext.*;
 
-import java.util.Arrays;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * FamilyLikelihoodsUtils code is based on PhaseByTransmission with added posterior probability calculations
@@ -73,16 +73,16 @@ import java.util.*;
 public class FamilyLikelihoodsUtils {
     private static Logger logger = Logger.getLogger(FamilyLikelihoodsUtils.class);
 
-    //Matrix of priors for all genotype combinations
-    final private EnumMap<GenotypeType,EnumMap<GenotypeType,EnumMap<GenotypeType,Integer>>> mvCountMatrix =
-            new EnumMap<>(GenotypeType.class);
+    //log10 priors for all genotype combinations, indexed by FamilyLikelihoodsKernel configuration
+    private double[] log10TransmissionPriors;
 
-    final int NUM_CALLED_GENOTYPETYPES = 3; //HOM_REF, HET, and HOM_VAR
-
-    double[] configurationLikelihoodsMatrix = new double[NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES];
+    final int NUM_CALLED_GENOTYPETYPES = FamilyLikelihoodsKernel.NUM_CALLED_GENOTYPES; //HOM_REF, HET, and HOM_VAR
 
     ArrayList<Sample> trios = new ArrayList<>();
 
+    //Evaluates the families at a site in parallel if not null
+    private ExecutorService executor = null;
+
     public final double NO_JOINT_VALUE = -1.0;
 
     private double deNovoPrior = 1e-8;
@@ -90,20 +90,15 @@ public class FamilyLikelihoodsUtils {
     private final double ONE_THIRD = 0.333333333333333333;
     private final double LOG10_OF_ONE_THIRD = -0.4771213;
 
-    private enum FamilyMember {
-        MOTHER,
-        FATHER,
-        CHILD
-    }
-
     /**
      * Applies the trio genotype combination to the given trio.
      * @param motherGenotype: Original genotype of the mother
      * @param fatherGenotype: Original genotype of the father
      * @param childGenotype: Original genotype of the child
+     * @param configurationLikelihoods: log10 likelihoods of the trio genotype combinations, indexed by FamilyLikelihoodsKernel configuration
      * @param updatedGenotypes: An ArrayList<Genotype> to which the newly updated genotypes are added in the following order: Mother, Father, Child
      */
-    public void getUpdatedGenotypes(final VariantContext vc, final Genotype motherGenotype, final Genotype fatherGenotype, final Genotype childGenotype, final ArrayList<Genotype> updatedGenotypes){
+    public void getUpdatedGenotypes(final VariantContext vc, final Genotype motherGenotype, final Genotype fatherGenotype, final Genotype childGenotype, final double[] configurationLikelihoods, final ArrayList<Genotype> updatedGenotypes){
         //genotypes here can be no call
         boolean fatherIsCalled = fatherGenotype != null && hasCalledGT(fatherGenotype.getType()) && fatherGenotype.hasLikelihoods();
         boolean motherIsCalled = motherGenotype != null && hasCalledGT(motherGenotype.getType()) && motherGenotype.hasLikelihoods();
@@ -117,9 +112,9 @@ public class FamilyLikelihoodsUtils {
         double[] childLikelihoods = childIsCalled? GeneralUtils.normalizeFromLog10(childGenotype.getLikelihoods().getAsVector()) : uninformativeLikelihoods;
 
         //these are also in log10 space
-        double[] motherLog10Posteriors = getPosteriors(FamilyMember.MOTHER);
-        double[] fatherLog10Posteriors = getPosteriors(FamilyMember.FATHER);
-        double[] childLog10Posteriors = getPosteriors(FamilyMember.CHILD);
+        double[] motherLog10Posteriors = FamilyLikelihoodsKernel.getMarginalLog10Posteriors(configurationLikelihoods, FamilyLikelihoodsKernel.MOTHER);
+        double[] fatherLog10Posteriors = FamilyLikelihoodsKernel.getMarginalLog10Posteriors(configurationLikelihoods, FamilyLikelihoodsKernel.FATHER);
+        double[] childLog10Posteriors = FamilyLikelihoodsKernel.getMarginalLog10Posteriors(configurationLikelihoods, FamilyLikelihoodsKernel.CHILD);
 
         double[] motherPosteriors = GeneralUtils.normalizeFromLog10(motherLog10Posteriors);
         double[] fatherPosteriors = GeneralUtils.normalizeFromLog10(fatherLog10Posteriors);
@@ -175,96 +170,48 @@ public class FamilyLikelihoodsUtils {
         return builder.make();
     }
 
-    //marginalize over the configurationLikelihoodsMatrix and normalize to get the posteriors
-    private double[] getPosteriors(final FamilyMember recalcInd) {
-        double[] marginalOverChangedHR = new double[NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES];
-        double[] marginalOverChangedHET = new double[NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES];
-        double[] marginalOverChangedHV = new double[NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES];
-        final double[] recalcPosteriors = new double[NUM_CALLED_GENOTYPETYPES];
-
-        final GenotypeType[] calledTypes = {GenotypeType.HOM_REF, GenotypeType.HET, GenotypeType.HOM_VAR};
-        int counter = 0;
-
-        switch (recalcInd) {
-            case MOTHER:
-                for(final GenotypeType father : calledTypes) {
-                    for(final GenotypeType child : calledTypes) {
-                        GenotypeType mother;
-                        mother = GenotypeType.HOM_REF;
-                        marginalOverChangedHR[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        mother = GenotypeType.HET;
-                        marginalOverChangedHET[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        mother = GenotypeType.HOM_VAR;
-                        marginalOverChangedHV[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        counter++;
-                    }
-                }
-                break;
-            case FATHER:
-                for(final GenotypeType mother : calledTypes){
-                    for (final GenotypeType child : calledTypes){
-                        GenotypeType father;
-                        father = GenotypeType.HOM_REF;
-                        marginalOverChangedHR[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        father = GenotypeType.HET;
-                        marginalOverChangedHET[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        father = GenotypeType.HOM_VAR;
-                        marginalOverChangedHV[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        counter++;
-                    }
-                }
-                break;
-            case CHILD:
-                for(final GenotypeType mother : calledTypes){
-                    for (final GenotypeType father: calledTypes){
-                        GenotypeType child;
-                        child = GenotypeType.HOM_REF;
-                        marginalOverChangedHR[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        child = GenotypeType.HET;
-                        marginalOverChangedHET[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        child = GenotypeType.HOM_VAR;
-                        marginalOverChangedHV[counter] = configurationLikelihoodsMatrix[getLikelihoodMatrixIndex(mother, father, child)];
-                        counter++;
-                    }
-                }
-                break;
-            default:
-                throw new UserException(String.format("%d does not indicate a valid trio FamilyMember -- use 0 for mother, 1 for father, 2 for child",recalcInd.ordinal()));
-        }
-
-        recalcPosteriors[0] = MathUtils.log10sumLog10(marginalOverChangedHR,0);
-        recalcPosteriors[1] = MathUtils.log10sumLog10(marginalOverChangedHET,0);
-        recalcPosteriors[2] = MathUtils.log10sumLog10(marginalOverChangedHV,0);
-
-        return MathUtils.normalizeFromLog10(recalcPosteriors,true,true);
-    }
-
     public void initialize(final double DNprior, final Set<String> vcfSamples, final Map<String,Set<Sample>> families){
         this.deNovoPrior = DNprior;
-        Arrays.fill(configurationLikelihoodsMatrix,0);
-        buildMatrices();
+        log10TransmissionPriors = FamilyLikelihoodsKernel.toLog10TransmissionPriors(
+                FamilyLikelihoodsKernel.getTransmissionPriors(deNovoPrior, 1.0-10*deNovoPrior-deNovoPrior*deNovoPrior));
         trios = setTrios(vcfSamples, families);
     }
 
+    /**
+     * Evaluate the families at each site in parallel on this executor, or serially if it is null
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
     public GenotypesContext calculatePosteriorGLs(final VariantContext vc){
         final GenotypesContext genotypesContext = GenotypesContext.copy(vc.getGenotypes());
 
-        for (final Sample sample : trios) {
-            Genotype mother = vc.getGenotype(sample.getMaternalID());
-            Genotype father = vc.getGenotype(sample.getPaternalID());
-            Genotype child = vc.getGenotype(sample.getID());
+        //Update the families (in parallel blocks if there is an executor), then collect their genotypes in order
+        final List<ArrayList<Genotype>> familyGenotypes = new ArrayList<>(Collections.<ArrayList<Genotype>>nCopies(trios.size(), null));
+        FamilyLikelihoodsKernel.applyToFamilyBlocks(executor, trios.size(), (blockIndex, fromIndex, toIndex) -> {
+            final double[] configurationLikelihoods = new double[FamilyLikelihoodsKernel.NUM_CONFIGURATIONS];
+            for (int i = fromIndex; i < toIndex; i++) {
+                final Sample sample = trios.get(i);
+                Genotype mother = vc.getGenotype(sample.getMaternalID());
+                Genotype father = vc.getGenotype(sample.getPaternalID());
+                Genotype child = vc.getGenotype(sample.getID());
+
+                //Keep only trios and parent/child pairs
+                if(mother == null && father == null || child == null) {
+                    logger.warn("Null genotypes in variant: "+vc.toStringDecodeGenotypes());
+                    continue;
+                }
 
-            //Keep only trios and parent/child pairs
-            if(mother == null && father == null || child == null) {
-                logger.warn("Null genotypes in variant: "+vc.toStringDecodeGenotypes());
-                continue;
+                final ArrayList<Genotype> trioGenotypes = new ArrayList<>(3);
+                updateFamilyGenotypes(vc, mother, father, child, configurationLikelihoods, trioGenotypes);
+                familyGenotypes.set(i, trioGenotypes);
             }
+        });
 
-            final ArrayList<Genotype> trioGenotypes = new ArrayList<>(3);
-            updateFamilyGenotypes(vc, mother, father, child, trioGenotypes);
-
+        for (final ArrayList<Genotype> trioGenotypes : familyGenotypes) {
             //replace uses sample names to match genotypes, so order doesn't matter
-            if (!trioGenotypes.isEmpty()) {
+            if (trioGenotypes != null && !trioGenotypes.isEmpty()) {
                 genotypesContext.replace(trioGenotypes.get(0));
                 genotypesContext.replace(trioGenotypes.get(1));
                 genotypesContext.replace(trioGenotypes.get(2));
@@ -307,124 +254,34 @@ public class FamilyLikelihoodsUtils {
         return trios;
     }
 
-    //Create a lookup matrix to find the number of MVs for each family genotype combination
-    private void buildMatrices(){
-        for(final GenotypeType mother : GenotypeType.values()){
-            mvCountMatrix.put(mother,new EnumMap<GenotypeType,EnumMap<GenotypeType,Integer>>(GenotypeType.class));
-            for(final GenotypeType father : GenotypeType.values()){
-                mvCountMatrix.get(mother).put(father,new EnumMap<GenotypeType, Integer>(GenotypeType.class));
-                for(final GenotypeType child : GenotypeType.values()){
-                    mvCountMatrix.get(mother).get(father).put(child, getCombinationMVCount(mother, father, child));
-                }
-            }
-        }
-    }
-
-    //Returns the number of Mendelian Violations for a given genotype combination.
-    //If one of the parents' genotypes is missing, it will consider it as a parent/child pair
-    //If the child genotype or both parents genotypes are missing, 0 is returned.
-    private int getCombinationMVCount(GenotypeType mother, GenotypeType father, GenotypeType child){
-
-        //Child is no call => No MV
-        if(child == GenotypeType.NO_CALL || child == GenotypeType.UNAVAILABLE)
-            return 0;
-        //Add parents with genotypes for the evaluation
-        final ArrayList<GenotypeType> parents = new ArrayList<>();
-        if (!(mother == GenotypeType.NO_CALL || mother == GenotypeType.UNAVAILABLE))
-            parents.add(mother);
-        if (!(father == GenotypeType.NO_CALL || father == GenotypeType.UNAVAILABLE))
-            parents.add(father);
-
-        //Both parents no calls => No MV
-        if (parents.isEmpty())
-            return 0;
-
-        //If at least one parent had a genotype, then count the number of ref and alt alleles that can be passed
-        int parentsNumRefAlleles = 0;
-        int parentsNumAltAlleles = 0;
-
-        for(final GenotypeType parent : parents){
-            if(parent == GenotypeType.HOM_REF){
-                parentsNumRefAlleles++;
-            }
-            else if(parent == GenotypeType.HET){
-                parentsNumRefAlleles++;
-                parentsNumAltAlleles++;
-            }
-            else if(parent == GenotypeType.HOM_VAR){
-                parentsNumAltAlleles++;
-            }
-        }
-
-        //Case Child is HomRef
-        if(child == GenotypeType.HOM_REF){
-            if(parentsNumRefAlleles == parents.size())
-                return 0;
-            else return (parents.size()-parentsNumRefAlleles);
-        }
-
-        //Case child is HomVar
-        if(child == GenotypeType.HOM_VAR){
-            if(parentsNumAltAlleles == parents.size())
-                return 0;
-            else return parents.size()-parentsNumAltAlleles;
-        }
-
-        //Case child is Het
-        if(child == GenotypeType.HET && ((parentsNumRefAlleles > 0 && parentsNumAltAlleles > 0) || parents.size()<2))
-            return 0;
-
-        //MV
-        return 1;
-    }
-
     /**
      * Updates the genotypes of the given trio. If one of the parents is null, it is considered a parent/child pair.
      * @param vc: Input variant context
      * @param mother: Mother's genotype from vc input
      * @param father: Father's genotype from vc input
      * @param child: Child's genotype from vc input
+     * @param configurationLikelihoods: Scratch array of FamilyLikelihoodsKernel.NUM_CONFIGURATIONS log10 likelihoods
      * @param finalGenotypes: An ArrayList<Genotype> containing the updated genotypes
      */
-    private void updateFamilyGenotypes(VariantContext vc, Genotype mother, Genotype father, Genotype child, ArrayList<Genotype> finalGenotypes) {
+    private void updateFamilyGenotypes(VariantContext vc, Genotype mother, Genotype father, Genotype child, double[] configurationLikelihoods, ArrayList<Genotype> finalGenotypes) {
 
         //If one of the parents is not called, fill in with uninformative likelihoods
-        Map<GenotypeType,Double> motherLikelihoods = getLikelihoodsAsMapSafeNull(mother);
-        Map<GenotypeType,Double> fatherLikelihoods = getLikelihoodsAsMapSafeNull(father);
-        Map<GenotypeType,Double> childLikelihoods = getLikelihoodsAsMapSafeNull(child);
+        final double[] motherLikelihoods = getLikelihoodsSafeNull(mother);
+        final double[] fatherLikelihoods = getLikelihoodsSafeNull(father);
+        final double[] childLikelihoods = getLikelihoodsSafeNull(child);
 
         //if the child isn't called or neither parent is called, there's no extra inheritance information in that trio so return
         if (!hasCalledGT(child.getType()) || (!hasCalledGT(mother.getType()) && !hasCalledGT(father.getType())))
             return;
 
-        //Fill the configurationLikelihoodsMatrix for each genotype combination
-        int matInd;
-        int mvCount;
-        double jointLikelihood;
-        double mvCoeff;
-        double configurationLikelihood;
-        for(final Map.Entry<GenotypeType,Double> childGenotype :
-                childLikelihoods.entrySet()){
-            for(final Map.Entry<GenotypeType,Double> motherGenotype :
-                    motherLikelihoods.entrySet()){
-                for(final Map.Entry<GenotypeType,Double> fatherGenotype :
-                        fatherLikelihoods.entrySet()){
-                    mvCount = mvCountMatrix.get(motherGenotype.getKey()).get(fatherGenotype.getKey()).get(childGenotype.getKey());
-                    jointLikelihood = motherGenotype.getValue()+fatherGenotype.getValue()+childGenotype.getValue();
-                    mvCoeff = mvCount>0 ? Math.pow(deNovoPrior,mvCount) : (1.0-10*deNovoPrior-deNovoPrior*deNovoPrior);
-                    configurationLikelihood =  Math.log10(mvCoeff) + jointLikelihood;
-                    matInd = getLikelihoodMatrixIndex(motherGenotype.getKey(), fatherGenotype.getKey(), childGenotype.getKey());
-                    configurationLikelihoodsMatrix[matInd] = configurationLikelihood;
-                }
-            }
-        }
+        //Fill the configurationLikelihoods for each genotype combination
+        FamilyLikelihoodsKernel.fillConfigurationLog10Likelihoods(log10TransmissionPriors, motherLikelihoods, fatherLikelihoods, childLikelihoods, configurationLikelihoods);
 
-        getUpdatedGenotypes(vc, mother, father, child, finalGenotypes);
+        getUpdatedGenotypes(vc, mother, father, child, configurationLikelihoods, finalGenotypes);
     }
 
-    //Get a Map of genotype (log10)likelihoods
-    private EnumMap<GenotypeType,Double> getLikelihoodsAsMapSafeNull(Genotype genotype){
-        final EnumMap<GenotypeType,Double> likelihoodsMap = new EnumMap<>(GenotypeType.class);
+    //Get the genotype (log10)likelihoods, indexed by called genotype
+    private double[] getLikelihoodsSafeNull(Genotype genotype){
         double[] likelihoods;
 
         if (genotype != null && hasCalledGT(genotype.getType()) && genotype.hasExtendedAttribute(GATKVCFConstants.PHRED_SCALED_POSTERIORS_KEY)) {
@@ -458,32 +315,7 @@ public class FamilyLikelihoodsUtils {
                     " since only the diploid case is supported when applying family priors.");
         }
 
-        likelihoodsMap.put(GenotypeType.HOM_REF,likelihoods[genotypeTypeToValue(GenotypeType.HOM_REF)]);
-        likelihoodsMap.put(GenotypeType.HET,likelihoods[genotypeTypeToValue(GenotypeType.HET)]);
-        likelihoodsMap.put(GenotypeType.HOM_VAR, likelihoods[genotypeTypeToValue(GenotypeType.HOM_VAR)]);
-        return likelihoodsMap;
-    }
-
-    private int getLikelihoodMatrixIndex(GenotypeType mother, GenotypeType father, GenotypeType child){
-        int childInd = genotypeTypeToValue(child);
-        int motherInd;
-        int fatherInd;
-        final int INVALID = -1;
-        motherInd = genotypeTypeToValue(mother);
-        fatherInd = genotypeTypeToValue(father);
-
-        if (childInd == INVALID || motherInd == INVALID || fatherInd == INVALID) //any of the genotypes are NO_CALL, UNAVAILABLE or MIXED
-            return INVALID;
-
-        //index into array playing the part of a 3x3x3 matrix (where 3=NUM_CALLED_GENOTYPETYPES)
-        return motherInd*NUM_CALLED_GENOTYPETYPES*NUM_CALLED_GENOTYPETYPES + fatherInd*NUM_CALLED_GENOTYPETYPES + childInd;
-    }
-
-    private int genotypeTypeToValue(GenotypeType input){
-        if (input == GenotypeType.HOM_REF) return 0;
-        if (input == GenotypeType.HET) return 1;
-        if (input == GenotypeType.HOM_VAR) return 2;
-        return -1;
+        return likelihoods;
     }
 
     //this excludes mixed genotypes, whereas the htsjdk Genotype.isCalled() will return true if the GenotypeType is mixed
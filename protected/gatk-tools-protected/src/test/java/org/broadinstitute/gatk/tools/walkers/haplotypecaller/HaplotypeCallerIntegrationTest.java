@@ -217,6 +217,17 @@ public class HaplotypeCallerIntegrationTest extends WalkerTest {
                 "5a568aa762adc17ddc192b3273b6085a");
     }
 
+    @Test
+    public void testHaplotypeCallerGGAOutsideActivityIndex() throws IOException {
+        // the given alleles still have to be activated, and genotyped, when -activityIndex doesn't cover them
+        final String base = String.format("-T HaplotypeCaller --disableDithering --pcr_indel_model NONE -R %s -I %s", REF, CEUTRIO_BAM) +
+                " --max_alternate_alleles 3 -gt_mode GENOTYPE_GIVEN_ALLELES -allelesTrigger -alleles " + validationDataLocation + "combined.phase1.chr20.raw.indels.sites.vcf" +
+                " -isr INTERSECTION -L 20:10080000-10100000 --no_cmdline_in_header -o %s";
+        final File expected = executeTest("testHaplotypeCallerGGAOutsideActivityIndex: no index", new WalkerTestSpec(base, Arrays.asList(""))).getFirst().get(0);
+        final File actual = executeTest("testHaplotypeCallerGGAOutsideActivityIndex: index", new WalkerTestSpec(base + " -activityIndex 20:1-100", Arrays.asList(""))).getFirst().get(0);
+        Assert.assertEquals(FileUtils.readFileToString(actual), FileUtils.readFileToString(expected));
+    }
+
     @Test
     public void testHaplotypeCallerMultiSampleGGATetraploid() throws IOException {
         HCTest(CEUTRIO_BAM, "--max_alternate_alleles 3 -gt_mode GENOTYPE_GIVEN_ALLELES -ploidy 4 -alleles " + validationDataLocation + "combined.phase1.chr20.raw.indels.sites.vcf -isr INTERSECTION -L 20:10080000-10100000",
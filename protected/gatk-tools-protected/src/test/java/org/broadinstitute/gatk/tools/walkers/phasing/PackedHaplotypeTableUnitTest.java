@@ -51,62 +51,62 @@
 
 package org.broadinstitute.gatk.tools.walkers.phasing;
 
-import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
 
-import java.util.Iterator;
+import java.util.Arrays;
 
-/*
-* CardinalityCounter object allows user to iterate over all assignment of arbitrary-cardinality variables.
- */
-class CardinalityCounter implements Iterator<int[]>, Iterable<int[]> {
-    private int[] cards;
-    private int[] valList;
-    private boolean hasNext;
+public class PackedHaplotypeTableUnitTest extends BaseTest {
 
-    public CardinalityCounter(int[] cards) {
-        this.cards = cards;
-        this.valList = new int[cards.length];
-        for (int i = 0; i < cards.length; i++) {
-            if (this.cards[i] <= 0)
-                throw new IllegalArgumentException("CANNOT have zero cardinalities!");
-            this.valList[i] = 0;
-        }
-        this.hasNext = true;
+    private static Genotype het(String top, String bottom) {
+        return new GenotypeBuilder("sample", Arrays.asList(Allele.create(top, true), Allele.create(bottom))).make();
     }
 
-    public boolean hasNext() {
-        return hasNext;
+    private static PhasingRead read(String bases) {
+        PhasingRead rd = new PhasingRead(bases.length(), 60);
+        for (int i = 0; i < bases.length(); i++) {
+            if (bases.charAt(i) != '_')
+                rd.updateBaseAndQuality(i, (byte) bases.charAt(i), (byte) 30);
+        }
+        return rd;
     }
 
-    public int[] next() {
-        if (!hasNext())
-            throw new ReviewedGATKException("CANNOT iterate past end!");
+    private final Genotype[] hetGenotypes = {het("A", "C"), het("G", "T"), het("C", "A")};
 
-        // Copy the assignment to be returned:
-        int[] nextList = new int[valList.length];
-        for (int i = 0; i < valList.length; i++)
-            nextList[i] = valList[i];
+    @Test
+    public void testKeepsOneHaplotypePerPhasing() {
+        PackedHaplotypeTable table = new PackedHaplotypeTable(hetGenotypes, 0, 2);
+        Assert.assertEquals(table.size(), 4);
+    }
 
-        // Find the assignment after this one:
-        hasNext = false;
-        int i = cards.length - 1;
-        for (; i >= 0; i--) {
-            if (valList[i] < (cards[i] - 1)) {
-                valList[i]++;
-                hasNext = true;
-                break;
-            }
-            valList[i] = 0;
+    @Test
+    public void testPhasesAcrossIntermediateSite() {
+        // The reads only connect sites 0 and 2 through site 1:
+        PackedHaplotypeTable table = new PackedHaplotypeTable(hetGenotypes, 0, 2);
+        for (int i = 0; i < 5; i++) {
+            table.integrateReadScore(read("AG_"));
+            table.integrateReadScore(read("_TC"));
+            table.integrateReadScore(read("CT_"));
         }
 
-        return nextList;
+        PackedHaplotypeTable.MarginalPhase phase = table.marginalize();
+        Assert.assertTrue(phase.isOutOfPhase());
+        Assert.assertEquals(phase.getRepresentative().toString(), "AA");
+        Assert.assertTrue(phase.getPhaseQuality() > 100.0);
+        Assert.assertEquals(phase.getPosteriorProb().getValue(), 1.0, 1e-6);
     }
 
-    public void remove() {
-        throw new RuntimeException("Cannot remove from CardinalityCounter!");
-    }
+    @Test
+    public void testUninformativeReadsGiveNoPhase() {
+        PackedHaplotypeTable table = new PackedHaplotypeTable(hetGenotypes, 1, 2);
+        table.integrateReadScore(read("A__"));
+        table.integrateReadScore(read("_G_"));
 
-    public Iterator<int[]> iterator() {
-        return this;
+        PackedHaplotypeTable.MarginalPhase phase = table.marginalize();
+        Assert.assertEquals(phase.getPhaseQuality(), -10.0 * Math.log10(0.5), 1e-6);
     }
 }
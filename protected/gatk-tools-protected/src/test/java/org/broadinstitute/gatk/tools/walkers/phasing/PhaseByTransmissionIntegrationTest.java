@@ -55,13 +55,18 @@ import htsjdk.tribble.readers.LineIterator;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
 import htsjdk.variant.vcf.VCFCodec;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.tools.walkers.variantutils.FamilyLikelihoodsKernel;
+import org.broadinstitute.gatk.utils.Utils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.List;
 
 public class PhaseByTransmissionIntegrationTest extends WalkerTest {
     private static String phaseByTransmissionTestDataRoot = privateTestDir + "PhaseByTransmission/";
@@ -253,4 +258,63 @@ public class PhaseByTransmissionIntegrationTest extends WalkerTest {
         Assert.assertTrue(numOriginalRecords > 0);
         Assert.assertEquals(numNewRecords, numOriginalRecords);
     }
+
+    //Test that more than one thread phases the families the same, including the equally likely combinations picked at random,
+    //with more families than are phased in a single block
+    @Test
+    public void testFamilyThreadsMatchSerial() throws IOException {
+        final File pedFile = createTempFile("testFamilyThreadsMatchSerial", ".ped");
+        final File vcfFile = createTempFile("testFamilyThreadsMatchSerial", ".vcf");
+        writeFamilies(2 * FamilyLikelihoodsKernel.FAMILY_BLOCK_SIZE + 1, pedFile, vcfFile);
+
+        final String cmd = buildCommandLine(
+                "-T PhaseByTransmission",
+                "--no_cmdline_in_header",
+                "-R " + publicTestDir + "exampleFASTA.fasta",
+                "--variant " + vcfFile.getAbsolutePath(),
+                "-ped " + pedFile.getAbsolutePath(),
+                "-mvf %s",
+                "-o %s"
+        );
+        final List<File> serial = executeTest("testFamilyThreadsMatchSerial: serial", new WalkerTestSpec(cmd, 2, Arrays.asList("", ""))).getFirst();
+        Utils.resetRandomGenerator(); // as for a separate run
+        final List<File> parallel = executeTest("testFamilyThreadsMatchSerial: -familyThreads 4", new WalkerTestSpec(cmd + " -familyThreads 4", 2, Arrays.asList("", ""))).getFirst();
+        for ( int i = 0; i < serial.size(); i++ )
+            Assert.assertEquals(FileUtils.readFileToString(parallel.get(i)), FileUtils.readFileToString(serial.get(i)));
+    }
+
+    //Writes trios whose mother, father and child genotypes cycle through these, the first with 4 equally likely combinations
+    private static final String[][] TRIO_GENOTYPES = {
+            {"0/0:0,300,300", "0/1:0,0,0", "0/1:0,0,300"},
+            {"0/0:0,30,300", "0/0:0,30,300", "1/1:300,30,0"},
+            {"0/1:30,0,300", "0/1:30,0,300", "0/1:30,0,300"},
+            {"0/0:0,0,0", "1/1:0,0,0", "0/0:0,0,0"},
+            {"0/1:20,0,20", "1/1:300,30,0", "0/0:0,20,200"}
+    };
+
+    private static void writeFamilies(final int numFamilies, final File pedFile, final File vcfFile) throws IOException {
+        final PrintWriter ped = new PrintWriter(pedFile);
+        final PrintWriter vcf = new PrintWriter(vcfFile);
+        vcf.println("##fileformat=VCFv4.1");
+        vcf.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        vcf.println("##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype Quality\">");
+        vcf.println("##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Normalized, Phred-scaled likelihoods for genotypes\">");
+        vcf.println("##contig=<ID=chr1,length=100000>");
+        vcf.print("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+        for ( int family = 0; family < numFamilies; family++ ) {
+            ped.println(String.format("FAM%d\tMOTHER%d\t0\t0\t2\t0", family, family));
+            ped.println(String.format("FAM%d\tFATHER%d\t0\t0\t1\t0", family, family));
+            ped.println(String.format("FAM%d\tCHILD%d\tFATHER%d\tMOTHER%d\t1\t0", family, family, family, family));
+            vcf.print(String.format("\tMOTHER%d\tFATHER%d\tCHILD%d", family, family, family));
+        }
+        vcf.println();
+        for ( int site = 0; site < 10; site++ ) {
+            vcf.print(String.format("chr1\t%d\t.\tA\tC\t100\tPASS\t.\tGT:PL", 1000 + 10 * site));
+            for ( int family = 0; family < numFamilies; family++ )
+                vcf.print("\t" + String.join("\t", TRIO_GENOTYPES[(family + site) % TRIO_GENOTYPES.length]));
+            vcf.println();
+        }
+        ped.close();
+        vcf.close();
+    }
 }
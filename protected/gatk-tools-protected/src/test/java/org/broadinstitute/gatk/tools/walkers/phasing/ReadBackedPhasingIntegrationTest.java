@@ -51,9 +51,13 @@
 
 package org.broadinstitute.gatk.tools.walkers.phasing;
 
+import org.apache.commons.io.FileUtils;
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 public class ReadBackedPhasingIntegrationTest extends WalkerTest {
@@ -187,4 +191,13 @@ public class ReadBackedPhasingIntegrationTest extends WalkerTest {
                 Arrays.asList("8a3cd58dd6b1d04ab8c699f4e328dff4"));
         executeTest("Don't merge symbolic SPAN_DEL (*) alleles (into the nonexistent ** MNP).", spec);
     }
+
+    @Test
+    public void testPhasingThreadsMatchSerial() throws IOException {
+        final String cmd = baseTestString(hg18Reference, "phasing_test_chr20_332341_1332503.bam", "phasing_test_chr20_332341_1332503.vcf", 1000, 7, 10)
+                + " -L chr20:332341-482503 -enableMergeToMNP -maxDistMNP 500";
+        final File serial = executeTest("testPhasingThreadsMatchSerial: serial", new WalkerTestSpec(cmd, 1, Arrays.asList(""))).getFirst().get(0);
+        final File parallel = executeTest("testPhasingThreadsMatchSerial: -phasingThreads 4", new WalkerTestSpec(cmd + " -phasingThreads 4", 1, Arrays.asList(""))).getFirst().get(0);
+        Assert.assertEquals(FileUtils.readFileToString(parallel), FileUtils.readFileToString(serial));
+    }
 }
@@ -58,12 +58,19 @@ import org.broadinstitute.gatk.utils.BaseTest;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.tools.walkers.varianteval.evaluators.CompOverlap;
+import org.broadinstitute.gatk.tools.walkers.varianteval.evaluators.CountVariants;
+import org.broadinstitute.gatk.tools.walkers.varianteval.evaluators.TiTvVariantEvaluator;
 import org.broadinstitute.gatk.tools.walkers.varianteval.evaluators.VariantEvaluator;
 import org.broadinstitute.gatk.tools.walkers.varianteval.stratifications.VariantStratifier;
 import org.broadinstitute.gatk.tools.walkers.varianteval.stratifications.manager.StratificationManager;
+import org.broadinstitute.gatk.tools.walkers.varianteval.util.DataPoint;
 import org.broadinstitute.gatk.tools.walkers.varianteval.util.EvaluationContext;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import org.testng.Assert;
@@ -71,6 +78,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.*;
+import java.lang.reflect.Field;
 import java.util.*;
 
 
@@ -278,6 +287,171 @@ public class VariantEvalWalkerUnitTest extends BaseTest {
         }
     }
 
+    /**
+     * Checks that evaluating the integers from several threads into per-thread evaluation contexts, and
+     * combining them at the end, gives the same counts as evaluating them all into the shared contexts
+     */
+    @Test(dataProvider = "StratifiedEvalTestProvider", dependsOnMethods = {"testBasicOperation"})
+    public void testPerThreadContexts(final StratifiedEvalTestProvider cfg) throws InterruptedException {
+        VEwalker.createStratificationStates(cfg.stratificationObjects, cfg.evaluationObjects);
+        VEwalker.usePerThreadContexts = true;
+
+        final int nThreads = 3;
+        final List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < nThreads; t++ ) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final RefMetaDataTracker tracker = new RefMetaDataTracker();
+                    for ( int i = 1 + thread; i <= cfg.maxI; i += nThreads ) {
+                        for ( final EvaluationContext nec : VEwalker.getEvaluationContexts(tracker, null, eval, String.valueOf(i), null, null, null, null) )
+                            nec.apply(tracker, null, null, null, eval);
+                    }
+                }
+            }));
+        }
+        for ( final Thread thread : threads ) thread.start();
+        for ( final Thread thread : threads ) thread.join();
+
+        VEwalker.combinePerThreadContexts();
+        checkStratificationCountsAreExpected(VEwalker.stratManager, cfg.expectedCounts);
+    }
+
+    /**
+     * Checks that a saved evaluation state can be merged, possibly several times, into a new run with the same strats
+     */
+    @Test(dataProvider = "StratifiedEvalTestProvider", dependsOnMethods = {"testBasicOperation"})
+    public void testSaveAndMergeState(final StratifiedEvalTestProvider cfg) {
+        initialize(cfg);
+        final File state = createTempFile("variantEvalState", ".state");
+        VariantEvalStateFile.write(state, VEwalker.stratManager, 17);
+
+        final VariantEval merged = new VariantEval();
+        merged.createStratificationStates(cfg.stratificationObjects, cfg.evaluationObjects);
+        Assert.assertEquals(VariantEvalStateFile.merge(state, merged.stratManager), 17);
+        Assert.assertEquals(VariantEvalStateFile.merge(state, merged.stratManager), 17);
+
+        final List<Integer> expectedCounts = new ArrayList<Integer>();
+        for ( final int count : cfg.expectedCounts )
+            expectedCounts.add(2 * count);
+        checkStratificationCountsAreExpected(merged.stratManager, expectedCounts);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testMergeStateWithOtherStrats() {
+        VEwalker.createStratificationStates(Arrays.<VariantStratifier>asList(new IntegerStratifier(Arrays.asList(1, 2))), Collections.<Class<? extends VariantEvaluator>>singleton(CounterEval.class));
+        final File state = createTempFile("variantEvalState", ".state");
+        VariantEvalStateFile.write(state, VEwalker.stratManager, 0);
+
+        final VariantEval other = new VariantEval();
+        other.createStratificationStates(Arrays.<VariantStratifier>asList(new IntegerStratifier(Arrays.asList(1, 3))), Collections.<Class<? extends VariantEvaluator>>singleton(CounterEval.class));
+        VariantEvalStateFile.merge(state, other.stratManager);
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // Combining and saving the state of the standard evaluators
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * Eval and comp sites for the standard evaluators: SNPs (transitions and transversions, some with an ancestral
+     * allele), insertions, deletions and monomorphic sites, with all kinds of genotypes, some at (filtered) comp sites
+     */
+    private List<VariantContext[]> makeEvalAndCompSites() {
+        final Random random = new Random(42);
+        final Allele refA = Allele.create("A", true), refAT = Allele.create("AT", true);
+        final Allele altG = Allele.create("G"), altC = Allele.create("C"), altA = Allele.create("A"), altAT = Allele.create("AT"), altT = Allele.create("T");
+        final List<List<Allele>> allAlleles = Arrays.asList(Arrays.asList(refA, altG), Arrays.asList(refA, altC),
+                Arrays.asList(refA, altAT), Arrays.asList(refAT, altA));
+
+        final List<VariantContext[]> sites = new ArrayList<VariantContext[]>();
+        for ( int i = 0; i < 200; i++ ) {
+            final List<Allele> alleles = allAlleles.get(random.nextInt(allAlleles.size()));
+            final List<Genotype> genotypes = new ArrayList<Genotype>();
+            for ( int s = 0; s < 3; s++ ) {
+                final int nAlt = random.nextInt(4);
+                final List<Allele> gt = nAlt == 3 ? Arrays.asList(Allele.NO_CALL, Allele.NO_CALL) : Arrays.asList(nAlt > 1 ? alleles.get(1) : alleles.get(0), nAlt > 0 ? alleles.get(1) : alleles.get(0));
+                genotypes.add(GenotypeBuilder.create("sample" + s, gt));
+            }
+
+            final VariantContextBuilder builder = new VariantContextBuilder("eval", "chr1", i + 1, i + alleles.get(0).length(), alleles).genotypes(genotypes);
+            if ( random.nextBoolean() )
+                builder.attribute("ANCESTRALALLELE", random.nextBoolean() ? "A" : "G");
+            final VariantContext evalSite = builder.make();
+
+            VariantContext compSite = null;
+            if ( random.nextBoolean() ) {
+                final VariantContextBuilder compBuilder = new VariantContextBuilder("comp", "chr1", i + 1, i + alleles.get(0).length(), random.nextBoolean() ? alleles : Arrays.asList(alleles.get(0), altT));
+                if ( random.nextInt(4) == 0 )
+                    compBuilder.filter("LowQual");
+                compSite = compBuilder.make();
+            }
+
+            sites.add(new VariantContext[]{evalSite, compSite});
+        }
+        return sites;
+    }
+
+    private void updateEvaluator(final VariantEvaluator evaluator, final List<VariantContext[]> sites) {
+        for ( final VariantContext[] site : sites ) {
+            if ( evaluator.getComparisonOrder() == 1 )
+                evaluator.update1(site[0], null, null, null);
+            else
+                evaluator.update2(site[0], site[1], null, null, null);
+        }
+    }
+
+    private VariantEvaluator serializationRoundTrip(final VariantEvaluator evaluator) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(evaluator);
+        out.close();
+        return (VariantEvaluator) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    @DataProvider(name = "StandardEvaluators")
+    public Object[][] makeStandardEvaluators() {
+        return new Object[][]{{CountVariants.class}, {TiTvVariantEvaluator.class}, {CompOverlap.class}};
+    }
+
+    /**
+     * Checks that evaluating sites in two parts, saving and restoring the state of one part, and combining the two
+     * gives the same results as evaluating all of the sites at once
+     */
+    @Test(dataProvider = "StandardEvaluators")
+    public void testCombineAndSerializeStandardEvaluator(final Class<? extends VariantEvaluator> evaluatorClass) throws Exception {
+        final List<VariantContext[]> sites = makeEvalAndCompSites();
+
+        final VariantEvaluator all = evaluatorClass.newInstance();
+        all.initialize(VEwalker);
+        updateEvaluator(all, sites);
+
+        final VariantEvaluator first = evaluatorClass.newInstance();
+        first.initialize(VEwalker);
+        updateEvaluator(first, sites.subList(0, 77));
+        final VariantEvaluator second = evaluatorClass.newInstance();
+        second.initialize(VEwalker);
+        updateEvaluator(second, sites.subList(77, sites.size()));
+
+        Assert.assertTrue(first.supportsCombine());
+        final VariantEvaluator restored = serializationRoundTrip(second);
+        Assert.assertNull(restored.getWalker(), "The walker shouldn't be part of the saved state");
+        first.combine(restored);
+
+        all.finalizeEvaluation();
+        first.finalizeEvaluation();
+        int nDataPoints = 0;
+        for ( final Field field : evaluatorClass.getFields() ) {
+            if ( field.isAnnotationPresent(DataPoint.class) ) {
+                Assert.assertEquals(field.get(first), field.get(all), "Combined evaluator differs in " + field.getName());
+                nDataPoints++;
+            }
+        }
+        Assert.assertTrue(nDataPoints > 0);
+    }
+
 //    /**
 //     * A derived test on testBasicOperation that checks that combining stratifications
 //     * works as expected. We look into cfg, and if there are multiple states we create
@@ -53,6 +53,7 @@ package org.broadinstitute.gatk.tools.walkers.variantutils;
 
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import org.broadinstitute.gatk.engine.SampleUtils;
+import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
@@ -61,10 +62,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.StringBufferInputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * test out pieces of the combine variants code
@@ -220,4 +218,43 @@ public class CombineVariantsUnitTest {
         Set<VCFHeaderLine> lines = VCFUtils.smartMergeHeaders(headers, false);
         Assert.assertEquals(lines.size(), VCF4headerStringCount);
     }
+
+    private static VariantContext makeVC(final String source, final String ... samples) {
+        final List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("C"));
+        final List<Genotype> genotypes = new ArrayList<Genotype>();
+        for ( final String sample : samples )
+            genotypes.add(GenotypeBuilder.create(sample, alleles));
+        return new VariantContextBuilder(source, "1", 10, 10, alleles).genotypes(genotypes).make();
+    }
+
+    private static IndexedGenotypeMerger makeGenotypeMerger() {
+        final Map<String, VCFHeader> headers = new HashMap<String, VCFHeader>();
+        headers.put("a", new VCFHeader(Collections.<VCFHeaderLine>emptySet(), Arrays.asList("s2", "s0")));
+        headers.put("b", new VCFHeader(Collections.<VCFHeaderLine>emptySet(), Arrays.asList("s1")));
+        return new IndexedGenotypeMerger(headers, Arrays.asList("s0", "s1", "s2"));
+    }
+
+    @Test
+    public void testIndexedGenotypeMerger() {
+        final VariantContext a = makeVC("a", "s2", "s0");
+        final VariantContext b = makeVC("b", "s1");
+        final GenotypesContext merged = makeGenotypeMerger().merge(Arrays.asList(b, a));
+
+        Assert.assertEquals(merged.size(), 3);
+        Assert.assertSame(merged.get(0), a.getGenotype("s0"));
+        Assert.assertSame(merged.get(1), b.getGenotype("s1"));
+        Assert.assertSame(merged.get(2), a.getGenotype("s2"));
+        Assert.assertEquals(makeGenotypeMerger().merge(Arrays.asList(a)).getSampleNamesOrderedByName(), Arrays.asList("s0", "s2"));
+    }
+
+    @Test
+    public void testIndexedGenotypeMergerFallsBack() {
+        final IndexedGenotypeMerger merger = makeGenotypeMerger();
+        // genotypes not in header order
+        Assert.assertNull(merger.merge(Arrays.asList(makeVC("a", "s0", "s2"))));
+        // the same input twice at the site
+        Assert.assertNull(merger.merge(Arrays.asList(makeVC("b", "s1"), makeVC("b", "s1"))));
+        // an input without a header
+        Assert.assertNull(merger.merge(Arrays.asList(makeVC("c", "s1"))));
+    }
 }
@@ -53,8 +53,12 @@ package org.broadinstitute.gatk.tools.walkers.variantutils;
 
 import org.broadinstitute.gatk.engine.walkers.WalkerTest;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 public class VariantsToTableIntegrationTest extends WalkerTest {
@@ -114,6 +118,18 @@ public class VariantsToTableIntegrationTest extends WalkerTest {
         executeTest("testGenotypeFields", spec);
     }
 
+    @Test(enabled = true)
+    public void testGenotypeCountsInParallel() throws IOException {
+        final String cmd = "-R " + b36KGReference +
+                " --variant " + privateTestDir + "vcfexample2.vcf" +
+                " -T VariantsToTable" +
+                " -F CHROM -F POS -F HET -F HOM-REF -F HOM-VAR -F NO-CALL -F VAR -F NCALLED" +
+                " -o %s";
+        final File serial = executeTest("testGenotypeCountsInParallel: serial", new WalkerTest.WalkerTestSpec(cmd, 1, Arrays.asList(""))).getFirst().get(0);
+        final File parallel = executeTest("testGenotypeCountsInParallel: -nct 4", new WalkerTest.WalkerTestSpec(cmd + " -nct 4", 1, Arrays.asList(""))).getFirst().get(0);
+        Assert.assertEquals(FileUtils.readFileToString(parallel), FileUtils.readFileToString(serial));
+    }
+
     @Test(enabled = true)
     public void testUnfilteredGenotypeField() {
         WalkerTest.WalkerTestSpec spec = new WalkerTest.WalkerTestSpec(
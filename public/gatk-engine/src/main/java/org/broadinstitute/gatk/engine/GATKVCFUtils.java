@@ -26,6 +26,7 @@
 package org.broadinstitute.gatk.engine;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.IOUtil;
 import htsjdk.tribble.index.*;
 import htsjdk.tribble.index.interval.IntervalTreeIndex;
 import htsjdk.tribble.index.linear.LinearIndex;
@@ -41,6 +42,7 @@ import org.broadinstitute.gatk.utils.commandline.ArgumentTypeDescriptor;
 import org.broadinstitute.gatk.utils.commandline.RodBinding;
 import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
 import org.broadinstitute.gatk.utils.collections.Pair;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.*;
 import org.broadinstitute.gatk.utils.variant.GATKVCFIndexType;
@@ -300,6 +302,27 @@ public class GATKVCFUtils {
         }
     }
 
+    /**
+     * Read the version of a VCF file from its ##fileformat line
+     *
+     * The header that VCFCodec reads doesn't tell the version, since its ##fileformat line always has the latest one.
+     *
+     * @param source the VCF file to read, which may be gzipped
+     * @return the version of source
+     * @throws java.io.IOException
+     */
+    public static VCFHeaderVersion readVCFHeaderVersion(final File source) throws IOException {
+        final BufferedReader reader = IOUtil.openFileForBufferedReading(source);
+        try {
+            final String versionLine = reader.readLine();
+            if ( versionLine == null )
+                throw new UserException.MalformedVCFHeader("the file is empty");
+            return VCFHeaderVersion.getHeaderVersion(versionLine); // the ##fileformat line must be the first one
+        } finally {
+            reader.close();
+        }
+    }
+
     /**
      * Check if the two indices are equivalent
      *
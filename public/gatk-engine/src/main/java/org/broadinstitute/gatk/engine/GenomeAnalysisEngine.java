@@ -1058,9 +1058,10 @@ public class GenomeAnalysisEngine {
                                                                             final GenomeLocParser genomeLocParser,
                                                                             final ValidationExclusion.TYPE validationExclusionType,
                                                                             final Map<String, String> sampleRenameMap) {
+        final Set<String> requiredGenotypeFields = walker instanceof RodWalker ? ((RodWalker)walker).getRequiredGenotypeFields() : null;
         final RMDTrackBuilder builder = new RMDTrackBuilder(sequenceDictionary,genomeLocParser, validationExclusionType,
                                                             getArguments().disableAutoIndexCreationAndLockingWhenReadingRods,
-                                                            sampleRenameMap);
+                                                            sampleRenameMap, requiredGenotypeFields);
 
         final List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
         for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
@@ -34,6 +34,7 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.interval.GenomeLocIntervalIndex;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.sam.SAMReaderID;
@@ -51,6 +52,7 @@ public class BAMScheduler implements Iterator<FilePointer> {
     private FilePointer nextFilePointer = null;
 
     private GenomeLocSortedSet loci;
+    private GenomeLocIntervalIndex lociIndex;
     private PeekableIterator<GenomeLoc> locusIterator;
     private GenomeLoc currentLocus;
     private IntervalMergingRule intervalMergingRule;
@@ -98,6 +100,8 @@ public class BAMScheduler implements Iterator<FilePointer> {
     private void populateFilteredIntervalList(final GenomeLocSortedSet loci) {
         this.loci = loci;
         if(!indexFiles.isEmpty()) {
+            validateLociContigs(loci);
+            lociIndex = new GenomeLocIntervalIndex(loci);
             // If index data is available, start up the iterator.
             locusIterator = new PeekableIterator<GenomeLoc>(loci.iterator());
             if(locusIterator.hasNext())
@@ -113,6 +117,21 @@ public class BAMScheduler implements Iterator<FilePointer> {
         }
     }
 
+    /**
+     * Make sure that the BAM header has the contig of each of the loci, checking each contig once.
+     * @param loci The list of locations to search and iterate over.
+     */
+    private void validateLociContigs(final GenomeLocSortedSet loci) {
+        String lastContig = null;
+        for(GenomeLoc locus: loci) {
+            if (GenomeLoc.isUnmapped(locus) || locus.getContig().equals(lastContig))
+                continue;
+            if (dataSource.getHeader().getSequence(locus.getContig()) == null)
+                throw new ReviewedGATKException("BAM file(s) do not have the contig: " + locus.getContig() + ". You are probably using a different reference than the one this file was aligned with");
+            lastContig = locus.getContig();
+        }
+    }
+
     /**
      * The consumer has provided null, meaning to iterate over all available data.  Create a file pointer stretching
      * from just before the start of the region to the end of the region.
@@ -283,15 +302,9 @@ public class BAMScheduler implements Iterator<FilePointer> {
                 bamScheduleIterator.close();
             lastReferenceSequenceLoaded = currentContigIndex;
 
-            // Naive algorithm: find all elements in current contig for proper schedule creation.
-            List<GenomeLoc> lociInContig = new LinkedList<GenomeLoc>();
-            for(GenomeLoc locus: loci) {
-                if (!GenomeLoc.isUnmapped(locus) && dataSource.getHeader().getSequence(locus.getContig()) == null)
-                    throw new ReviewedGATKException("BAM file(s) do not have the contig: " + locus.getContig() + ". You are probably using a different reference than the one this file was aligned with");
-
-                if (!GenomeLoc.isUnmapped(locus) && dataSource.getHeader().getSequence(locus.getContig()).getSequenceIndex() == lastReferenceSequenceLoaded)
-                    lociInContig.add(locus);
-            }
+            // Find all elements in current contig for proper schedule creation.  The BAM and the loci must agree on
+            // the contig name, and since currentLocus and the loci share a parser, they then agree on its index too.
+            final List<GenomeLoc> lociInContig = lociIndex.getLocsOnContig(currentLocus.getContigIndex());
 
             bamScheduleIterator = new PeekableIterator<BAMScheduleEntry>(new BAMSchedule(dataSource,lociInContig));
         }
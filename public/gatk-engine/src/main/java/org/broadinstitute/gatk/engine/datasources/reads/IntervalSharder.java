@@ -30,7 +30,9 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Handles the process of aggregating BAM intervals into individual shards.
@@ -77,16 +79,22 @@ public class IntervalSharder implements Iterator<FilePointer> {
      */
     public FilePointer next() {
         FilePointer current = wrappedIterator.next();
+        final List<FilePointer> toCombine = new ArrayList<FilePointer>();
+        toCombine.add(current);
 
+        // current.minus(next) == 0 means that next's file spans cover current's, so the union of everything accumulated
+        // so far spans exactly the same data as the last file pointer added, and it's enough to compare against that one.
         while ( wrappedIterator.hasNext() &&
                 current.isRegionUnmapped == wrappedIterator.peek().isRegionUnmapped &&
                 (current.getContigIndex() == wrappedIterator.peek().getContigIndex() || current.isRegionUnmapped) &&
                 current.minus(wrappedIterator.peek()) == 0 ) {
 
-            current = current.combine(parser,wrappedIterator.next());
+            current = wrappedIterator.next();
+            toCombine.add(current);
         }
 
-        return current;
+        // union all of the file pointers at once, rather than re-sorting and re-merging the growing intervals pairwise
+        return toCombine.size() == 1 ? current : FilePointer.union(toCombine, parser);
     }
 
     public void remove() { throw new UnsupportedOperationException("Unable to remove from an interval sharder."); }
@@ -25,11 +25,21 @@
 
 package org.broadinstitute.gatk.engine.io.storage;
 
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.PositionalOutputStream;
 import org.apache.log4j.Logger;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.DynamicIndexCreator;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexCreator;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
 import org.broadinstitute.gatk.engine.io.stubs.VariantContextWriterStub;
 import org.broadinstitute.gatk.utils.refdata.tracks.FeatureManager;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
@@ -39,9 +49,12 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.Options;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
@@ -65,6 +78,15 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     protected final VariantContextWriter writer;
     boolean closed = false;
 
+    /**
+     * When the output file is VCF text (plain or block-compressed), the writer writes the records into stream, which
+     * this storage owns and indexes itself.  The temporary VCF text of -nt shards can then be appended to it line by
+     * line in mergeInto, without decoding and re-encoding the records.  Null for any other output.
+     */
+    protected LocationAware recordLocation = null;
+    protected IndexCreator indexCreator = null;
+    protected SAMSequenceDictionary indexSequenceDictionary = null;
+
     /**
      * Constructs an object which will write directly into the output file provided by the stub.
      * Intentionally delaying the writing of the header -- this should be filled in by the walker.
@@ -122,6 +144,15 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
                                                  final File file,
                                                  final boolean indexOnTheFly,
                                                  final boolean allowCompressed) {
+        final EnumSet<Options> options = stub.getWriterOptions(indexOnTheFly);
+        final boolean alsoWriteBCF = stub.alsoWriteBCFForTest() &&
+                ! ( options.contains(Options.FORCE_BCF) ||
+                        file != null && (file.getName().endsWith(".bcf") || file.getName().endsWith(".bcf.gz")) );
+
+        // temporary outputs are always written by htsjdk, as plain VCF (or BCF) that mergeInto can read back
+        if ( allowCompressed && ! options.contains(Options.FORCE_BCF) && ! alsoWriteBCF )
+            return vcfWriterToRecordStream(stub, file, options);
+
         try {
             // we cannot merge compressed outputs, so don't compress if allowCompressed is false,
             // which is the case when we have a temporary output file for later merging
@@ -136,7 +167,6 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
         final VariantContextWriterBuilder.OutputType fileOutputType = allowCompressed && stub.isCompressed() ?
                 VariantContextWriterBuilder.OutputType.BLOCK_COMPRESSED_VCF : VariantContextWriterBuilder.OutputType.VCF;
-        final EnumSet<Options> options = stub.getWriterOptions(indexOnTheFly);
 
         VariantContextWriter writer = new VariantContextWriterBuilder()
                         .setOutputFile(file)
@@ -148,9 +178,7 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
         // if the stub says to test BCF, create a secondary writer to BCF and an 2 way out writer to send to both
         // TODO -- remove me when argument generateShadowBCF is removed
-        if ( stub.alsoWriteBCFForTest() &&
-                ! ( options.contains(Options.FORCE_BCF) ||
-                        file != null && (file.getName().endsWith(".bcf") || file.getName().endsWith(".bcf.gz")) ) ) {
+        if ( alsoWriteBCF ) {
             final File bcfFile = BCF2Utils.shadowBCF(file);
             if ( bcfFile != null ) {
                 final VariantContextWriter bcfWriter = new VariantContextWriterBuilder()
@@ -167,6 +195,52 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
         return writer;
     }
 
+    /**
+     * Create a writer of VCF text (block-compressed if the stub asks for it) into a stream owned by this storage, which
+     * indexes the records itself the way the htsjdk writer would
+     *
+     * @param stub Stub to use when constructing the output file.
+     * @param file Target file into which to write VCF records.
+     * @param options the writer options, which must not include FORCE_BCF
+     * @return A VCF writer for use with this class
+     */
+    private VariantContextWriter vcfWriterToRecordStream(final VariantContextWriterStub stub,
+                                                         final File file,
+                                                         final EnumSet<Options> options) {
+        final SAMSequenceDictionary sequenceDictionary = stub.getMasterSequenceDictionary();
+        try {
+            final OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            if ( stub.isCompressed() ) {
+                final BlockCompressedOutputStream blockCompressedStream = new BlockCompressedOutputStream(fileStream, file);
+                stream = blockCompressedStream;
+                recordLocation = blockCompressedStream;
+            } else {
+                final PositionalOutputStream positionalStream = new PositionalOutputStream(fileStream);
+                stream = positionalStream;
+                recordLocation = positionalStream;
+            }
+        }
+        catch(IOException ex) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to open target output stream", ex);
+        }
+
+        if ( options.remove(Options.INDEX_ON_THE_FLY) ) {
+            if ( stub.isCompressed() )
+                indexCreator = sequenceDictionary == null ? new TabixIndexCreator(TabixFormat.VCF) : new TabixIndexCreator(sequenceDictionary, TabixFormat.VCF);
+            else if ( stub.getIndexCreator() != null )
+                indexCreator = stub.getIndexCreator();
+            else
+                indexCreator = new DynamicIndexCreator(file, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME);
+            indexSequenceDictionary = sequenceDictionary;
+        }
+
+        return new VariantContextWriterBuilder()
+                .setOutputVCFStream(stream)
+                .setReferenceDictionary(sequenceDictionary)
+                .setOptions(options)
+                .build();
+    }
+
     /**
      * Check the return from PrintStream.checkError() if underlying stream is a java.io.PrintStream
      * @return true if PrintStream.checkError() returned true, false otherwise
@@ -210,6 +284,8 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
     public void add(VariantContext vc) {
         if ( closed ) throw new ReviewedGATKException("Attempting to write to a closed VariantContextWriterStorage " + vc.getStart() + " storage=" + this);
+        if ( indexCreator != null )
+            indexCreator.addFeature(vc, recordLocation.getPosition());
         writer.add(vc);
     }
 
@@ -228,6 +304,17 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     public void close() {
         writer.close();
         closed = true;
+
+        if ( indexCreator != null ) {
+            try {
+                if ( indexSequenceDictionary != null )
+                    indexCreator.setIndexSequenceDictionary(indexSequenceDictionary);
+                final Index index = indexCreator.finalizeIndex(recordLocation.getPosition());
+                index.writeBasedOnFeatureFile(file);
+            } catch (IOException e) {
+                throw new UserException.CouldNotCreateOutputFile(file, "Unable to write the index", e);
+            }
+        }
     }
 
     public void mergeInto(VariantContextWriterStorage target) {
@@ -243,18 +330,89 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
             if ( fd == null )
                 throw new UserException.LocalParallelizationProblem(file);
 
-            final FeatureCodec codec = fd.getCodec();
-            final AbstractFeatureReader<Feature, ?> source = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false);
+            if ( target.recordLocation != null && fd.getCodecClass().equals(VCFCodec.class) ) {
+                appendRecordsInto(target);
+            } else {
+                final FeatureCodec codec = fd.getCodec();
+                final AbstractFeatureReader<Feature, ?> source = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false);
 
-            for ( final Feature vc : source.iterator() ) {
-                target.writer.add((VariantContext) vc);
-            }
+                for ( final Feature vc : source.iterator() ) {
+                    target.writer.add((VariantContext) vc);
+                }
 
-            source.close();
+                source.close();
+            }
             file.delete(); // this should be last to aid in debugging when the process fails
         } catch (IOException e) {
             throw new UserException.CouldNotReadInputFile(file, "Error reading file in VCFWriterStorage: ", e);
         }
     }
 
+    /**
+     * Copy the record lines of this storage's temporary VCF into the stream of target as they are, indexing them by
+     * the location parsed from their first fields
+     *
+     * Both were written with the same header and options, so the lines are exactly what target's writer would have
+     * written for the records.
+     *
+     * @param target storage writing VCF text into a stream it owns
+     */
+    private void appendRecordsInto(final VariantContextWriterStorage target) throws IOException {
+        if ( target.closed ) throw new ReviewedGATKException("Attempting to merge into a closed VariantContextWriterStorage storage=" + target);
+
+        // ISO-8859-1 maps each byte to one char and back, so the lines are copied byte for byte
+        try ( final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.ISO_8859_1), BUFFER_SIZE) ) {
+            boolean inHeader = true;
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() ) {
+                if ( inHeader && line.startsWith(VCFHeader.HEADER_INDICATOR) )
+                    continue;
+                inHeader = false;
+
+                if ( target.indexCreator != null )
+                    target.indexCreator.addFeature(parseLocation(line), target.recordLocation.getPosition());
+                target.stream.write(line.getBytes(StandardCharsets.ISO_8859_1));
+                target.stream.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Get the location of a VCF record line the way the VCF codec computes it: its end is the value of the END INFO
+     * field if there is one, and otherwise the last base of the reference allele
+     *
+     * @param line a VCF record line
+     * @return the contig, start and end of the record
+     */
+    protected static Feature parseLocation(final String line) {
+        final int[] fieldEnds = new int[8];
+        int start = 0;
+        for ( int i = 0; i < fieldEnds.length; i++ ) {
+            final int end = line.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, start);
+            if ( end == -1 && i < fieldEnds.length - 1 )
+                throw new ReviewedGATKException("Malformed VCF record in temporary storage: " + line);
+            fieldEnds[i] = end == -1 ? line.length() : end;
+            start = fieldEnds[i] + 1;
+        }
+
+        final String contig = line.substring(0, fieldEnds[0]);
+        final int position = Integer.parseInt(line.substring(fieldEnds[0] + 1, fieldEnds[1]));
+        int end = position + (fieldEnds[3] - fieldEnds[2] - 1) - 1;
+
+        // look for END among the keys of the INFO field
+        final String endKey = VCFConstants.END_KEY + "=";
+        int key = fieldEnds[6] + 1;
+        while ( key < fieldEnds[7] ) {
+            int keyEnd = line.indexOf(VCFConstants.INFO_FIELD_SEPARATOR_CHAR, key);
+            if ( keyEnd == -1 || keyEnd > fieldEnds[7] )
+                keyEnd = fieldEnds[7];
+            if ( line.startsWith(endKey, key) ) {
+                end = Integer.parseInt(line.substring(key + endKey.length(), keyEnd));
+                break;
+            }
+            key = keyEnd + 1;
+        }
+
+        return new SimpleFeature(contig, position, end);
+    }
+
 }
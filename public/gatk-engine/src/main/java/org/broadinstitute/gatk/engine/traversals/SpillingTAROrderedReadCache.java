@@ -0,0 +1,340 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.traversals;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.AlignmentStartComparator;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A TAROrderedReadCache that never discards reads, but spills them to disk instead.
+ *
+ * Up to maxCapacity reads are held in memory.  Beyond that, newly added reads are written in arrival order
+ * (which is alignment start order) to a sequence of temporary BGZF-compressed runs of BAM records, and they
+ * are only read back once popCurrentReads(GenomeLoc) reaches the start of their run.  Since reads arrive
+ * sorted, the in-memory reads always precede the spilled ones and each run precedes the next, so the runs
+ * stream back in order without any merging.
+ *
+ * The in-memory limit is soft: the reads needed by the region being popped, and the live reads handed
+ * back afterwards, are always kept in memory, so the footprint is bounded by maxCapacity plus the reads
+ * overlapping a single active region (and one run beyond it) rather than by the depth of the data.
+ *
+ * Spilled reads come back as new GATKSAMRecords decoded from their BAM encoding, so any temporary
+ * attributes set on the original objects are not preserved.
+ */
+public class SpillingTAROrderedReadCache extends TAROrderedReadCache {
+    private static final int MIN_RUN_SIZE = 1000;
+    private static final int SPILL_COMPRESSION_LEVEL = 1;
+    private static final AlignmentStartComparator READ_COMPARATOR = new AlignmentStartComparator();
+
+    private final SAMFileHeader header;
+    private final File tempDir;
+    private final int runSize;
+
+    /**
+     * The reads held in memory, sorted, all preceding the first spilled read
+     */
+    private ArrayList<GATKSAMRecord> inMemoryReads = new ArrayList<>();
+
+    /**
+     * The runs of reads on disk, in order
+     */
+    private final LinkedList<SpillRun> runs = new LinkedList<>();
+
+    /**
+     * The reads following the last run, buffered until there are enough of them to write out a new run
+     */
+    private ArrayList<GATKSAMRecord> pendingReads = new ArrayList<>();
+
+    private int nReadsInRuns = 0;
+
+    private static final class SpillRun {
+        final File file;
+        final int nReads;
+        final int firstContigIndex;
+        final int firstStart;
+
+        private SpillRun(final File file, final List<GATKSAMRecord> reads) {
+            this.file = file;
+            this.nReads = reads.size();
+            this.firstContigIndex = reads.get(0).getReferenceIndex();
+            this.firstStart = reads.get(0).getAlignmentStart();
+        }
+    }
+
+    /**
+     * Create a new empty spilling read cache
+     *
+     * @param maxCapacity the number of reads to hold in memory before spilling to disk
+     * @param header the header of the reads, used to encode them on disk.  Must not be null
+     * @param tempDir the directory for the spilled runs, or null to use the default temporary directory
+     */
+    public SpillingTAROrderedReadCache(final int maxCapacity, final SAMFileHeader header, final File tempDir) {
+        this(maxCapacity, header, tempDir, Math.max(MIN_RUN_SIZE, maxCapacity / 4));
+    }
+
+    protected SpillingTAROrderedReadCache(final int maxCapacity, final SAMFileHeader header, final File tempDir, final int runSize) {
+        super(maxCapacity);
+        if ( header == null ) throw new IllegalArgumentException("header cannot be null");
+        if ( runSize < 1 ) throw new IllegalArgumentException("runSize must be >= 1 but got " + runSize);
+        this.header = header;
+        this.tempDir = tempDir;
+        this.runSize = runSize;
+    }
+
+    @Override
+    public void add( final GATKSAMRecord read ) {
+        if ( read == null ) throw new IllegalArgumentException("Read cannot be null");
+
+        final boolean belongsInMemory = isSpilling()
+                ? precedesSpilledReads(read)
+                : inMemoryReads.size() < getMaxCapacity() || precedesLastInMemoryRead(read);
+
+        if ( belongsInMemory ) {
+            addToMemory(read);
+        } else {
+            pendingReads.add(read);
+            if ( pendingReads.size() >= runSize )
+                spillPendingReads();
+        }
+    }
+
+    /**
+     * Add a collection of reads to this cache.  The reads must be sorted w.r.t. each other, but unlike the
+     * base class they may precede reads already in the cache, as when live reads are handed back after a pop.
+     *
+     * @param reads a collection of reads to add
+     */
+    @Override
+    public void addAll( final List<GATKSAMRecord> reads ) {
+        if ( reads == null ) throw new IllegalArgumentException("Reads cannot be null");
+
+        // merge all of the reads going before our in-memory ones in a single pass, instead of inserting them one by one
+        final List<GATKSAMRecord> earlierReads = new ArrayList<>();
+        for ( final GATKSAMRecord read : reads ) {
+            if ( precedesLastInMemoryRead(read) )
+                earlierReads.add(read);
+            else
+                add(read);
+        }
+
+        if ( ! earlierReads.isEmpty() )
+            inMemoryReads = merge(inMemoryReads, earlierReads);
+    }
+
+    @Override
+    public int size() {
+        return inMemoryReads.size() + nReadsInRuns + pendingReads.size();
+    }
+
+    @Override
+    public int getNumDiscarded() {
+        return 0;
+    }
+
+    @Override
+    public List<GATKSAMRecord> popCurrentReads() {
+        while ( ! runs.isEmpty() )
+            loadFirstRun();
+        inMemoryReads.addAll(pendingReads);
+        pendingReads = new ArrayList<>();
+
+        final List<GATKSAMRecord> poppedReads = inMemoryReads;
+        inMemoryReads = new ArrayList<>();
+        return poppedReads;
+    }
+
+    /**
+     * Removes the reads starting at or before the stop of upTo from the cache, and returns them in sorted order
+     * (w.r.t. alignmentStart).  Only the runs containing such reads are read back from disk.
+     *
+     * @param upTo the span of the reads needed by the caller.  Must not be null
+     * @return a list of GATKSAMRecords in this cache
+     */
+    @Override
+    public List<GATKSAMRecord> popCurrentReads(final GenomeLoc upTo) {
+        if ( upTo == null ) throw new IllegalArgumentException("upTo cannot be null");
+
+        while ( ! runs.isEmpty() && comparePositions(runs.getFirst().firstContigIndex, runs.getFirst().firstStart, upTo) <= 0 )
+            loadFirstRun();
+        if ( runs.isEmpty() && ! pendingReads.isEmpty() && startsAtOrBefore(pendingReads.get(0), upTo) )
+            loadPendingReads();
+
+        int nToPop = 0;
+        while ( nToPop < inMemoryReads.size() && startsAtOrBefore(inMemoryReads.get(nToPop), upTo) )
+            nToPop++;
+
+        final List<GATKSAMRecord> poppedReads;
+        if ( nToPop == inMemoryReads.size() ) {
+            poppedReads = inMemoryReads;
+            inMemoryReads = new ArrayList<>();
+        } else {
+            poppedReads = new ArrayList<>(inMemoryReads.subList(0, nToPop));
+            inMemoryReads = new ArrayList<>(inMemoryReads.subList(nToPop, inMemoryReads.size()));
+        }
+
+        // bring spilled reads back while they fit, so we stop going through the disk once the traversal catches up
+        while ( ! runs.isEmpty() && inMemoryReads.size() + runs.getFirst().nReads <= getMaxCapacity() )
+            loadFirstRun();
+        if ( runs.isEmpty() && inMemoryReads.size() + pendingReads.size() <= getMaxCapacity() )
+            loadPendingReads();
+
+        return poppedReads;
+    }
+
+    /**
+     * Deletes any runs still on disk.  The cache must not be used afterwards
+     */
+    @Override
+    public void close() {
+        for ( final SpillRun run : runs )
+            run.file.delete();
+        runs.clear();
+        nReadsInRuns = 0;
+    }
+
+    /**
+     * @return the number of runs currently on disk
+     */
+    protected int getNumRuns() {
+        return runs.size();
+    }
+
+    private boolean isSpilling() {
+        return ! runs.isEmpty() || ! pendingReads.isEmpty();
+    }
+
+    private boolean precedesSpilledReads(final GATKSAMRecord read) {
+        if ( ! runs.isEmpty() )
+            return comparePositions(read.getReferenceIndex(), read.getAlignmentStart(), runs.getFirst()) < 0;
+        return pendingReads.isEmpty() || READ_COMPARATOR.compare(read, pendingReads.get(0)) < 0;
+    }
+
+    private boolean precedesLastInMemoryRead(final GATKSAMRecord read) {
+        return ! inMemoryReads.isEmpty() && READ_COMPARATOR.compare(read, inMemoryReads.get(inMemoryReads.size() - 1)) < 0;
+    }
+
+    private void addToMemory(final GATKSAMRecord read) {
+        if ( ! precedesLastInMemoryRead(read) ) {
+            inMemoryReads.add(read);
+            return;
+        }
+
+        // insert after any reads with the same start, to keep the insertion order stable
+        int low = 0;
+        int high = inMemoryReads.size();
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( READ_COMPARATOR.compare(inMemoryReads.get(mid), read) <= 0 )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        inMemoryReads.add(low, read);
+    }
+
+    private static ArrayList<GATKSAMRecord> merge(final List<GATKSAMRecord> first, final List<GATKSAMRecord> second) {
+        final ArrayList<GATKSAMRecord> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0, j = 0;
+        while ( i < first.size() && j < second.size() ) {
+            if ( READ_COMPARATOR.compare(second.get(j), first.get(i)) < 0 )
+                merged.add(second.get(j++));
+            else
+                merged.add(first.get(i++));
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    private static boolean startsAtOrBefore(final GATKSAMRecord read, final GenomeLoc loc) {
+        return comparePositions(read.getReferenceIndex(), read.getAlignmentStart(), loc) <= 0;
+    }
+
+    private static int comparePositions(final int contigIndex, final int start, final GenomeLoc loc) {
+        return contigIndex != loc.getContigIndex() ? Integer.compare(contigIndex, loc.getContigIndex()) : Integer.compare(start, loc.getStop());
+    }
+
+    private static int comparePositions(final int contigIndex, final int start, final SpillRun run) {
+        return contigIndex != run.firstContigIndex ? Integer.compare(contigIndex, run.firstContigIndex) : Integer.compare(start, run.firstStart);
+    }
+
+    private void loadPendingReads() {
+        inMemoryReads.addAll(pendingReads);
+        pendingReads = new ArrayList<>();
+    }
+
+    private void spillPendingReads() {
+        final File file;
+        try {
+            file = File.createTempFile("TAROrderedReadCache", ".bgzf", tempDir);
+            file.deleteOnExit();
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile("Could not create a temporary file to spill active region reads", e);
+        }
+
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+        try ( final BlockCompressedOutputStream out = new BlockCompressedOutputStream(file, SPILL_COMPRESSION_LEVEL) ) {
+            codec.setOutputStream(out, file.getPath());
+            for ( final GATKSAMRecord read : pendingReads )
+                codec.encode(read);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Could not spill active region reads", e);
+        }
+
+        runs.add(new SpillRun(file, pendingReads));
+        nReadsInRuns += pendingReads.size();
+        pendingReads = new ArrayList<>();
+    }
+
+    private void loadFirstRun() {
+        final SpillRun run = runs.removeFirst();
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+        inMemoryReads.ensureCapacity(inMemoryReads.size() + run.nReads);
+        try ( final BlockCompressedInputStream in = new BlockCompressedInputStream(run.file) ) {
+            codec.setInputStream(in, run.file.getPath());
+            for ( SAMRecord read = codec.decode(); read != null; read = codec.decode() )
+                inMemoryReads.add(new GATKSAMRecord(read));
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(run.file, "Could not read back spilled active region reads", e);
+        }
+
+        nReadsInRuns -= run.nReads;
+        run.file.delete();
+    }
+}
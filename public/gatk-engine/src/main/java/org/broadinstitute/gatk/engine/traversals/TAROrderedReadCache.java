@@ -25,6 +25,7 @@
 
 package org.broadinstitute.gatk.engine.traversals;
 
+import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.downsampling.Downsampler;
 import org.broadinstitute.gatk.utils.downsampling.ReservoirDownsampler;
 import org.broadinstitute.gatk.utils.sam.AlignmentStartComparator;
@@ -165,4 +166,26 @@ public class TAROrderedReadCache {
         initializeUndownsampledCache();
         return poppedReads;
     }
+
+    /**
+     * Removes the reads that could overlap upTo from the cache, and returns them in sorted order (w.r.t. alignmentStart)
+     *
+     * All of the reads starting at or before the stop of upTo are returned.  Implementations are free to return
+     * reads starting after upTo as well, and this one simply returns all of the reads in the cache.  Subclasses
+     * that keep later reads out of memory use this to avoid loading them before they are needed.
+     *
+     * @param upTo the span of the reads needed by the caller.  Must not be null
+     * @return a list of GATKSAMRecords in this cache
+     */
+    public List<GATKSAMRecord> popCurrentReads(final GenomeLoc upTo) {
+        if ( upTo == null ) throw new IllegalArgumentException("upTo cannot be null");
+        return popCurrentReads();
+    }
+
+    /**
+     * Release any resources held by this cache.  The cache must not be used afterwards
+     */
+    public void close() {
+        // by default there's nothing to do
+    }
 }
@@ -42,6 +42,7 @@ import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfile;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.activeregion.BandPassActivityProfile;
+import org.broadinstitute.gatk.utils.interval.GenomeLocIntervalIndex;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
@@ -82,6 +83,14 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
 
     // set by the traversal
     private boolean walkerHasPresetRegions = false;
+
+    /**
+     * Index of the walker's possibly active intervals; isActive is only called within them.  Null if the walker has none.
+     * Built on the first traverse call, since the walker only loads the intervals in its initialize(), which runs
+     * after this engine is initialized.
+     */
+    private GenomeLocIntervalIndex possiblyActiveIndex = null;
+
     private int activeRegionExtension = -1;
     private int maxRegionSize = -1;
     private int minRegionSize = -1;
@@ -164,7 +173,15 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
 
         final int maxReadsAcrossSamples = this.walker.maxReadsInMemoryPerSample * ReadUtils.getSAMFileSamples(engine.getSAMFileHeader()).size();
         final int maxReadsToHoldInMemory = Math.min(maxReadsAcrossSamples, this.walker.maxTotalReadsInMemory);
-        myReads = new TAROrderedReadCache(maxReadsToHoldInMemory);
+        myReads = this.walker.spillReadsToDisk
+                ? new SpillingTAROrderedReadCache(maxReadsToHoldInMemory, engine.getSAMFileHeader(), null)
+                : new TAROrderedReadCache(maxReadsToHoldInMemory);
+    }
+
+    @Override
+    public void shutdown() {
+        if ( myReads != null )
+            myReads.close();
     }
 
     // -------------------------------------------------------------------------------------
@@ -267,6 +284,9 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         if ( LOG_READ_CARRYING || logger.isDebugEnabled() )
             logger.info(String.format("TraverseActiveRegions.traverse: Shard is %s", dataProvider));
 
+        if ( possiblyActiveIndex == null && walker.getPossiblyActiveIntervals() != null )
+            possiblyActiveIndex = new GenomeLocIntervalIndex(walker.getPossiblyActiveIntervals());
+
         nanoScheduler.setDebug(false);
         final Iterator<MapData> activeRegionIterator = new ActiveRegionIterator(dataProvider);
         final TraverseActiveRegionMap myMap = new TraverseActiveRegionMap();
@@ -368,15 +388,20 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
 
                     dataProvider.getShard().getReadMetrics().incrementNumIterations();
 
-                    // create reference context. Note that if we have a pileup of "extended events", the context will
-                    // hold the (longest) stretch of deleted reference bases (if deletions are present in the pileup).
-                    final ReferenceContext refContext = referenceView.getReferenceContext(location);
+                    if ( possiblyActiveIndex == null || possiblyActiveIndex.overlaps(location) ) {
+                        // create reference context. Note that if we have a pileup of "extended events", the context will
+                        // hold the (longest) stretch of deleted reference bases (if deletions are present in the pileup).
+                        final ReferenceContext refContext = referenceView.getReferenceContext(location);
 
-                    // Iterate forward to get all reference ordered data covering this location
-                    final RefMetaDataTracker tracker = referenceOrderedDataView.getReferenceOrderedDataAtLocus(locus.getLocation());
+                        // Iterate forward to get all reference ordered data covering this location
+                        final RefMetaDataTracker tracker = referenceOrderedDataView.getReferenceOrderedDataAtLocus(locus.getLocation());
 
-                    // Call the walkers isActive function for this locus and add them to the list to be integrated later
-                    addIsActiveResult(walker, tracker, refContext, locus);
+                        // Call the walkers isActive function for this locus and add them to the list to be integrated later
+                        addIsActiveResult(walker, tracker, refContext, locus);
+                    } else {
+                        // known to be inactive, so don't bother making the contexts for, or calling, isActive
+                        addKnownInactiveResult(walker, location);
+                    }
 
                     maxReadsInMemory = Math.max(myReads.size(), maxReadsInMemory);
                     printProgress(location);
@@ -623,6 +648,22 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         }
     }
 
+    /**
+     * Incorporate an inactive result at location into the activity profile, without calling the walker's isActive
+     *
+     * Only valid for loci outside the walker's possibly active intervals, where isActive is known to return an
+     * inactive state.  Walkers whose isActive depends on ROD sites add those sites to the intervals, so they
+     * never get here.
+     *
+     * @param walker the walker we're running
+     * @param location a locus outside of the walker's possibly active intervals
+     */
+    private void addKnownInactiveResult(final ActiveRegionWalker<M, T> walker, final GenomeLoc location) {
+        if ( ! walkerHasPresetRegions ) {
+            activityProfile.add(new ActivityProfileState(location, walker.forceActive ? 1.0 : 0.0));
+        }
+    }
+
     /**
      * Take the individual isActive calls and integrate them into contiguous active regions and
      * add these blocks of work to the work queue
@@ -660,7 +701,7 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
                                                   final ActiveRegionWalker<M, T> walker,
                                                   final IntervalReferenceOrderedView referenceOrderedDataView) {
         final List<GATKSAMRecord> stillLive = new LinkedList<>();
-        for ( final GATKSAMRecord read : myReads.popCurrentReads() ) {
+        for ( final GATKSAMRecord read : myReads.popCurrentReads(activeRegion.getExtendedLoc()) ) {
             boolean killed = false;
             final GenomeLoc readLoc = this.engine.getGenomeLocParser().createGenomeLoc( read );
 
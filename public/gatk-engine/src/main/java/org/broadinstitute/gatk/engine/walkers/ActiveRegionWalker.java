@@ -87,6 +87,19 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
     @Input(fullName="activeRegionIn", shortName="AR", doc="Use this interval list file as the active regions to process", required = false)
     protected List<IntervalBinding<Feature>> activeRegionBindings = null;
 
+    /**
+     * A cheap, precomputed index of the parts of the genome that might be active, for example the sites of a
+     * previous run's calls (padded by a few hundred bp), or the well-covered bins of the BAM.  When provided,
+     * isActive is only evaluated at loci within these intervals.  All other loci are treated as confidently
+     * inactive without building their reference context or consulting the walker, which skips most of the
+     * genome in whole-genome calling.  The reads at those loci are still collected, so the inactive regions
+     * are still handed to map() as usual.  Walkers whose isActive can be triggered by a ROD, such as the
+     * HaplotypeCaller's given alleles, add the sites of that ROD to these intervals.
+     */
+    @Advanced
+    @Input(fullName="activityIndex", shortName="activityIndex", doc="Only evaluate activity at loci within these possibly active intervals", required = false)
+    protected List<IntervalBinding<Feature>> activityIndexBindings = null;
+
     @Advanced
     @Argument(fullName="activeRegionExtension", shortName="activeRegionExtension", doc="The active region extension; if not provided defaults to Walker annotated default", required = false)
     public Integer activeRegionExtension = null;
@@ -125,6 +138,15 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
     @Argument(fullName="maxTotalReadsInMemory", shortName="maxTotalReadsInMemory", doc="Maximum total reads given to traversal map() function", required = false)
     public int maxTotalReadsInMemory = 10000000;
 
+    /**
+     * By default, once the number of reads held in memory exceeds the limits above the traversal starts
+     * downsampling them.  With this flag the excess reads are spilled to temporary files instead, and read
+     * back when the traversal reaches them, so no reads are lost at the cost of some disk I/O.
+     */
+    @Advanced
+    @Argument(fullName="spillReadsToDisk", shortName="spillReadsToDisk", doc="Spill reads beyond the in-memory limits to disk instead of downsampling them", required = false)
+    public boolean spillReadsToDisk = false;
+
     /*
      * For active region limits in ActivityProfile
 *   */
@@ -137,12 +159,19 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
     public Double activeProbThreshold = 0.002;
 
     private GenomeLocSortedSet presetActiveRegions = null;
+    private GenomeLocSortedSet possiblyActiveIntervals = null;
 
     @Override
     public void initialize() {
-        if( activeRegionBindings == null ) { return; }
+        if ( activeRegionBindings != null )
+            presetActiveRegions = loadIntervals(activeRegionBindings);
+        if ( activityIndexBindings != null )
+            possiblyActiveIntervals = loadIntervals(activityIndexBindings);
+    }
+
+    private GenomeLocSortedSet loadIntervals(final List<IntervalBinding<Feature>> bindings) {
         List<GenomeLoc> allIntervals = new ArrayList<GenomeLoc>(0);
-        for ( IntervalBinding intervalBinding : activeRegionBindings ) {
+        for ( IntervalBinding intervalBinding : bindings ) {
             List<GenomeLoc> intervals = intervalBinding.getIntervals(this.getToolkit().getGenomeLocParser());
 
             if ( intervals.isEmpty() ) {
@@ -152,7 +181,24 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
             allIntervals = IntervalUtils.mergeListsBySetOperator(intervals, allIntervals, IntervalSetRule.UNION);
         }
 
-        presetActiveRegions = IntervalUtils.sortAndMergeIntervals(this.getToolkit().getGenomeLocParser(), allIntervals, IntervalMergingRule.ALL);
+        return IntervalUtils.sortAndMergeIntervals(this.getToolkit().getGenomeLocParser(), allIntervals, IntervalMergingRule.ALL);
+    }
+
+    /**
+     * Add the sites of the features in binding to the possibly active intervals, so that isActive is still called
+     * at them when an activity index is in use.  Walkers whose isActive can be triggered by a ROD must call this
+     * from initialize(), after super.initialize().  Does nothing if there's no activity index or binding isn't bound.
+     *
+     * @param binding the ROD whose sites can make a locus active, may be null
+     */
+    protected void addPossiblyActiveSites(final RodBinding<? extends Feature> binding) {
+        if ( possiblyActiveIntervals == null || binding == null || ! binding.isBound() )
+            return;
+
+        final GenomeLocParser parser = this.getToolkit().getGenomeLocParser();
+        final IntervalBinding<Feature> sites = new IntervalBinding<Feature>(Feature.class, binding.getName(), binding.getSource(), binding.getTribbleType(), binding.getTags());
+        final List<GenomeLoc> allIntervals = IntervalUtils.mergeListsBySetOperator(sites.getIntervals(parser), possiblyActiveIntervals.toList(), IntervalSetRule.UNION);
+        possiblyActiveIntervals = IntervalUtils.sortAndMergeIntervals(parser, allIntervals, IntervalMergingRule.ALL);
     }
 
     /**
@@ -171,6 +217,14 @@ public abstract class ActiveRegionWalker<MapType, ReduceType> extends Walker<Map
         return presetActiveRegions;
     }
 
+    /**
+     * Get the intervals outside of which every locus is known to be inactive, or null if none were provided
+     * @return a set of genome locs outside of which isActive need not be called, or null
+     */
+    public GenomeLocSortedSet getPossiblyActiveIntervals() {
+        return possiblyActiveIntervals;
+    }
+
     // Do we actually want to operate on the context?
     public boolean filter(final RefMetaDataTracker tracker, final ReferenceContext ref, final AlignmentContext context) {
         return true;    // We are keeping all the reads
@@ -25,6 +25,8 @@
 
 package org.broadinstitute.gatk.engine.walkers;
 
+import java.util.Set;
+
 /**
  * Created by IntelliJ IDEA.
  * User: mdepristo
@@ -36,4 +38,20 @@ package org.broadinstitute.gatk.engine.walkers;
 @Requires({DataSource.REFERENCE, DataSource.REFERENCE_ORDERED_DATA})
 @Allows({DataSource.REFERENCE, DataSource.REFERENCE_ORDERED_DATA})
 public abstract class RodWalker<MapType, ReduceType> extends LocusWalker<MapType, ReduceType> {
+    /**
+     * (conceptual static) method that states which FORMAT fields of the VCF genotypes this walker reads.
+     *
+     * The engine will only decode these fields (plus GT) when the genotypes of an input VariantContext are
+     * accessed; all others are skipped.  Returning an empty set means the walker never looks at the genotypes
+     * at all, in which case they are not parsed and every sample gets an unavailable genotype.
+     *
+     * This is called after argument parsing but before initialize(), so it may depend on command line
+     * arguments but not on state set up in initialize().  Walkers that emit the input genotypes must not
+     * override it.
+     *
+     * @return the FORMAT fields to decode, or null (the default) to decode all of them
+     */
+    public Set<String> getRequiredGenotypeFields() {
+        return null;
+    }
 }
\ No newline at end of file
@@ -37,16 +37,20 @@ import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.engine.walkers.Walker;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
 import org.broadinstitute.gatk.utils.variant.GATKVCFIndexType;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import java.io.File;
+import java.io.*;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 public class GATKVCFUtilsUnitTest extends BaseTest {
     public static class VCFHeaderTestWalker extends RodWalker<Integer, Integer> {
@@ -156,4 +160,27 @@ public class GATKVCFUtilsUnitTest extends BaseTest {
             Assert.assertEquals(dimension, spec.expectedDimension, "Wrong dimension");
         }
     }
-}
\ No newline at end of file
+
+    @DataProvider(name = "headerVersions")
+    public Object[][] makeHeaderVersions() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final VCFHeaderVersion version : Arrays.asList(VCFHeaderVersion.VCF4_0, VCFHeaderVersion.VCF4_1, VCFHeaderVersion.VCF4_2) ) {
+            tests.add(new Object[]{version, ".vcf"});
+            tests.add(new Object[]{version, ".vcf.gz"});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "headerVersions")
+    public void testReadVCFHeaderVersion(final VCFHeaderVersion version, final String extension) throws IOException {
+        final File vcf = createTempFile("testReadVCFHeaderVersion", extension);
+        final OutputStream stream = extension.endsWith(".gz") ? new GZIPOutputStream(new FileOutputStream(vcf)) : new FileOutputStream(vcf);
+        final PrintStream out = new PrintStream(stream);
+        out.println("##" + version.getFormatString() + "=" + version.getVersionString());
+        out.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        out.println("1\t100\t.\tA\tC\t50\tPASS\t.");
+        out.close();
+
+        Assert.assertEquals(GATKVCFUtils.readVCFHeaderVersion(vcf), version);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.io.storage;
+
+import htsjdk.tribble.Feature;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class VariantContextWriterStorageUnitTest extends BaseTest {
+
+    @DataProvider(name = "RecordLines")
+    public Object[][] makeRecordLines() {
+        return new Object[][]{
+                {"1\t100\t.\tA\tC\t50\tPASS\tAC=1;AN=2\tGT\t0/1", "1", 100, 100},
+                {"20\t100\trs1\tACGT\tA\t.\t.\t.", "20", 100, 103},
+                {"chrX\t5\t.\tA\t<DEL>\t.\t.\tSVTYPE=DEL;END=250;SVLEN=-245", "chrX", 5, 250},
+                {"chrX\t5\t.\tA\t<DEL>\t.\t.\tEND=250", "chrX", 5, 250},
+                {"chrX\t5\t.\tA\t<DEL>\t.\t.\tBLEND=250\tGT:END\t0/1:7", "chrX", 5, 5},
+                {"1\t10\t.\tAC\tA\t.\t.\tDB;END=10", "1", 10, 10}
+        };
+    }
+
+    @Test(dataProvider = "RecordLines")
+    public void testParseLocation(final String line, final String contig, final int start, final int end) {
+        final Feature location = VariantContextWriterStorage.parseLocation(line);
+        Assert.assertEquals(location.getContig(), contig);
+        Assert.assertEquals(location.getStart(), start);
+        Assert.assertEquals(location.getEnd(), end);
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class)
+    public void testParseTruncatedLocation() {
+        VariantContextWriterStorage.parseLocation("1\t100\t.\tA");
+    }
+}
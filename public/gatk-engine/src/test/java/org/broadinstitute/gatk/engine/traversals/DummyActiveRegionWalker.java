@@ -52,6 +52,7 @@ class DummyActiveRegionWalker extends ActiveRegionWalker<Integer, Integer> {
     protected List<GenomeLoc> isActiveCalls = new ArrayList<GenomeLoc>();
     protected Map<GenomeLoc, ActiveRegion> mappedActiveRegions = new LinkedHashMap<GenomeLoc, ActiveRegion>();
     private boolean declareHavingPresetRegions = false;
+    private GenomeLocSortedSet possiblyActiveIntervals = null;
 
     public DummyActiveRegionWalker() {
         this(1.0);
@@ -86,6 +87,15 @@ class DummyActiveRegionWalker extends ActiveRegionWalker<Integer, Integer> {
         return declareHavingPresetRegions ? activeRegions : null;
     }
 
+    public void setPossiblyActiveIntervals(GenomeLocSortedSet possiblyActiveIntervals) {
+        this.possiblyActiveIntervals = possiblyActiveIntervals;
+    }
+
+    @Override
+    public GenomeLocSortedSet getPossiblyActiveIntervals() {
+        return possiblyActiveIntervals;
+    }
+
     @Override
     public EnumSet<ActiveRegionReadState> desiredReadStates() {
         return states;
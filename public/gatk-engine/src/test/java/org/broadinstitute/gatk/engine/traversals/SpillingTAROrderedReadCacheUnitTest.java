@@ -0,0 +1,169 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.traversals;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class SpillingTAROrderedReadCacheUnitTest extends BaseTest {
+    private static final int READ_LENGTH = 50;
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void setup() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 100000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    @DataProvider(name = "SpillingReadCacheTestData")
+    public Object[][] makeSpillingReadCacheTestData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int nReadsPerLocus : Arrays.asList(1, 10, 50) )
+            for ( final int maxCapacity : Arrays.asList(0, 10, 100, 100000) )
+                for ( final int runSize : Arrays.asList(1, 7, 100) )
+                    tests.add(new Object[]{nReadsPerLocus, maxCapacity, runSize});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SpillingReadCacheTestData")
+    public void testNoReadsAreLost(final int nReadsPerLocus, final int maxCapacity, final int runSize) {
+        final List<GATKSAMRecord> reads = makeReads(nReadsPerLocus, 100);
+        final SpillingTAROrderedReadCache cache = new SpillingTAROrderedReadCache(maxCapacity, header, null, runSize);
+
+        cache.addAll(reads);
+        Assert.assertEquals(cache.size(), reads.size());
+        Assert.assertEquals(cache.getNumDiscarded(), 0);
+        if ( reads.size() > maxCapacity + runSize )
+            Assert.assertTrue(cache.getNumRuns() > 0, "expected some reads to be spilled");
+
+        final List<GATKSAMRecord> popped = cache.popCurrentReads();
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getNumRuns(), 0);
+        assertSameReads(popped, reads);
+    }
+
+    @Test(dataProvider = "SpillingReadCacheTestData")
+    public void testRegionByRegion(final int nReadsPerLocus, final int maxCapacity, final int runSize) {
+        final int nLoci = 200;
+        final int regionSize = 37;
+        final List<GATKSAMRecord> reads = makeReads(nReadsPerLocus, nLoci);
+        final SpillingTAROrderedReadCache cache = new SpillingTAROrderedReadCache(maxCapacity, header, null, runSize);
+
+        // mimic TraverseActiveRegions: add reads as the traversal passes their start, pop a region's worth, and
+        // hand back the reads that could still overlap later regions
+        int nextRead = 0;
+        final List<GATKSAMRecord> expectedLive = new ArrayList<>();
+        for ( int regionStart = 1; regionStart <= nLoci + READ_LENGTH; regionStart += regionSize ) {
+            final GenomeLoc region = genomeLocParser.createGenomeLoc("chr1", regionStart, regionStart + regionSize - 1);
+            while ( nextRead < reads.size() && reads.get(nextRead).getAlignmentStart() <= region.getStop() + regionSize ) {
+                cache.add(reads.get(nextRead));
+                expectedLive.add(reads.get(nextRead++));
+            }
+
+            final List<GATKSAMRecord> expectedPopped = new ArrayList<>();
+            final List<GATKSAMRecord> expectedRetained = new ArrayList<>();
+            for ( final GATKSAMRecord read : expectedLive )
+                (read.getAlignmentStart() <= region.getStop() ? expectedPopped : expectedRetained).add(read);
+
+            final List<GATKSAMRecord> popped = cache.popCurrentReads(region);
+            assertSameReads(popped, expectedPopped);
+            expectedLive.clear();
+            expectedLive.addAll(expectedRetained);
+
+            final List<GATKSAMRecord> stillLive = new ArrayList<>();
+            for ( final GATKSAMRecord read : popped )
+                if ( read.getAlignmentEnd() > region.getStop() ) stillLive.add(read);
+            cache.addAll(stillLive);
+            for ( final GATKSAMRecord read : expectedPopped )
+                if ( read.getAlignmentEnd() > region.getStop() ) expectedLive.add(read);
+            Collections.sort(expectedLive, new Comparator<GATKSAMRecord>() {
+                @Override
+                public int compare(final GATKSAMRecord o1, final GATKSAMRecord o2) {
+                    return Integer.compare(o1.getAlignmentStart(), o2.getAlignmentStart());
+                }
+            });
+
+            Assert.assertEquals(cache.size(), expectedLive.size());
+        }
+
+        Assert.assertEquals(nextRead, reads.size());
+        assertSameReads(cache.popCurrentReads(), expectedLive);
+        cache.close();
+    }
+
+    @Test
+    public void testSpilledReadsRoundTrip() {
+        final List<GATKSAMRecord> reads = makeReads(5, 10);
+        final SpillingTAROrderedReadCache cache = new SpillingTAROrderedReadCache(0, header, null, 3);
+        cache.addAll(reads);
+        Assert.assertTrue(cache.getNumRuns() > 0);
+
+        final List<GATKSAMRecord> popped = cache.popCurrentReads();
+        Assert.assertEquals(popped.size(), reads.size());
+        for ( int i = 0; i < reads.size(); i++ ) {
+            Assert.assertEquals(popped.get(i).getReadName(), reads.get(i).getReadName());
+            Assert.assertEquals(popped.get(i).getReferenceIndex(), reads.get(i).getReferenceIndex());
+            Assert.assertEquals(popped.get(i).getAlignmentStart(), reads.get(i).getAlignmentStart());
+            Assert.assertEquals(popped.get(i).getCigarString(), reads.get(i).getCigarString());
+            Assert.assertEquals(popped.get(i).getReadBases(), reads.get(i).getReadBases());
+            Assert.assertEquals(popped.get(i).getBaseQualities(), reads.get(i).getBaseQualities());
+        }
+    }
+
+    private List<GATKSAMRecord> makeReads(final int nReadsPerLocus, final int nLoci) {
+        final List<GATKSAMRecord> reads = new ArrayList<>(nReadsPerLocus * nLoci);
+        for ( int start = 1; start <= nLoci; start++ )
+            for ( int i = 0; i < nReadsPerLocus; i++ )
+                reads.add(ArtificialSAMUtils.createArtificialRead(header, "read_" + start + "_" + i, 0, start, READ_LENGTH));
+        return reads;
+    }
+
+    private void assertSameReads(final List<GATKSAMRecord> actual, final List<GATKSAMRecord> expected) {
+        Assert.assertEquals(actual.size(), expected.size(), "wrong number of reads");
+        final List<String> actualNames = new ArrayList<>();
+        int lastStart = -1;
+        for ( final GATKSAMRecord read : actual ) {
+            Assert.assertTrue(lastStart <= read.getAlignmentStart(), "Reads should be sorted but weren't");
+            lastStart = read.getAlignmentStart();
+            actualNames.add(read.getReadName());
+        }
+        final List<String> expectedNames = new ArrayList<>();
+        for ( final GATKSAMRecord read : expected )
+            expectedNames.add(read.getReadName());
+        Assert.assertEquals(new HashSet<>(actualNames), new HashSet<>(expectedNames));
+    }
+}
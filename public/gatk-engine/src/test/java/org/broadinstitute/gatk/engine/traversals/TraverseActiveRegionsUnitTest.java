@@ -38,6 +38,7 @@ import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.activeregion.ActiveRegionReadState;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
+import org.broadinstitute.gatk.utils.interval.IntervalSetRule;
 import org.broadinstitute.gatk.utils.interval.IntervalUtils;
 import org.broadinstitute.gatk.utils.sam.*;
 import org.broadinstitute.gatk.utils.BaseTest;
@@ -165,6 +166,44 @@ public class TraverseActiveRegionsUnitTest extends BaseTest {
         return activeIntervals;
     }
 
+    private GenomeLocSortedSet makePossiblyActiveIntervals() {
+        final GenomeLocSortedSet possiblyActive = new GenomeLocSortedSet(genomeLocParser);
+        possiblyActive.add(genomeLocParser.createGenomeLoc("1", 100, 200));
+        possiblyActive.add(genomeLocParser.createGenomeLoc("1", 1990, 2010));
+        possiblyActive.add(genomeLocParser.createGenomeLoc("20", 10050, 10200));
+        return possiblyActive;
+    }
+
+    @Test(enabled = true && ! DEBUG, dataProvider = "TraversalEngineProvider")
+    public void testActivityIndexIsActiveCalls(TraverseActiveRegions t) {
+        final GenomeLocSortedSet possiblyActive = makePossiblyActiveIntervals();
+        DummyActiveRegionWalker walker = new DummyActiveRegionWalker();
+        walker.setPossiblyActiveIntervals(possiblyActive);
+
+        List<GenomeLoc> activeIntervals = getIsActiveIntervals(t, walker, intervals);
+        // Contract: isActive is called at every position in the analysis interval(s) that is possibly active, and nowhere else
+        verifyEqualIntervals(IntervalUtils.mergeListsBySetOperator(intervals, possiblyActive.toList(), IntervalSetRule.INTERSECTION), activeIntervals);
+    }
+
+    @Test(enabled = true && ! DEBUG, dataProvider = "TraversalEngineProvider")
+    public void testActivityIndexRegionCoverage(TraverseActiveRegions t) {
+        final GenomeLocSortedSet possiblyActive = makePossiblyActiveIntervals();
+        DummyActiveRegionWalker walker = new DummyActiveRegionWalker();
+        walker.setPossiblyActiveIntervals(possiblyActive);
+
+        Collection<ActiveRegion> activeRegions = getActiveRegions(t, walker, intervals).values();
+        List<GenomeLoc> regionLocs = new ArrayList<GenomeLoc>();
+        for (ActiveRegion activeRegion : activeRegions) {
+            regionLocs.add(activeRegion.getLocation());
+            // Contract: only possibly active loci can make a region active
+            if (activeRegion.isActive())
+                Assert.assertTrue(possiblyActive.overlaps(activeRegion.getLocation()), "Active region " + activeRegion + " doesn't overlap any possibly active interval");
+        }
+
+        // Contract: the loci known to be inactive still end up in (inactive) regions
+        verifyEqualIntervals(intervals, IntervalUtils.sortAndMergeIntervals(genomeLocParser, regionLocs, IntervalMergingRule.ALL).toList());
+    }
+
     @Test (enabled = ENFORCE_CONTRACTS, dataProvider = "TraversalEngineProvider", expectedExceptions = PreconditionError.class)
     public void testIsActiveRangeLow (TraverseActiveRegions t) {
         DummyActiveRegionWalker walker = new DummyActiveRegionWalker(-0.1);
@@ -193,9 +193,11 @@ public abstract class ArgumentDefinitionField extends ArgumentField {
             if (gatherer != null)
                 gatherClass = gatherer;
             else if (SAMFileWriter.class.isAssignableFrom(argumentDefinition.argumentType))
-                gatherClass = "BamGatherFunction";
+                gatherClass = "BamBlockGatherFunction"; // used to be "BamGatherFunction";
             else if (VariantContextWriter.class.isAssignableFrom(argumentDefinition.argumentType))
-                gatherClass = "CatVariantsGatherer"; // used to be "VcfGatherFunction";
+                // used to be "CatVariantsGatherer", and before that "VcfGatherFunction".
+                // BCF outputs still use CatVariantsGatherer, see GATKScatterGatherableFunction.
+                gatherClass = "VcfBlockGatherFunction";
             else
                 gatherClass = "org.broadinstitute.gatk.queue.function.scattergather.SimpleTextGatherFunction";
 
@@ -376,8 +376,8 @@ public class GATKExtensionsGenerator extends CommandLineProgram {
         }
 
         if (isScatter) {
-            importSet.add("import org.broadinstitute.gatk.queue.function.scattergather.ScatterGatherableFunction");
-            baseClass += " with ScatterGatherableFunction";
+            // GATKScatterGatherableFunction is in the same package as the generated classes
+            baseClass += " with GATKScatterGatherableFunction";
         }
         if (isGather)
             importSet.add("import org.broadinstitute.gatk.utils.commandline.Gather");
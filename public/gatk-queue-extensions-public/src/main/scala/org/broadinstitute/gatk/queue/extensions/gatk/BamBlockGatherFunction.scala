@@ -0,0 +1,62 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.extensions.gatk
+
+import java.io.File
+import htsjdk.samtools.BamFileIoUtils
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.InProcessFunction
+import org.broadinstitute.gatk.queue.function.scattergather.GatherFunction
+import org.broadinstitute.gatk.utils.commandline.Output
+import collection.JavaConversions._
+
+/**
+ * Gathers BAM files in process by copying their BGZF blocks after the header of the first part.
+ *
+ * Unlike BamGatherFunction the reads are not decoded and merged, so the parts must already be
+ * in coordinate order, as they are when scattered by intervals, and the header of the first
+ * part is used for the output.  The index is built while the blocks are copied.
+ */
+class BamBlockGatherFunction extends InProcessFunction with GatherFunction {
+  @Output(doc="The output bam index", required=false)
+  var outputIndex: File = _
+
+  private lazy val originalGATK = this.originalFunction.asInstanceOf[CommandLineGATK]
+
+  override def freezeFieldValues() {
+    super.freezeFieldValues()
+    // Match the index name written by htsjdk and the scattered function.
+    if (outputIndex == null && originalOutput != null && !originalGATK.disable_bam_indexing)
+      outputIndex = new File(originalOutput.getParentFile, originalOutput.getName.stripSuffix(".bam") + ".bai")
+  }
+
+  def run() {
+    waitForGatherParts()
+    if (gatherParts.isEmpty)
+      throw new QException("No files to gather to output: " + originalOutput)
+    BamFileIoUtils.gatherWithBlockCopying(gatherParts, originalOutput, !originalGATK.disable_bam_indexing, originalGATK.generate_md5)
+  }
+}
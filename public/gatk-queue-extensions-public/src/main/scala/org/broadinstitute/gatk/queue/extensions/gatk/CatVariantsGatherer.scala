@@ -31,7 +31,8 @@ import org.broadinstitute.gatk.queue.function.scattergather.GatherFunction
 
 /**
  *
- * Currently this is the default gather for VCFs.
+ * Gathers VCFs and BCFs by rewriting the records with CatVariants.
+ * VcfBlockGatherFunction is now the default gather for VCFs, this is still needed for BCFs.
  * One can set a specific gatherer to use by adding @Gather before any output argument.
  * For example (used to be part of UG):
  *           @Gather(className = "org.broadinstitute.gatk.queue.extensions.gatk.CatVariantsGatherer")
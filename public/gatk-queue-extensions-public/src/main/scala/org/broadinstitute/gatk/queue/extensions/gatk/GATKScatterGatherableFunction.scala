@@ -0,0 +1,43 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.extensions.gatk
+
+import org.broadinstitute.gatk.queue.function.scattergather.{GatherFunction, ScatterGatherableFunction}
+import org.broadinstitute.gatk.utils.commandline.ArgumentSource
+
+/**
+ * Scatter gathers a GATK walker, gathering the BCF outputs that VcfBlockGatherFunction
+ * can't gather in process with CatVariantsGatherer instead.
+ */
+trait GATKScatterGatherableFunction extends ScatterGatherableFunction {
+  override protected def newGatherFunction(gatherField: ArgumentSource): GatherFunction = {
+    super.newGatherFunction(gatherField) match {
+      case vcfGather: VcfBlockGatherFunction if !VcfBlockGatherFunction.isVcf(getFieldFile(gatherField)) =>
+        new CatVariantsGatherer
+      case gatherFunction => gatherFunction
+    }
+  }
+}
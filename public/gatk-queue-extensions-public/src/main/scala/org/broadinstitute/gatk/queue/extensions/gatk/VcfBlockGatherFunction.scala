@@ -0,0 +1,254 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.extensions.gatk
+
+import java.io.{ByteArrayOutputStream, InputStream, FileInputStream, FileOutputStream, File}
+import java.util.zip.Deflater
+import htsjdk.samtools.SAMSequenceDictionary
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory
+import htsjdk.samtools.util.{BlockCompressedOutputStream, BlockCompressedFilePointerUtil, BlockCompressedStreamConstants, BlockCompressedInputStream}
+import htsjdk.samtools.util.zip.DeflaterFactory
+import htsjdk.tribble.index.IndexCreator
+import htsjdk.tribble.readers.{PositionalBufferedStream, AsciiLineReader}
+import htsjdk.variant.vcf.VCFCodec
+import org.broadinstitute.gatk.engine.GATKVCFUtils
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.InProcessFunction
+import org.broadinstitute.gatk.queue.function.scattergather.GatherFunction
+import org.broadinstitute.gatk.utils.commandline.ArgumentTypeDescriptor
+
+/**
+ * Gathers VCFs in process, without starting a JVM or decoding the records.
+ *
+ * The header of the first part is kept and the records of every part are appended in order, so
+ * like CatVariantsGatherer with assumeSorted the parts must already be in coordinate order, as
+ * they are when scattered by intervals.  Block compressed parts are joined at the BGZF block
+ * level: only the block holding the end of each header is recompressed.  The index is then
+ * built in one pass that only decodes the position of each record.
+ *
+ * BCF outputs are not supported; the generated walkers gather them with CatVariantsGatherer
+ * instead, see GATKScatterGatherableFunction.
+ */
+class VcfBlockGatherFunction extends InProcessFunction with GatherFunction {
+  private lazy val originalGATK = this.originalFunction.asInstanceOf[CommandLineGATK]
+
+  override def freezeFieldValues() {
+    super.freezeFieldValues()
+    if (!VcfBlockGatherFunction.isVcf(this.originalOutput))
+      throw new QException("Unable to gather %s in process, gather BCF outputs with CatVariantsGatherer.".format(this.originalOutput))
+  }
+
+  def run() {
+    waitForGatherParts()
+    if (gatherParts.isEmpty)
+      throw new QException("No files to gather to output: " + originalOutput)
+
+    val dictionary =
+      if (originalGATK.reference_sequence == null) null
+      else ReferenceSequenceFileFactory.getReferenceSequenceFile(originalGATK.reference_sequence).getSequenceDictionary
+    val indexCreator = GATKVCFUtils.makeIndexCreator(
+      Option(originalGATK.variant_index_type).getOrElse(GATKVCFUtils.DEFAULT_INDEX_TYPE),
+      originalGATK.variant_index_parameter.getOrElse(GATKVCFUtils.DEFAULT_INDEX_PARAMETER),
+      originalOutput, dictionary)
+
+    VcfBlockGatherFunction.gather(gatherParts, originalOutput)
+    VcfBlockGatherFunction.index(originalOutput, indexCreator, dictionary)
+  }
+}
+
+object VcfBlockGatherFunction {
+  /**
+   * Returns true if the file is a plain text or block compressed VCF.
+   * @param file File to check.
+   * @return true if the file can be gathered by block copying.
+   */
+  def isVcf(file: File) = file.getName.endsWith(".vcf") || (isBlockCompressed(file) && file.getName.contains(".vcf."))
+
+  private def isBlockCompressed(file: File) = ArgumentTypeDescriptor.isCompressed(file.getPath)
+
+  /**
+   * Concatenates the records of the parts after the header of the first part.
+   * @param parts VCFs in coordinate order, all plain text or all block compressed.
+   * @param output VCF to write.
+   */
+  def gather(parts: Seq[File], output: File) {
+    val out = new FileOutputStream(output)
+    try {
+      if (isBlockCompressed(output)) {
+        for ((part, i) <- parts.zipWithIndex) {
+          val start = if (i == 0) 0L else firstRecord(part)
+          if (start >= 0)
+            copyBlocks(part, start, out)
+        }
+        out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK)
+      } else {
+        for ((part, i) <- parts.zipWithIndex) {
+          val start = if (i == 0) 0L else firstRecord(part)
+          if (start >= 0)
+            copyBytes(part, start, part.length, out)
+        }
+      }
+    } finally {
+      out.close()
+    }
+  }
+
+  /**
+   * Indexes a VCF by decoding only the position of each record.
+   * @param vcf VCF to index.
+   * @param indexCreator Creator for the type of index to write next to the VCF.
+   * @param dictionary Optional sequence dictionary to store in the index.
+   */
+  def index(vcf: File, indexCreator: IndexCreator, dictionary: SAMSequenceDictionary) {
+    val codec = new VCFCodec
+    val headerStream = openVcf(vcf)
+    try {
+      codec.readActualHeader(codec.makeSourceFromStream(headerStream))
+    } finally {
+      headerStream.close()
+    }
+
+    val records = new PositionedLines(vcf)
+    try {
+      var position = records.position
+      var line = records.readLine()
+      while (line != null) {
+        if (!line.startsWith("#"))
+          indexCreator.addFeature(codec.decodeLoc(line), position)
+        position = records.position
+        line = records.readLine()
+      }
+      if (dictionary != null)
+        indexCreator.setIndexSequenceDictionary(dictionary)
+      indexCreator.finalizeIndex(position).writeBasedOnFeatureFile(vcf)
+    } finally {
+      records.close()
+    }
+  }
+
+  private def openVcf(vcf: File): InputStream =
+    if (isBlockCompressed(vcf)) new BlockCompressedInputStream(vcf) else new FileInputStream(vcf)
+
+  /**
+   * Reads the lines of a VCF along with the position of each line that an index refers to:
+   * the byte offset for plain text, or the virtual file pointer for block compressed files.
+   */
+  private class PositionedLines(vcf: File) {
+    private val compressed = if (isBlockCompressed(vcf)) new BlockCompressedInputStream(vcf) else null
+    private val text = if (compressed == null) new AsciiLineReader(new PositionalBufferedStream(new FileInputStream(vcf))) else null
+
+    def position = if (compressed != null) compressed.getFilePointer else text.getPosition
+    def readLine() = if (compressed != null) compressed.readLine() else text.readLine()
+    def close() { if (compressed != null) compressed.close() else text.close() }
+  }
+
+  /**
+   * Returns the position of the first record, or -1 if the part has no records.
+   */
+  private def firstRecord(part: File) = {
+    val lines = new PositionedLines(part)
+    try {
+      var position = lines.position
+      var line = lines.readLine()
+      while (line != null && line.startsWith("#")) {
+        position = lines.position
+        line = lines.readLine()
+      }
+      if (line == null) -1L else position
+    } finally {
+      lines.close()
+    }
+  }
+
+  private def copyBytes(part: File, start: Long, end: Long, out: FileOutputStream) {
+    val in = new FileInputStream(part).getChannel
+    try {
+      var position = start
+      while (position < end)
+        position += in.transferTo(position, end - position, out.getChannel)
+    } finally {
+      in.close()
+    }
+  }
+
+  /**
+   * Copies the BGZF blocks of a part starting at the virtual file pointer, leaving out the
+   * terminating empty block.  The rest of the block containing the pointer is recompressed.
+   */
+  private def copyBlocks(part: File, start: Long, out: FileOutputStream) {
+    var copyFrom = BlockCompressedFilePointerUtil.getBlockAddress(start)
+    if (BlockCompressedFilePointerUtil.getBlockOffset(start) > 0) {
+      val in = new BlockCompressedInputStream(part)
+      try {
+        in.seek(start)
+        val rest = new Array[Byte](in.available)
+        var read = 0
+        while (read < rest.length)
+          read += in.read(rest, read, rest.length - read)
+        copyFrom = BlockCompressedFilePointerUtil.getBlockAddress(in.getFilePointer)
+        out.write(recompress(rest))
+      } finally {
+        in.close()
+      }
+    }
+
+    val end = BlockCompressedInputStream.checkTermination(part) match {
+      case BlockCompressedInputStream.FileTermination.HAS_TERMINATOR_BLOCK =>
+        part.length - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length
+      case BlockCompressedInputStream.FileTermination.HAS_HEALTHY_LAST_BLOCK =>
+        part.length
+      case _ =>
+        throw new QException("Gather part is not a valid block compressed file: " + part)
+    }
+
+    copyBytes(part, copyFrom, end, out)
+  }
+
+  /**
+   * Returns the BGZF blocks compressing the bytes, without the terminating empty block.
+   * The blocks are written to a buffer so that the stream can be closed without closing the output.
+   */
+  private def recompress(bytes: Array[Byte]) = {
+    val buffer = new ByteArrayOutputStream
+    // Closing the stream doesn't end its deflater, so keep it to end it here.
+    var deflater: Deflater = null
+    val deflaterFactory = new DeflaterFactory {
+      override def makeDeflater(compressionLevel: Int, nowrap: Boolean) = {
+        deflater = super.makeDeflater(compressionLevel, nowrap)
+        deflater
+      }
+    }
+    val recompressed = new BlockCompressedOutputStream(buffer, null: File,
+      BlockCompressedOutputStream.getDefaultCompressionLevel, deflaterFactory)
+    try {
+      recompressed.write(bytes)
+      recompressed.close()
+    } finally {
+      deflater.end()
+    }
+    buffer.toByteArray.dropRight(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length)
+  }
+}
@@ -0,0 +1,120 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.extensions.gatk
+
+import java.io.{FileInputStream, PrintStream, OutputStream, FileOutputStream, File}
+import java.util.zip.GZIPInputStream
+import htsjdk.samtools.util.BlockCompressedOutputStream
+import htsjdk.tribble.AbstractFeatureReader
+import htsjdk.variant.vcf.VCFCodec
+import org.apache.commons.io.IOUtils
+import org.broadinstitute.gatk.engine.GATKVCFUtils
+import org.broadinstitute.gatk.queue.QCommandLine
+import org.broadinstitute.gatk.queue.util.ClassFieldCache
+import org.broadinstitute.gatk.utils.commandline.ParsingEngine
+import org.broadinstitute.gatk.utils.BaseTest
+import org.testng.Assert
+import org.testng.annotations.{DataProvider, Test}
+import collection.JavaConversions._
+
+class VcfBlockGatherFunctionUnitTest {
+  private val header = Seq(
+    "##fileformat=VCFv4.2",
+    "##contig=<ID=chr1,length=100000>",
+    "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO")
+
+  private def records(start: Int, count: Int) =
+    (start until start + count).map(pos => "chr1\t%d\t.\tA\tC\t%d\tPASS\t.".format(pos, pos % 100))
+
+  private def writeVcf(extension: String, lines: Seq[String]) = {
+    val file = BaseTest.createTempFile("VcfBlockGatherFunctionUnitTest", extension)
+    val out: OutputStream =
+      if (extension.endsWith(".gz")) new BlockCompressedOutputStream(file)
+      else new FileOutputStream(file)
+    val writer = new PrintStream(out)
+    lines.foreach(writer.println)
+    writer.close()
+    file
+  }
+
+  private def readVcf(file: File) = {
+    val in =
+      if (file.getName.endsWith(".gz")) new GZIPInputStream(new FileInputStream(file))
+      else new FileInputStream(file)
+    try IOUtils.readLines(in).toSeq finally in.close()
+  }
+
+  @DataProvider(name = "gatherParts")
+  def getGatherParts: Array[Array[AnyRef]] = {
+    // Enough records to span several BGZF blocks per part, and parts without records.
+    val partRecords = Seq(records(1, 5000), Nil, records(5001, 20000), records(25001, 3))
+    for (extension <- Array(".vcf", ".vcf.gz")) yield Array[AnyRef](extension, partRecords)
+  }
+
+  @Test(dataProvider = "gatherParts")
+  def testGather(extension: String, partRecords: Seq[Seq[String]]) {
+    val parts = partRecords.map(lines => writeVcf(extension, header ++ lines))
+    val output = BaseTest.createTempFile("VcfBlockGatherFunctionUnitTest", extension)
+    VcfBlockGatherFunction.gather(parts, output)
+    Assert.assertEquals(readVcf(output), header ++ partRecords.flatten)
+
+    VcfBlockGatherFunction.index(output,
+      GATKVCFUtils.makeIndexCreator(GATKVCFUtils.DEFAULT_INDEX_TYPE, GATKVCFUtils.DEFAULT_INDEX_PARAMETER, output, null), null)
+    val reader = AbstractFeatureReader.getFeatureReader(output.getAbsolutePath, new VCFCodec, true)
+    try {
+      for ((start, stop) <- Seq((1, 1), (4990, 5010), (24999, 25002), (25003, 30000)))
+        Assert.assertEquals(iterableAsScalaIterable(reader.query("chr1", start, stop)).toSeq.map(_.getStart),
+          partRecords.flatten.map(_.split("\t")(1).toInt).filter(pos => pos >= start && pos <= stop),
+          "query chr1:%d-%d".format(start, stop))
+    } finally {
+      reader.close()
+    }
+  }
+
+  @Test
+  def testGatherClass() {
+    // Looking up the output fields needs the parser set up by Queue.
+    if (ClassFieldCache.parsingEngine == null)
+      ClassFieldCache.parsingEngine = new ParsingEngine(new QCommandLine)
+    val selectVariants = new SelectVariants {
+      def outGatherFunction = newGatherFunction(outputFields.find(_.field.getName == "out").get)
+    }
+
+    selectVariants.out = new File("out.vcf.gz")
+    Assert.assertEquals(selectVariants.outGatherFunction.getClass, classOf[VcfBlockGatherFunction])
+    // BCFs can't be gathered in process
+    selectVariants.out = new File("out.bcf")
+    Assert.assertEquals(selectVariants.outGatherFunction.getClass, classOf[CatVariantsGatherer])
+  }
+
+  @Test
+  def testIsVcf() {
+    Assert.assertTrue(VcfBlockGatherFunction.isVcf(new File("out.vcf")))
+    Assert.assertTrue(VcfBlockGatherFunction.isVcf(new File("out.vcf.gz")))
+    Assert.assertTrue(VcfBlockGatherFunction.isVcf(new File("out.g.vcf.gz")))
+    Assert.assertFalse(VcfBlockGatherFunction.isVcf(new File("out.bcf")))
+  }
+}
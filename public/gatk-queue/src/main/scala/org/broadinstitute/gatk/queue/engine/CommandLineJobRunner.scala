@@ -89,6 +89,8 @@ trait CommandLineJobRunner extends JobRunner[CommandLineFunction] with Logging {
   protected def updateStatus(updatedStatus: RunnerStatus.Value) {
     this.lastStatus = updatedStatus
     this.lastStatusUpdate = System.currentTimeMillis
+    if (updatedStatus == RunnerStatus.DONE || updatedStatus == RunnerStatus.FAILED)
+      notifyStatusListener()
   }
 
   override def checkUnknownStatus() {
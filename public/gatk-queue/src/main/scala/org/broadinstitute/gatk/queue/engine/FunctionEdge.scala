@@ -26,7 +26,7 @@
 package org.broadinstitute.gatk.queue.engine
 
 import org.broadinstitute.gatk.queue.function.QFunction
-import java.io.{StringWriter, PrintWriter}
+import java.io.{File, StringWriter, PrintWriter}
 import org.broadinstitute.gatk.queue.util.Logging
 import org.broadinstitute.gatk.utils.io.IOUtils
 import org.apache.commons.io.FileUtils
@@ -37,8 +37,10 @@ import org.apache.commons.lang.StringUtils
  * The edge is created first to determine inter-node dependencies,
  * and then the runner is specified later when the time comes to
  * execute the function in the edge.
+ * @param statusFileExists Checks if the done and fail files of the function exist.
  */
-class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNode) extends QEdge with Logging {
+class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNode,
+                   statusFileExists: File => Boolean = _.exists) extends QEdge with Logging {
   var runner: JobRunner[_] =_
 
   /**
@@ -57,9 +59,9 @@ class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNod
    * Initializes with the current status of the function.
    */
   private var currentStatus = {
-    if (function.isFail)
+    if (function.isFail(statusFileExists))
       RunnerStatus.FAILED
-    else if (function.isDone)
+    else if (function.isDone(statusFileExists))
       RunnerStatus.DONE
     else
       RunnerStatus.PENDING
@@ -168,6 +170,16 @@ class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNod
     runner = null
   }
 
+  /**
+   * Restores a status saved before the status of the graph was checked.
+   * @param status The saved status.
+   * @param resetFromStatus The saved status the edge was reset from.
+   */
+  def restoreStatus(status: RunnerStatus.Value, resetFromStatus: RunnerStatus.Value) {
+    this.currentStatus = status
+    this.resetFromStatus = resetFromStatus
+  }
+
   override def shortDescription = function.shortDescription
 
   /**
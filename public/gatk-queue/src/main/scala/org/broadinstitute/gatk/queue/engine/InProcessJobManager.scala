@@ -31,4 +31,5 @@ class InProcessJobManager extends JobManager[InProcessFunction, InProcessRunner]
   def runnerType = classOf[InProcessRunner]
   def functionType = classOf[InProcessFunction]
   def create(function: InProcessFunction) = new InProcessRunner(function)
+  override def notifiesStatus = true
 }
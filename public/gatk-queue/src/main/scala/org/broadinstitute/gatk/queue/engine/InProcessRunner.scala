@@ -60,6 +60,7 @@ class InProcessRunner(val function: InProcessFunction) extends JobRunner[InProce
 
     runStatus = RunnerStatus.DONE
     getRunInfo.doneTime = new Date()
+    notifyStatusListener()
   }
 
   def status = runStatus
@@ -0,0 +1,71 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import collection.mutable
+
+/**
+ * Tracks which pending jobs are ready to run.  Each job counts the previous jobs that are not done yet,
+ * so when a job finishes only the jobs following it are updated instead of rescanning the whole graph.
+ * @param edges All the function edges of the graph, once their statuses have been updated.
+ * @param previousFunctions Returns the jobs a job depends on.
+ * @param nextFunctions Returns the jobs that depend on a job.
+ */
+class JobDependencies(edges: Seq[FunctionEdge],
+                      previousFunctions: FunctionEdge => Seq[FunctionEdge],
+                      nextFunctions: FunctionEdge => Seq[FunctionEdge]) {
+  val next = edges.map(edge => edge -> nextFunctions(edge).distinct).toMap
+  private val previousNotDone = mutable.Map.empty[FunctionEdge, Int]
+  for (edge <- edges)
+    previousNotDone(edge) = previousFunctions(edge).distinct.count(_.status != RunnerStatus.DONE)
+
+  /**
+   * Returns true if the job is pending and all of the previous jobs are done.
+   */
+  def isReady(edge: FunctionEdge) = previousNotDone(edge) == 0 && edge.status == RunnerStatus.PENDING
+
+  /**
+   * Returns the jobs that are currently ready to run.
+   */
+  def readyJobs = edges.filter(isReady(_))
+
+  /**
+   * Returns the number of previous jobs that are not done yet.
+   */
+  def numPreviousNotDone(edge: FunctionEdge): Int = previousNotDone(edge)
+
+  /**
+   * Updates the jobs following a job that is now done.
+   * @param edge The job that is now done.
+   * @return The following jobs that are now ready to run.
+   */
+  def done(edge: FunctionEdge) = {
+    next(edge).filter(nextEdge => {
+      previousNotDone(nextEdge) -= 1
+      isReady(nextEdge)
+    })
+  }
+}
@@ -0,0 +1,72 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import java.util.concurrent.{TimeUnit, LinkedBlockingQueue}
+import collection.JavaConversions._
+
+/**
+ * Jobs that may have finished, pushed by the status listeners of their runners
+ * and consumed by the thread running the jobs.
+ */
+class JobEvents {
+  // None wakes up the consuming thread without a job.
+  private val events = new LinkedBlockingQueue[Option[FunctionEdge]]
+
+  /**
+   * Records that the status of a job may have changed.
+   * @param edge The job.
+   */
+  def put(edge: FunctionEdge) {
+    events.put(Some(edge))
+  }
+
+  /**
+   * Wakes up the consuming thread if it is waiting for a job.
+   */
+  def wakeUp() {
+    events.put(None)
+  }
+
+  /**
+   * Waits until a job is put or the consuming thread is woken up.
+   * @param timeout The maximum time to wait in milliseconds.
+   * @return The job that was put, or nothing if the wait timed out or was woken up.
+   */
+  def poll(timeout: Long): Seq[FunctionEdge] = {
+    val event = events.poll(timeout, TimeUnit.MILLISECONDS)
+    if (event == null) Seq.empty else event.toSeq
+  }
+
+  /**
+   * Returns the jobs that were put without waiting.
+   */
+  def drain(): Seq[FunctionEdge] = {
+    val drained = new java.util.ArrayList[Option[FunctionEdge]]
+    events.drainTo(drained)
+    drained.flatten
+  }
+}
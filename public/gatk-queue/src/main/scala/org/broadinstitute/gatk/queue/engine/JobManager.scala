@@ -45,6 +45,24 @@ trait JobManager[TFunction <: QFunction, TRunner <: JobRunner[TFunction]] {
    */
   def create(function: TFunction): TRunner
 
+  /**
+   * If true the runners notify their status listeners as soon as their jobs finish,
+   * so their status never needs to be polled with updateStatus.
+   */
+  def notifiesStatus = false
+
+  /**
+   * Returns true if the function may be started now.  Managers that submit to a
+   * batch system leave admission to it; local managers can hold jobs back until
+   * the resources they request are free.
+   *
+   * The ready functions are checked in order, and none of the functions after a refused
+   * function are started until jobs finish or become ready, so the refused function
+   * is the next to get the resources.
+   * @param function Function ready to start.
+   */
+  def canStart(function: TFunction) = true
+
   /**
    * Updates the status on a list of functions.
    * @param runners Runners to update.
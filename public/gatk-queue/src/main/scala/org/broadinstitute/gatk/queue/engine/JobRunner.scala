@@ -58,6 +58,21 @@ trait JobRunner[TFunction <: QFunction] {
    */
   def checkUnknownStatus() {}
 
+  /**
+   * Called when the runner finds out that its job is DONE or FAILED, possibly from another thread.
+   * May be called more than once for the same job.
+   */
+  @volatile var statusListener: () => Unit = _
+
+  /**
+   * Tells the status listener, if any, that the job is DONE or FAILED.
+   */
+  protected def notifyStatusListener() {
+    val listener = statusListener
+    if (listener != null)
+      listener()
+  }
+
   /**
    * Returns the function to be run.
    */
@@ -60,11 +60,17 @@ class QGraph extends Logging {
   private var nodeMap = TreeMap.empty[Iterable[File], QNode](Ordering.Iterable(fileOrdering))
   // The next unique id for a node if not found in the nodeMap.
   private var nextNodeId = 0
+  // Looks up the done and fail files of the functions while the graph is generated.
+  private val statusFileCache = new DirectoryListingCache
 
   private var running = true
   private val runningLock = new Object
   private var runningJobs = Set.empty[FunctionEdge]
   private var cleanupJobs = Set.empty[FunctionEdge]
+  private var dependencies: JobDependencies = _
+
+  // Jobs that may have finished, pushed by the status listeners of their runners.
+  private val jobEvents = new JobEvents
 
   private val nl = "%n".format()
 
@@ -121,7 +127,7 @@ class QGraph extends Logging {
             outputFiles :+= command.jobErrorFile
           val inputs = getQNode(inputFiles.sorted(fileOrdering))
           val outputs = getQNode(outputFiles.sorted(fileOrdering))
-          addEdge(new FunctionEdge(command, inputs, outputs))
+          addEdge(new FunctionEdge(command, inputs, outputs, statusFileCache.exists))
         }
       }
     } catch {
@@ -171,32 +177,58 @@ class QGraph extends Logging {
     validate()
 
     if (running && numMissingValues == 0) {
-      val scatterGathers = jobGraph.edgeSet.filter(edge => scatterGatherable(edge))
-      if (!scatterGathers.isEmpty) {
-        logger.info("Generating scatter gather jobs.")
-
-        var addedFunctions = Seq.empty[QFunction]
-        for (scatterGather <- scatterGathers) {
-          val functions = scatterGather.asInstanceOf[FunctionEdge]
-                  .function.asInstanceOf[ScatterGatherableFunction]
-                  .generateFunctions()
-          addedFunctions ++= functions
-        }
-
-        logger.info("Removing original jobs.")
-        this.jobGraph.removeAllEdges(scatterGathers)
-        prune()
+      // Unless everything will be run again, only expand the scatter gather functions that are already done
+      // once the status of the graph shows that they have to be run again.
+      val expandLazily = !settings.startFromScratch && !settings.getStatus
+      val (doneScatterGathers, scatterGathers) = getFunctionEdges
+        .filter(_.function.isInstanceOf[ScatterGatherableFunction])
+        .partition(edge => expandLazily && edge.status == RunnerStatus.DONE)
+      expandScatterGathers(scatterGathers.filter(scatterGatherable(_)))
+
+      if (running && numMissingValues == 0 && !doneScatterGathers.isEmpty) {
+        // An unexpanded function is reset at least whenever its scatter gather jobs would be,
+        // so only the ones reset by this check need to be expanded.
+        val savedStatuses = getFunctionEdges.map(edge => (edge, edge.status, edge.resetFromStatus))
+        traverseFunctions(edge => checkDone(edge, cleanOutputs = false))
+        val rerunScatterGathers = doneScatterGathers.filter(edge => edge.status != RunnerStatus.DONE && scatterGatherable(edge))
+        for ((edge, status, resetFromStatus) <- savedStatuses)
+          edge.restoreStatus(status, resetFromStatus)
+        logger.info("%d of %d done scatter gather functions will be run again.".format(rerunScatterGathers.size, doneScatterGathers.size))
+        expandScatterGathers(rerunScatterGathers)
+      }
+    }
 
-        logger.info("Adding scatter gather jobs.")
-        addedFunctions.foreach(function => if (running) this.add(function))
+    // Jobs will start creating status files.
+    statusFileCache.clear()
+  }
 
-        logger.info("Regenerating graph.")
-        fill()
-        val scatterGatherDotFile = if (settings.graphvizScatterGatherFile != null) settings.graphvizScatterGatherFile else settings.graphvizFile
-        if (scatterGatherDotFile != null)
-          renderGraph(scatterGatherDotFile)
-        validate()
+  /**
+   * Replaces functions with their scatter, clone and gather functions.
+   * @param scatterGathers Scatter gatherable functions to expand.
+   */
+  private def expandScatterGathers(scatterGathers: Seq[FunctionEdge]) {
+    if (!scatterGathers.isEmpty) {
+      logger.info("Generating scatter gather jobs.")
+
+      var addedFunctions = Seq.empty[QFunction]
+      for (scatterGather <- scatterGathers) {
+        val functions = scatterGather.function.asInstanceOf[ScatterGatherableFunction].generateFunctions()
+        addedFunctions ++= functions
       }
+
+      logger.info("Removing original jobs.")
+      this.jobGraph.removeAllEdges(scatterGathers)
+      prune()
+
+      logger.info("Adding scatter gather jobs.")
+      addedFunctions.foreach(function => if (running) this.add(function))
+
+      logger.info("Regenerating graph.")
+      fill()
+      val scatterGatherDotFile = if (settings.graphvizScatterGatherFile != null) settings.graphvizScatterGatherFile else settings.graphvizFile
+      if (scatterGatherDotFile != null)
+        renderGraph(scatterGatherDotFile)
+      validate()
     }
   }
 
@@ -279,14 +311,6 @@ class QGraph extends Logging {
     })
   }
 
-  private def getReadyJobs: Set[FunctionEdge] = {
-    jobGraph.edgeSet.filter{
-      case f: FunctionEdge =>
-        this.previousFunctions(f).forall(_.status == RunnerStatus.DONE) && f.status == RunnerStatus.PENDING
-      case _ => false
-    }.toSet.asInstanceOf[Set[FunctionEdge]]
-  }
-
   /**
    *  Removes mapping edges that aren't being used, and nodes that don't belong to anything.
    */
@@ -347,19 +371,22 @@ class QGraph extends Logging {
 
     updateGraphStatus(cleanOutputs = false)
 
-    var readyJobs = getReadyJobs
+    dependencies = new JobDependencies(getFunctionEdges, previousFunctions(_), nextFunctions(_))
+    var readyJobs = dependencies.readyJobs
     while (running && readyJobs.size > 0) {
       logger.debug("+++++++")
-      foreachFunction(readyJobs.toSeq, edge => {
+      var nextReadyJobs = Seq.empty[FunctionEdge]
+      foreachFunction(readyJobs, edge => {
         if (running) {
           edge.myRunInfo.startTime = new Date()
           edge.getRunInfo.exechosts = Utils.resolveHostname()
           logEdge(edge)
           edge.myRunInfo.doneTime = new Date()
           edge.markAsDone()
+          nextReadyJobs ++= dependencies.done(edge)
         }
       })
-      readyJobs = getReadyJobs
+      readyJobs = nextReadyJobs
     }
   }
 
@@ -421,12 +448,15 @@ class QGraph extends Logging {
 
       updateGraphStatus(cleanOutputs = true)
 
+      dependencies = new JobDependencies(getFunctionEdges, previousFunctions(_), nextFunctions(_))
       var readyJobs = TreeSet.empty[FunctionEdge](functionOrdering)
-      readyJobs ++= getReadyJobs
+      readyJobs ++= dependencies.readyJobs
       runningJobs = Set.empty[FunctionEdge]
       var lastRunningCheck = System.currentTimeMillis
       var logNextStatusCounts = true
       var startedJobsToEmail = Set.empty[FunctionEdge]
+      // Only look for jobs to start after jobs finished or became ready, or the last pass was cut short.
+      var checkReadyJobs = true
 
       while (running && readyJobs.size + runningJobs.size > 0) {
 
@@ -434,27 +464,41 @@ class QGraph extends Logging {
         var doneJobs = Set.empty[FunctionEdge]
         var failedJobs = Set.empty[FunctionEdge]
 
-        def startJobs: Boolean = {
-
-          def canRunMoreConcurrentJobs: Boolean =
-            if(settings.maximumNumberOfConcurrentJobs.isDefined)
-              runningJobs.size + startedJobs.size < settings.maximumNumberOfConcurrentJobs.get
-            else
-              true
-
-          running && readyJobs.size > 0 &&
-            !readyRunningCheck(lastRunningCheck) &&
-            canRunMoreConcurrentJobs
-        }
-
-        while (startJobs) {
-          val edge = readyJobs.head
-          edge.runner = newRunner(edge.function)
-          edge.start()
-          messengers.foreach(_.started(jobShortName(edge.function)))
-          startedJobs += edge
-          readyJobs -= edge
-          logNextStatusCounts = true
+        def canRunMoreConcurrentJobs: Boolean =
+          if(settings.maximumNumberOfConcurrentJobs.isDefined)
+            runningJobs.size + startedJobs.size < settings.maximumNumberOfConcurrentJobs.get
+          else
+            true
+
+        def startJobs: Boolean =
+          running && !readyRunningCheck(lastRunningCheck) && canRunMoreConcurrentJobs
+
+        // Start the ready jobs in a single pass, deepest first.  Once a job manager refuses a job,
+        // none of the jobs after it are started, so that a steady stream of smaller jobs can't keep
+        // it waiting forever: the refused job gets the resources as the running jobs release them.
+        if (checkReadyJobs && startJobs) {
+          var refusingManagers = Set.empty[JobManager[_, _]]
+          val jobs = readyJobs.iterator
+          while (jobs.hasNext && startJobs) {
+            val edge = jobs.next()
+            val manager = jobManager(edge.function)
+            if (!refusingManagers.contains(manager)) {
+              if (canStart(edge.function)) {
+                edge.runner = newRunner(edge.function)
+                edge.runner.statusListener = () => jobEvents.put(edge)
+                edge.start()
+                // A job that fails to start never notifies, so check every job once after starting it.
+                jobEvents.put(edge)
+                messengers.foreach(_.started(jobShortName(edge.function)))
+                startedJobs += edge
+                logNextStatusCounts = true
+              } else {
+                refusingManagers += manager
+              }
+            }
+          }
+          readyJobs --= startedJobs
+          checkReadyJobs = !startJobs
         }
 
         runningJobs ++= startedJobs
@@ -473,20 +517,22 @@ class QGraph extends Logging {
           startedJobsToEmail = Set.empty[FunctionEdge]
         }
 
-        if (readyJobs.size == 0 && runningJobs.size > 0) {
-          runningLock.synchronized {
-            if (running) {
-              val timeout = nextRunningCheck(lastRunningCheck)
-              if (timeout > 0)
-                runningLock.wait(timeout)
-            }
-          }
+        // No more jobs can be started, so sleep until a job finishes or it is time to poll the job managers.
+        var finishedJobs = Seq.empty[FunctionEdge]
+        if (running && runningJobs.size > 0) {
+          val timeout = nextRunningCheck(lastRunningCheck)
+          if (timeout > 0)
+            finishedJobs ++= jobEvents.poll(timeout)
+        }
+
+        if (readyRunningCheck(lastRunningCheck)) {
+          lastRunningCheck = System.currentTimeMillis
+          updateStatus()
         }
 
-        lastRunningCheck = System.currentTimeMillis
-        updateStatus()
+        finishedJobs ++= jobEvents.drain()
 
-        runningJobs.foreach(edge => edge.status match {
+        finishedJobs.distinct.filter(runningJobs.contains(_)).foreach(edge => edge.status match {
           case RunnerStatus.DONE => {
             doneJobs += edge
             messengers.foreach(_.done(jobShortName(edge.function)))
@@ -524,7 +570,11 @@ class QGraph extends Logging {
           writeJobsReport(plot = false)
         }
 
-        readyJobs ++= getReadyJobs
+        for (edge <- doneJobs)
+          readyJobs ++= dependencies.done(edge)
+        readyJobs ++= failedJobs.filter(dependencies.isReady(_))
+        if (doneJobs.size > 0 || failedJobs.size > 0)
+          checkReadyJobs = true
       }
 
       logStatusCounts()
@@ -646,7 +696,7 @@ class QGraph extends Logging {
     var doneJobs = Set.empty[FunctionEdge]
 
     for (edge <- cleanupJobs) {
-      val nextDone = nextFunctions(edge).forall(next => {
+      val nextDone = dependencies.next(edge).forall(next => {
         val status = next.status
         (status == RunnerStatus.DONE || status == RunnerStatus.SKIPPED)
       })
@@ -708,6 +758,26 @@ class QGraph extends Logging {
     }
   }
 
+  private def canStart(f: QFunction) = {
+    f match {
+      case cmd: CommandLineFunction =>
+        commandLineManager.canStart(cmd)
+      case inProc: InProcessFunction =>
+        inProcessManager.canStart(inProc)
+      case _ =>
+        throw new QException("Unexpected function: " + f)
+    }
+  }
+
+  private def jobManager(f: QFunction): JobManager[_, _] = {
+    f match {
+      case cmd: CommandLineFunction => commandLineManager
+      case inProc: InProcessFunction => inProcessManager
+      case _ =>
+        throw new QException("Unexpected function: " + f)
+    }
+  }
+
   private def emailStartedJobs(started: Set[FunctionEdge]) {
     if (settings.statusEmailTo.size > 0) {
       val emailMessage = new EmailMessage
@@ -1134,6 +1204,10 @@ class QGraph extends Logging {
   }
 
 
+  /**
+   * Polls the job managers whose runners don't notify when their jobs finish.
+   * Runners that find out their job finished notify their status listeners.
+   */
   private def updateStatus() {
     val runners = runningJobs.map(_.runner)
     for (mgr <- managers) {
@@ -1142,7 +1216,7 @@ class QGraph extends Logging {
         val managerRunners = runners
           .filter(runner => manager.runnerType.isAssignableFrom(runner.getClass))
           .asInstanceOf[Set[JobRunner[QFunction]]]
-        if (managerRunners.size > 0)
+        if (managerRunners.size > 0 && !manager.notifiesStatus)
           try {
             val updatedRunners = manager.updateStatus(managerRunners)
             for (runner <- managerRunners.diff(updatedRunners)) {
@@ -1205,9 +1279,7 @@ class QGraph extends Logging {
     running = false
 
     // Try and wait for the thread to finish and exit normally.
-    runningLock.synchronized {
-      runningLock.notify()
-    }
+    jobEvents.wakeUp()
 
     // Start killing jobs.
     runningLock.synchronized {
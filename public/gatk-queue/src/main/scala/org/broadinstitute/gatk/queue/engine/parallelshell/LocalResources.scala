@@ -0,0 +1,107 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine.parallelshell
+
+import java.lang.management.ManagementFactory
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+import org.broadinstitute.gatk.queue.util.Logging
+
+/**
+ * Tracks the cores and resident memory reserved by the jobs running on the local machine.
+ *
+ * A job is admitted when its nCoresRequest and residentRequest fit in what is left of the
+ * machine.  A job that is larger than the whole machine is still admitted once nothing else
+ * is running, otherwise it would never run at all.  QGraph doesn't start the jobs after a
+ * refused job, so the running jobs drain until the refused job fits.
+ *
+ * @param cores Number of cores available to jobs.
+ * @param memory Memory available to jobs, in gigabytes.
+ */
+class LocalResources(val cores: Int, val memory: Double) extends Logging {
+  /** The resources held by one running job. */
+  class Reservation private[LocalResources] (val cores: Int, val memory: Double)
+
+  private var reservedCores = 0
+  private var reservedMemory = 0.0
+  private var reservations = 0
+
+  /**
+   * Returns true if the function can be started without oversubscribing the machine.
+   * @param function Function to check.
+   * @return true if the requested resources are free.
+   */
+  def canReserve(function: CommandLineFunction): Boolean = synchronized {
+    reservations == 0 ||
+      (reservedCores + coresRequest(function) <= cores && reservedMemory + memoryRequest(function) <= memory)
+  }
+
+  /**
+   * Reserves the resources requested by the function until the reservation is released.
+   * @param function Function about to start.
+   * @return the reservation to release when the function exits.
+   */
+  def reserve(function: CommandLineFunction): Reservation = synchronized {
+    val reservation = new Reservation(coresRequest(function), memoryRequest(function))
+    if (reservation.cores > cores || reservation.memory > memory)
+      logger.warn("%s requests %d cores and %.1f GB of memory, more than the %d cores and %.1f GB available locally."
+        .format(function.description, reservation.cores, reservation.memory, cores, memory))
+    reservedCores += reservation.cores
+    reservedMemory += reservation.memory
+    reservations += 1
+    reservation
+  }
+
+  /**
+   * Returns the resources of an exited function.
+   * @param reservation Reservation returned by reserve.
+   */
+  def release(reservation: Reservation) {
+    synchronized {
+      reservedCores -= reservation.cores
+      reservedMemory -= reservation.memory
+      reservations -= 1
+    }
+  }
+
+  private def coresRequest(function: CommandLineFunction) = function.nCoresRequest.getOrElse(1) max 1
+
+  private def memoryRequest(function: CommandLineFunction) =
+    function.residentRequest.orElse(function.memoryLimit).getOrElse(0.0) max 0.0
+}
+
+object LocalResources {
+  /**
+   * Returns the cores and physical memory of this machine.
+   * If the physical memory cannot be read only the cores are limited.
+   */
+  def detect() = {
+    val memory = ManagementFactory.getOperatingSystemMXBean match {
+      case os: com.sun.management.OperatingSystemMXBean => os.getTotalPhysicalMemorySize / 1024d / 1024d / 1024d
+      case _ => Double.PositiveInfinity
+    }
+    new LocalResources(Runtime.getRuntime.availableProcessors, memory)
+  }
+}
@@ -25,8 +25,11 @@
 
 package org.broadinstitute.gatk.queue.engine.parallelshell
 
+import java.util.concurrent.{ ExecutorService, Executors, ThreadFactory }
 import org.broadinstitute.gatk.queue.function.CommandLineFunction
 import org.broadinstitute.gatk.queue.engine.CommandLineJobManager
+import org.broadinstitute.gatk.queue.util.Logging
+import scala.concurrent.ExecutionContext
 
 /**
  * Runs multiple jobs locally without blocking.
@@ -34,23 +37,65 @@ import org.broadinstitute.gatk.queue.engine.CommandLineJobManager
  * However, for some scenarios, such as running multiple single threaded
  * programs concurrently it can be quite useful.
  * 
+ * Jobs are only started while the cores and memory they request
+ * (nCoresRequest and residentRequest) fit on this machine.
+ * 
  * All this code is based on the normal shell runner in GATK Queue and all 
  * credits for everything except the concurrency part goes to the GATK team.
  * 
  * @author Johan Dahlberg
  *
  */
-class ParallelShellJobManager extends CommandLineJobManager[ParallelShellJobRunner] {
+class ParallelShellJobManager extends CommandLineJobManager[ParallelShellJobRunner] with Logging {
 
   def runnerType = classOf[ParallelShellJobRunner]
 
+  /** The cores and memory of this machine shared by the running jobs. */
+  val resources = LocalResources.detect()
+
+  /**
+   * Threads waiting for the shell processes to exit.  Admission is decided by the
+   * resources, so the pool must not limit the number of jobs running at once.
+   */
+  private var executor: ExecutorService = _
+  private var executionContext: ExecutionContext = _
+
+  override def init() {
+    executor = Executors.newCachedThreadPool(new ThreadFactory {
+      def newThread(runnable: Runnable) = {
+        val thread = new Thread(runnable, "ParallelShellJob")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    executionContext = ExecutionContext.fromExecutorService(executor)
+    logger.info("Running local jobs on %d cores and %.1f GB of memory.".format(resources.cores, resources.memory))
+  }
+
+  override def exit() {
+    if (executor != null)
+      executor.shutdown()
+  }
+
   /**
    * Create new ParallelShellJobRunner
    * @param function Function for the runner.
    * @return a new ParallelShellJobRunner instance
    */
   def create(function: CommandLineFunction) =
-    new ParallelShellJobRunner(function)
+    new ParallelShellJobRunner(function, resources, executionContext)
+
+  /**
+   * Only start jobs whose requested cores and memory are free on this machine.
+   * @param function Function to check.
+   * @return true if the function can be started now.
+   */
+  override def canStart(function: CommandLineFunction) = resources.canReserve(function)
+
+  /**
+   * The runners update their status from the callback of the process future.
+   */
+  override def notifiesStatus = true
 
   /**
    * Update the status of the specified jobrunners.
@@ -31,7 +31,6 @@ import java.util.Date
 import org.broadinstitute.gatk.utils.Utils
 import org.broadinstitute.gatk.utils.runtime.{ ProcessSettings, OutputStreamSettings }
 import scala.concurrent._
-import ExecutionContext.Implicits.global
 import scala.util.{ Success, Failure }
 import org.broadinstitute.gatk.queue.util.Logging
 
@@ -48,7 +47,8 @@ import org.broadinstitute.gatk.queue.util.Logging
  *
  * @param function Command to run.
  */
-class ParallelShellJobRunner(val function: CommandLineFunction) extends CommandLineJobRunner with Logging {
+class ParallelShellJobRunner(val function: CommandLineFunction, resources: LocalResources, implicit val executionContext: ExecutionContext)
+  extends CommandLineJobRunner with Logging {
 
   // Controller on the thread that started the job
   val controller: ThreadSafeProcessController = new ThreadSafeProcessController()
@@ -84,9 +84,16 @@ class ParallelShellJobRunner(val function: CommandLineFunction) extends CommandL
     getRunInfo.exechosts = Utils.resolveHostname()
     updateStatus(RunnerStatus.RUNNING)
 
+    // Hold the requested cores and memory until the process exits,
+    // releasing them before the status listener hears about the exit.
+    val reservation = resources.reserve(function)
+
     // Run the command line process in a future.
     val executedFuture =
-      future { controller.exec(processSettings) }
+      future {
+        try controller.exec(processSettings)
+        finally resources.release(reservation)
+      }
 
     // Register a callback on the completion of the future, making sure that
     // the status of the job is updated accordingly. 
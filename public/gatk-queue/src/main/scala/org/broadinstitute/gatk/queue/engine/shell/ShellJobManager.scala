@@ -31,5 +31,6 @@ import org.broadinstitute.gatk.queue.engine.CommandLineJobManager
 class ShellJobManager extends CommandLineJobManager[ShellJobRunner] {
   def runnerType = classOf[ShellJobRunner]
   def create(function: CommandLineFunction) = new ShellJobRunner(function)
+  override def notifiesStatus = true
   override def tryStop(runners: Set[ShellJobRunner]) { runners.foreach(_.tryStop()) }
 }
@@ -0,0 +1,141 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import org.testng.Assert
+import org.testng.annotations.Test
+import java.io.File
+import org.broadinstitute.gatk.queue.function.InProcessFunction
+
+class JobDependenciesUnitTest {
+
+  private def makeEdge(id: Int) = {
+    // the job has no status files, so it starts out pending
+    val function = new InProcessFunction {
+      def run() {}
+      override def isDone(exists: File => Boolean) = false
+      override def isFail(exists: File => Boolean) = false
+    }
+    new FunctionEdge(function, new QNode(2 * id, Nil), new QNode(2 * id + 1, Nil))
+  }
+
+  /**
+   * a and b are followed by c, reached twice from a as if through a mapping edge, which is followed by d.
+   */
+  private class Graph {
+    val a = makeEdge(0)
+    val b = makeEdge(1)
+    val c = makeEdge(2)
+    val d = makeEdge(3)
+    val edges = Seq(a, b, c, d)
+
+    private val previous = Map(a -> Seq.empty[FunctionEdge], b -> Seq.empty[FunctionEdge], c -> Seq(a, b, a), d -> Seq(c))
+    private val next = Map(a -> Seq(c, c), b -> Seq(c), c -> Seq(d), d -> Seq.empty[FunctionEdge])
+
+    def dependencies = new JobDependencies(edges, previous, next)
+  }
+
+  @Test
+  def testReadyJobs() {
+    val graph = new Graph
+    import graph._
+    val dependencies = graph.dependencies
+    Assert.assertEquals(dependencies.readyJobs, Seq(a, b))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 2)
+    Assert.assertEquals(dependencies.numPreviousNotDone(d), 1)
+    Assert.assertEquals(dependencies.next(a), Seq(c))
+  }
+
+  @Test
+  def testReadyJobsWithPreviousDone() {
+    val graph = new Graph
+    import graph._
+    a.markAsDone()
+    b.markAsDone()
+    val dependencies = graph.dependencies
+    Assert.assertEquals(dependencies.readyJobs, Seq(c))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 0)
+  }
+
+  @Test
+  def testDone() {
+    val graph = new Graph
+    import graph._
+    val dependencies = graph.dependencies
+
+    a.markAsDone()
+    Assert.assertEquals(dependencies.done(a), Seq.empty[FunctionEdge])
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 1)
+    Assert.assertFalse(dependencies.isReady(c))
+
+    b.markAsDone()
+    Assert.assertEquals(dependencies.done(b), Seq(c))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 0)
+    Assert.assertTrue(dependencies.isReady(c))
+
+    c.markAsDone()
+    Assert.assertFalse(dependencies.isReady(c))
+    Assert.assertEquals(dependencies.done(c), Seq(d))
+    Assert.assertEquals(dependencies.numPreviousNotDone(d), 0)
+  }
+
+  @Test
+  def testFailed() {
+    val graph = new Graph
+    import graph._
+    val dependencies = graph.dependencies
+
+    b.markAsDone()
+    Assert.assertEquals(dependencies.done(b), Seq.empty[FunctionEdge])
+
+    // a failed job doesn't count as done, so the jobs following it stay blocked
+    a.restoreStatus(RunnerStatus.FAILED, null)
+    Assert.assertFalse(dependencies.isReady(a))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 1)
+    Assert.assertFalse(dependencies.isReady(c))
+    Assert.assertFalse(dependencies.isReady(d))
+  }
+
+  @Test
+  def testRetry() {
+    val graph = new Graph
+    import graph._
+    val dependencies = graph.dependencies
+
+    b.markAsDone()
+    dependencies.done(b)
+
+    a.restoreStatus(RunnerStatus.FAILED, null)
+    a.resetToPending(cleanOutputs = false)
+    // the retried job is ready again, without having touched the counts of the jobs following it
+    Assert.assertTrue(dependencies.isReady(a))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 1)
+
+    a.markAsDone()
+    Assert.assertEquals(dependencies.done(a), Seq(c))
+    Assert.assertEquals(dependencies.numPreviousNotDone(c), 0)
+  }
+}
@@ -0,0 +1,100 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import org.testng.Assert
+import org.testng.annotations.Test
+import java.io.File
+import org.broadinstitute.gatk.queue.function.InProcessFunction
+
+class JobEventsUnitTest {
+
+  private def makeEdge(id: Int) = {
+    // the job has no status files, so it starts out pending
+    val function = new InProcessFunction {
+      def run() {}
+      override def isDone(exists: File => Boolean) = false
+      override def isFail(exists: File => Boolean) = false
+    }
+    new FunctionEdge(function, new QNode(2 * id, Nil), new QNode(2 * id + 1, Nil))
+  }
+
+  @Test
+  def testDrain() {
+    val events = new JobEvents
+    val a = makeEdge(0)
+    val b = makeEdge(1)
+    Assert.assertEquals(events.drain(), Seq.empty[FunctionEdge])
+    events.put(a)
+    events.put(b)
+    events.wakeUp()
+    events.put(a)
+    Assert.assertEquals(events.drain(), Seq(a, b, a))
+    Assert.assertEquals(events.drain(), Seq.empty[FunctionEdge])
+  }
+
+  @Test
+  def testPoll() {
+    val events = new JobEvents
+    val a = makeEdge(0)
+    val b = makeEdge(1)
+    events.put(a)
+    events.put(b)
+    Assert.assertEquals(events.poll(0), Seq(a))
+    Assert.assertEquals(events.drain(), Seq(b))
+    Assert.assertEquals(events.poll(10), Seq.empty[FunctionEdge])
+  }
+
+  @Test(timeOut = 10000)
+  def testPollWakesUpOnPut() {
+    val events = new JobEvents
+    val a = makeEdge(0)
+    val thread = new Thread(new Runnable {
+      def run() {
+        Thread.sleep(100)
+        events.put(a)
+      }
+    })
+    thread.start()
+    // waits for the job instead of the timeout
+    Assert.assertEquals(events.poll(60000), Seq(a))
+    thread.join()
+  }
+
+  @Test(timeOut = 10000)
+  def testPollWakesUp() {
+    val events = new JobEvents
+    val thread = new Thread(new Runnable {
+      def run() {
+        Thread.sleep(100)
+        events.wakeUp()
+      }
+    })
+    thread.start()
+    Assert.assertEquals(events.poll(60000), Seq.empty[FunctionEdge])
+    thread.join()
+  }
+}
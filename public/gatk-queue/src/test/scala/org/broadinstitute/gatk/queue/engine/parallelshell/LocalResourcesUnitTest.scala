@@ -0,0 +1,121 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine.parallelshell
+
+import org.testng.Assert
+import org.testng.annotations.Test
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+
+class LocalResourcesUnitTest {
+
+  private def makeFunction(cores: Option[Int], resident: Option[Double], memoryLimit: Option[Double] = None) = {
+    val function = new CommandLineFunction {
+      def commandLine = "echo"
+    }
+    function.nCoresRequest = cores
+    function.residentRequest = resident
+    function.memoryLimit = memoryLimit
+    function
+  }
+
+  @Test
+  def testReserveCores() {
+    val resources = new LocalResources(4, 16)
+    val three = makeFunction(Some(3), None)
+    val two = makeFunction(Some(2), None)
+    val one = makeFunction(Some(1), None)
+
+    Assert.assertTrue(resources.canReserve(three))
+    val reservation = resources.reserve(three)
+    Assert.assertFalse(resources.canReserve(two))
+    Assert.assertTrue(resources.canReserve(one))
+
+    resources.release(reservation)
+    Assert.assertTrue(resources.canReserve(two))
+  }
+
+  @Test
+  def testReserveMemory() {
+    val resources = new LocalResources(8, 16)
+    val twelve = makeFunction(None, Some(12))
+    val eight = makeFunction(None, Some(8))
+    val fourByLimit = makeFunction(None, None, Some(4))
+
+    val reservation = resources.reserve(twelve)
+    Assert.assertFalse(resources.canReserve(eight))
+    Assert.assertTrue(resources.canReserve(fourByLimit))
+
+    // the resident request takes precedence over the memory limit
+    Assert.assertFalse(resources.canReserve(makeFunction(None, Some(8), Some(4))))
+
+    resources.release(reservation)
+    Assert.assertTrue(resources.canReserve(eight))
+  }
+
+  @Test
+  def testDefaultRequests() {
+    val resources = new LocalResources(2, 1)
+    // without requests a job takes one core and no memory
+    val reservations = Seq.fill(2)(resources.reserve(makeFunction(None, None)))
+    Assert.assertFalse(resources.canReserve(makeFunction(None, None)))
+    Assert.assertFalse(resources.canReserve(makeFunction(Some(0), None)))
+    reservations.foreach(resources.release(_))
+    Assert.assertTrue(resources.canReserve(makeFunction(None, None)))
+  }
+
+  @Test
+  def testOversizedFunction() {
+    val resources = new LocalResources(4, 16)
+    val oversized = makeFunction(Some(8), Some(32))
+    val small = makeFunction(Some(1), Some(1))
+
+    // an oversized function is only admitted once nothing else is running
+    val reservation = resources.reserve(small)
+    Assert.assertFalse(resources.canReserve(oversized))
+    resources.release(reservation)
+    Assert.assertTrue(resources.canReserve(oversized))
+
+    val oversizedReservation = resources.reserve(oversized)
+    Assert.assertFalse(resources.canReserve(small))
+    resources.release(oversizedReservation)
+    Assert.assertTrue(resources.canReserve(small))
+  }
+
+  @Test
+  def testConcurrentReservations() {
+    val resources = new LocalResources(4, 16)
+    val function = makeFunction(Some(1), Some(1))
+    val threads = (1 to 8).map(_ => new Thread(new Runnable {
+      def run() {
+        for (i <- 1 to 1000)
+          resources.release(resources.reserve(function))
+      }
+    }))
+    threads.foreach(_.start())
+    threads.foreach(_.join())
+    Assert.assertTrue(resources.canReserve(makeFunction(Some(4), Some(16))))
+  }
+}
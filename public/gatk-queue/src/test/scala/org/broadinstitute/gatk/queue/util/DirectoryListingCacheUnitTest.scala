@@ -0,0 +1,116 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.util
+
+import org.testng.Assert
+import org.testng.annotations.{AfterMethod, BeforeMethod, Test}
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.broadinstitute.gatk.utils.io.IOUtils
+
+class DirectoryListingCacheUnitTest {
+  private var dir: File = _
+
+  @BeforeMethod
+  def createDir() {
+    dir = IOUtils.tempDir("DirectoryListingCacheUnitTest.", ".dir")
+  }
+
+  @AfterMethod
+  def deleteDir() {
+    FileUtils.deleteDirectory(dir)
+  }
+
+  @Test
+  def testExists() {
+    val file = new File(dir, "file")
+    file.createNewFile()
+    val cache = new DirectoryListingCache
+    Assert.assertTrue(cache.exists(file))
+    Assert.assertFalse(cache.exists(new File(dir, "other")))
+    Assert.assertFalse(cache.exists(new File(dir, ".file.done")))
+  }
+
+  @Test
+  def testCacheHit() {
+    val file = new File(dir, "file")
+    val other = new File(dir, "other")
+    file.createNewFile()
+    val cache = new DirectoryListingCache
+    Assert.assertTrue(cache.exists(file))
+
+    // the directory was already listed, so the changes aren't seen
+    file.delete()
+    other.createNewFile()
+    Assert.assertTrue(cache.exists(file))
+    Assert.assertFalse(cache.exists(other))
+  }
+
+  @Test
+  def testClear() {
+    val file = new File(dir, "file")
+    val other = new File(dir, "other")
+    file.createNewFile()
+    val cache = new DirectoryListingCache
+    Assert.assertTrue(cache.exists(file))
+    Assert.assertFalse(cache.exists(other))
+
+    file.delete()
+    other.createNewFile()
+    cache.clear()
+    Assert.assertFalse(cache.exists(file))
+    Assert.assertTrue(cache.exists(other))
+  }
+
+  @Test
+  def testMissingDirectory() {
+    val missingDir = new File(dir, "missing")
+    val file = new File(missingDir, "file")
+    val cache = new DirectoryListingCache
+    Assert.assertFalse(cache.exists(file))
+
+    // the missing directory is cached as empty until the cache is cleared
+    missingDir.mkdir()
+    file.createNewFile()
+    Assert.assertFalse(cache.exists(file))
+    cache.clear()
+    Assert.assertTrue(cache.exists(file))
+  }
+
+  @Test
+  def testParentIsNotADirectory() {
+    val notADir = new File(dir, "file")
+    notADir.createNewFile()
+    val cache = new DirectoryListingCache
+    Assert.assertFalse(cache.exists(new File(notADir, "child")))
+  }
+
+  @Test
+  def testRoot() {
+    val cache = new DirectoryListingCache
+    Assert.assertTrue(cache.exists(new File("/")))
+  }
+}
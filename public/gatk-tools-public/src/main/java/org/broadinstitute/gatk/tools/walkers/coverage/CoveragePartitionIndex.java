@@ -0,0 +1,128 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.coverage;
+
+import htsjdk.samtools.SAMReadGroupRecord;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.util.*;
+
+/**
+ * Resolves, once for the whole traversal, which identifier of each partition type every read group belongs to
+ *
+ * Read groups are numbered in header order, and the identifiers of each partition type in sorted order (the
+ * order in which they are printed).  Per-locus base counts are then kept in flat arrays holding
+ * NUMBER_OF_COUNTS counts per read group (or per identifier), indexed by BaseUtils.extendedBaseToBaseIndex,
+ * rather than in maps keyed by the identifier strings.
+ */
+final class CoveragePartitionIndex {
+    /**
+     * The number of base counts kept per read group / identifier: A, C, G, T, N and D
+     */
+    static final int NUMBER_OF_COUNTS = 6;
+
+    private final Map<String,Integer> readGroupIndices = new HashMap<String,Integer>();
+    private final Map<DoCOutputType.Partition,List<String>> identifiersByType = new HashMap<DoCOutputType.Partition,List<String>>();
+    private final Map<DoCOutputType.Partition,int[]> identifierIndicesByType = new HashMap<DoCOutputType.Partition,int[]>();
+
+    /**
+     * @param readGroups the read groups of the traversal
+     * @param types the partition types to index
+     */
+    CoveragePartitionIndex(final List<SAMReadGroupRecord> readGroups, final Collection<DoCOutputType.Partition> types) {
+        for ( final SAMReadGroupRecord readGroup : readGroups ) {
+            readGroupIndices.put(readGroup.getReadGroupId(), readGroupIndices.size());
+        }
+
+        for ( final DoCOutputType.Partition type : types ) {
+            final Set<String> ids = new HashSet<String>();
+            for ( final SAMReadGroupRecord readGroup : readGroups ) {
+                ids.add(CoverageUtils.getTypeID(readGroup, type));
+            }
+            final List<String> identifiers = new ArrayList<String>(ids);
+            Collections.sort(identifiers);
+
+            final int[] identifierIndices = new int[readGroups.size()];
+            for ( int i = 0; i < readGroups.size(); i++ ) {
+                identifierIndices[i] = identifiers.indexOf(CoverageUtils.getTypeID(readGroups.get(i), type));
+            }
+
+            identifiersByType.put(type, Collections.unmodifiableList(identifiers));
+            identifierIndicesByType.put(type, identifierIndices);
+        }
+    }
+
+    public int getNumberOfReadGroups() {
+        return readGroupIndices.size();
+    }
+
+    /**
+     * @param readGroup a read group of the traversal
+     * @return the index of readGroup
+     */
+    public int getReadGroupIndex(final SAMReadGroupRecord readGroup) {
+        final Integer index = readGroupIndices.get(readGroup.getReadGroupId());
+        if ( index == null )
+            throw new ReviewedGATKException("Read group " + readGroup.getReadGroupId() + " is not in the header of the traversal");
+        return index;
+    }
+
+    /**
+     * @param type an indexed partition type
+     * @return the sorted identifiers of type
+     */
+    public List<String> getIdentifiers(final DoCOutputType.Partition type) {
+        return identifiersByType.get(type);
+    }
+
+    /**
+     * @param type an indexed partition type
+     * @return the index in getIdentifiers(type) of the identifier of each read group.  Must not be modified
+     */
+    public int[] getIdentifierIndices(final DoCOutputType.Partition type) {
+        return identifierIndicesByType.get(type);
+    }
+
+    /**
+     * Adds up the base counts of the read groups sharing an identifier of the given type
+     *
+     * @param type an indexed partition type
+     * @param countsByReadGroup NUMBER_OF_COUNTS base counts for each read group
+     * @return NUMBER_OF_COUNTS base counts for each identifier in getIdentifiers(type)
+     */
+    public int[] getCountsByIdentifier(final DoCOutputType.Partition type, final int[] countsByReadGroup) {
+        final int[] identifierIndices = getIdentifierIndices(type);
+        final int[] countsByIdentifier = new int[getIdentifiers(type).size() * NUMBER_OF_COUNTS];
+        for ( int rg = 0; rg < identifierIndices.length; rg++ ) {
+            final int from = rg * NUMBER_OF_COUNTS;
+            final int to = identifierIndices[rg] * NUMBER_OF_COUNTS;
+            for ( int i = 0; i < NUMBER_OF_COUNTS; i++ ) {
+                countsByIdentifier[to + i] += countsByReadGroup[from + i];
+            }
+        }
+        return countsByIdentifier;
+    }
+}
@@ -140,7 +140,46 @@ public class CoverageUtils {
         Map<String, int[]> countsByRGName = new HashMap<String, int[]>();
         Map<String, SAMReadGroupRecord> RGByName = new HashMap<String, SAMReadGroupRecord>();
 
-        List<PileupElement> countPileup = new LinkedList<PileupElement>();
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
+
+            // uniqueReadGroupID is unique across the library, read group ID, and the sample
+            String uniqueReadGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId() + "_" + readGroup.getLibrary() + "_" + readGroup.getPlatformUnit();
+            int[] counts = countsByRGName.get(uniqueReadGroupId);
+            if (counts == null) {
+                counts = new int[6];
+                countsByRGName.put(uniqueReadGroupId, counts);
+                RGByName.put(uniqueReadGroupId, readGroup);
+            }
+
+            updateCounts(counts, e);
+        }
+
+        for (String readGroupId : RGByName.keySet()) {
+            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
+        }
+
+        return countsByRG;
+    }
+
+    /**
+     * Returns the base counts of the reads in the context that pass the filters, by read group
+     *
+     * @param context the locus to count
+     * @param index the index of the read groups to count
+     * @return CoveragePartitionIndex.NUMBER_OF_COUNTS counts, indexed by BaseUtils.extendedBaseToBaseIndex, for each read group of index
+     */
+    static int[] getBaseCountsByReadGroup(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType, CoveragePartitionIndex index) {
+        final int[] countsByReadGroup = new int[index.getNumberOfReadGroups() * CoveragePartitionIndex.NUMBER_OF_COUNTS];
+        for (PileupElement e : getCountedElements(context, minMapQ, maxMapQ, minBaseQ, maxBaseQ, countType)) {
+            final int offset = index.getReadGroupIndex(getReadGroup(e.getRead())) * CoveragePartitionIndex.NUMBER_OF_COUNTS;
+            countsByReadGroup[offset + getCountIndex(e)]++;
+        }
+        return countsByReadGroup;
+    }
+
+    private static List<PileupElement> getCountedElements(AlignmentContext context, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ, CountPileupType countType) {
+        List<PileupElement> countPileup = new ArrayList<PileupElement>();
         FragmentCollection<PileupElement> fpile;
 
         switch (countType) {
@@ -203,26 +242,7 @@ public class CoverageUtils {
                 throw new UserException("Must use valid CountPileupType");
         }
 
-        for (PileupElement e : countPileup) {
-            SAMReadGroupRecord readGroup = getReadGroup(e.getRead());
-
-            // uniqueReadGroupID is unique across the library, read group ID, and the sample
-            String uniqueReadGroupId = readGroup.getSample() + "_" + readGroup.getReadGroupId() + "_" + readGroup.getLibrary() + "_" + readGroup.getPlatformUnit();
-            int[] counts = countsByRGName.get(uniqueReadGroupId);
-            if (counts == null) {
-                counts = new int[6];
-                countsByRGName.put(uniqueReadGroupId, counts);
-                RGByName.put(uniqueReadGroupId, readGroup);
-            }
-
-            updateCounts(counts, e);
-        }
-
-        for (String readGroupId : RGByName.keySet()) {
-            countsByRG.put(RGByName.get(readGroupId), countsByRGName.get(readGroupId));
-        }
-
-        return countsByRG;
+        return countPileup;
     }
 
     private static boolean countElement(PileupElement e, int minMapQ, int maxMapQ, byte minBaseQ, byte maxBaseQ) {
@@ -230,16 +250,20 @@ public class CoverageUtils {
     }
 
     private static void updateCounts(int[] counts, PileupElement e) {
+        counts[getCountIndex(e)]++;
+    }
+
+    private static int getCountIndex(PileupElement e) {
         if ( e.isDeletion() ) {
-            counts[BaseUtils.Base.D.ordinal()]++;
+            return BaseUtils.Base.D.ordinal();
         } else if ( BaseUtils.basesAreEqual(BaseUtils.Base.N.base, e.getBase()) ) {
-            counts[BaseUtils.Base.N.ordinal()]++;
+            return BaseUtils.Base.N.ordinal();
         } else {
-            try {
-                counts[BaseUtils.simpleBaseToBaseIndex(e.getBase())]++;
-            } catch (ArrayIndexOutOfBoundsException exc) {
+            final int index = BaseUtils.simpleBaseToBaseIndex(e.getBase());
+            if ( index < 0 ) {
                 throw new ReviewedGATKException("Expected a simple base, but actually received"+(char)e.getBase());
             }
+            return index;
         }
     }
 
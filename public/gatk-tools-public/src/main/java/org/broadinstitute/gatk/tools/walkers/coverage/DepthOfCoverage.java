@@ -42,6 +42,7 @@ import org.broadinstitute.gatk.utils.refdata.utils.LocationAwareSeekableRODItera
 import org.broadinstitute.gatk.utils.refdata.utils.RODRecordList;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.QuantileSketch;
 import org.broadinstitute.gatk.utils.codecs.refseq.RefSeqCodec;
 import org.broadinstitute.gatk.utils.codecs.refseq.RefSeqFeature;
 import org.broadinstitute.gatk.utils.collections.Pair;
@@ -110,7 +111,7 @@ import java.util.*;
 @By(DataSource.REFERENCE)
 @PartitionBy(PartitionType.NONE)
 @Downsample(by= DownsampleType.NONE, toCoverage=Integer.MAX_VALUE)
-public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map<String,int[]>>, CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
+public class DepthOfCoverage extends LocusWalker<int[], CoveragePartitioner> implements TreeReducible<CoveragePartitioner> {
     private final static Logger logger = Logger.getLogger(DepthOfCoverage.class);
 
     /**
@@ -250,9 +251,21 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
     @Argument(fullName = "summaryCoverageThreshold", shortName = "ct", doc = "Coverage threshold (in percent) for summarizing statistics", required = false)
     int[] coverageThresholds = {15};
 
+    /**
+     * Compute the quartiles and the percentages of bases above the coverage thresholds in the summary files from the
+     * full distribution of depths of each sample, rather than from the bins of the granular histogram.  Depths below 256
+     * are then reported exactly, and larger ones to within 0.4%, wherever they fall relative to --start and --stop.  The
+     * distributions take a fixed amount of memory per sample and are merged across threads like the histograms.
+     */
+    @Advanced
+    @Argument(fullName = "useQuantileSketches", doc = "Report summary quartiles from per-sample depth distributions rather than from the histogram bins", required = false)
+    boolean useQuantileSketches = false;
+
     String[] OUTPUT_FORMATS = {"table","rtable","csv"};
     String separator = "\t";
     Map<DoCOutputType.Partition,List<String>> orderCheck = new HashMap<DoCOutputType.Partition,List<String>>();
+    // the read groups, and the identifiers of each partition type they belong to, are resolved once in initialize()
+    CoveragePartitionIndex partitionIndex;
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STANDARD WALKER METHODS
@@ -327,6 +340,8 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
             }
             Collections.sort(orderCheck.get(type));
         }
+
+        partitionIndex = new CoveragePartitionIndex(getToolkit().getSAMFileHeader().getReadGroups(), partitionTypes);
     }
 
     private HashSet<String> getSamplesFromToolKit( Collection<DoCOutputType.Partition> types ) {
@@ -382,38 +397,38 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
     }
 
     public CoveragePartitioner reduceInit() {
-        CoveragePartitioner aggro = new CoveragePartitioner(partitionTypes,start,stop,nBins);
+        CoveragePartitioner aggro = new CoveragePartitioner(partitionTypes,start,stop,nBins,partitionIndex);
         for (DoCOutputType.Partition t : partitionTypes ) {
             aggro.addIdentifiers(t,getSamplesFromToolKit(t));
         }
-        aggro.initialize(includeDeletions,omitLocusTable);
+        aggro.initialize(includeDeletions,omitLocusTable,useQuantileSketches);
         checkOrder(aggro);
         return aggro;
     }
 
-    public Map<DoCOutputType.Partition,Map<String,int[]>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    public int[] map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if (includeRefNBases || BaseUtils.isRegularBase(ref.getBase())) {
             if ( ! omitDepthOutput ) {
                 getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary).printf("%s",ref.getLocus()); // yes: print locus in map, and the rest of the info in reduce (for eventual cumulatives)
                 //System.out.printf("\t[log]\t%s",ref.getLocus());
             }
 
-            return CoverageUtils.getBaseCountsByPartition(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,partitionTypes);
+            return CoverageUtils.getBaseCountsByReadGroup(context,minMappingQuality,maxMappingQuality,minBaseQuality,maxBaseQuality,countType,partitionIndex);
         } else {
             return null;
         }
     }
 
-    public CoveragePartitioner reduce(Map<DoCOutputType.Partition,Map<String,int[]>> thisMap, CoveragePartitioner prevReduce) {
+    public CoveragePartitioner reduce(int[] thisMap, CoveragePartitioner prevReduce) {
         if ( thisMap != null ) { // skip sites we didn't want to include in the calculation (ref Ns)
             if ( ! omitDepthOutput ) {
                 //checkOrder(prevReduce); // tests prevReduce.getIdentifiersByType().get(t) against the initialized header order
-                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),thisMap,prevReduce.getIdentifiersByType());
+                printDepths(getCorrectStream(null, DoCOutputType.Aggregation.locus, DoCOutputType.FileType.summary),thisMap);
                 // this is an additional iteration through thisMap, plus dealing with IO, so should be much slower without
                 // turning on omit
             }
 
-            prevReduce.update(thisMap); // note that in "useBoth" cases, this method alters the thisMap object
+            prevReduce.update(thisMap);
         }
 
         return prevReduce;
@@ -482,13 +497,13 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
             summaryHeader.append("_mean_cvg");
             summaryHeader.append(separator);
             summaryHeader.append(s);
-            summaryHeader.append("_granular_Q1");
+            summaryHeader.append("_" + quartileLabelPrefix() + "Q1");
             summaryHeader.append(separator);
             summaryHeader.append(s);
-            summaryHeader.append("_granular_median");
+            summaryHeader.append("_" + quartileLabelPrefix() + "median");
             summaryHeader.append(separator);
             summaryHeader.append(s);
-            summaryHeader.append("_granular_Q3");
+            summaryHeader.append("_" + quartileLabelPrefix() + "Q3");
             for ( int thresh : coverageThresholds ) {
                 summaryHeader.append(separator);
                 summaryHeader.append(s);
@@ -555,13 +570,13 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
                 summaryHeader.append("_mean_cvg");
                 summaryHeader.append(separator);
                 summaryHeader.append(s);
-                summaryHeader.append("_granular_Q1");
+                summaryHeader.append("_" + quartileLabelPrefix() + "Q1");
                 summaryHeader.append(separator);
                 summaryHeader.append(s);
-                summaryHeader.append("_granular_median");
+                summaryHeader.append("_" + quartileLabelPrefix() + "median");
                 summaryHeader.append(separator);
                 summaryHeader.append(s);
-                summaryHeader.append("_granular_Q3");
+                summaryHeader.append("_" + quartileLabelPrefix() + "Q3");
                 for (int thresh : coverageThresholds) {
                     summaryHeader.append(separator);
                     summaryHeader.append(s);
@@ -631,20 +646,32 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
 
         for ( String s : stats.getAllSamples() ) {
             targetSummary.append(separator);
-            targetSummary.append(stats.getTotals().get(s));
-            targetSummary.append(separator);
-            targetSummary.append(String.format("%.2f", stats.getMeans().get(s)));
+            targetSummary.append(stats.getTotal(s));
             targetSummary.append(separator);
-            int median = getQuantile(stats.getHistograms().get(s),0.5);
-            int q1 = getQuantile(stats.getHistograms().get(s),0.25);
-            int q3 = getQuantile(stats.getHistograms().get(s),0.75);
-            targetSummary.append(formatBin(bins,q1));
+            targetSummary.append(String.format("%.2f", stats.getMean(s)));
             targetSummary.append(separator);
-            targetSummary.append(formatBin(bins,median));
-            targetSummary.append(separator);
-            targetSummary.append(formatBin(bins,q3));
-            for ( int thresh : coverageThresholds ) {
-                targetSummary.append(String.format("%s%.1f",separator,getPctBasesAbove(stats.getHistograms().get(s),stats.value2bin(thresh))));
+            if ( useQuantileSketches ) {
+                QuantileSketch sketch = stats.getQuantileSketch(s);
+                targetSummary.append(getQuantile(sketch,0.25));
+                targetSummary.append(separator);
+                targetSummary.append(getQuantile(sketch,0.5));
+                targetSummary.append(separator);
+                targetSummary.append(getQuantile(sketch,0.75));
+                for ( int thresh : coverageThresholds ) {
+                    targetSummary.append(String.format("%s%.1f",separator,getPctBasesAbove(sketch,thresh)));
+                }
+            } else {
+                int median = getQuantile(stats.getHistograms().get(s),0.5);
+                int q1 = getQuantile(stats.getHistograms().get(s),0.25);
+                int q3 = getQuantile(stats.getHistograms().get(s),0.75);
+                targetSummary.append(formatBin(bins,q1));
+                targetSummary.append(separator);
+                targetSummary.append(formatBin(bins,median));
+                targetSummary.append(separator);
+                targetSummary.append(formatBin(bins,q3));
+                for ( int thresh : coverageThresholds ) {
+                    targetSummary.append(String.format("%s%.1f",separator,getPctBasesAbove(stats.getHistograms().get(s),stats.value2bin(thresh))));
+                }
             }
 
         }
@@ -830,9 +857,9 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
 
     private void printSummary(PrintStream output, DepthOfCoverageStats stats) {
         if ( ! outputFormat.equals("csv") ) {
-            output.printf("%s\t%s\t%s\t%s\t%s\t%s","sample_id","total","mean","granular_third_quartile","granular_median","granular_first_quartile");
+            output.printf("%s\t%s\t%s\t%s\t%s\t%s","sample_id","total","mean",quartileLabelPrefix()+"third_quartile",quartileLabelPrefix()+"median",quartileLabelPrefix()+"first_quartile");
         } else {
-            output.printf("%s,%s,%s,%s,%s,%s","sample_id","total","mean","granular_third_quartile","granular_median","granular_first_quartile");
+            output.printf("%s,%s,%s,%s,%s,%s","sample_id","total","mean",quartileLabelPrefix()+"third_quartile",quartileLabelPrefix()+"median",quartileLabelPrefix()+"first_quartile");
         }
 
         for ( int thresh : coverageThresholds ) {
@@ -849,21 +876,32 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         for ( Map.Entry<String, long[]> p : histograms.entrySet() ) {
             String s = p.getKey();
             long[] histogram = p.getValue();
-            int median = getQuantile(histogram,0.5);
-            int q1 = getQuantile(histogram,0.25);
-            int q3 = getQuantile(histogram,0.75);
-            // if any of these are larger than the higest bin, put the median as in the largest bin
-            median =  median == histogram.length-1 ? histogram.length-2 : median;
-            q1 = q1 == histogram.length-1 ? histogram.length-2 : q1;
-            q3 = q3 == histogram.length-1 ? histogram.length-2 : q3;
+            QuantileSketch sketch = stats.getQuantileSketch(s);
+            long median, q1, q3;
+            if ( useQuantileSketches ) {
+                median = getQuantile(sketch,0.5);
+                q1 = getQuantile(sketch,0.25);
+                q3 = getQuantile(sketch,0.75);
+            } else {
+                int medianBin = getQuantile(histogram,0.5);
+                int q1Bin = getQuantile(histogram,0.25);
+                int q3Bin = getQuantile(histogram,0.75);
+                // if any of these are larger than the higest bin, put the median as in the largest bin
+                medianBin =  medianBin == histogram.length-1 ? histogram.length-2 : medianBin;
+                q1Bin = q1Bin == histogram.length-1 ? histogram.length-2 : q1Bin;
+                q3Bin = q3Bin == histogram.length-1 ? histogram.length-2 : q3Bin;
+                median = leftEnds[medianBin];
+                q1 = leftEnds[q1Bin];
+                q3 = leftEnds[q3Bin];
+            }
             if ( ! outputFormat.equals("csv") ) {
-                output.printf("%s\t%d\t%.2f\t%d\t%d\t%d",s,totals.get(s),means.get(s),leftEnds[q3],leftEnds[median],leftEnds[q1]);
+                output.printf("%s\t%d\t%.2f\t%d\t%d\t%d",s,totals.get(s),means.get(s),q3,median,q1);
             } else {
-                output.printf("%s,%d,%.2f,%d,%d,%d",s,totals.get(s),means.get(s),leftEnds[q3],leftEnds[median],leftEnds[q1]);
+                output.printf("%s,%d,%.2f,%d,%d,%d",s,totals.get(s),means.get(s),q3,median,q1);
             }
 
             for ( int thresh : coverageThresholds ) {
-                output.printf("%s%.1f",separator,getPctBasesAbove(histogram,stats.value2bin(thresh)));
+                output.printf("%s%.1f",separator,useQuantileSketches ? getPctBasesAbove(sketch,thresh) : getPctBasesAbove(histogram,stats.value2bin(thresh)));
             }
 
             output.printf("%n");
@@ -893,6 +931,18 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return bin == -1 ? 0 : bin;
     }
 
+    private long getQuantile(QuantileSketch sketch, double prop) {
+        return sketch.isEmpty() ? 0 : sketch.getQuantile(prop);
+    }
+
+    private double getPctBasesAbove(QuantileSketch sketch, int threshold) {
+        return 100*( (double) sketch.getCountAtLeast(threshold) )/sketch.getCount();
+    }
+
+    private String quartileLabelPrefix() {
+        return useQuantileSketches ? "" : "granular_";
+    }
+
     private double getPctBasesAbove(long[] histogram, int bin) {
         long below = 0l;
         long above = 0l;
@@ -907,20 +957,20 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         return 100*( (double) above )/( above + below );
     }
 
-    private void printDepths(PrintStream stream, Map<DoCOutputType.Partition,Map<String,int[]>> countsBySampleByType, Map<DoCOutputType.Partition,List<String>> identifiersByType) {
+    private void printDepths(PrintStream stream, int[] countsByReadGroup) {
         // get the depths per sample and build up the output string while tabulating total and average coverage
         StringBuilder perSampleOutput = new StringBuilder();
         int tDepth = 0;
         boolean depthCounted = false;
         for (DoCOutputType.Partition type : partitionTypes ) {
-            Map<String,int[]> countsByID = countsBySampleByType.get(type);
-            for ( String s : identifiersByType.get(type) ) {
+            int[] countsByID = partitionIndex.getCountsByIdentifier(type,countsByReadGroup);
+            for ( int id = 0; id < partitionIndex.getIdentifiers(type).size(); id++ ) {
                 perSampleOutput.append(separator);
-                long dp = (countsByID != null && countsByID.keySet().contains(s)) ? sumArray(countsByID.get(s)) : 0 ;
+                long dp = sumArray(countsByID,id*CoveragePartitionIndex.NUMBER_OF_COUNTS);
                 perSampleOutput.append(dp);
                 if ( printBaseCounts ) {
                     perSampleOutput.append(separator);
-                    perSampleOutput.append(baseCounts(countsByID != null ? countsByID.get(s) : null ));
+                    perSampleOutput.append(baseCounts(countsByID,id*CoveragePartitionIndex.NUMBER_OF_COUNTS));
                 }
                 if ( ! depthCounted ) {
                     tDepth += dp;
@@ -932,23 +982,20 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
         // remember -- genome locus was printed in map()
         stream.printf("%s%d",separator,tDepth);
         for (DoCOutputType.Partition type : partitionTypes ) {
-            stream.printf("%s%.2f",separator, ( (double) tDepth / identifiersByType.get(type).size() ) );
+            stream.printf("%s%.2f",separator, ( (double) tDepth / partitionIndex.getIdentifiers(type).size() ) );
         }
         stream.printf("%s%n",perSampleOutput);
     }
 
-    private long sumArray(int[] array) {
+    private long sumArray(int[] counts, int offset) {
         long i = 0;
-        for ( int j : array ) {
-            i += j;
+        for ( int j = 0; j < CoveragePartitionIndex.NUMBER_OF_COUNTS; j++ ) {
+            i += counts[offset+j];
         }
         return i;
     }
 
-    private String baseCounts(int[] counts) {
-        if ( counts == null ) {
-            counts = new int[6];
-        }
+    private String baseCounts(int[] counts, int offset) {
         StringBuilder s = new StringBuilder();
         int nbases = 0;
         for ( byte b : BaseUtils.EXTENDED_BASES ) {
@@ -956,7 +1003,7 @@ public class DepthOfCoverage extends LocusWalker<Map<DoCOutputType.Partition,Map
             if ( includeDeletions || b != BaseUtils.Base.D.base ) {
                 s.append((char)b);
                 s.append(":");
-                s.append(counts[BaseUtils.extendedBaseToBaseIndex(b)]);
+                s.append(counts[offset+BaseUtils.extendedBaseToBaseIndex(b)]);
                 if ( nbases < 6 ) {
                     s.append(" ");
                 }
@@ -1071,7 +1118,16 @@ class CoveragePartitioner {
     private Map<DoCOutputType.Partition,DepthOfCoverageStats> coverageProfiles;
     private Map<DoCOutputType.Partition,List<String>> identifiersByType;
     private Set<String> allIdentifiers;
-    public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int start, int stop, int nBins) {
+    private final CoveragePartitionIndex partitionIndex;
+    private boolean useDels = false;
+    // the index in the DepthOfCoverageStats of each type of the identifier of each read group, resolved in initialize()
+    private final Map<DoCOutputType.Partition,int[]> sampleIndicesByReadGroup = new HashMap<DoCOutputType.Partition,int[]>();
+    // the depths of each read group and of each identifier at the current locus
+    private int[] readGroupDepths;
+    private final Map<DoCOutputType.Partition,int[]> depthsByType = new HashMap<DoCOutputType.Partition,int[]>();
+
+    public CoveragePartitioner(Collection<DoCOutputType.Partition> typesToUse, int start, int stop, int nBins, CoveragePartitionIndex partitionIndex) {
+        this.partitionIndex = partitionIndex;
         coverageProfiles = new TreeMap<DoCOutputType.Partition,DepthOfCoverageStats>();
         identifiersByType = new HashMap<DoCOutputType.Partition,List<String>>();
         types = typesToUse;
@@ -1101,20 +1157,57 @@ class CoveragePartitioner {
         Collections.sort(identifiersByType.get(t));
     }
 
-    public void initialize(boolean useDels, boolean omitLocusTable) {
+    public void initialize(boolean useDels, boolean omitLocusTable, boolean useQuantileSketches) {
+        this.useDels = useDels;
         for ( DoCOutputType.Partition t : types ) {
             if ( useDels ) {
                 coverageProfiles.get(t).initializeDeletions();
             }
+            if ( useQuantileSketches ) {
+                coverageProfiles.get(t).initializeQuantileSketches();
+            }
             if ( ! omitLocusTable ) {
                 coverageProfiles.get(t).initializeLocusCounts();
             }
+
+            final DepthOfCoverageStats stats = coverageProfiles.get(t);
+            final List<String> identifiers = partitionIndex.getIdentifiers(t);
+            final int[] identifierIndices = partitionIndex.getIdentifierIndices(t);
+            final int[] sampleIndices = new int[identifierIndices.length];
+            for ( int rg = 0; rg < identifierIndices.length; rg++ ) {
+                sampleIndices[rg] = stats.getSampleIndex(identifiers.get(identifierIndices[rg]));
+            }
+            sampleIndicesByReadGroup.put(t,sampleIndices);
+            depthsByType.put(t,new int[stats.getAllSamples().size()]);
         }
+        readGroupDepths = new int[partitionIndex.getNumberOfReadGroups()];
     }
 
-    public void update(Map<DoCOutputType.Partition,Map<String,int[]>> countsByIdentifierByType) {
+    /**
+     * Adds a locus to the stats of every partition type
+     *
+     * @param countsByReadGroup the base counts of each read group at the locus, as laid out by CoveragePartitionIndex
+     */
+    public void update(int[] countsByReadGroup) {
+        for ( int rg = 0; rg < readGroupDepths.length; rg++ ) {
+            final int offset = rg * CoveragePartitionIndex.NUMBER_OF_COUNTS;
+            int depth = 0;
+            for ( byte base : BaseUtils.EXTENDED_BASES ) {
+                if ( useDels || base != BaseUtils.Base.D.base ) {
+                    depth += countsByReadGroup[offset + BaseUtils.extendedBaseToBaseIndex(base)];
+                }
+            }
+            readGroupDepths[rg] = depth;
+        }
+
         for ( DoCOutputType.Partition t : types ) {
-            coverageProfiles.get(t).update(countsByIdentifierByType.get(t));
+            final int[] sampleIndices = sampleIndicesByReadGroup.get(t);
+            final int[] depths = depthsByType.get(t);
+            Arrays.fill(depths,0);
+            for ( int rg = 0; rg < readGroupDepths.length; rg++ ) {
+                depths[sampleIndices[rg]] += readGroupDepths[rg];
+            }
+            coverageProfiles.get(t).updateDepths(depths);
         }
     }
 
@@ -26,8 +26,10 @@
 package org.broadinstitute.gatk.tools.walkers.coverage;
 
 import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.QuantileSketch;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -44,16 +46,21 @@ public class DepthOfCoverageStats {
     // STATIC DATA
     ////////////////////////////////////////////////////////////////////////////////////
 
-    /* none so far */
+    private final static int MAX_TABULATED_DEPTH = 4096;
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STANDARD DATA
     ////////////////////////////////////////////////////////////////////////////////////
 
-    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin
-    private Map<String,Long> totalCoverages; // holds total coverage per sample
+    // samples are numbered in the order they are added; the per-sample data is kept in arrays indexed by that number
+    private Map<String,Integer> sampleIndices;
+    private Map<String,long[]> granularHistogramBySample; // holds the counts per each bin; the same arrays as histograms
+    private long[][] histograms; // the counts per each bin, by sample index
+    private long[] totalCoverages; // holds total coverage per sample, by sample index
+    private QuantileSketch[] depthSketches; // the distribution of depths per sample, by sample index; null unless initializeQuantileSketches() is called
     private int[] binLeftEndpoints; // describes the left endpoint for each bin
-    private long[][] locusCoverageCounts; // holds counts of number of bases with >=X samples at >=Y coverage
+    private int[] binsByDepth; // the bin of each depth below the last left endpoint, up to MAX_TABULATED_DEPTH
+    private long[] locusCountsByNumberOfSamples; // holds, for each bin, counts of number of bases with exactly X > 0 samples at >= the bin's coverage
     private boolean tabulateLocusCounts = false;
     private long nLoci; // number of loci seen
     private long totalDepthOfCoverage;
@@ -64,7 +71,7 @@ public class DepthOfCoverageStats {
     ////////////////////////////////////////////////////////////////////////////////////
 
     private int[] locusHistogram; // holds a histogram for each locus; reset after each update() call
-    private int totalLocusDepth; // holds the total depth of coverage for each locus; reset after each update() call
+    private int[] depths; // holds the depth of each sample for updates by sample name
 
     ////////////////////////////////////////////////////////////////////////////////////
     // STATIC METHODS
@@ -103,63 +110,86 @@ public class DepthOfCoverageStats {
 
     public DepthOfCoverageStats(int[] leftEndpoints) {
         this.binLeftEndpoints = leftEndpoints;
+        this.binsByDepth = calculateBinsByDepth(leftEndpoints);
+        sampleIndices = new HashMap<String,Integer>();
         granularHistogramBySample = new HashMap<String,long[]>();
-        totalCoverages = new HashMap<String,Long>();
+        histograms = new long[0][];
+        totalCoverages = new long[0];
         nLoci = 0;
-        totalLocusDepth = 0;
         totalDepthOfCoverage = 0;
     }
 
     public DepthOfCoverageStats(DepthOfCoverageStats cloneMe) {
         this.binLeftEndpoints = cloneMe.binLeftEndpoints;
+        this.binsByDepth = cloneMe.binsByDepth;
+        sampleIndices = new HashMap<String,Integer>(cloneMe.sampleIndices);
         granularHistogramBySample = new TreeMap<String,long[]>();
-        totalCoverages = new TreeMap<String,Long>();
-        for ( String s : cloneMe.getAllSamples() ) {
-            granularHistogramBySample.put(s,new long[cloneMe.getHistograms().get(s).length]);
-            for ( int i = 0; i < granularHistogramBySample.get(s).length; i++ ) {
-                granularHistogramBySample.get(s)[i] = cloneMe.getHistograms().get(s)[i];
+        histograms = new long[cloneMe.histograms.length][];
+        for ( Map.Entry<String,Integer> sample : sampleIndices.entrySet() ) {
+            histograms[sample.getValue()] = cloneMe.histograms[sample.getValue()].clone();
+            granularHistogramBySample.put(sample.getKey(),histograms[sample.getValue()]);
+        }
+        totalCoverages = cloneMe.totalCoverages.clone();
+        if ( cloneMe.depthSketches != null ) {
+            depthSketches = new QuantileSketch[cloneMe.depthSketches.length];
+            for ( int s = 0; s < depthSketches.length; s++ ) {
+                depthSketches[s] = new QuantileSketch(cloneMe.depthSketches[s]);
             }
-            totalCoverages.put(s,cloneMe.totalCoverages.get(s));
         }
 
         this.includeDeletions = cloneMe.includeDeletions;
         if ( cloneMe.tabulateLocusCounts ) {
-            this.locusCoverageCounts = new long[cloneMe.locusCoverageCounts.length][cloneMe.locusCoverageCounts[0].length];
+            this.locusCountsByNumberOfSamples = new long[cloneMe.locusCountsByNumberOfSamples.length];
+            this.locusHistogram = new int[cloneMe.locusHistogram.length];
         }
-        //this.granularHistogramBySample = cloneMe.granularHistogramBySample;
-        //this.totalCoverages = cloneMe.totalCoverages;
         this.nLoci = cloneMe.nLoci;
         this.totalDepthOfCoverage = cloneMe.totalDepthOfCoverage;
         this.tabulateLocusCounts = cloneMe.tabulateLocusCounts;
     }
 
     public void addSample(String sample) {
-        if ( granularHistogramBySample.containsKey(sample) ) {
+        if ( sampleIndices.containsKey(sample) ) {
             return;
         }
 
-        long[] binCounts = new long[this.binLeftEndpoints.length+1];
-        for ( int b = 0; b < binCounts.length; b ++ ) {
-            binCounts[b] = 0;
+        final int index = histograms.length;
+        histograms = Arrays.copyOf(histograms, index+1);
+        histograms[index] = new long[this.binLeftEndpoints.length+1];
+        totalCoverages = Arrays.copyOf(totalCoverages, index+1);
+        if ( depthSketches != null ) {
+            depthSketches = Arrays.copyOf(depthSketches, index+1);
+            depthSketches[index] = new QuantileSketch();
         }
 
-        granularHistogramBySample.put(sample,binCounts);
-        totalCoverages.put(sample,0l);
-    }
+        sampleIndices.put(sample,index);
+        granularHistogramBySample.put(sample,histograms[index]);
 
-    public void initializeLocusCounts() {
-        locusCoverageCounts = new long[granularHistogramBySample.size()][binLeftEndpoints.length+1];
-        locusHistogram = new int[binLeftEndpoints.length+1];
-        for ( int b = 0; b < binLeftEndpoints.length+1; b ++ ) {
-            for ( int a = 0; a < granularHistogramBySample.size(); a ++ ) {
-                locusCoverageCounts[a][b] = 0;
+        if ( tabulateLocusCounts ) { // make room for loci at which all samples are covered
+            final long[] oldCounts = locusCountsByNumberOfSamples;
+            locusCountsByNumberOfSamples = new long[(binLeftEndpoints.length+1)*(index+2)];
+            for ( int bin = 0; bin < binLeftEndpoints.length+1; bin ++ ) {
+                System.arraycopy(oldCounts, bin*(index+1), locusCountsByNumberOfSamples, bin*(index+2), index+1);
             }
-            locusHistogram[b] = 0;
         }
+    }
 
+    public void initializeLocusCounts() {
+        locusCountsByNumberOfSamples = new long[(binLeftEndpoints.length+1)*(histograms.length+1)];
+        locusHistogram = new int[binLeftEndpoints.length+1];
         tabulateLocusCounts = true;
     }
 
+    /**
+     * Keeps the distribution of depths of each sample in a QuantileSketch, from which quantiles are then available at
+     * any depth rather than only to the resolution of the histogram bins
+     */
+    public void initializeQuantileSketches() {
+        depthSketches = new QuantileSketch[histograms.length];
+        for ( int s = 0; s < depthSketches.length; s++ ) {
+            depthSketches[s] = new QuantileSketch();
+        }
+    }
+
     public void initializeDeletions() {
         includeDeletions = true;
     }
@@ -169,26 +199,43 @@ public class DepthOfCoverageStats {
     ////////////////////////////////////////////////////////////////////////////////////
 
     public void updateDepths(Map<String,Integer> depthBySample) {
-        int b;
-        for ( String sample : granularHistogramBySample.keySet() ) {
-            if ( depthBySample.containsKey(sample) ) {
-                b = updateSample(sample,depthBySample.get(sample));
-                totalLocusDepth += depthBySample.get(sample);
-            } else {
-                b = updateSample(sample,0);
+        if ( depths == null || depths.length != histograms.length ) {
+            depths = new int[histograms.length];
+        }
+        for ( Map.Entry<String,Integer> sample : sampleIndices.entrySet() ) {
+            final Integer depth = depthBySample.get(sample.getKey());
+            depths[sample.getValue()] = depth == null ? 0 : depth;
+        }
+        updateDepths(depths);
+    }
+
+    /**
+     * Adds a locus to the stats
+     *
+     * @param depthBySampleIndex the depth of each sample at the locus, indexed by getSampleIndex()
+     */
+    public void updateDepths(int[] depthBySampleIndex) {
+        long totalLocusDepth = 0;
+        int maxBin = 0;
+        for ( int s = 0; s < histograms.length; s++ ) {
+            final int depth = depthBySampleIndex[s];
+            final int b = depth2bin(depth);
+            histograms[s][b]++;
+            totalCoverages[s] += depth;
+            totalLocusDepth += depth;
+            if ( depthSketches != null ) {
+                depthSketches[s].add(depth);
             }
 
             if ( tabulateLocusCounts ) {
-                for ( int i = 0; i <= b; i ++ ) {
-                    locusHistogram[i]++;
-                }
+                locusHistogram[b]++;
+                maxBin = Math.max(maxBin, b);
             }
         }
-        updateLocusCounts(locusHistogram);
+        updateLocusCounts(locusHistogram, maxBin);
 
         nLoci++;
         totalDepthOfCoverage += totalLocusDepth;
-        totalLocusDepth = 0;
     }
 
     public void update(Map<String,int[]> countsBySample) {
@@ -213,71 +260,94 @@ public class DepthOfCoverageStats {
         this.updateDepths(depthBySample);
     }
 
-    private int updateSample(String sample, int depth) {
-        totalCoverages.put(sample,totalCoverages.get(sample)+depth);
+    /**
+     * @return the index of the histogram bin of depth: the first bin whose left endpoint is larger than depth
+     */
+    private int depth2bin(int depth) {
+        if ( depth < binsByDepth.length ) {
+            return binsByDepth[Math.max(depth,0)];
+        }
 
-        long[] granularBins = granularHistogramBySample.get(sample);
-        for ( int b = 0; b < binLeftEndpoints.length; b ++ ) {
-            if ( depth < binLeftEndpoints[b] ) {
-                granularBins[b]++;
-                return b;
+        int low = 0;
+        int high = binLeftEndpoints.length;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( depth < binLeftEndpoints[mid] ) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
+        return low;
+    }
 
-        granularBins[binLeftEndpoints.length]++; // greater than all left-endpoints
-        return binLeftEndpoints.length;
+    private static int[] calculateBinsByDepth(int[] leftEndpoints) {
+        final int[] binsByDepth = new int[Math.max(Math.min(leftEndpoints[leftEndpoints.length-1],MAX_TABULATED_DEPTH),0)];
+        int bin = 0;
+        for ( int depth = 0; depth < binsByDepth.length; depth++ ) {
+            while ( depth >= leftEndpoints[bin] ) {
+                bin++;
+            }
+            binsByDepth[depth] = bin;
+        }
+        return binsByDepth;
     }
 
     public void merge(DepthOfCoverageStats newStats) {
         this.mergeSamples(newStats);
         if ( this.tabulateLocusCounts && newStats.tabulateLocusCounts ) {
-            this.mergeLocusCounts(newStats.getLocusCounts());
+            this.mergeLocusCounts(newStats.locusCountsByNumberOfSamples);
         }
         nLoci += newStats.getTotalLoci();
         totalDepthOfCoverage += newStats.getTotalCoverage();
     }
 
     private void mergeSamples(DepthOfCoverageStats otherStats) {
-        Map<String,long[]> otherHistogram = otherStats.getHistograms();
-        Map<String,Double> otherMeans = otherStats.getMeans();
-        for ( String s : this.getAllSamples() ) {
-            long[] internalCounts = granularHistogramBySample.get(s);
-            long[] externalCounts = otherHistogram.get(s);
+        for ( Map.Entry<String,Integer> sample : sampleIndices.entrySet() ) {
+            final int otherIndex = otherStats.sampleIndices.get(sample.getKey());
+            long[] internalCounts = histograms[sample.getValue()];
+            long[] externalCounts = otherStats.histograms[otherIndex];
             for ( int b = 0; b < internalCounts.length; b++ ) {
                 internalCounts[b] += externalCounts[b];
             }
 
-            this.totalCoverages.put(s, this.totalCoverages.get(s) + otherStats.totalCoverages.get(s));
+            totalCoverages[sample.getValue()] += otherStats.totalCoverages[otherIndex];
+            if ( depthSketches != null && otherStats.depthSketches != null ) {
+                depthSketches[sample.getValue()].merge(otherStats.depthSketches[otherIndex]);
+            }
         }
     }
 
-    private void mergeLocusCounts( long[][] otherCounts ) {
-        for ( int a = 0; a < locusCoverageCounts.length; a ++ ) {
-            for ( int b = 0; b < locusCoverageCounts[0].length; b ++ ) {
-                locusCoverageCounts[a][b] += otherCounts[a][b];
-            }
+    private void mergeLocusCounts( long[] otherCounts ) {
+        for ( int i = 0; i < locusCountsByNumberOfSamples.length; i ++ ) {
+            locusCountsByNumberOfSamples[i] += otherCounts[i];
         }
     }
 
     /*
      * Update locus counts -- takes an array in which the number of samples
-     * with depth ABOVE [i] is held. So if the bin left endpoints were 2, 5, 10
+     * with depth IN bin [i] is held. So if the bin left endpoints were 2, 5, 10
      * then we'd have an array that represented:
-     * [# samples with depth 0 - inf], [# samples with depth 2 - inf],
-     * [# samples with depth 5 - inf], [# samples with depth 10-inf];
+     * [# samples with depth 0 - 2), [# samples with depth 2 - 5),
+     * [# samples with depth 5 - 10), [# samples with depth 10-inf];
      *
-     * this is
-     * @argument cumulativeSamplesByDepthBin - see above
+     * From the end, this is summed up into the number N of samples with depth ABOVE
+     * the left endpoint of each bin, and the count of loci with N samples in the
+     * bin is incremented.  getLocusCounts() turns those into the counts of loci with
+     * at least N samples, for which the loci with no samples in a bin don't matter.
+     *
+     * @argument samplesByDepthBin - see above
+     * @argument maxBin - the highest bin holding any samples
      */
-    private void updateLocusCounts(int[] cumulativeSamplesByDepthBin) {
+    private void updateLocusCounts(int[] samplesByDepthBin, int maxBin) {
         if ( tabulateLocusCounts ) {
-            for ( int bin = 0; bin < cumulativeSamplesByDepthBin.length; bin ++ ) {
-                int numSamples = cumulativeSamplesByDepthBin[bin];
-                for ( int i = 0; i < numSamples; i ++ ) {
-                    locusCoverageCounts[i][bin]++;
-                }
+            final int rowLength = histograms.length+1;
+            int numSamples = 0;
+            for ( int bin = maxBin; bin >= 0; bin -- ) {
+                numSamples += samplesByDepthBin[bin];
+                locusCountsByNumberOfSamples[bin*rowLength + numSamples]++;
 
-                cumulativeSamplesByDepthBin[bin] = 0; // reset counts in advance of next update()
+                samplesByDepthBin[bin] = 0; // reset counts in advance of next update()
             }
         }
     }
@@ -290,7 +360,25 @@ public class DepthOfCoverageStats {
         return granularHistogramBySample;
     }
 
+    /**
+     * @return the number of loci with at least [i+1] samples at a depth >= the left endpoint of bin [j] (or 0 for j=0),
+     *         or null if the locus counts aren't tabulated
+     */
     public long[][] getLocusCounts() {
+        if ( ! tabulateLocusCounts ) {
+            return null;
+        }
+
+        final int nSamples = histograms.length;
+        final long[][] locusCoverageCounts = new long[nSamples][binLeftEndpoints.length+1];
+        for ( int bin = 0; bin < binLeftEndpoints.length+1; bin ++ ) {
+            long count = 0;
+            for ( int n = nSamples; n > 0; n -- ) {
+                count += locusCountsByNumberOfSamples[bin*(nSamples+1) + n];
+                locusCoverageCounts[n-1][bin] = count;
+            }
+        }
+
         return locusCoverageCounts;
     }
 
@@ -301,14 +389,41 @@ public class DepthOfCoverageStats {
     public Map<String,Double> getMeans() {
         HashMap<String,Double> means = new HashMap<String,Double>();
         for ( String s : getAllSamples() ) {
-            means.put(s,( (double)totalCoverages.get(s))/( (double) nLoci ));
+            means.put(s,getMean(s));
         }
 
         return means;
     }
 
+    public double getMean(String sample) {
+        return ( (double) getTotal(sample) )/( (double) nLoci );
+    }
+
     public Map<String,Long> getTotals() {
-        return totalCoverages;
+        HashMap<String,Long> totals = new HashMap<String,Long>();
+        for ( String s : getAllSamples() ) {
+            totals.put(s,getTotal(s));
+        }
+
+        return totals;
+    }
+
+    public long getTotal(String sample) {
+        return totalCoverages[sampleIndices.get(sample)];
+    }
+
+    /**
+     * @return the distribution of the depths of sample, or null if the quantile sketches aren't tabulated
+     */
+    public QuantileSketch getQuantileSketch(String sample) {
+        return depthSketches == null ? null : depthSketches[sampleIndices.get(sample)];
+    }
+
+    /**
+     * @return the index of sample in the arrays passed to updateDepths(int[])
+     */
+    public int getSampleIndex(String sample) {
+        return sampleIndices.get(sample);
     }
 
     public long getTotalLoci() {
@@ -0,0 +1,255 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.indels;
+
+import org.broadinstitute.gatk.utils.BaseUtils;
+
+/**
+ * Scores a read against many offsets of an alternate consensus at once
+ *
+ * The score of a read at an offset is the sum of the qualities of the read bases that mismatch the consensus when the
+ * read is placed at that offset, ignoring positions where either base isn't a regular base (exactly what
+ * IndelRealigner.mismatchQualitySumIgnoreCigar computes).  Rather than sliding the read across the consensus one
+ * offset at a time, this class keeps the consensus as bitsets with one bit per position, so that the mismatches of a
+ * read base at 64 consecutive offsets come out of a few word operations.  The 64 scores are accumulated bit-sliced
+ * (one word per bit of the score, one bit per offset), and the whole batch is abandoned as soon as no offset can beat
+ * the score to beat anymore.
+ *
+ * Not thread-safe: each instance reuses its buffers across calls.
+ */
+final class ConsensusMismatchScorer {
+    /**
+     * The number of offsets scored by one call to score()
+     */
+    public static final int MAX_OFFSETS = 64;
+
+    // how often (in read bases) we check whether any offset can still beat the score to beat
+    private static final int BOUND_CHECK_INTERVAL = 4;
+
+    private final byte[] consensus;
+
+    // bit p is set if consensus[p] is a regular base
+    private final long[] regularBases;
+    // for each regular base value b, bit p is set if consensus[p] == b; null if the consensus doesn't contain b
+    private final long[][] basesEqualTo = new long[256][];
+
+    private final long[] scoreBits = new long[Integer.SIZE];
+    private final int[] scores = new int[MAX_OFFSETS];
+
+    // the read we scored last, prepared for scoring: for each of its regular bases, its position, its quality, and
+    // the positions of the consensus it matches (null if none).  A read is usually scored at many consecutive batches
+    // of offsets, so this saves preparing it again for every batch
+    private byte[] preparedBases = null;
+    private byte[] preparedQuals = null;
+    private int nRegularBases;
+    private int[] regularPositions = new int[0];
+    private int[] regularQuals = new int[0];
+    private long[][] regularMatches = new long[0][];
+    private long maxScore;
+
+    /**
+     * @param consensus the consensus bases.  Not copied, so must not be modified afterwards
+     */
+    public ConsensusMismatchScorer(final byte[] consensus) {
+        this.consensus = consensus;
+
+        // one spare word, so that reading 64 bits at any position of the consensus never runs off the end
+        final int nWords = (consensus.length >> 6) + 2;
+        regularBases = new long[nWords];
+        for ( int p = 0; p < consensus.length; p++ ) {
+            final byte base = consensus[p];
+            if ( BaseUtils.isRegularBase(base) ) {
+                regularBases[p >> 6] |= 1L << p;
+                if ( basesEqualTo[base] == null )
+                    basesEqualTo[base] = new long[nWords];
+                basesEqualTo[base][p >> 6] |= 1L << p;
+            }
+        }
+    }
+
+    /**
+     * Scores the read at the offsets [from, from + nOffsets)
+     *
+     * The read must lie entirely within the consensus at all of these offsets.  Its arrays must not be modified
+     * between calls, as the read is only prepared for scoring again when called with different arrays.
+     *
+     * @param readBases the bases of the read
+     * @param quals the base qualities of the read
+     * @param from the first offset to score
+     * @param nOffsets the number of offsets to score, at most MAX_OFFSETS
+     * @param scoreToBeat we only care about the offsets with a lower score than this
+     * @return the scores, indexed by offset - from (the array is reused by the next call), or null if no offset has a
+     *         score lower than scoreToBeat
+     */
+    public int[] score(final byte[] readBases, final byte[] quals, final int from, final int nOffsets, final int scoreToBeat) {
+        if ( nOffsets < 1 || nOffsets > MAX_OFFSETS )
+            throw new IllegalArgumentException("nOffsets must be between 1 and " + MAX_OFFSETS + " but was " + nOffsets);
+        if ( from < 0 || from + nOffsets - 1 + readBases.length > consensus.length )
+            throw new IllegalArgumentException("The read must lie within the consensus at all offsets");
+
+        if ( !prepare(readBases, quals) )
+            return scoreOneOffsetAtATime(readBases, quals, from, nOffsets);
+
+        // the number of bits needed for the highest possible score
+        final int nBits = Long.SIZE - Long.numberOfLeadingZeros(maxScore);
+        if ( nBits >= Integer.SIZE )
+            return scoreOneOffsetAtATime(readBases, quals, from, nOffsets);
+
+        // no offset can reach the score to beat if it doesn't even fit into the bits we have
+        final boolean checkBound = scoreToBeat >= 0 && scoreToBeat <= maxScore;
+        final long activeOffsets = nOffsets == MAX_OFFSETS ? -1L : (1L << nOffsets) - 1;
+
+        final long[] bits = scoreBits;
+        for ( int t = 0; t < nBits; t++ )
+            bits[t] = 0L;
+
+        for ( int r = 0; r < nRegularBases; r++ ) {
+            // bit k is set if the read base mismatches the consensus at offset from + k
+            final int position = from + regularPositions[r];
+            long mismatches = wordAt(regularBases, position) & activeOffsets;
+            final long[] matches = regularMatches[r];
+            if ( matches != null )
+                mismatches &= ~wordAt(matches, position);
+            if ( mismatches != 0L )
+                add(bits, nBits, regularQuals[r], mismatches);
+
+            if ( checkBound && r % BOUND_CHECK_INTERVAL == BOUND_CHECK_INTERVAL - 1 &&
+                    (atLeast(bits, nBits, scoreToBeat) & activeOffsets) == activeOffsets )
+                return null;
+        }
+
+        if ( checkBound && (atLeast(bits, nBits, scoreToBeat) & activeOffsets) == activeOffsets )
+            return null;
+
+        for ( int k = 0; k < nOffsets; k++ ) {
+            int score = 0;
+            for ( int t = 0; t < nBits; t++ )
+                score |= (int)((bits[t] >>> k) & 1L) << t;
+            scores[k] = score;
+        }
+        return scores;
+    }
+
+    /**
+     * Prepares the read for scoring, unless it is the read we prepared last time
+     *
+     * @return false if the read can't be scored bit-sliced, because of negative qualities
+     */
+    private boolean prepare(final byte[] readBases, final byte[] quals) {
+        if ( readBases == preparedBases && quals == preparedQuals )
+            return true;
+
+        if ( regularPositions.length < readBases.length ) {
+            regularPositions = new int[readBases.length];
+            regularQuals = new int[readBases.length];
+            regularMatches = new long[readBases.length][];
+        }
+
+        preparedBases = preparedQuals = null;
+        nRegularBases = 0;
+        maxScore = 0;
+        for ( int i = 0; i < readBases.length; i++ ) {
+            if ( quals[i] < 0 )
+                return false;
+            if ( BaseUtils.isRegularBase(readBases[i]) ) {
+                regularPositions[nRegularBases] = i;
+                regularQuals[nRegularBases] = quals[i];
+                regularMatches[nRegularBases] = basesEqualTo[readBases[i]];
+                nRegularBases++;
+                maxScore += quals[i];
+            }
+        }
+        preparedBases = readBases;
+        preparedQuals = quals;
+        return true;
+    }
+
+    /**
+     * Scores the read the plain way, for reads whose scores can't be accumulated bit-sliced
+     */
+    private int[] scoreOneOffsetAtATime(final byte[] readBases, final byte[] quals, final int from, final int nOffsets) {
+        for ( int k = 0; k < nOffsets; k++ ) {
+            int sum = 0;
+            for ( int i = 0; i < readBases.length; i++ ) {
+                final byte readBase = readBases[i];
+                final byte consensusBase = consensus[from + k + i];
+                if ( BaseUtils.isRegularBase(readBase) && BaseUtils.isRegularBase(consensusBase) && readBase != consensusBase )
+                    sum += quals[i];
+            }
+            scores[k] = sum;
+        }
+        return scores;
+    }
+
+    /**
+     * @return the 64 bits of the bitset starting at the given position
+     */
+    private static long wordAt(final long[] bitset, final int position) {
+        final int word = position >> 6;
+        final int shift = position & 63;
+        return shift == 0 ? bitset[word] : (bitset[word] >>> shift) | (bitset[word + 1] << (64 - shift));
+    }
+
+    /**
+     * Adds value to the bit-sliced scores of the offsets in mask
+     *
+     * @param bits the bit-sliced scores: bit k of bits[t] is bit t of the score at offset k
+     * @param nBits the number of bits of the scores, big enough that the addition can't overflow
+     * @param value the (non-negative) value to add
+     * @param mask the offsets to add the value to
+     */
+    private static void add(final long[] bits, final int nBits, final int value, final long mask) {
+        long carry = 0L;
+        for ( int t = 0; t < nBits; t++ ) {
+            final long addend = ((value >>> t) & 1) != 0 ? mask : 0L;
+            if ( addend == 0L && carry == 0L ) {
+                if ( (value >>> t) == 0 )
+                    return;
+                continue;
+            }
+            final long bit = bits[t];
+            bits[t] = bit ^ addend ^ carry;
+            carry = (bit & addend) | (carry & (bit ^ addend));
+        }
+    }
+
+    /**
+     * @return a mask with bit k set if the bit-sliced score at offset k is at least value
+     */
+    private static long atLeast(final long[] bits, final int nBits, final int value) {
+        long greater = 0L;
+        long equal = -1L;
+        for ( int t = nBits - 1; t >= 0; t-- ) {
+            if ( ((value >>> t) & 1) != 0 ) {
+                equal &= bits[t];
+            } else {
+                greater |= equal & bits[t];
+                equal &= ~bits[t];
+            }
+        }
+        return greater | equal;
+    }
+}
@@ -41,6 +41,7 @@ import org.broadinstitute.gatk.engine.walkers.ReadWalker;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.smithwaterman.Parameters;
+import org.broadinstitute.gatk.utils.smithwaterman.FastSWPairwiseAlignment;
 import org.broadinstitute.gatk.utils.smithwaterman.SWPairwiseAlignment;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.baq.BAQ;
@@ -56,6 +57,7 @@ import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 import org.broadinstitute.gatk.engine.io.NWaySAMFileWriter;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.text.XReadLines;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 import htsjdk.variant.variantcontext.VariantContext;
 
 import java.io.File;
@@ -63,6 +65,7 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Perform local realignment of reads around indels
@@ -235,6 +238,16 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     @Argument(fullName="maxReadsForRealignment", shortName="maxReads", doc="Max reads allowed at an interval for realignment", required=false)
     protected int MAX_READS = 20000;
 
+    /**
+     * Target intervals are independent of each other, so they can be realigned concurrently.  The reads are still
+     * emitted in coordinate order and realigned exactly as with a single thread, except that with the USE_SW model
+     * the reads picked at random for generating consensuses (see maxReadsForConsensuses) may differ.  The debugging
+     * outputs are not supported when using more than one thread.
+     */
+    @Advanced
+    @Argument(fullName="numRealignmentThreads", shortName="realignThreads", doc="Number of threads used to realign target intervals concurrently", required=false)
+    protected int N_REALIGNMENT_THREADS = 1;
+
     @Advanced
     @Argument(fullName="noOriginalAlignmentTags", shortName="noTags", required=false, doc="Don't output the original cigar or alignment start tags for each realigned read in the output bam")
     protected boolean NO_ORIGINAL_ALIGNMENT_TAGS = false;
@@ -296,11 +309,17 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
     // the reads and known indels that fall into the current interval
     private ReadBin readsToClean;
-    private final ArrayList<GATKSAMRecord> readsNotToClean = new ArrayList<GATKSAMRecord>();
+    private ArrayList<GATKSAMRecord> readsNotToClean = new ArrayList<GATKSAMRecord>();
     private final ArrayList<VariantContext> knownIndelsToTry = new ArrayList<VariantContext>();
     private final HashSet<Object> indelRodsSeen = new HashSet<Object>();
     private final HashSet<GATKSAMRecord> readsActuallyCleaned = new HashSet<GATKSAMRecord>();
 
+    // when running with more than one realignment thread: the pool realigning the target intervals, and the reads
+    // of the targets it is working on (and of the gaps between them) in the order in which they have to be emitted
+    private ExecutorService realignmentPool = null;
+    private final LinkedList<PendingReads> pendingReads = new LinkedList<PendingReads>();
+    private int nPendingReads = 0;
+
     private static final int MAX_QUAL = 99;
 
     // fraction of mismatches that need to no longer mismatch for a column to be considered cleaned
@@ -367,6 +386,14 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             throw new RuntimeException("LOD threshold cannot be a negative number");
         if ( MISMATCH_THRESHOLD <= 0.0 || MISMATCH_THRESHOLD > 1.0 )
             throw new RuntimeException("Entropy threshold must be a fraction between 0 and 1");
+        if ( N_REALIGNMENT_THREADS < 1 )
+            throw new UserException.BadArgumentValue("numRealignmentThreads", "must be at least 1");
+        if ( N_REALIGNMENT_THREADS > 1 ) {
+            if ( OUT_INDELS != null || OUT_STATS != null || OUT_SNPS != null || CHECKEARLY )
+                throw new UserException.CommandLineException("The debugging outputs and check_early can not be used with more than one realignment thread");
+            // daemon threads, since onTraversalDone (and so the shutdown) is never reached if the traversal fails
+            realignmentPool = Executors.newFixedThreadPool(N_REALIGNMENT_THREADS, new NamedThreadFactory("IndelRealigner-thread-%d", true));
+        }
 
         try {
             referenceReader = new CachingIndexedFastaSequenceFile(getToolkit().getArguments().referenceFile, false, true);
@@ -460,6 +487,15 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
     private void emit(final GATKSAMRecord read) {
 
+        // the read can't overtake the target intervals that are still being realigned
+        if ( ! pendingReads.isEmpty() ) {
+            if ( ! pendingReads.getLast().isPassThrough() )
+                pendingReads.add(new PendingReads());
+            pendingReads.getLast().reads.add(read);
+            nPendingReads++;
+            return;
+        }
+
         // check to see whether the read was modified by looking at the temporary tag
         boolean wasModified = readsActuallyCleaned.contains(read);
 
@@ -480,6 +516,148 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         readsActuallyCleaned.clear();
     }
 
+    /**
+     * Hands the reads of the current target interval to the realignment pool, to be emitted once they have been realigned
+     *
+     * @param tryToClean should we try to realign the reads at all?
+     */
+    private void submitReadLists(final boolean tryToClean) {
+        if ( readsToClean.size() == 0 && readsNotToClean.size() == 0 )
+            return;
+
+        boolean clean = false;
+        if ( tryToClean && readsToClean.size() > 0 ) {
+            // whether we may move the reads depends on what the manager has flushed by the time the earlier targets
+            // are emitted, which we only know in advance if emitting them can't make the manager run out of room
+            if ( manager.getNReadsInQueue() + nPendingReads >= MAX_RECORDS_IN_MEMORY )
+                emitPendingReads(true);
+            final GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
+            clean = manager.canMoveReads(earliestPossibleMove);
+        }
+
+        final PendingReads target = clean ?
+                new PendingReads(readsToClean, readsNotToClean, new ArrayList<VariantContext>(knownIndelsToTry), currentInterval, new Random(Utils.getRandomGenerator().nextLong())) :
+                new PendingReads(readsToClean, readsNotToClean, null, currentInterval, null);
+        pendingReads.add(target);
+        nPendingReads += target.size();
+        target.realignment = realignmentPool.submit(target);
+
+        readsToClean = new ReadBin(getToolkit().getGenomeLocParser(), REFERENCE_PADDING);
+        readsNotToClean = new ArrayList<GATKSAMRecord>();
+
+        emitPendingReads(false);
+    }
+
+    /**
+     * Emits the pending reads up to the first target interval that is still being realigned
+     *
+     * Blocks if too many target intervals are pending, so that we don't keep reading ahead of the realignment pool.
+     *
+     * @param waitForAll should we wait until all pending reads have been emitted?
+     */
+    private void emitPendingReads(final boolean waitForAll) {
+        while ( ! pendingReads.isEmpty() ) {
+            final PendingReads next = pendingReads.getFirst();
+            if ( ! waitForAll && ! next.isDone() && pendingReads.size() <= 4 * N_REALIGNMENT_THREADS )
+                break;
+
+            next.waitUntilRealigned();
+            pendingReads.removeFirst();
+            nPendingReads -= next.size();
+            if ( next.isPassThrough() ) {
+                for ( final GATKSAMRecord read : next.reads ) {
+                    try {
+                        manager.addRead(read, false);
+                    } catch (RuntimeIOException e) {
+                        throw new UserException.ErrorWritingBamFile(e.getMessage());
+                    }
+                }
+            } else {
+                manager.addReads(next.reads, next.cleanedReads);
+            }
+        }
+    }
+
+    /**
+     * Reads waiting for the target intervals before them to be realigned: either the reads of a target interval,
+     * realigned (if need be) and sorted by the realignment pool, or reads outside of the target intervals
+     */
+    private final class PendingReads implements Callable<Void> {
+        private final List<GATKSAMRecord> reads;
+        private final ReadBin readsToClean;
+        private final List<VariantContext> knownIndels;
+        private final GenomeLoc interval;
+        private final Random random;
+        private final Set<GATKSAMRecord> cleanedReads = new HashSet<GATKSAMRecord>();
+        private final int size;
+        private Future<Void> realignment = null;
+
+        /**
+         * Creates a batch of reads outside of the target intervals, which are emitted as they are
+         */
+        public PendingReads() {
+            this.reads = new ArrayList<GATKSAMRecord>();
+            this.readsToClean = null;
+            this.knownIndels = null;
+            this.interval = null;
+            this.random = null;
+            this.size = -1;
+        }
+
+        /**
+         * @param readsToClean the reads of the target interval we may clean
+         * @param readsNotToClean the other reads of the target interval
+         * @param knownIndels the known indels to try, or null if the reads shouldn't be cleaned
+         * @param interval the target interval
+         * @param random the random number generator for picking reads for generating consensuses
+         */
+        public PendingReads(final ReadBin readsToClean, final List<GATKSAMRecord> readsNotToClean, final List<VariantContext> knownIndels,
+                            final GenomeLoc interval, final Random random) {
+            this.reads = readsNotToClean;
+            this.readsToClean = readsToClean;
+            this.knownIndels = knownIndels;
+            this.interval = interval;
+            this.random = random;
+            this.size = readsToClean.size() + readsNotToClean.size();
+        }
+
+        @Override
+        public Void call() {
+            if ( knownIndels != null )
+                clean(readsToClean, knownIndels, interval, cleanedReads, random);
+            // pre-merge lists to sort them in preparation for constrained SAMFileWriter
+            reads.addAll(readsToClean.getReads());
+            ReadUtils.sortReadsByCoordinate(reads);
+            return null;
+        }
+
+        public boolean isPassThrough() {
+            return readsToClean == null;
+        }
+
+        public int size() {
+            return isPassThrough() ? reads.size() : size;
+        }
+
+        public boolean isDone() {
+            return isPassThrough() || realignment.isDone();
+        }
+
+        public void waitUntilRealigned() {
+            if ( isPassThrough() )
+                return;
+            try {
+                realignment.get();
+            } catch (InterruptedException e) {
+                throw new ReviewedGATKException("Interrupted while realigning " + interval, e);
+            } catch (ExecutionException e) {
+                if ( e.getCause() instanceof RuntimeException )
+                    throw (RuntimeException)e.getCause();
+                throw new ReviewedGATKException("Failed to realign " + interval, e.getCause());
+            }
+        }
+    }
+
     public Integer map(ReferenceContext ref, GATKSAMRecord read, RefMetaDataTracker metaDataTracker) {
         if ( currentInterval == null ) {
             emit(read);
@@ -531,7 +709,10 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void abortCleanForCurrentInterval() {
-        emitReadLists();
+        if ( realignmentPool != null )
+            submitReadLists(false);
+        else
+            emitReadLists();
         currentInterval = intervals.hasNext() ? intervals.next() : null;
         sawReadInCurrentInterval = false;
     }
@@ -549,15 +730,19 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     private void cleanAndCallMap(ReferenceContext ref, GATKSAMRecord read, RefMetaDataTracker metaDataTracker, GenomeLoc readLoc) {
-        if ( readsToClean.size() > 0 ) {
-            GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
-            if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
+        if ( realignmentPool != null ) {
+            submitReadLists(true);
+        } else {
+            if ( readsToClean.size() > 0 ) {
+                GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
+                if ( manager.canMoveReads(earliestPossibleMove) )
+                    clean(readsToClean, knownIndelsToTry, currentInterval, readsActuallyCleaned, Utils.getRandomGenerator());
+            }
+            emitReadLists();
         }
         knownIndelsToTry.clear();
         indelRodsSeen.clear();
 
-        emitReadLists();
         try {
             do {
                 currentInterval = intervals.hasNext() ? intervals.next() : null;
@@ -581,10 +766,17 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     }
 
     public void onTraversalDone(Integer result) {
-        if ( readsToClean.size() > 0 ) {
+        if ( realignmentPool != null ) {
+            try {
+                submitReadLists(true);
+                emitPendingReads(true);
+            } finally {
+                realignmentPool.shutdownNow();
+            }
+        } else if ( readsToClean.size() > 0 ) {
             GenomeLoc earliestPossibleMove = getToolkit().getGenomeLocParser().createGenomeLoc(readsToClean.getReads().get(0));
             if ( manager.canMoveReads(earliestPossibleMove) )
-                clean(readsToClean);
+                clean(readsToClean, knownIndelsToTry, currentInterval, readsActuallyCleaned, Utils.getRandomGenerator());
             emitReadLists();
         } else if ( readsNotToClean.size() > 0 ) {
             emitReadLists();                            
@@ -662,7 +854,20 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return sum;
     }
 
-    private void clean(ReadBin readsToClean) {
+    /**
+     * Realigns the reads of a target interval, if that reduces the mismatches to the reference enough
+     *
+     * Only touches the reads of the interval and the given arguments (and the debugging outputs), so the reads of
+     * different intervals can be cleaned concurrently.
+     *
+     * @param readsToClean the reads to clean
+     * @param knownIndels the known indels to try as alternate consensuses
+     * @param interval the target interval
+     * @param cleanedReads the set to add the reads that were actually realigned to
+     * @param random the random number generator for picking reads for generating consensuses
+     */
+    private void clean(final ReadBin readsToClean, final List<VariantContext> knownIndels, final GenomeLoc interval,
+                       final Set<GATKSAMRecord> cleanedReads, final Random random) {
 
         final List<GATKSAMRecord> reads = readsToClean.getReads();
         if ( reads.size() == 0 )
@@ -677,7 +882,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         final Set<Consensus> altConsenses = new LinkedHashSet<Consensus>();               // list of alt consenses
 
         // if there are any known indels for this region, get them and create alternate consenses
-        generateAlternateConsensesFromKnownIndels(altConsenses, leftmostIndex, reference);
+        generateAlternateConsensesFromKnownIndels(altConsenses, knownIndels, leftmostIndex, reference);
 
         // decide which reads potentially need to be cleaned;
         // if there are reads with a single indel in them, add that indel to the list of alternate consenses
@@ -685,7 +890,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
         // use 'Smith-Waterman' to create alternate consenses from reads that mismatch the reference, using totalRawMismatchSum as the random seed
         if ( consensusModel == ConsensusDeterminationModel.USE_SW )
-            generateAlternateConsensesFromReads(altAlignmentsToTest, altConsenses, reference, leftmostIndex);
+            generateAlternateConsensesFromReads(altAlignmentsToTest, altConsenses, reference, leftmostIndex, random);
 
         // if ( debugOn ) System.out.println("------\nChecking consenses...\n--------\n");
 
@@ -708,7 +913,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
 
             for (int j = 0; j < altReads.size(); j++) {
                 AlignedRead toTest = altReads.get(j);
-                Pair<Integer, Integer> altAlignment = findBestOffset(consensus.str, toTest, leftmostIndex);
+                Pair<Integer, Integer> altAlignment = findBestOffset(consensus, toTest, leftmostIndex);
 
                 // the mismatch score is the min of its alignment vs. the reference and vs. the alternate
                 int myScore = altAlignment.second;
@@ -762,7 +967,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             if ( consensusModel != ConsensusDeterminationModel.KNOWNS_ONLY && !alternateReducesEntropy(altReads, reference, leftmostIndex) ) {
                 if ( statsOutput != null ) {
                     try {
-                        statsOutput.write(currentInterval.toString());
+                        statsOutput.write(interval.toString());
                         statsOutput.write("\tFAIL (bad indel)\t"); // if improvement > LOD_THRESHOLD *BUT* entropy is not reduced (SNPs still exist)
                         statsOutput.write(Double.toString(improvement));
                         statsOutput.write("\n");
@@ -800,7 +1005,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                 }
                 if ( statsOutput != null ) {
                     try {
-                        statsOutput.write(currentInterval.toString());
+                        statsOutput.write(interval.toString());
                         statsOutput.write("\tCLEAN"); // if improvement > LOD_THRESHOLD *AND* entropy is reduced
                         if ( bestConsensus.cigar.numCigarElements() > 1 )
                             statsOutput.write(" (found indel)");
@@ -831,8 +1036,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                         int neededBases = Math.max(neededBasesToLeft, neededBasesToRight);
                         if ( neededBases > 0 ) {
                             int padLeft = Math.max(leftmostIndex-neededBases, 1);
-                            int padRight = Math.min(leftmostIndex+reference.length+neededBases, referenceReader.getSequenceDictionary().getSequence(currentInterval.getContig()).getSequenceLength());
-                            reference = referenceReader.getSubsequenceAt(currentInterval.getContig(), padLeft, padRight).getBases();
+                            int padRight = Math.min(leftmostIndex+reference.length+neededBases, referenceReader.getSequenceDictionary().getSequence(interval.getContig()).getSequenceLength());
+                            reference = referenceReader.getSubsequenceAt(interval.getContig(), padLeft, padRight).getBases();
                             leftmostIndex = padLeft;
                         }
 
@@ -851,7 +1056,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                             read.setAttribute(SAMTag.MD.name(), null);
 
                         // mark that it was actually cleaned
-                        readsActuallyCleaned.add(read);
+                        cleanedReads.add(read);
                     }
                 }
             }
@@ -861,7 +1066,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         } else if ( statsOutput != null ) {
             try {
                 statsOutput.write(String.format("%s\tFAIL\t%.1f%n",
-                        currentInterval.toString(), improvement));
+                        interval.toString(), improvement));
                 statsOutput.flush();
             } catch (Exception e) {
                 throw new UserException.CouldNotCreateOutputFile("statsOutput", "Failed to write stats output file", e);
@@ -869,8 +1074,9 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         }
     }
 
-    private void generateAlternateConsensesFromKnownIndels(final Set<Consensus> altConsensesToPopulate, final int leftmostIndex, final byte[] reference) {
-        for ( VariantContext knownIndel : knownIndelsToTry ) {
+    private void generateAlternateConsensesFromKnownIndels(final Set<Consensus> altConsensesToPopulate, final List<VariantContext> knownIndels,
+                                                           final int leftmostIndex, final byte[] reference) {
+        for ( VariantContext knownIndel : knownIndels ) {
             if ( knownIndel == null || !knownIndel.isIndel() || knownIndel.isComplexIndel() )
                 continue;
             final byte[] indelStr;
@@ -948,7 +1154,8 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void generateAlternateConsensesFromReads(final LinkedList<AlignedRead> altAlignmentsToTest,
                                                      final Set<Consensus> altConsensesToPopulate,
                                                      final byte[] reference,
-                                                     final int leftmostIndex) {
+                                                     final int leftmostIndex,
+                                                     final Random random) {
 
         // if we are under the limit, use all reads to generate alternate consenses
         if ( altAlignmentsToTest.size() <= MAX_READS_FOR_CONSENSUSES ) {
@@ -961,7 +1168,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         else {
             int readsSeen = 0;
             while ( readsSeen++ < MAX_READS_FOR_CONSENSUSES && altConsensesToPopulate.size() <= MAX_CONSENSUSES) {
-                int index = Utils.getRandomGenerator().nextInt(altAlignmentsToTest.size());
+                int index = random.nextInt(altAlignmentsToTest.size());
                 AlignedRead aRead = altAlignmentsToTest.remove(index);
                 if ( CHECKEARLY ) createAndAddAlternateConsensus1(aRead, altConsensesToPopulate, reference,leftmostIndex);
                 else createAndAddAlternateConsensus(aRead.getReadBases(), altConsensesToPopulate, reference);
@@ -972,7 +1179,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
     private void createAndAddAlternateConsensus(final byte[] read, final Set<Consensus> altConsensesToPopulate, final byte[] reference) {
 
         // do a pairwise alignment against the reference
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read, swParameters);
+         SWPairwiseAlignment swConsensus = new FastSWPairwiseAlignment(reference, read, swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read);
          if ( c != null )
              altConsensesToPopulate.add(c);
@@ -982,14 +1189,14 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
                                                  final byte[] reference, final int leftmostIndex) {
 
          for ( Consensus known : altConsensesToPopulate ) {
-              Pair<Integer, Integer> altAlignment = findBestOffset(known.str, read, leftmostIndex);
+              Pair<Integer, Integer> altAlignment = findBestOffset(known, read, leftmostIndex);
               // the mismatch score is the min of its alignment vs. the reference and vs. the alternate
               int myScore = altAlignment.second;
               if ( myScore == 0 ) {exactMatchesFound++; return; }// read matches perfectly to a known alt consensus - no need to run SW, we already know the answer
          }
          // do a pairwise alignment against the reference
          SWalignmentRuns++;
-         SWPairwiseAlignment swConsensus = new SWPairwiseAlignment(reference, read.getReadBases(), swParameters);
+         SWPairwiseAlignment swConsensus = new FastSWPairwiseAlignment(reference, read.getReadBases(), swParameters);
          Consensus c = createAlternateConsensus(swConsensus.getAlignmentStart2wrt1(), swConsensus.getCigar(), reference, read.getReadBases());
          if ( c != null ) {
              altConsensesToPopulate.add(c);
@@ -1103,42 +1310,69 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         return new Consensus(altConsensus, cigar, 0);
     }
 
-    private Pair<Integer, Integer> findBestOffset(final byte[] ref, final AlignedRead read, final int leftmostIndex) {
+    private Pair<Integer, Integer> findBestOffset(final Consensus consensus, final AlignedRead read, final int leftmostIndex) {
 
         // optimization: try the most likely alignment first (to get a low score to beat)
         int originalAlignment = read.getOriginalAlignmentStart() - leftmostIndex;
-        int bestScore = mismatchQualitySumIgnoreCigar(read, ref, originalAlignment, Integer.MAX_VALUE);
-        int bestIndex = originalAlignment;
+        final int[] best = { mismatchQualitySumIgnoreCigar(read, consensus.str, originalAlignment, Integer.MAX_VALUE), originalAlignment };
 
         // optimization: we can't get better than 0, so we can quit now
-        if ( bestScore == 0 )
-            return new Pair<Integer, Integer>(bestIndex, 0);
+        if ( best[0] == 0 )
+            return new Pair<Integer, Integer>(best[1], 0);
 
         // optimization: the correct alignment shouldn't be too far from the original one (or else the read wouldn't have aligned in the first place)
-        for ( int i = 0; i < originalAlignment; i++ ) {
-            int score = mismatchQualitySumIgnoreCigar(read, ref, i, bestScore);
-            if ( score < bestScore ) {
-                bestScore = score;
-                bestIndex = i;
+        final int maxPossibleStart = consensus.str.length - read.getReadLength();
+        if ( !findBetterOffset(consensus, read, 0, originalAlignment, maxPossibleStart, best) )
+            findBetterOffset(consensus, read, originalAlignment + 1, maxPossibleStart + 1, maxPossibleStart, best);
+
+        return new Pair<Integer, Integer>(best[1], best[0]);
+    }
+
+    /**
+     * Looks for offsets in [from, to) at which the read mismatches the consensus less than at the best offset so far
+     *
+     * The offsets are tried in order, so that of offsets with equal scores the first one wins.
+     *
+     * @param consensus the consensus to align the read to
+     * @param read the read
+     * @param from the first offset to try
+     * @param to one past the last offset to try
+     * @param maxPossibleStart the last offset at which the read doesn't run off the end of the consensus
+     * @param best the best score and offset so far, updated in place
+     * @return true if we found a perfect match, so there's no need to look any further
+     */
+    private static boolean findBetterOffset(final Consensus consensus, final AlignedRead read, final int from, final int to,
+                                            final int maxPossibleStart, final int[] best) {
+        // the scorer handles the offsets at which the read lies within the consensus, 64 of them at a time
+        final int scorerStop = Math.min(to, maxPossibleStart + 1);
+        for ( int start = from; start < scorerStop; start += ConsensusMismatchScorer.MAX_OFFSETS ) {
+            final int nOffsets = Math.min(ConsensusMismatchScorer.MAX_OFFSETS, scorerStop - start);
+            final int[] scores = consensus.getMismatchScorer().score(read.getReadBases(), read.getBaseQualities(), start, nOffsets, best[0]);
+            if ( scores == null )
+                continue;
+            for ( int k = 0; k < nOffsets; k++ ) {
+                if ( scores[k] < best[0] ) {
+                    best[0] = scores[k];
+                    best[1] = start + k;
+                    // optimization: we can't get better than 0, so we can quit now
+                    if ( best[0] == 0 )
+                        return true;
+                }
             }
-            // optimization: we can't get better than 0, so we can quit now
-            if ( bestScore == 0 )
-                return new Pair<Integer, Integer>(bestIndex, 0);
         }
 
-        final int maxPossibleStart = ref.length - read.getReadLength();
-        for ( int i = originalAlignment + 1; i <= maxPossibleStart; i++ ) {
-            int score = mismatchQualitySumIgnoreCigar(read, ref, i, bestScore);
-            if ( score < bestScore ) {
-                bestScore = score;
-                bestIndex = i;
+        for ( int i = Math.max(from, scorerStop); i < to; i++ ) {
+            final int score = mismatchQualitySumIgnoreCigar(read, consensus.str, i, best[0]);
+            if ( score < best[0] ) {
+                best[0] = score;
+                best[1] = i;
             }
             // optimization: we can't get better than 0, so we can quit now
-            if ( bestScore == 0 )
-                return new Pair<Integer, Integer>(bestIndex, 0);
+            if ( best[0] == 0 )
+                return true;
         }
 
-        return new Pair<Integer, Integer>(bestIndex, bestScore);
+        return false;
     }
 
 
@@ -1574,7 +1808,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
      * @return true if it aligns off the end
      */
     private boolean realignmentProducesBadAlignment(final GATKSAMRecord read) {
-        final int contigLength = referenceReader.getSequenceDictionary().getSequence(currentInterval.getContig()).getSequenceLength();
+        final int contigLength = referenceReader.getSequenceDictionary().getSequence(read.getReferenceName()).getSequenceLength();
         return realignmentProducesBadAlignment(read, contigLength);
     }
 
@@ -1595,6 +1829,7 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
         public final int positionOnReference;
         public int mismatchSum;
         public Cigar cigar;
+        private ConsensusMismatchScorer mismatchScorer = null;
 
         public Consensus(byte[] str, Cigar cigar, int positionOnReference) {
             this.str = str;
@@ -1604,6 +1839,12 @@ public class IndelRealigner extends ReadWalker<Integer, Integer> {
             readIndexes = new ArrayList<Pair<Integer, Integer>>();
         }
 
+        public ConsensusMismatchScorer getMismatchScorer() {
+            if ( mismatchScorer == null )
+                mismatchScorer = new ConsensusMismatchScorer(str);
+            return mismatchScorer;
+        }
+
         @Override
         public boolean equals(Object o) {
             return ( this == o || (o instanceof Consensus && Arrays.equals(this.str,(((Consensus)o).str)) ) );
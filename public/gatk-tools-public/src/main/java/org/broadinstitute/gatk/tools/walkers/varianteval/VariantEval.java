@@ -66,6 +66,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * General-purpose tool for variant evaluation (% in dbSNP, genotype concordance, Ti/Tv ratios, and a lot more)
@@ -258,6 +259,23 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public IntervalBinding<Feature> knownCNVsFile = null;
     Map<String, IntervalTree<GenomeLoc>> knownCNVsByContig = Collections.emptyMap();
 
+    /**
+     * Writes the evaluation state, before the final statistics are computed, to this file.  The state can later
+     * be combined with that of other runs over disjoint sites (such as the scattered parts of a callset, or new
+     * batches of sites) with -mergeState, without re-evaluating the sites that went into it.
+     */
+    @Advanced
+    @Output(fullName="saveState", shortName="saveState", doc="File to which the partial evaluation state should be written", required=false, defaultToStdout=false)
+    public File stateFile = null;
+
+    /**
+     * Evaluation states written with -saveState by runs over other sites, to add to the results of this run.  The
+     * stratifications, eval modules and samples must be the same as those of this run.
+     */
+    @Advanced
+    @Input(fullName="mergeState", shortName="mergeState", doc="Partial evaluation state(s) to merge into the results of this run", required=false)
+    public List<File> statesToMerge = Collections.emptyList();
+
     // Variables
     private Set<SortableJexlVCMatchExp> jexlExpressions = new TreeSet<SortableJexlVCMatchExp>();
 
@@ -277,7 +295,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final private static String ALL_FAMILY_NAME = "all";
 
     // the number of processed bp for this walker
-    long nProcessedLoci = 0;
+    private final AtomicLong nProcessedLoci = new AtomicLong();
 
     // Utility class
     private final VariantEvalUtils variantEvalUtils = new VariantEvalUtils(this);
@@ -289,6 +307,22 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     StratificationManager<VariantStratifier, EvaluationContext> stratManager;
     //Set<DynamicStratification> dynamicStratifications = Collections.emptySet();
 
+    // The eval modules of each evaluation context
+    private Set<Class<? extends VariantEvaluator>> evaluationClasses;
+
+    // With -nt, each thread evaluates into its own, lazily created, evaluation contexts (indexed by stratification
+    // key) instead of contending for the shared ones; they are combined into stratManager once the traversal is done
+    boolean usePerThreadContexts = false;
+    private final List<EvaluationContext[]> perThreadContexts = Collections.synchronizedList(new ArrayList<EvaluationContext[]>());
+    private final ThreadLocal<EvaluationContext[]> threadContexts = new ThreadLocal<EvaluationContext[]>() {
+        @Override
+        protected EvaluationContext[] initialValue() {
+            final EvaluationContext[] contexts = new EvaluationContext[stratManager.size()];
+            perThreadContexts.add(contexts);
+            return contexts;
+        }
+    };
+
     /**
      * Initialize the stratifications, evaluations, evaluation contexts, and reporting object
      */
@@ -378,6 +412,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
 
         // Initialize the evaluation contexts
         createStratificationStates(stratificationObjects, evaluationClasses);
+        usePerThreadContexts = getToolkit().getArguments().numberOfDataThreads > 1 && stratManager.get(0).supportsCombine();
 
         // Load ancestral alignments
         if (ancestralAlignmentsFile != null) {
@@ -410,6 +445,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     final void createStratificationStates(final List<VariantStratifier> stratificationObjects, final Set<Class<? extends VariantEvaluator>> evaluationObjects) {
         final List<VariantStratifier> strats = new ArrayList<VariantStratifier>(stratificationObjects);
         stratManager = new StratificationManager<VariantStratifier, EvaluationContext>(strats);
+        this.evaluationClasses = evaluationObjects;
 
         logger.info("Creating " + stratManager.size() + " combinatorial stratification states");
         for ( int i = 0; i < stratManager.size(); i++ ) {
@@ -441,9 +477,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         // we track the processed bp and expose this for modules instead of wasting CPU power on calculating
         // the same thing over and over in evals that want the processed bp
-        synchronized (this) {
-            nProcessedLoci += context.getSkippedBases() + (ref == null ? 0 : 1);
-        }
+        nProcessedLoci.addAndGet(context.getSkippedBases() + (ref == null ? 0 : 1));
 
         if (tracker != null) {
             String aastr = (ancestralAlignments == null) ? null : new String(ancestralAlignments.getSubsequenceAt(ref.getLocus().getContig(), ref.getLocus().getStart(), ref.getLocus().getStop()).getBases());
@@ -582,7 +616,30 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
         for ( final VariantStratifier vs : stratManager.getStratifiers() ) {
             states.add(vs.getRelevantStates(ref, tracker, comp, compName, eval, evalName, sampleName, familyName));
         }
-        return stratManager.values(states);
+        if ( ! usePerThreadContexts )
+            return stratManager.values(states);
+
+        final EvaluationContext[] contexts = threadContexts.get();
+        final Collection<EvaluationContext> values = new LinkedList<EvaluationContext>();
+        for ( final int key : stratManager.getKeys(states) ) {
+            if ( contexts[key] == null )
+                contexts[key] = new EvaluationContext(this, evaluationClasses);
+            values.add(contexts[key]);
+        }
+        return values;
+    }
+
+    /**
+     * Adds the evaluation contexts of each thread, if any, to the shared ones in stratManager
+     */
+    protected void combinePerThreadContexts() {
+        for ( final EvaluationContext[] contexts : perThreadContexts ) {
+            for ( int key = 0; key < contexts.length; key++ ) {
+                if ( contexts[key] != null )
+                    stratManager.get(key).combine(contexts[key]);
+            }
+        }
+        perThreadContexts.clear();
     }
 
 
@@ -660,7 +717,13 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
      */
     public void onTraversalDone(Integer result) {
         logger.info("Finalizing variant report");
-        
+
+        combinePerThreadContexts();
+        for ( final File state : statesToMerge )
+            nProcessedLoci.addAndGet(VariantEvalStateFile.merge(state, stratManager));
+        if ( stateFile != null )
+            VariantEvalStateFile.write(stateFile, stratManager, nProcessedLoci.get());
+
         // go through the evaluations and finalize them
         for ( final EvaluationContext nec : stratManager.values() )
             for ( final VariantEvaluator ve : nec.getVariantEvaluators() )
@@ -733,7 +796,7 @@ public class VariantEval extends RodWalker<Integer, Integer> implements TreeRedu
     public Set<SortableJexlVCMatchExp> getJexlExpressions() { return jexlExpressions; }
 
     public long getnProcessedLoci() {
-        return nProcessedLoci;
+        return nProcessedLoci.get();
     }
 
     public Set<String> getContigNames() {
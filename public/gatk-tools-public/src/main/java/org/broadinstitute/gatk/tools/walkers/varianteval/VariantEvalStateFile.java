@@ -0,0 +1,129 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.varianteval;
+
+import org.broadinstitute.gatk.tools.walkers.varianteval.evaluators.VariantEvaluator;
+import org.broadinstitute.gatk.tools.walkers.varianteval.stratifications.VariantStratifier;
+import org.broadinstitute.gatk.tools.walkers.varianteval.stratifications.manager.StratificationManager;
+import org.broadinstitute.gatk.tools.walkers.varianteval.util.EvaluationContext;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class for saving and merging the partial evaluation state of VariantEval
+ *
+ * The state is the not yet finalized evaluators of every stratification state, along with the number of
+ * processed loci, so that the results of runs over disjoint sites (or of a previous run over earlier batches
+ * of data) can be added together before the report is written.  The stratification states and eval modules
+ * of the runs being merged must be identical, which is checked when the state is read back.
+ */
+public class VariantEvalStateFile {
+    private final static String MAGIC = "VariantEvalState";
+    private final static int VERSION = 1;
+
+    protected VariantEvalStateFile() {}  // no public access
+
+    /**
+     * Writes the current, not yet finalized state of stratManager to file
+     *
+     * @param file            the file to write
+     * @param stratManager    the stratification manager
+     * @param nProcessedLoci  the number of loci processed so far
+     */
+    public static void write(final File file,
+                             final StratificationManager<VariantStratifier, EvaluationContext> stratManager,
+                             final long nProcessedLoci) {
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+            try {
+                out.writeUTF(MAGIC);
+                out.writeInt(VERSION);
+                out.writeObject(getKeyStrings(stratManager));
+                out.writeObject(getEvaluatorNames(stratManager.get(0)));
+                out.writeLong(nProcessedLoci);
+                for ( final EvaluationContext context : stratManager.values() )
+                    out.writeObject(new ArrayList<VariantEvaluator>(context.getVariantEvaluators()));
+            } finally {
+                out.close();
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Unable to write the VariantEval state", e);
+        }
+    }
+
+    /**
+     * Adds the state saved in file to that of stratManager
+     *
+     * @param file          a file written by write() with the same stratifications and eval modules
+     * @param stratManager  the stratification manager to combine the saved evaluators into
+     * @return the number of loci processed by the run(s) that produced the saved state
+     */
+    @SuppressWarnings("unchecked")
+    public static long merge(final File file,
+                             final StratificationManager<VariantStratifier, EvaluationContext> stratManager) {
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            try {
+                if ( ! MAGIC.equals(in.readUTF()) || in.readInt() != VERSION )
+                    throw new UserException.MalformedFile(file, "Not a VariantEval state file of version " + VERSION);
+                if ( ! getKeyStrings(stratManager).equals(in.readObject()) )
+                    throw new UserException.MalformedFile(file, "The saved stratification states differ from those of this run; the same -ST, -select, -sn and -comp/-knownName arguments must be used");
+                if ( ! getEvaluatorNames(stratManager.get(0)).equals(in.readObject()) )
+                    throw new UserException.MalformedFile(file, "The saved eval modules differ from those of this run");
+
+                final long nProcessedLoci = in.readLong();
+                for ( final EvaluationContext context : stratManager.values() )
+                    context.combine((List<VariantEvaluator>) in.readObject());
+                return nProcessedLoci;
+            } finally {
+                in.close();
+            }
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(file, "Unable to read the VariantEval state", e);
+        } catch ( ClassNotFoundException e ) {
+            throw new UserException.MalformedFile(file, "The VariantEval state refers to an unknown class", e);
+        }
+    }
+
+    private static ArrayList<String> getKeyStrings(final StratificationManager<VariantStratifier, EvaluationContext> stratManager) {
+        final ArrayList<String> keyStrings = new ArrayList<String>(stratManager.size());
+        for ( int key = 0; key < stratManager.size(); key++ )
+            keyStrings.add(stratManager.getStratsAndStatesStringForKey(key));
+        return keyStrings;
+    }
+
+    private static ArrayList<String> getEvaluatorNames(final EvaluationContext context) {
+        final ArrayList<String> names = new ArrayList<String>();
+        for ( final VariantEvaluator evaluator : context.getVariantEvaluators() )
+            names.add(evaluator.getSimpleName());
+        return names;
+    }
+}
@@ -106,4 +106,17 @@ public class CompOverlap extends VariantEvaluator implements StandardEval {
             }
         }
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final CompOverlap otherOverlap = (CompOverlap) other;
+        nEvalVariants += otherOverlap.nEvalVariants;
+        nVariantsAtComp += otherOverlap.nVariantsAtComp;
+        nConcordant += otherOverlap.nConcordant;
+    }
 }
@@ -216,4 +216,30 @@ public class CountVariants extends VariantEvaluator implements StandardEval {
         indelRatePerBp = perLocusRInverseRate(nDeletions + nInsertions + nComplex);
         insertionDeletionRatio = ratio(nInsertions, nDeletions);
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final CountVariants otherCounts = (CountVariants) other;
+        nCalledLoci += otherCounts.nCalledLoci;
+        nRefLoci += otherCounts.nRefLoci;
+        nVariantLoci += otherCounts.nVariantLoci;
+        nSNPs += otherCounts.nSNPs;
+        nMNPs += otherCounts.nMNPs;
+        nInsertions += otherCounts.nInsertions;
+        nDeletions += otherCounts.nDeletions;
+        nComplex += otherCounts.nComplex;
+        nSymbolic += otherCounts.nSymbolic;
+        nMixed += otherCounts.nMixed;
+        nNoCalls += otherCounts.nNoCalls;
+        nHets += otherCounts.nHets;
+        nHomRef += otherCounts.nHomRef;
+        nHomVar += otherCounts.nHomVar;
+        nSingletons += otherCounts.nSingletons;
+        nHomDerived += otherCounts.nHomDerived;
+    }
+}
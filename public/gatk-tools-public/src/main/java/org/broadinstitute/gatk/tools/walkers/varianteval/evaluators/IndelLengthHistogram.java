@@ -120,4 +120,18 @@ public class IndelLengthHistogram extends VariantEvaluator implements StandardEv
         nIndels++;
         counts.put(len, counts.get(len) + 1);
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final IndelLengthHistogram otherHistogram = (IndelLengthHistogram) other;
+        nIndels += otherHistogram.nIndels;
+        for ( final Map.Entry<Integer, Integer> count : otherHistogram.counts.entrySet() ) {
+            counts.put(count.getKey(), counts.get(count.getKey()) + count.getValue());
+        }
+    }
 }
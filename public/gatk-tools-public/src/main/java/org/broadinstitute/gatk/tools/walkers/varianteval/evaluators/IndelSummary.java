@@ -256,4 +256,36 @@ public class IndelSummary extends VariantEvaluator implements StandardEval {
         insertion_to_deletion_ratio_for_large_indels = Utils.formattedRatio(n_large_insertions, n_large_deletions);
 
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final IndelSummary otherSummary = (IndelSummary) other;
+        n_SNPs += otherSummary.n_SNPs;
+        n_singleton_SNPs += otherSummary.n_singleton_SNPs;
+        n_indels += otherSummary.n_indels;
+        n_singleton_indels += otherSummary.n_singleton_indels;
+        n_indels_matching_gold_standard += otherSummary.n_indels_matching_gold_standard;
+        nIndelSites += otherSummary.nIndelSites;
+        n_multiallelic_indel_sites += otherSummary.n_multiallelic_indel_sites;
+        n_novel_indels += otherSummary.n_novel_indels;
+        n_insertions += otherSummary.n_insertions;
+        n_deletions += otherSummary.n_deletions;
+        n_large_deletions += otherSummary.n_large_deletions;
+        n_large_insertions += otherSummary.n_large_insertions;
+        n_coding_indels_frameshifting += otherSummary.n_coding_indels_frameshifting;
+        n_coding_indels_in_frame += otherSummary.n_coding_indels_in_frame;
+        nSNPHets += otherSummary.nSNPHets;
+        nSNPHoms += otherSummary.nSNPHoms;
+        nIndelHets += otherSummary.nIndelHets;
+        nIndelHoms += otherSummary.nIndelHoms;
+        for ( int i = 0; i < insertionCountByLength.length; i++ ) {
+            insertionCountByLength[i] += otherSummary.insertionCountByLength[i];
+            deletionCountByLength[i] += otherSummary.deletionCountByLength[i];
+        }
+    }
 }
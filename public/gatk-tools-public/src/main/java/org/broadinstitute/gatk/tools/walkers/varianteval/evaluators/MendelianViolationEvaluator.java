@@ -126,8 +126,8 @@ public class MendelianViolationEvaluator extends VariantEvaluator {
     @DataPoint(description="Number of var alleles inherited from homVar/het parents", format = "%d")
     public long HomVarHet_inheritedVar;
 
-    MendelianViolation mv;
-    Map<String,Set<Sample>> families;
+    transient MendelianViolation mv;
+    transient Map<String,Set<Sample>> families;
 
     public void initialize(VariantEval walker) {
         super.initialize(walker);
@@ -184,4 +184,42 @@ public class MendelianViolationEvaluator extends VariantEvaluator {
             }
         }
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MendelianViolationEvaluator otherViolations = (MendelianViolationEvaluator) other;
+        nVariants += otherViolations.nVariants;
+        nSkipped += otherViolations.nSkipped;
+        nFamCalled += otherViolations.nFamCalled;
+        nVarFamCalled += otherViolations.nVarFamCalled;
+        nLowQual += otherViolations.nLowQual;
+        nNoCall += otherViolations.nNoCall;
+        nLociViolations += otherViolations.nLociViolations;
+        nViolations += otherViolations.nViolations;
+        mvRefRef_Var += otherViolations.mvRefRef_Var;
+        mvRefRef_Het += otherViolations.mvRefRef_Het;
+        mvRefHet_Var += otherViolations.mvRefHet_Var;
+        mvRefVar_Var += otherViolations.mvRefVar_Var;
+        mvRefVar_Ref += otherViolations.mvRefVar_Ref;
+        mvVarHet_Ref += otherViolations.mvVarHet_Ref;
+        mvVarVar_Ref += otherViolations.mvVarVar_Ref;
+        mvVarVar_Het += otherViolations.mvVarVar_Het;
+        HomRefHomRef_HomRef += otherViolations.HomRefHomRef_HomRef;
+        HetHet_Het += otherViolations.HetHet_Het;
+        HetHet_HomRef += otherViolations.HetHet_HomRef;
+        HetHet_HomVar += otherViolations.HetHet_HomVar;
+        HomVarHomVar_HomVar += otherViolations.HomVarHomVar_HomVar;
+        HomRefHomVAR_Het += otherViolations.HomRefHomVAR_Het;
+        HetHet_inheritedRef += otherViolations.HetHet_inheritedRef;
+        HetHet_inheritedVar += otherViolations.HetHet_inheritedVar;
+        HomRefHet_inheritedRef += otherViolations.HomRefHet_inheritedRef;
+        HomRefHet_inheritedVar += otherViolations.HomRefHet_inheritedVar;
+        HomVarHet_inheritedRef += otherViolations.HomVarHet_inheritedRef;
+        HomVarHet_inheritedVar += otherViolations.HomVarHet_inheritedVar;
+    }
 }
@@ -64,4 +64,14 @@ public class MetricsCollection extends VariantEvaluator {
         this.indelRatioLociBased = indelRatioLociBased;
         this.tiTvRatio = tiTvRatio;
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        // nothing to do, as the metrics are only set from the other evaluators once the evaluation is finalized
+    }
 }
@@ -161,4 +161,24 @@ public class MultiallelicSummary extends VariantEvaluator implements StandardEva
         SNPNoveltyRate = Utils.formattedNoveltyRate(knownSNPsPartial + knownSNPsComplete, nMultiSNPs);
         indelNoveltyRate = Utils.formattedNoveltyRate(knownIndelsPartial + knownIndelsComplete, nMultiSNPs);
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final MultiallelicSummary otherSummary = (MultiallelicSummary) other;
+        nSNPs += otherSummary.nSNPs;
+        nMultiSNPs += otherSummary.nMultiSNPs;
+        nIndels += otherSummary.nIndels;
+        nMultiIndels += otherSummary.nMultiIndels;
+        nTi += otherSummary.nTi;
+        nTv += otherSummary.nTv;
+        knownSNPsPartial += otherSummary.knownSNPsPartial;
+        knownSNPsComplete += otherSummary.knownSNPsComplete;
+        knownIndelsPartial += otherSummary.knownIndelsPartial;
+        knownIndelsComplete += otherSummary.knownIndelsComplete;
+    }
 }
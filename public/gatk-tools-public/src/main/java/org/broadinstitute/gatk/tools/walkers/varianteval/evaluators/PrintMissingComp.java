@@ -54,4 +54,15 @@ public class PrintMissingComp extends VariantEvaluator {
             nMissing++;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final PrintMissingComp otherMissing = (PrintMissingComp) other;
+        nMissing += otherMissing.nMissing;
+    }
+}
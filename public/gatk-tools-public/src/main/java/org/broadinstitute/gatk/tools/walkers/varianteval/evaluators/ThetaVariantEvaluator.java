@@ -140,4 +140,18 @@ public class ThetaVariantEvaluator extends VariantEvaluator {
 
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final ThetaVariantEvaluator otherTheta = (ThetaVariantEvaluator) other;
+        numSites += otherTheta.numSites;
+        totalHet += otherTheta.totalHet;
+        totalAvgDiffs += otherTheta.totalAvgDiffs;
+        thetaRegionNumSites += otherTheta.thetaRegionNumSites;
+    }
+}
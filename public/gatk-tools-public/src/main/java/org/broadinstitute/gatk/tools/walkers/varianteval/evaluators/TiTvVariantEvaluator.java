@@ -97,4 +97,20 @@ public class TiTvVariantEvaluator extends VariantEvaluator implements StandardEv
         this.tiTvDerivedRatio = rate(nTiDerived,nTvDerived);
         this.TiTvRatioStandard = rate(nTiInComp, nTvInComp);
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final TiTvVariantEvaluator otherTiTv = (TiTvVariantEvaluator) other;
+        nTi += otherTiTv.nTi;
+        nTv += otherTiTv.nTv;
+        nTiInComp += otherTiTv.nTiInComp;
+        nTvInComp += otherTiTv.nTvInComp;
+        nTiDerived += otherTiTv.nTiDerived;
+        nTvDerived += otherTiTv.nTvDerived;
+    }
 }
@@ -180,4 +180,20 @@ public class ValidationReport extends VariantEvaluator implements StandardEval {
             return false;
         }
     }
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final ValidationReport otherReport = (ValidationReport) other;
+        nDifferentAlleleSites += otherReport.nDifferentAlleleSites;
+        for ( int i = 0; i < counts.length; i++ ) {
+            for ( int j = 0; j < counts[i].length; j++ ) {
+                counts[i][j] += otherReport.counts[i][j];
+            }
+        }
+    }
 }
@@ -32,8 +32,14 @@ import org.broadinstitute.gatk.tools.walkers.varianteval.VariantEval;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import htsjdk.variant.variantcontext.VariantContext;
 
-public abstract class VariantEvaluator implements Comparable<VariantEvaluator> {
-    private VariantEval walker;
+import java.io.Serializable;
+
+/**
+ * Evaluators are Serializable so that the partial results of an evaluation can be saved with -saveState and
+ * later combined with those of other runs; the walker they were initialized with is not part of that state
+ */
+public abstract class VariantEvaluator implements Comparable<VariantEvaluator>, Serializable {
+    private transient VariantEval walker;
     private final String simpleName;
 
     protected VariantEvaluator() {
@@ -55,7 +55,7 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         SNP, INDEL, CNV
     }
 
-    Map<String, IntervalTree<GenomeLoc>> knownCNVs = null;
+    transient Map<String, IntervalTree<GenomeLoc>> knownCNVs = null;
 
     // basic counts on various rates found
     @DataPoint(description = "Number of samples", format = "%d")
@@ -118,6 +118,19 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
             get(type).put(sample, count + 1);
         }
 
+        /**
+         * Adds the counts of other to this map, including those of samples not yet seen by this map
+         */
+        public final void add(final TypeSampleMap other) {
+            for ( final Map.Entry<Type, Map<String, Integer>> byType : other.entrySet() ) {
+                final Map<String, Integer> bySample = get(byType.getKey());
+                for ( final Map.Entry<String, Integer> count : byType.getValue().entrySet() ) {
+                    final Integer current = bySample.get(count.getKey());
+                    bySample.put(count.getKey(), current == null ? count.getValue() : current + count.getValue());
+                }
+            }
+        }
+
         public final int all(Type type) {
             return get(type).get(ALL);
         }
@@ -274,4 +287,20 @@ public class VariantSummary extends VariantEvaluator implements StandardEval {
         SNPDPPerSample = depthPerSample.meanValue(Type.SNP);
         IndelDPPerSample = depthPerSample.meanValue(Type.INDEL);
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsCombine() {
+        return true;
+    }
+
+    @Override
+    public void combine(final VariantEvaluator other) {
+        final VariantSummary otherSummary = (VariantSummary) other;
+        countsPerSample.add(otherSummary.countsPerSample);
+        transitionsPerSample.add(otherSummary.transitionsPerSample);
+        transversionsPerSample.add(otherSummary.transversionsPerSample);
+        allVariantCounts.add(otherSummary.allVariantCounts);
+        knownVariantCounts.add(otherSummary.knownVariantCounts);
+        depthPerSample.add(otherSummary.depthPerSample);
+    }
+}
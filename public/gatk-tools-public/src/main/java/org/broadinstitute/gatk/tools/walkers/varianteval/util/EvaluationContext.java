@@ -35,6 +35,7 @@ import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import htsjdk.variant.variantcontext.VariantContext;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -102,6 +103,36 @@ public final class EvaluationContext {
             evaluationInstances.get(i).combine(rhs.evaluationInstances.get(i));
     }
 
+    /**
+     * Adds in the partial results of evaluators of the same classes as ours, such as those of a saved evaluation state
+     *
+     * @param evaluators evaluators of the classes of this context, in any order
+     */
+    public void combine(final Collection<VariantEvaluator> evaluators) {
+        for ( final VariantEvaluator other : evaluators ) {
+            boolean combined = false;
+            for ( final VariantEvaluator evaluation : evaluationInstances ) {
+                if ( evaluation.getClass().equals(other.getClass()) ) {
+                    evaluation.combine(other);
+                    combined = true;
+                }
+            }
+            if ( ! combined )
+                throw new ReviewedGATKException("BUG: no eval module of class " + other.getSimpleName() + " to combine with");
+        }
+    }
+
+    /**
+     * @return true if all of the evaluators of this context support combine
+     */
+    public boolean supportsCombine() {
+        for ( final VariantEvaluator evaluation : evaluationInstances ) {
+            if ( ! evaluation.supportsCombine() )
+                return false;
+        }
+        return true;
+    }
+
     public final static EvaluationContextCombiner COMBINER = new EvaluationContext.EvaluationContextCombiner();
     private static class EvaluationContextCombiner implements StratificationManager.Combiner<EvaluationContext> {
         @Override
@@ -44,6 +44,7 @@ import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
 import htsjdk.variant.vcf.*;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
+import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.variantcontext.VariantContextUtils;
@@ -235,6 +236,12 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
 
     private List<String> priority = null;
 
+    /** The number of input VCFs, needed by simpleMerge to tell intersections apart */
+    private int numberOfInputs;
+
+    /** Copies genotypes over by index when the input samples are disjoint; null if they are not */
+    private IndexedGenotypeMerger genotypeMerger = null;
+
     /** Optimization to strip out genotypes before merging if we are doing a sites_only output */
     private boolean sitesOnlyVCF = false;
     private Set<String> samples;
@@ -280,6 +287,10 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
             headerLines.add(new VCFInfoHeaderLine(SET_KEY, 1, VCFHeaderLineType.String, "Source VCF for the merged record in CombineVariants"));
         if ( !ASSUME_IDENTICAL_SAMPLES )
              headerLines.addAll(Arrays.asList(ChromosomeCountConstants.descriptions));
+        numberOfInputs = vcfRods.size();
+        if ( sampleNamesAreUnique && !sitesOnlyVCF && !ASSUME_IDENTICAL_SAMPLES && genotypeMergeOption != GATKVariantContextUtils.GenotypeMergeType.UNIQUIFY )
+            genotypeMerger = new IndexedGenotypeMerger(vcfRods, samples);
+
         VCFHeader vcfHeader = new VCFHeader(headerLines, samples);
         vcfHeader.setWriteCommandLine(!SUPPRESS_COMMAND_LINE_HEADER);
         vcfWriter.writeHeader(vcfHeader);
@@ -310,7 +321,6 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
         if ( tracker == null ) // RodWalkers can make funky map calls
             return 0;
 
-        final Set<String> rodNames = SampleUtils.getRodNamesWithVCFHeader(getToolkit(), null);
         // get all of the vcf rods at this locus
         // Need to provide reference bases to simpleMerge starting at current locus
         Collection<VariantContext> vcs = tracker.getValues(variants, context.getLocation());
@@ -358,16 +368,13 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
                 // make sure that it is a variant or in case it is not, that we want to include the sites with no variants
                 if (!EXCLUDE_NON_VARIANTS || !type.equals(VariantContext.Type.NO_VARIATION)) {
                     if (VCsByType.containsKey(type)) {
-                        mergedVCs.add(GATKVariantContextUtils.simpleMerge(VCsByType.get(type), priority, rodNames.size(),
-                                filteredRecordsMergeType, genotypeMergeOption, true, printComplexMerges,
-                                SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC));
+                        mergedVCs.add(merge(VCsByType.get(type)));
                     }
                 }
             }
         }
         else if (multipleAllelesMergeType == GATKVariantContextUtils.MultipleAllelesMergeType.MIX_TYPES) {
-            mergedVCs.add(GATKVariantContextUtils.simpleMerge(vcs, priority, rodNames.size(), filteredRecordsMergeType,
-                    genotypeMergeOption, true, printComplexMerges, SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC));
+            mergedVCs.add(merge(vcs));
         }
         else {
             logger.warn("Ignoring all records at site " + ref.getLocus());
@@ -395,6 +402,44 @@ public class CombineVariants extends RodWalker<Integer, Integer> implements Tree
         return vcs.isEmpty() ? 0 : 1;
     }
 
+    /**
+     * Merges the records of the inputs at one site
+     *
+     * When the samples of the inputs are disjoint and the records agree on their alleles, the site-level fields are
+     * merged from sites-only copies of the records and the genotypes are copied over by index, which gives the same
+     * result as merging the full records without rebuilding the genotypes sample by sample.
+     *
+     * @param vcs the records to merge
+     * @return the merged record, or null if all of the records were filtered out
+     */
+    private VariantContext merge(final Collection<VariantContext> vcs) {
+        if ( genotypeMerger != null ) {
+            final VariantContext site = GATKVariantContextUtils.simpleMerge(VariantContextUtils.sitesOnlyVariantContexts(vcs),
+                    priority, numberOfInputs, filteredRecordsMergeType, genotypeMergeOption, true, printComplexMerges,
+                    SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC);
+            if ( site == null )
+                return null;
+
+            final List<VariantContext> called = new ArrayList<>(vcs.size());
+            boolean allelesAgree = true;
+            for ( final VariantContext vc : vcs ) {
+                if ( filteredAreUncalled && vc.isFiltered() )
+                    continue;
+                called.add(vc);
+                allelesAgree &= vc.getReference().equals(site.getReference()) && (vc.getNAlleles() == 1 || vc.getAlleles().equals(site.getAlleles()));
+            }
+
+            if ( allelesAgree ) {
+                final GenotypesContext genotypes = genotypeMerger.merge(called);
+                if ( genotypes != null )
+                    return new VariantContextBuilder(site).genotypes(genotypes).make();
+            }
+        }
+
+        return GATKVariantContextUtils.simpleMerge(vcs, priority, numberOfInputs, filteredRecordsMergeType,
+                genotypeMergeOption, true, printComplexMerges, SET_KEY, filteredAreUncalled, MERGE_INFO_WITH_MAX_AC);
+    }
+
     public Integer reduceInit() {
         return 0;
     }
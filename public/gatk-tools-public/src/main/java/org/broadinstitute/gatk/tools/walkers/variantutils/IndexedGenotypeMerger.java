@@ -0,0 +1,103 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.util.*;
+
+/**
+ * Merges the genotypes of records from inputs with disjoint samples by copying each input's genotype columns to
+ * positions in the output sample list that are resolved once from the VCF headers, rather than by sample name
+ *
+ * Records read from a VCF have their genotypes in the order of the samples of its header.  A record for which that
+ * isn't the case, or whose samples were already seen at the site, cannot be merged by index and the caller has to
+ * fall back to merging by name.
+ */
+final class IndexedGenotypeMerger {
+    private final int numberOfSamples;
+    private final Map<String,String[]> headerSamplesByRod = new HashMap<>();
+    private final Map<String,int[]> samplePositionsByRod = new HashMap<>();
+
+    /**
+     * @param headers the VCF headers of the inputs, by rod name; their samples must be disjoint
+     * @param samples the samples of the output, in order
+     */
+    IndexedGenotypeMerger(final Map<String, VCFHeader> headers, final Collection<String> samples) {
+        numberOfSamples = samples.size();
+        final Map<String,Integer> sampleIndices = new HashMap<>(samples.size());
+        for ( final String sample : samples )
+            sampleIndices.put(sample, sampleIndices.size());
+
+        for ( final Map.Entry<String, VCFHeader> header : headers.entrySet() ) {
+            final List<String> headerSamples = header.getValue().getGenotypeSamples();
+            final int[] positions = new int[headerSamples.size()];
+            for ( int i = 0; i < positions.length; i++ ) {
+                final Integer index = sampleIndices.get(headerSamples.get(i));
+                if ( index == null )
+                    throw new ReviewedGATKException("Sample " + headerSamples.get(i) + " of " + header.getKey() + " is not an output sample");
+                positions[i] = index;
+            }
+            headerSamplesByRod.put(header.getKey(), headerSamples.toArray(new String[headerSamples.size()]));
+            samplePositionsByRod.put(header.getKey(), positions);
+        }
+    }
+
+    /**
+     * @param vcs records of the inputs at one site
+     * @return the genotypes of all of vcs in output sample order, or null if they cannot be merged by index
+     */
+    GenotypesContext merge(final Collection<VariantContext> vcs) {
+        final Genotype[] merged = new Genotype[numberOfSamples];
+        int nGenotypes = 0;
+        for ( final VariantContext vc : vcs ) {
+            final String[] headerSamples = headerSamplesByRod.get(vc.getSource());
+            final int[] positions = samplePositionsByRod.get(vc.getSource());
+            final GenotypesContext genotypes = vc.getGenotypes();
+            if ( positions == null || genotypes.size() != positions.length )
+                return null;
+
+            for ( int i = 0; i < positions.length; i++ ) {
+                final Genotype g = genotypes.get(i);
+                if ( merged[positions[i]] != null || ! g.getSampleName().equals(headerSamples[i]) )
+                    return null;
+                merged[positions[i]] = g;
+            }
+            nGenotypes += positions.length;
+        }
+
+        final ArrayList<Genotype> genotypes = new ArrayList<>(nGenotypes);
+        for ( final Genotype g : merged ) {
+            if ( g != null )
+                genotypes.add(g);
+        }
+        return GenotypesContext.create(genotypes);
+    }
+}
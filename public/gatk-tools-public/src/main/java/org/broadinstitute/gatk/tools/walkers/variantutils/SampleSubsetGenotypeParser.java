@@ -0,0 +1,155 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+
+import java.util.*;
+
+/**
+ * Restricts records read from a VCF (version 4) to a subset of its samples without parsing the genotypes of the others
+ *
+ * The VCF codec keeps the raw FORMAT and sample columns of a record until its genotypes are first accessed, and then
+ * parses all of them.  This copies just the columns of the wanted samples out of that text, and gives the record
+ * genotypes that are parsed from them, on first access, by a codec whose header lists only those samples.  Records
+ * whose genotypes aren't held as VCF text (e.g. those read from BCF) are returned unchanged, so the caller still has
+ * to subset them by sample name.
+ */
+final class SampleSubsetGenotypeParser {
+    private final int numberOfColumns;
+    private final int[] columns;
+    private final VCFHeader subsetHeader;
+    private final VCFHeaderVersion version;
+    private final boolean lenientProcessing;
+
+    // the codecs keep parsing state, so each thread needs its own
+    private final ThreadLocal<VCFCodec> codecs = new ThreadLocal<VCFCodec>() {
+        @Override
+        protected VCFCodec initialValue() {
+            final VCFCodec codec = new VCFCodec();
+            if ( lenientProcessing )
+                codec.disableOnTheFlyModifications();
+            codec.setVCFHeader(subsetHeader, version);
+            return codec;
+        }
+    };
+
+    /**
+     * @param header the header of the VCF the records are read from
+     * @param version the version of that VCF, which decides how its genotypes are parsed
+     * @param samples the samples to keep, all of which must be in header
+     * @param lenientProcessing true if the VCF is read without on-the-fly header repairs
+     */
+    SampleSubsetGenotypeParser(final VCFHeader header, final VCFHeaderVersion version, final Collection<String> samples, final boolean lenientProcessing) {
+        this.version = version;
+        this.lenientProcessing = lenientProcessing;
+        numberOfColumns = header.getNGenotypeSamples() + 1;
+
+        final Map<String, Integer> offsets = header.getSampleNameToOffset();
+        columns = new int[samples.size()];
+        int i = 0;
+        for ( final String sample : samples ) {
+            final Integer offset = offsets.get(sample);
+            if ( offset == null )
+                throw new IllegalArgumentException("Sample " + sample + " is not in the header");
+            columns[i++] = offset + 1;
+        }
+        Arrays.sort(columns);
+
+        final List<String> subsetSamples = new ArrayList<>(columns.length);
+        for ( final int column : columns )
+            subsetSamples.add(header.getGenotypeSamples().get(column - 1));
+        subsetHeader = new VCFHeader(new LinkedHashSet<>(header.getMetaDataInInputOrder()), subsetSamples);
+    }
+
+    /**
+     * @param vc a record read from the VCF of the header
+     * @return vc with the genotypes of the kept samples only, or vc itself if its genotypes aren't held as VCF text
+     */
+    VariantContext subset(final VariantContext vc) {
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if ( !(genotypes instanceof LazyGenotypesContext) )
+            return vc;
+        final Object unparsed = ((LazyGenotypesContext)genotypes).getUnparsedGenotypeData();
+        if ( !(unparsed instanceof String) )
+            return vc;
+
+        final String subsetColumns = subsetColumns((String)unparsed);
+        if ( subsetColumns == null )
+            return vc;
+
+        final List<Allele> alleles = vc.getAlleles();
+        final String chr = vc.getChr();
+        final int pos = vc.getStart();
+        final LazyGenotypesContext.LazyParser parser = new LazyGenotypesContext.LazyParser() {
+            @Override
+            public LazyGenotypesContext.LazyData parse(final Object data) {
+                return codecs.get().createGenotypeMap((String)data, alleles, chr, pos);
+            }
+        };
+        return new VariantContextBuilder(vc).genotypes(new LazyGenotypesContext(parser, subsetColumns, columns.length)).make();
+    }
+
+    /**
+     * Copy the FORMAT column and the columns of the kept samples out of the raw genotype columns of a VCF line
+     *
+     * @param genotypeColumns the tab-separated FORMAT and sample columns, exactly as they appear in the VCF line
+     * @return the kept columns, or null if genotypeColumns doesn't have a column for each sample of the header
+     */
+    String subsetColumns(final String genotypeColumns) {
+        final StringBuilder builder = new StringBuilder((int)((long)genotypeColumns.length() * (columns.length + 1) / numberOfColumns) + 16);
+
+        int column = 0;
+        int nextKept = 0;
+        int start = 0;
+        while ( true ) {
+            final int end = genotypeColumns.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, start);
+            final int columnEnd = end == -1 ? genotypeColumns.length() : end;
+            if ( column == 0 ) {
+                builder.append(genotypeColumns, start, columnEnd);
+            } else if ( nextKept < columns.length && columns[nextKept] == column ) {
+                builder.append(VCFConstants.FIELD_SEPARATOR_CHAR).append(genotypeColumns, start, columnEnd);
+                nextKept++;
+            }
+            column++;
+
+            if ( end == -1 )
+                break;
+            start = end + 1;
+        }
+
+        // leave a malformed line to the codec, which reports it
+        return column == numberOfColumns ? builder.toString() : null;
+    }
+}
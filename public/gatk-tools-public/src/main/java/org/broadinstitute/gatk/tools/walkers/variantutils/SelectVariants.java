@@ -51,6 +51,7 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -626,6 +627,9 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
     private Set<String> IDsToRemove = null;
     private Map<String, VCFHeader> vcfRods;
 
+    // parses the genotypes of the selected samples only, when nothing else needs those of the others
+    private SampleSubsetGenotypeParser sampleSubsetParser = null;
+
     private final List<Allele> diploidNoCallAlleles = GATKVariantContextUtils.noCallAlleles(2);
     private final Map<Integer, Integer> ploidyToNumberOfAlleles = new LinkedHashMap<Integer, Integer>();
 
@@ -754,6 +758,21 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         IDsToRemove = getIDsFromFile(XLrsIDFile);
 
         vcfWriter.writeHeader(new VCFHeader(headerLines, samples));
+
+        // the Mendelian violation and no-call checks look at samples that aren't selected
+        if ( !noSamplesSpecified && !fullyDecode && !mendelianViolations && !considerNoCallGenotypes()
+                && "VCF".equalsIgnoreCase(variantCollection.variants.getTribbleType()) ) {
+            final VCFHeader header = vcfRods.get(variantCollection.variants.getName());
+            final File source = new File(variantCollection.variants.getSource());
+            // the version has to be read again from the file, so a stream is fully decoded
+            if ( header != null && samples.size() < header.getNGenotypeSamples() && source.isFile() ) {
+                try {
+                    sampleSubsetParser = new SampleSubsetGenotypeParser(header, GATKVCFUtils.readVCFHeaderVersion(source), samples, getToolkit().lenientVCFProcessing());
+                } catch ( IOException e ) {
+                    throw new UserException.CouldNotReadInputFile(source, e);
+                }
+            }
+        }
     }
 
     /**
@@ -805,6 +824,10 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
             if (fullyDecode)
                 vc = vc.fullyDecode(vcfRods.get(vc.getSource()), getToolkit().lenientVCFProcessing());
 
+            final int nOriginalSamples = vc.getNSamples();
+            if (sampleSubsetParser != null)
+                vc = sampleSubsetParser.subset(vc);
+
             if (IDsToKeep != null && !IDsToKeep.contains(vc.getID()))
                 continue;
 
@@ -864,7 +887,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
                 }
             }
 
-            VariantContext sub = subsetRecord(vc, preserveAlleles, removeUnusedAlternates);
+            VariantContext sub = subsetRecord(vc, nOriginalSamples, preserveAlleles, removeUnusedAlternates);
 
             VariantContext filteredGenotypeToNocall = setFilteredGenotypeToNocall(sub, setFilteredGenotypesToNocall);
 
@@ -1071,11 +1094,12 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
      * Helper method to subset a VC record, modifying some metadata stored in the INFO field (i.e. AN, AC, AF).
      *
      * @param vc       the VariantContext record to subset
+     * @param nOriginalSamples the number of samples of the record as read, which vc may already have been restricted from
      * @param preserveAlleles should we trim constant sequence from the beginning and/or end of all alleles, or preserve it?
      * @param removeUnusedAlternates removes alternate alleles with AC=0
      * @return the subsetted VariantContext
      */
-    private VariantContext subsetRecord(final VariantContext vc, final boolean preserveAlleles, final boolean removeUnusedAlternates) {
+    private VariantContext subsetRecord(final VariantContext vc, final int nOriginalSamples, final boolean preserveAlleles, final boolean removeUnusedAlternates) {
         //subContextFromSamples() always decodes the vc, which is a fairly expensive operation.  Avoid if possible
         if ( noSamplesSpecified && !removeUnusedAlternates && !forceValidOutput )
             return vc;
@@ -1084,7 +1108,7 @@ public class SelectVariants extends RodWalker<Integer, Integer> implements TreeR
         final VariantContext sub = vc.subContextFromSamples(samples, removeUnusedAlternates);
 
         //If no subsetting happened, exit now
-        if ( sub.getNSamples() == vc.getNSamples() && sub.getNAlleles() == vc.getNAlleles() )
+        if ( sub.getNSamples() == nOriginalSamples && sub.getNAlleles() == vc.getNAlleles() )
             return vc;
 
         final VariantContextBuilder builder = new VariantContextBuilder(sub);
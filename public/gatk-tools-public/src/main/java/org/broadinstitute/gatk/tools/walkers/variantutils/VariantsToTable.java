@@ -35,10 +35,14 @@ import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFHeader;
 import org.broadinstitute.gatk.utils.help.DocumentedGATKFeature;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.broadinstitute.gatk.utils.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.contexts.ReferenceContext;
 import org.broadinstitute.gatk.utils.refdata.RefMetaDataTracker;
+import org.broadinstitute.gatk.engine.walkers.NanoSchedulable;
 import org.broadinstitute.gatk.engine.walkers.RodWalker;
 import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -100,13 +104,14 @@ import java.util.*;
  * <ul>
  *     <li>Some annotations cannot be applied to all variant sites, so VCFs typically contain records where some annotation values are missing. By default this tool will emit the special value NA for the missing annotations if you request export of an annotation for which not all records have values. You can override this behavior by setting --errorIfMissingData in the command line. As a result, the tool will throw an error if a record is missing a value.</li>
  *     <li>When you request export of sample-level annotations (FORMAT field annotations such as GT), the annotations will be identified per-sample. If multiple samples are present in the VCF, the columns will be ordered alphabetically by sample name (SM tag).</li>
+ *     <li>With -nct the records are formatted by several threads but written in their original order; the genotypes of each record are still parsed by one thread at a time.</li>
  * </ul>
  *
  * @author Mark DePristo
  * @since 2010
  */
 @DocumentedGATKFeature( groupName = HelpConstants.DOCS_CAT_VARMANIP, extraDocs = {CommandLineGATK.class} )
-public class VariantsToTable extends RodWalker<Integer, Integer> {
+public class VariantsToTable extends RodWalker<List<List<String>>, Integer> implements NanoSchedulable {
     /**
      * Variants from this VCF file are used by this tool as input.
      * The file must at least contain the standard VCF header lines, but
@@ -190,6 +195,24 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
 
     private final List<String> samples = new ArrayList<>();
 
+    /** For each input, the index in its header (and so in its records' genotypes) of each of the samples, or -1 */
+    private final Map<String, int[]> genotypeIndicesByRod = new HashMap<>();
+
+    /** The getter of each of the -F fields, or null for fields looked up in the INFO field */
+    private Getter[] fieldGetters;
+
+    /** The -F fields whose getters count the genotypes of a record */
+    private static final Set<String> GENOTYPE_COUNT_FIELDS = new HashSet<>(Arrays.asList("HET", "HOM-REF", "HOM-VAR", "NO-CALL", "VAR", "NSAMPLES", "NCALLED"));
+
+    /**
+     * The codec parsing the genotypes of a record on first use isn't thread-safe, so with -nct only one thread at a
+     * time may parse them
+     */
+    private final Object genotypeParsingLock = new Object();
+
+    /** Do any of the requested fields read the genotypes, so that they have to be parsed under the lock first? */
+    private boolean readsGenotypes = false;
+
     public void initialize() {
 
         if ( !genotypeFieldsToTake.isEmpty() ) {
@@ -200,8 +223,24 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
             // optimization: if there are no samples, we don't have to worry about any genotype fields
             if ( samples.isEmpty() )
                 genotypeFieldsToTake.clear();
+
+            for ( final Map.Entry<String, VCFHeader> vcfRod : vcfRods.entrySet() ) {
+                final Map<String, Integer> headerIndices = vcfRod.getValue().getSampleNameToOffset();
+                final int[] genotypeIndices = new int[samples.size()];
+                for ( int i = 0; i < genotypeIndices.length; i++ ) {
+                    final Integer headerIndex = headerIndices.get(samples.get(i));
+                    genotypeIndices[i] = headerIndex == null ? -1 : headerIndex;
+                }
+                genotypeIndicesByRod.put(vcfRod.getKey(), genotypeIndices);
+            }
         }
 
+        readsGenotypes = !genotypeFieldsToTake.isEmpty() || !Collections.disjoint(fieldsToTake, GENOTYPE_COUNT_FIELDS);
+
+        fieldGetters = new Getter[fieldsToTake.size()];
+        for ( int i = 0; i < fieldGetters.length; i++ )
+            fieldGetters[i] = getters.get(fieldsToTake.get(i));
+
         // print out the header
         if ( moltenizeOutput ) {
             out.println("RecordID\tSample\tVariable\tValue");
@@ -213,30 +252,117 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         }
     }
 
-    public Integer map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
+    /**
+     * Formats the output lines of each usable record at this site.  The lines are written in order by reduce, so
+     * that with -nct the records are formatted in parallel.
+     *
+     * @return for each usable record, its output lines; the moltenized lines lack the leading record ID
+     */
+    public List<List<String>> map(RefMetaDataTracker tracker, ReferenceContext ref, AlignmentContext context) {
         if ( tracker == null ) // RodWalkers can make funky map calls
-            return 0;
+            return Collections.emptyList();
 
+        final List<List<String>> linesByRecord = new ArrayList<>(1);
         for ( VariantContext vc : tracker.getValues(variants, context.getLocation())) {
             if ( showFiltered || vc.isNotFiltered() ) {
-                nRecords++;
-                for ( final List<String> record : extractFields(vc, fieldsToTake, genotypeFieldsToTake, samples, !ERROR_IF_MISSING_DATA, splitMultiAllelic) ) {
+                if ( readsGenotypes && vc.getGenotypes() instanceof LazyGenotypesContext ) {
+                    synchronized (genotypeParsingLock) {
+                        ((LazyGenotypesContext)vc.getGenotypes()).decode();
+                    }
+                }
+
+                if ( !splitMultiAllelic && !moltenizeOutput ) {
+                    linesByRecord.add(Collections.singletonList(formatRecord(vc)));
+                    continue;
+                }
+
+                final List<String> lines = new ArrayList<>();
+                for ( final List<String> record : extractFields(vc, fieldsToTake, genotypeFieldsToTake, samples, genotypeIndicesByRod.get(vc.getSource()), !ERROR_IF_MISSING_DATA, splitMultiAllelic) ) {
                     if ( moltenizeOutput )
-                        emitMoltenizedOutput(record);
+                        addMoltenizedOutput(record, lines);
                     else
-                        out.println(Utils.join("\t", record));
+                        lines.add(Utils.join("\t", record));
                 }
+                linesByRecord.add(lines);
             }
         }
         
-        return 1;
+        return linesByRecord;
+    }
+
+    /**
+     * Formats the single output line of vc straight into one buffer, without collecting the values into a list first
+     */
+    private String formatRecord(final VariantContext vc) {
+        final StringBuilder line = new StringBuilder(16 * (fieldsToTake.size() + samples.size() * genotypeFieldsToTake.size()));
+        for ( int i = 0; i < fieldGetters.length; i++ ) {
+            if ( i > 0 )
+                line.append('\t');
+            if ( fieldGetters[i] != null )
+                line.append(fieldGetters[i].get(vc));
+            else
+                appendObject(line, getFieldValue(vc, fieldsToTake.get(i), !ERROR_IF_MISSING_DATA));
+        }
+
+        if ( !genotypeFieldsToTake.isEmpty() ) {
+            final int[] genotypeIndices = genotypeIndicesByRod.get(vc.getSource());
+            boolean first = fieldGetters.length == 0;
+            for ( int i = 0; i < samples.size(); i++ ) {
+                final Genotype g = getGenotype(vc, samples.get(i), genotypeIndices == null ? -1 : genotypeIndices[i]);
+                for ( final String gf : genotypeFieldsToTake ) {
+                    if ( first )
+                        first = false;
+                    else
+                        line.append('\t');
+                    appendObject(line, getGenotypeFieldValue(vc, g, gf, !ERROR_IF_MISSING_DATA));
+                }
+            }
+        }
+
+        return line.toString();
     }
 
+    public Integer reduceInit() { return 0; }
+
+    /**
+     * Writes the lines of each record in order, numbering the moltenized ones
+     */
+    public Integer reduce(final List<List<String>> linesByRecord, final Integer sum) {
+        // with -nct, sites past the last of the -M records may already have been mapped
+        if ( isDone() )
+            return sum;
+
+        for ( final List<String> lines : linesByRecord ) {
+            nRecords++;
+            for ( final String line : lines ) {
+                if ( moltenizeOutput ) {
+                    out.print(nRecords);
+                    out.print('\t');
+                }
+                out.println(line);
+            }
+        }
+        return sum + 1;
+    }
+
+    public void onTraversalDone(Integer sum) {}
+
     @Override
     public boolean isDone() {
         return (MAX_RECORDS != -1 && nRecords >= MAX_RECORDS);
     }
 
+    /**
+     * Only the -GF fields are ever printed, and GT is all the genotype-count columns (HET, NCALLED, ...) need,
+     * so the engine can skip decoding every other FORMAT field.
+     */
+    @Override
+    public Set<String> getRequiredGenotypeFields() {
+        final Set<String> requiredFields = new HashSet<>(genotypeFieldsToTake);
+        requiredFields.add(VCFConstants.GENOTYPE_KEY);
+        return requiredFields;
+    }
+
     private static final boolean isWildCard(String s) {
         return s.endsWith("*");
     }
@@ -260,14 +386,14 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         return sb.toString();
     }
 
-    private void emitMoltenizedOutput(final List<String> record) {
+    private void addMoltenizedOutput(final List<String> record, final List<String> lines) {
         int index = 0;
         for ( final String field : fieldsToTake ) {
-            out.println(String.format("%d\tsite\t%s\t%s", nRecords, field, record.get(index++)));
+            lines.add(String.format("site\t%s\t%s", field, record.get(index++)));
         }
         for ( final String sample : samples ) {
             for ( final String gf : genotypeFieldsToTake ) {
-                out.println(String.format("%d\t%s\t%s\t%s", nRecords, sample.replace(" ","_"), gf, record.get(index++)));
+                lines.add(String.format("%s\t%s\t%s", sample.replace(" ","_"), gf, record.get(index++)));
             }
         }
     }
@@ -279,6 +405,7 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
      * @param fields            a non-null list of fields to capture from VC
      * @param genotypeFields    a (possibly null) list of fields to capture from each genotype
      * @param samples           list of samples in vc
+     * @param genotypeIndices   the index of each of samples in the genotypes of vc, or -1; null if unknown
      * @param allowMissingData  if false, then throws a UserException if any field isn't found in vc.  Otherwise provides a value of NA
      * @param splitMultiAllelic if true, multiallelic variants are to be split into multiple records
      * @return List of lists of field values
@@ -287,6 +414,7 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
                                                     final List<String> fields,
                                                     final List<String> genotypeFields,
                                                     final List<String> samples,
+                                                    final int[] genotypeIndices,
                                                     final boolean allowMissingData,
                                                     final boolean splitMultiAllelic) {
         
@@ -309,51 +437,16 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
                 addFieldValue(splitAlleleTypes(vc), records);
             } else if ( getters.containsKey(field) ) {
                 addFieldValue(getters.get(field).get(vc), records);
-            } else if ( vc.hasAttribute(field) ) {
-                addFieldValue(vc.getAttribute(field, null), records);
-            } else if ( isWildCard(field) ) {
-                Set<String> wildVals = new HashSet<>();
-                for ( Map.Entry<String,Object> elt : vc.getAttributes().entrySet()) {
-                    if ( elt.getKey().startsWith(field.substring(0, field.length() - 1)) ) {
-                        wildVals.add(elt.getValue().toString());
-                    }
-                }
-
-                String val = MISSING_DATA;
-                if ( !wildVals.isEmpty() ) {
-                    List<String> toVal = new ArrayList<>(wildVals);
-                    Collections.sort(toVal);
-                    val = Utils.join(",", toVal);
-                }
-
-                addFieldValue(val, records);
             } else {
-                handleMissingData(allowMissingData, field, records, vc);
+                addFieldValue(getFieldValue(vc, field, allowMissingData), records);
             }
         }
 
         if ( addGenotypeFields ) {
-            for ( final String sample : samples ) {
+            for ( int i = 0; i < samples.size(); i++ ) {
+                final Genotype g = getGenotype(vc, samples.get(i), genotypeIndices == null ? -1 : genotypeIndices[i]);
                 for ( final String gf : genotypeFields ) {
-                    if ( vc.hasGenotype(sample) && vc.getGenotype(sample).hasAnyAttribute(gf) ) {
-                        if ( gf.equals(VCFConstants.GENOTYPE_KEY) )
-                            addFieldValue(vc.getGenotype(sample).getGenotypeString(true), records);
-                        else {
-                            /**
-                             * TODO - If gf == "FT" and the GT record is not filtered, Genotype.getAnyAttribute == null. Genotype.hasAnyAttribute should be changed so it
-                             * returns false for this condition. Presently, it always returns true. Once this is fixed, then only the "addFieldValue" statement will
-                             * remain in the following logic block.
-                             */
-                            if (vc.getGenotype(sample).getAnyAttribute(gf) != null) {
-                                addFieldValue(vc.getGenotype(sample).getAnyAttribute(gf), records);
-                            } else {
-                                handleMissingData(allowMissingData, gf, records, vc);
-                            }
-                        }
-                    }
-                    else {
-                        handleMissingData(allowMissingData, gf, records, vc);
-                    }
+                    addFieldValue(getGenotypeFieldValue(vc, g, gf, allowMissingData), records);
                 }
             }
         }
@@ -361,9 +454,72 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         return records;
     }
 
-    private static void handleMissingData(final boolean allowMissingData, final String field, final List<List<String>> records, final VariantContext vc) {
+    /**
+     * @return the value of the INFO field (or of the fields matching the wildcard) field of vc, or the missing value
+     */
+    private static Object getFieldValue(final VariantContext vc, final String field, final boolean allowMissingData) {
+        if ( vc.hasAttribute(field) ) {
+            return vc.getAttribute(field, null);
+        } else if ( isWildCard(field) ) {
+            Set<String> wildVals = new HashSet<>();
+            for ( Map.Entry<String,Object> elt : vc.getAttributes().entrySet()) {
+                if ( elt.getKey().startsWith(field.substring(0, field.length() - 1)) ) {
+                    wildVals.add(elt.getValue().toString());
+                }
+            }
+
+            String val = MISSING_DATA;
+            if ( !wildVals.isEmpty() ) {
+                List<String> toVal = new ArrayList<>(wildVals);
+                Collections.sort(toVal);
+                val = Utils.join(",", toVal);
+            }
+
+            return val;
+        } else {
+            return handleMissingData(allowMissingData, field, vc);
+        }
+    }
+
+    /**
+     * Finds the genotype of sample in vc, checking the position the header gives it first
+     *
+     * @param genotypeIndex the index of the sample in the header of vc, or -1
+     * @return the genotype, or null if vc has none for sample
+     */
+    private static Genotype getGenotype(final VariantContext vc, final String sample, final int genotypeIndex) {
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if ( genotypeIndex >= 0 && genotypeIndex < genotypes.size() ) {
+            final Genotype g = genotypes.get(genotypeIndex);
+            if ( g.getSampleName().equals(sample) )
+                return g;
+        }
+        return genotypes.get(sample);
+    }
+
+    /**
+     * @return the value of the genotype field gf of g (which may be null), or the missing value
+     */
+    private static Object getGenotypeFieldValue(final VariantContext vc, final Genotype g, final String gf, final boolean allowMissingData) {
+        if ( g != null && g.hasAnyAttribute(gf) ) {
+            if ( gf.equals(VCFConstants.GENOTYPE_KEY) )
+                return g.getGenotypeString(true);
+
+            /**
+             * TODO - If gf == "FT" and the GT record is not filtered, Genotype.getAnyAttribute == null. Genotype.hasAnyAttribute should be changed so it
+             * returns false for this condition. Presently, it always returns true. Once this is fixed, then only the "return" statement will
+             * remain in the following logic block.
+             */
+            final Object value = g.getAnyAttribute(gf);
+            if ( value != null )
+                return value;
+        }
+        return handleMissingData(allowMissingData, gf, vc);
+    }
+
+    private static String handleMissingData(final boolean allowMissingData, final String field, final VariantContext vc) {
         if (allowMissingData) {
-            addFieldValue(MISSING_DATA, records);
+            return MISSING_DATA;
         } else {
             throw new UserException(String.format("Missing field %s in vc %s at %s", field, vc.getSource(), vc));
         }
@@ -390,6 +546,25 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
         }
     }
 
+    /**
+     * Appends prettyPrintObject(val) to sb
+     */
+    private static void appendObject(final StringBuilder sb, final Object val) {
+        if ( val instanceof String )
+            sb.append((String)val);
+        else if ( val instanceof Integer )
+            sb.append(((Integer)val).intValue());
+        else if ( val instanceof int[] ) {
+            final int[] values = (int[])val;
+            for ( int i = 0; i < values.length; i++ ) {
+                if ( i > 0 )
+                    sb.append(',');
+                sb.append(values[i]);
+            }
+        } else
+            sb.append(prettyPrintObject(val));
+    }
+
     private static String prettyPrintObject(final Object val) {
         // should never occur
         if (val == null)
@@ -415,14 +590,8 @@ public class VariantsToTable extends RodWalker<Integer, Integer> {
 
 
     public static List<List<String>> extractFields(VariantContext vc, List<String> fields, boolean allowMissingData) {
-        return extractFields(vc, fields, null, null, allowMissingData, false);
+        return extractFields(vc, fields, null, null, null, allowMissingData, false);
     }
-    //
-    // default reduce -- doesn't do anything at all
-    //
-    public Integer reduceInit() { return 0; }
-    public Integer reduce(Integer counter, Integer sum) { return counter + sum; }
-    public void onTraversalDone(Integer sum) {}
 
     // ----------------------------------------------------------------------------------------------------
     //
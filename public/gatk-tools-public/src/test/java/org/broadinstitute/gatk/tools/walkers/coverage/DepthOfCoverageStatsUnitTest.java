@@ -0,0 +1,219 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.coverage;
+
+import htsjdk.samtools.SAMReadGroupRecord;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class DepthOfCoverageStatsUnitTest extends BaseTest {
+
+    @DataProvider(name = "Bins")
+    public Object[][] makeBinsData() {
+        return new Object[][]{
+                {1, 500, 499},
+                {1, 50, 10},
+                {3, 20, 4},
+                {2, 10000, 20}
+        };
+    }
+
+    private static DepthOfCoverageStats makeStats(final int[] endpoints, final int nSamples) {
+        final DepthOfCoverageStats stats = new DepthOfCoverageStats(endpoints);
+        for ( int s = 0; s < nSamples; s++ ) {
+            stats.addSample("sample" + s);
+        }
+        stats.initializeLocusCounts();
+        return stats;
+    }
+
+    private static Map<String,Integer> makeDepths(final Random random, final int nSamples, final int maxDepth) {
+        final Map<String,Integer> depths = new HashMap<String,Integer>();
+        for ( int s = 0; s < nSamples; s++ ) {
+            if ( random.nextInt(5) != 0 ) {
+                depths.put("sample" + s, random.nextInt(maxDepth));
+            }
+        }
+        return depths;
+    }
+
+    @Test(dataProvider = "Bins")
+    public void testUpdateDepths(final int start, final int stop, final int nBins) {
+        final int[] endpoints = DepthOfCoverageStats.calculateBinEndpoints(start, stop, nBins);
+        final int nSamples = 7;
+        final DepthOfCoverageStats stats = makeStats(endpoints, nSamples);
+
+        final Random random = new Random(start + stop + nBins);
+        final long[][] histograms = new long[nSamples][endpoints.length+1];
+        final long[][] locusCounts = new long[nSamples][endpoints.length+1];
+        long totalCoverage = 0;
+        final int nLoci = 200;
+        for ( int locus = 0; locus < nLoci; locus++ ) {
+            final Map<String,Integer> depths = makeDepths(random, nSamples, 2 * stop);
+            stats.updateDepths(depths);
+
+            final int[] nSamplesAtLeast = new int[endpoints.length+1];
+            for ( int s = 0; s < nSamples; s++ ) {
+                final Integer depth = depths.get("sample" + s);
+                final int d = depth == null ? 0 : depth;
+                int bin = 0;
+                while ( bin < endpoints.length && d >= endpoints[bin] ) bin++;
+                histograms[s][bin]++;
+                for ( int b = 0; b <= bin; b++ ) nSamplesAtLeast[b]++;
+                totalCoverage += d;
+            }
+            for ( int b = 0; b < nSamplesAtLeast.length; b++ ) {
+                for ( int i = 0; i < nSamplesAtLeast[b]; i++ ) locusCounts[i][b]++;
+            }
+        }
+
+        for ( int s = 0; s < nSamples; s++ ) {
+            Assert.assertEquals(stats.getHistograms().get("sample" + s), histograms[s]);
+        }
+        final long[][] actualLocusCounts = stats.getLocusCounts();
+        for ( int i = 0; i < nSamples; i++ ) {
+            Assert.assertEquals(actualLocusCounts[i], locusCounts[i]);
+        }
+        Assert.assertEquals(stats.getTotalLoci(), nLoci);
+        Assert.assertEquals(stats.getTotalCoverage(), totalCoverage);
+    }
+
+    @Test(dataProvider = "Bins")
+    public void testMerge(final int start, final int stop, final int nBins) {
+        final int[] endpoints = DepthOfCoverageStats.calculateBinEndpoints(start, stop, nBins);
+        final int nSamples = 5;
+        final DepthOfCoverageStats all = makeStats(endpoints, nSamples);
+        final DepthOfCoverageStats left = makeStats(endpoints, nSamples);
+        final DepthOfCoverageStats right = makeStats(endpoints, nSamples);
+
+        final Random random = new Random(nBins);
+        for ( int locus = 0; locus < 100; locus++ ) {
+            final Map<String,Integer> depths = makeDepths(random, nSamples, 2 * stop);
+            all.updateDepths(depths);
+            (locus % 3 == 0 ? left : right).updateDepths(depths);
+        }
+        left.merge(right);
+
+        Assert.assertEquals(left.getTotalLoci(), all.getTotalLoci());
+        Assert.assertEquals(left.getTotalCoverage(), all.getTotalCoverage());
+        for ( final String sample : all.getAllSamples() ) {
+            Assert.assertEquals(left.getHistograms().get(sample), all.getHistograms().get(sample));
+            Assert.assertEquals(left.getTotal(sample), all.getTotal(sample));
+        }
+        final long[][] expectedLocusCounts = all.getLocusCounts();
+        final long[][] actualLocusCounts = left.getLocusCounts();
+        for ( int i = 0; i < nSamples; i++ ) {
+            Assert.assertEquals(actualLocusCounts[i], expectedLocusCounts[i]);
+        }
+    }
+
+    @Test(dataProvider = "Bins")
+    public void testQuantileSketches(final int start, final int stop, final int nBins) {
+        final int[] endpoints = DepthOfCoverageStats.calculateBinEndpoints(start, stop, nBins);
+        final int nSamples = 4;
+        final DepthOfCoverageStats left = makeStats(endpoints, nSamples);
+        final DepthOfCoverageStats right = makeStats(endpoints, nSamples);
+        left.initializeQuantileSketches();
+        right.initializeQuantileSketches();
+
+        final Random random = new Random(start * stop);
+        final List<List<Integer>> depthsBySample = new ArrayList<List<Integer>>();
+        for ( int s = 0; s < nSamples; s++ ) depthsBySample.add(new ArrayList<Integer>());
+        for ( int locus = 0; locus < 101; locus++ ) {
+            final Map<String,Integer> depths = makeDepths(random, nSamples, 2 * stop);
+            (locus % 2 == 0 ? left : right).updateDepths(depths);
+            for ( int s = 0; s < nSamples; s++ ) {
+                final Integer depth = depths.get("sample" + s);
+                depthsBySample.get(s).add(depth == null ? 0 : depth);
+            }
+        }
+        final DepthOfCoverageStats merged = new DepthOfCoverageStats(left);
+        merged.merge(right);
+
+        for ( int s = 0; s < nSamples; s++ ) {
+            final List<Integer> depths = depthsBySample.get(s);
+            Collections.sort(depths);
+            Assert.assertEquals(merged.getQuantileSketch("sample" + s).getCount(), depths.size());
+            final long median = merged.getQuantileSketch("sample" + s).getMedian();
+            Assert.assertTrue(Math.abs(median - depths.get(50)) <= depths.get(50) / 256, "median " + median + " of " + depths);
+            Assert.assertEquals(merged.getQuantileSketch("sample" + s).getMax(), (long)depths.get(100));
+            Assert.assertEquals(left.getQuantileSketch("sample" + s).getCount(), 51);
+        }
+    }
+
+    @Test
+    public void testQuantileSketchesAreOptional() {
+        final DepthOfCoverageStats stats = makeStats(DepthOfCoverageStats.calculateBinEndpoints(1, 10, 3), 1);
+        stats.updateDepths(Collections.singletonMap("sample0", 5));
+        Assert.assertNull(stats.getQuantileSketch("sample0"));
+    }
+
+    @Test
+    public void testAddSampleAfterInitializingLocusCounts() {
+        final int[] endpoints = DepthOfCoverageStats.calculateBinEndpoints(1, 10, 3);
+        final DepthOfCoverageStats stats = makeStats(endpoints, 1);
+        stats.updateDepths(Collections.singletonMap("sample0", 5));
+        stats.addSample("sample1");
+        final Map<String,Integer> depths = new HashMap<String,Integer>();
+        depths.put("sample0", 5);
+        depths.put("sample1", 5);
+        stats.updateDepths(depths);
+
+        final long[][] locusCounts = stats.getLocusCounts();
+        Assert.assertEquals(locusCounts[0], new long[]{2, 2, 2, 2, 0});
+        Assert.assertEquals(locusCounts[1], new long[]{1, 1, 1, 1, 0});
+    }
+
+    @Test
+    public void testPartitionIndex() {
+        final List<SAMReadGroupRecord> readGroups = new ArrayList<SAMReadGroupRecord>();
+        for ( int i = 0; i < 4; i++ ) {
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg" + i);
+            readGroup.setSample(i < 2 ? "b" : "a");
+            readGroup.setLibrary("lib" + i);
+            readGroups.add(readGroup);
+        }
+        final CoveragePartitionIndex index = new CoveragePartitionIndex(readGroups,
+                EnumSet.of(DoCOutputType.Partition.sample, DoCOutputType.Partition.readgroup));
+
+        Assert.assertEquals(index.getNumberOfReadGroups(), 4);
+        Assert.assertEquals(index.getReadGroupIndex(readGroups.get(2)), 2);
+        Assert.assertEquals(index.getIdentifiers(DoCOutputType.Partition.sample), Arrays.asList("a", "b"));
+        Assert.assertEquals(index.getIdentifierIndices(DoCOutputType.Partition.sample), new int[]{1, 1, 0, 0});
+        Assert.assertEquals(index.getIdentifiers(DoCOutputType.Partition.readgroup), Arrays.asList("a_rg_rg2", "a_rg_rg3", "b_rg_rg0", "b_rg_rg1"));
+
+        final int[] countsByReadGroup = new int[4 * CoveragePartitionIndex.NUMBER_OF_COUNTS];
+        for ( int i = 0; i < countsByReadGroup.length; i++ ) {
+            countsByReadGroup[i] = i;
+        }
+        Assert.assertEquals(index.getCountsByIdentifier(DoCOutputType.Partition.sample, countsByReadGroup),
+                new int[]{12+18, 13+19, 14+20, 15+21, 16+22, 17+23, 0+6, 1+7, 2+8, 3+9, 4+10, 5+11});
+    }
+}
@@ -0,0 +1,113 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.indels;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.BaseUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ConsensusMismatchScorerUnitTest extends BaseTest {
+    private static final byte[] BASES = "ACGTACGTACGTACGTNnacgt*".getBytes();
+
+    @DataProvider(name = "Scores")
+    public Object[][] makeScoresData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int consensusLength : new int[]{10, 63, 64, 65, 200, 500} )
+            for ( final int readLength : new int[]{1, 10, 76, 150} )
+                for ( final int maxQual : new int[]{1, 40, 127} )
+                    if ( readLength <= consensusLength )
+                        tests.add(new Object[]{consensusLength, readLength, maxQual});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Scores")
+    public void testScores(final int consensusLength, final int readLength, final int maxQual) {
+        final Random random = new Random(consensusLength * 31 + readLength);
+        final byte[] consensus = randomBases(random, consensusLength);
+        final ConsensusMismatchScorer scorer = new ConsensusMismatchScorer(consensus);
+
+        for ( int n = 0; n < 10; n++ ) {
+            // reads copied from the consensus with a few changes, so that some offsets score well
+            final byte[] read = new byte[readLength];
+            final int source = random.nextInt(consensusLength - readLength + 1);
+            for ( int i = 0; i < readLength; i++ )
+                read[i] = random.nextInt(10) == 0 ? BASES[random.nextInt(BASES.length)] : consensus[source + i];
+            final byte[] quals = new byte[readLength];
+            for ( int i = 0; i < readLength; i++ )
+                quals[i] = (byte)random.nextInt(maxQual + 1);
+
+            final int lastOffset = consensusLength - readLength;
+            for ( int from = 0; from <= lastOffset; from += ConsensusMismatchScorer.MAX_OFFSETS ) {
+                final int nOffsets = Math.min(ConsensusMismatchScorer.MAX_OFFSETS, lastOffset - from + 1);
+                final int[] expected = new int[nOffsets];
+                int best = Integer.MAX_VALUE;
+                for ( int k = 0; k < nOffsets; k++ ) {
+                    expected[k] = mismatchQualitySum(read, quals, consensus, from + k);
+                    best = Math.min(best, expected[k]);
+                }
+
+                final int[] scores = scorer.score(read, quals, from, nOffsets, Integer.MAX_VALUE);
+                Assert.assertNotNull(scores);
+                for ( int k = 0; k < nOffsets; k++ )
+                    Assert.assertEquals(scores[k], expected[k], "wrong score at offset " + (from + k));
+
+                // nothing is returned when no offset beats the score to beat, and the exact scores when one does
+                Assert.assertNull(scorer.score(read, quals, from, nOffsets, best));
+                final int[] beaten = scorer.score(read, quals, from, nOffsets, best + 1);
+                Assert.assertNotNull(beaten);
+                for ( int k = 0; k < nOffsets; k++ )
+                    Assert.assertEquals(beaten[k], expected[k], "wrong score at offset " + (from + k));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testReadRunsOffTheEnd() {
+        new ConsensusMismatchScorer("ACGTACGT".getBytes()).score("ACGT".getBytes(), new byte[]{30, 30, 30, 30}, 2, 4, Integer.MAX_VALUE);
+    }
+
+    private static int mismatchQualitySum(final byte[] read, final byte[] quals, final byte[] consensus, final int offset) {
+        int sum = 0;
+        for ( int i = 0; i < read.length; i++ ) {
+            if ( BaseUtils.isRegularBase(read[i]) && BaseUtils.isRegularBase(consensus[offset + i]) && read[i] != consensus[offset + i] )
+                sum += quals[i];
+        }
+        return sum;
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+}
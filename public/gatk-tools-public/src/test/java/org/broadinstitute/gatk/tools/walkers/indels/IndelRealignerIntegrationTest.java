@@ -140,6 +140,31 @@ public class IndelRealignerIntegrationTest extends WalkerTest {
         }
     }
 
+    @Test
+    public void testMultipleRealignmentThreads() {
+        HashMap<String, String> e = new HashMap<String, String>();
+        e.put("-realignThreads 4", base_md5);
+        e.put("-realignThreads 4 -known " + knownIndels, base_md5_with_SW_or_VCF);
+        e.put("-realignThreads 4 --maxReadsInMemory 10000", "b8a4491506303dc96cf105ba069dd928");
+
+        for ( Map.Entry<String, String> entry : e.entrySet() ) {
+            WalkerTest.WalkerTestSpec spec = new WalkerTest.WalkerTestSpec(
+                    baseCommand + entry.getKey(),
+                    1,
+                    Arrays.asList(entry.getValue()));
+            executeTest(String.format("realigner [%s]", entry.getKey()), spec);
+        }
+    }
+
+    @Test
+    public void testMultipleRealignmentThreadsWithStats() {
+        WalkerTestSpec spec = new WalkerTestSpec(
+                baseCommandPrefix + "-realignThreads 2 -stats %s -o /dev/null",
+                1,
+                UserException.CommandLineException.class);
+        executeTest("realigner stats with multiple threads", spec);
+    }
+
     @Test
     public void testNWayOut() {
         WalkerTestSpec spec1 = new WalkerTestSpec(
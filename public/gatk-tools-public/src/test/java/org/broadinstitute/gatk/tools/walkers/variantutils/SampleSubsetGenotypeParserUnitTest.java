@@ -0,0 +1,150 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.tools.walkers.variantutils;
+
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class SampleSubsetGenotypeParserUnitTest extends BaseTest {
+    private static final String SITE = "1\t100\t.\tA\tC,G\t50\tPASS\t.\t";
+    private static final String GENOTYPES = "GT:AD:DP:PL\t0/1:3,4,0:7:10,0,20,30,40,50\t1/1:0,7,0:7:200,20,0,30,40,50\t./.\t0/2:3,0,4:7:10,20,30,0,40,50";
+    private static final List<String> SAMPLES = Arrays.asList("s1", "s2", "s3", "s4");
+
+    private static VCFHeader makeHeader() {
+        final Set<VCFHeaderLine> headerLines = new LinkedHashSet<>();
+        VCFStandardHeaderLines.addStandardFormatLines(headerLines, true, "GT", "AD", "DP", "PL");
+        return new VCFHeader(headerLines, SAMPLES);
+    }
+
+    private static VariantContext decode(final String line) {
+        return decode(line, VCFHeaderVersion.VCF4_2);
+    }
+
+    private static VariantContext decode(final String line, final VCFHeaderVersion version) {
+        final VCFCodec codec = new VCFCodec();
+        codec.setVCFHeader(makeHeader(), version);
+        return codec.decode(line);
+    }
+
+    @DataProvider(name = "SubsetData")
+    public Object[][] makeSubsetData() {
+        return new Object[][]{
+                {Arrays.asList("s2"), "GT:AD:DP:PL\t1/1:0,7,0:7:200,20,0,30,40,50"},
+                {Arrays.asList("s4", "s1"), "GT:AD:DP:PL\t0/1:3,4,0:7:10,0,20,30,40,50\t0/2:3,0,4:7:10,20,30,0,40,50"},
+                {Arrays.asList("s3", "s4"), "GT:AD:DP:PL\t./.\t0/2:3,0,4:7:10,20,30,0,40,50"},
+                {Arrays.asList("s1", "s2", "s3", "s4"), GENOTYPES}
+        };
+    }
+
+    @Test(dataProvider = "SubsetData")
+    public void testSubsetColumns(final List<String> samples, final String expected) {
+        final SampleSubsetGenotypeParser parser = new SampleSubsetGenotypeParser(makeHeader(), VCFHeaderVersion.VCF4_2, samples, false);
+        Assert.assertEquals(parser.subsetColumns(GENOTYPES), expected);
+    }
+
+    @Test
+    public void testSubsetColumnsOfMalformedLines() {
+        final SampleSubsetGenotypeParser parser = new SampleSubsetGenotypeParser(makeHeader(), VCFHeaderVersion.VCF4_2, Arrays.asList("s2"), false);
+        Assert.assertNull(parser.subsetColumns("GT\t0/1\t1/1\t0/0"));
+        Assert.assertNull(parser.subsetColumns("GT\t0/1\t1/1\t0/0\t0/0\t0/0"));
+        Assert.assertNull(parser.subsetColumns("GT"));
+    }
+
+    @Test(dataProvider = "SubsetData")
+    public void testSubset(final List<String> samples, final String unused) {
+        final VariantContext vc = decode(SITE + GENOTYPES);
+        final VariantContext subset = new SampleSubsetGenotypeParser(makeHeader(), VCFHeaderVersion.VCF4_2, samples, false).subset(decode(SITE + GENOTYPES));
+
+        Assert.assertEquals(subset.getNSamples(), samples.size());
+        Assert.assertEquals(subset.getSampleNames(), new HashSet<>(samples));
+        Assert.assertEquals(subset.getAlleles(), vc.getAlleles());
+        Assert.assertEquals(subset.getAttributes(), vc.getAttributes());
+        for ( final String sample : samples ) {
+            final Genotype expected = vc.getGenotype(sample);
+            final Genotype actual = subset.getGenotype(sample);
+            Assert.assertEquals(actual.toString(), expected.toString());
+            Assert.assertEquals(actual.getAlleles(), expected.getAlleles());
+        }
+    }
+
+    @Test
+    public void testSubsetLeavesParsedGenotypesAlone() {
+        final VariantContext vc = decode(SITE + GENOTYPES).fullyDecode(makeHeader(), false);
+        Assert.assertSame(new SampleSubsetGenotypeParser(makeHeader(), VCFHeaderVersion.VCF4_2, Arrays.asList("s2"), false).subset(vc), vc);
+    }
+
+    // VCF 4.0 requires the GT field, which later versions don't
+    @DataProvider(name = "VersionData")
+    public Object[][] makeVersionData() {
+        return new Object[][]{
+                {VCFHeaderVersion.VCF4_0, GENOTYPES, false},
+                {VCFHeaderVersion.VCF4_0, NO_GT_GENOTYPES, true},
+                {VCFHeaderVersion.VCF4_1, NO_GT_GENOTYPES, false},
+                {VCFHeaderVersion.VCF4_2, NO_GT_GENOTYPES, false}
+        };
+    }
+
+    private static final String NO_GT_GENOTYPES = "AD:DP\t3,4,0:7\t0,7,0:7\t.\t3,0,4:7";
+
+    @Test(dataProvider = "VersionData")
+    public void testSubsetParsesAsTheVersion(final VCFHeaderVersion version, final String genotypes, final boolean invalid) {
+        final List<String> samples = Arrays.asList("s2", "s4");
+        final String expected = parseGenotypes(decode(SITE + genotypes, version), samples);
+        String actual;
+        try {
+            actual = parseGenotypes(new SampleSubsetGenotypeParser(makeHeader(), version, samples, false).subset(decode(SITE + genotypes, version)), samples);
+        } catch ( TribbleException e ) { // the subset record is validated as it is made
+            actual = e.getClass().getSimpleName();
+        }
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(expected.equals(TribbleException.class.getSimpleName()), invalid);
+    }
+
+    // The genotypes of the samples, or the type of the error parsing them
+    private static String parseGenotypes(final VariantContext vc, final List<String> samples) {
+        try {
+            final StringBuilder builder = new StringBuilder();
+            for ( final String sample : samples )
+                builder.append(vc.getGenotype(sample)).append('\n');
+            return builder.toString();
+        } catch ( TribbleException e ) {
+            return e.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable, fixed-precision summary of the distribution of non-negative integer values (e.g. depths of coverage)
+ *
+ * Values are counted in log-linear buckets: every value below 2^(precision+1) has a bucket of its own, and above
+ * that each power-of-two range is split into 2^precision equal buckets, so any reported quantile is exact for small
+ * values and within a relative error of 2^-(precision+1) for large ones.  Memory grows only with the logarithm of
+ * the largest value added, never with the number of values, and the buckets are deterministic so that merging
+ * sketches (e.g. the shards of a -nt run) gives exactly the same result, in any order, as adding all of the values
+ * to a single sketch.
+ */
+public final class QuantileSketch {
+    public static final int DEFAULT_PRECISION = 7;
+    private static final int MAX_PRECISION = 20;
+
+    private final int precision;
+    private final int subBuckets;
+    private long[] counts;
+    private long count = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public QuantileSketch() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of bits of each value kept above its leading bit.  Must be between 0 and 20
+     */
+    public QuantileSketch(final int precision) {
+        if ( precision < 0 || precision > MAX_PRECISION )
+            throw new IllegalArgumentException("precision must be between 0 and " + MAX_PRECISION + " but got " + precision);
+        this.precision = precision;
+        this.subBuckets = 1 << precision;
+        this.counts = new long[2 * subBuckets];
+    }
+
+    /**
+     * Creates a copy of toCopy, which may then be updated independently
+     */
+    public QuantileSketch(final QuantileSketch toCopy) {
+        this.precision = toCopy.precision;
+        this.subBuckets = toCopy.subBuckets;
+        this.counts = toCopy.counts.clone();
+        this.count = toCopy.count;
+        this.min = toCopy.min;
+        this.max = toCopy.max;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the number of values added to this sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void add(final long value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds n copies of value to this sketch
+     *
+     * @param value a non-negative value
+     * @param n the number of copies of value to add, which must not be negative
+     */
+    public void add(final long value, final long n) {
+        if ( value < 0 )
+            throw new IllegalArgumentException("value must be non-negative but got " + value);
+        if ( n < 0 )
+            throw new IllegalArgumentException("n must be non-negative but got " + n);
+        if ( n == 0 )
+            return;
+
+        final int bucket = bucketOf(value);
+        if ( bucket >= counts.length )
+            counts = Arrays.copyOf(counts, Math.max(bucket + 1, counts.length + subBuckets));
+        counts[bucket] += n;
+        count += n;
+        if ( value < min ) min = value;
+        if ( value > max ) max = value;
+    }
+
+    /**
+     * Adds all of the values of other to this sketch
+     *
+     * @param other a sketch with the same precision as this one
+     */
+    public void merge(final QuantileSketch other) {
+        if ( other.precision != precision )
+            throw new IllegalArgumentException("Cannot merge a sketch of precision " + other.precision + " into one of precision " + precision);
+        if ( other.counts.length > counts.length )
+            counts = Arrays.copyOf(counts, other.counts.length);
+        for ( int i = 0; i < other.counts.length; i++ )
+            counts[i] += other.counts[i];
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Gets the smallest value v such that at least a fraction q of the values in this sketch are <= v
+     *
+     * The result is exact for values below 2^(precision+1), and within a relative error of 2^-(precision+1)
+     * of the true quantile above that.  The smallest and largest values are always exact.
+     *
+     * @param q a fraction between 0 and 1
+     * @return the q-th quantile of the values in this sketch
+     */
+    public long getQuantile(final double q) {
+        if ( q < 0.0 || q > 1.0 || Double.isNaN(q) )
+            throw new IllegalArgumentException("q must be between 0 and 1 but got " + q);
+        if ( isEmpty() )
+            throw new IllegalStateException("Cannot get a quantile from an empty sketch");
+
+        final long rank = Math.max(1, (long)Math.ceil(q * count));
+        long seen = 0;
+        for ( int bucket = 0; bucket < counts.length; bucket++ ) {
+            seen += counts[bucket];
+            if ( seen >= rank ) {
+                final long lower = bucketLowerBound(bucket);
+                final long value = lower + (bucketWidth(bucket) - 1) / 2;
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max; // unreachable, as the bucket counts add up to count
+    }
+
+    public long getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /**
+     * @return the smallest value added to this sketch
+     */
+    public long getMin() {
+        if ( isEmpty() )
+            throw new IllegalStateException("Cannot get the minimum of an empty sketch");
+        return min;
+    }
+
+    /**
+     * @return the largest value added to this sketch
+     */
+    public long getMax() {
+        if ( isEmpty() )
+            throw new IllegalStateException("Cannot get the maximum of an empty sketch");
+        return max;
+    }
+
+    /**
+     * Gets the number of values >= threshold, which is exact if threshold < 2^(precision+1) or is the lower
+     * bound of a bucket, and otherwise counts the whole bucket holding threshold
+     *
+     * @param threshold a non-negative value
+     * @return the number of values in this sketch that are at least threshold
+     */
+    public long getCountAtLeast(final long threshold) {
+        if ( threshold < 0 )
+            throw new IllegalArgumentException("threshold must be non-negative but got " + threshold);
+        long atLeast = 0;
+        for ( int bucket = bucketOf(threshold); bucket < counts.length; bucket++ )
+            atLeast += counts[bucket];
+        return atLeast;
+    }
+
+    /**
+     * @return the index of the bucket holding value
+     */
+    private int bucketOf(final long value) {
+        if ( value < 2 * subBuckets )
+            return (int)value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+        return shift * subBuckets + (int)(value >>> shift);
+    }
+
+    private long bucketLowerBound(final int bucket) {
+        if ( bucket < 2 * subBuckets )
+            return bucket;
+        final int shift = bucket / subBuckets - 1;
+        return (long)(bucket - shift * subBuckets) << shift;
+    }
+
+    private long bucketWidth(final int bucket) {
+        return bucket < 2 * subBuckets ? 1 : 1L << (bucket / subBuckets - 1);
+    }
+}
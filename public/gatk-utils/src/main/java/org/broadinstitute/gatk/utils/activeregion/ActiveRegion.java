@@ -31,6 +31,7 @@ import htsjdk.samtools.reference.ReferenceSequenceFile;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.interval.GenomeLocIntervalIndex;
 import org.broadinstitute.gatk.utils.HasGenomeLocation;
 import org.broadinstitute.gatk.utils.clipping.ReadClipper;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
@@ -132,7 +133,10 @@ public class ActiveRegion implements HasGenomeLocation {
         if ( extension < 0 ) throw new IllegalArgumentException("extension cannot be < 0 but got " + extension);
 
         this.activeRegionLoc = activeRegionLoc;
-        this.supportingStates = supportingStates == null ? Collections.<ActivityProfileState>emptyList() : new ArrayList<ActivityProfileState>(supportingStates);
+        // ActivityProfile state lists are immutable and consecutive by construction, so keep them lazy
+        final boolean trustedStates = supportingStates instanceof ActivityProfileStateList;
+        this.supportingStates = supportingStates == null ? Collections.<ActivityProfileState>emptyList()
+                : trustedStates ? supportingStates : new ArrayList<ActivityProfileState>(supportingStates);
         this.isActive = isActive;
         this.genomeLocParser = genomeLocParser;
         this.extension = extension;
@@ -142,13 +146,15 @@ public class ActiveRegion implements HasGenomeLocation {
         if ( ! this.supportingStates.isEmpty() ) {
             if ( this.supportingStates.size() != activeRegionLoc.size() )
                 throw new IllegalArgumentException("Supporting states wasn't empty but it doesn't have exactly one state per bp in the active region: states " + this.supportingStates.size() + " vs. bp in region = " + activeRegionLoc.size());
-            GenomeLoc lastStateLoc = null;
-            for ( final ActivityProfileState state : this.supportingStates ) {
-                if ( lastStateLoc != null ) {
-                    if ( state.getLoc().getStart() != lastStateLoc.getStart() + 1 || state.getLoc().getContigIndex() != lastStateLoc.getContigIndex())
-                        throw new IllegalArgumentException("Supporting state has an invalid sequence: last state was " + lastStateLoc + " but next state was " + state);
+            if ( ! trustedStates ) {
+                GenomeLoc lastStateLoc = null;
+                for ( final ActivityProfileState state : this.supportingStates ) {
+                    if ( lastStateLoc != null ) {
+                        if ( state.getLoc().getStart() != lastStateLoc.getStart() + 1 || state.getLoc().getContigIndex() != lastStateLoc.getContigIndex())
+                            throw new IllegalArgumentException("Supporting state has an invalid sequence: last state was " + lastStateLoc + " but next state was " + state);
+                    }
+                    lastStateLoc = state.getLoc();
                 }
-                lastStateLoc = state.getLoc();
             }
         }
     }
@@ -398,7 +404,21 @@ public class ActiveRegion implements HasGenomeLocation {
      */
     @Ensures("result != null")
     protected List<ActiveRegion> splitAndTrimToIntervals(final GenomeLocSortedSet intervals) {
-        final List<GenomeLoc> allOverlapping = intervals.getOverlapping(getLocation());
+        return trimToOverlapping(intervals.getOverlapping(getLocation()));
+    }
+
+    /**
+     * Same as splitAndTrimToIntervals(GenomeLocSortedSet), but querying a prebuilt interval index
+     *
+     * @param intervals a non-null index of the intervals that are allowed
+     * @return an ordered list of active region where each interval is contained within intervals
+     */
+    @Ensures("result != null")
+    protected List<ActiveRegion> splitAndTrimToIntervals(final GenomeLocIntervalIndex intervals) {
+        return trimToOverlapping(intervals.getOverlapping(getLocation()));
+    }
+
+    private List<ActiveRegion> trimToOverlapping(final List<GenomeLoc> allOverlapping) {
         final List<ActiveRegion> clippedRegions = new LinkedList<ActiveRegion>();
 
         for ( final GenomeLoc overlapping : allOverlapping ) {
@@ -30,6 +30,7 @@ import com.google.java.contract.Requires;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.interval.GenomeLocIntervalIndex;
 
 import java.util.*;
 
@@ -37,22 +38,42 @@ import java.util.*;
  * Class holding information about per-base activity scores for the
  * active region traversal
  *
+ * The per-base probabilities are kept in a primitive ring buffer rather than as one ActivityProfileState
+ * object per base, since every locus of the genome passes through here.  States are only created on demand,
+ * for the regions that actually look at their supporting states.
+ *
  * @author Mark DePristo
  * @since Date created
  */
 public class ActivityProfile {
-    protected final List<ActivityProfileState> stateList;
+    private static final int INITIAL_CAPACITY = 1024;
+
     protected final GenomeLocParser parser;
     protected final GenomeLocSortedSet restrictToIntervals;
+    protected final GenomeLocIntervalIndex restrictToIntervalsIndex;
 
     protected final int maxProbPropagationDistance;
     protected final double activeProbThreshold;
 
-    protected GenomeLoc regionStartLoc = null;
-    protected GenomeLoc regionStopLoc = null;
+    /**
+     * Ring buffer of the isActiveProb of the states in this profile.  The state at offset i from the start
+     * of the profile lives at probs[(head + i) & (probs.length - 1)], and the length is always a power of 2
+     */
+    private double[] probs = new double[INITIAL_CAPACITY];
+    private int head = 0;
+    private int nStates = 0;
+
+    /**
+     * The contig and the positions of the first state and of the last added state in this profile,
+     * only meaningful when regionStart != -1
+     */
+    private String contig = null;
+    private int contigIndex = -1;
+    private int regionStart = -1;
+    private int regionStop = -1;
 
     /**
-     * A cached value of the regionStartLoc contig length, to make calls to
+     * A cached value of the current contig length, to make calls to
      * getCurrentContigLength efficient
      */
     protected int contigLength = -1;
@@ -78,8 +99,8 @@ public class ActivityProfile {
         if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
 
         this.parser = parser;
-        this.stateList = new ArrayList<ActivityProfileState>();
         this.restrictToIntervals = intervals;
+        this.restrictToIntervalsIndex = intervals == null ? null : new GenomeLocIntervalIndex(intervals);
         this.maxProbPropagationDistance = maxProbPropagationDistance;
         this.activeProbThreshold = activeProbThreshold;
     }
@@ -87,8 +108,8 @@ public class ActivityProfile {
     @Override
     public String toString() {
         return "ActivityProfile{" +
-                "start=" + regionStartLoc +
-                ", stop=" + regionStopLoc +
+                "start=" + (regionStart == -1 ? null : parser.createGenomeLoc(contig, contigIndex, regionStart, regionStart)) +
+                ", stop=" + (regionStop == -1 ? null : parser.createGenomeLoc(contig, contigIndex, regionStop, regionStop)) +
                 '}';
     }
 
@@ -113,7 +134,7 @@ public class ActivityProfile {
      */
     @Ensures("result >= 0")
     public int size() {
-        return stateList.size();
+        return nStates;
     }
 
     /**
@@ -122,7 +143,7 @@ public class ActivityProfile {
      */
     @Ensures("isEmpty() == (size() == 0)")
     public boolean isEmpty() {
-        return stateList.isEmpty();
+        return nStates == 0;
     }
 
     /**
@@ -130,26 +151,30 @@ public class ActivityProfile {
      * @return a potentially null GenomeLoc.  Will be null if this profile is empty
      */
     public GenomeLoc getSpan() {
-        return isEmpty() ? null : regionStartLoc.endpointSpan(regionStopLoc);
+        return isEmpty() ? null : parser.createGenomeLoc(contig, contigIndex, regionStart, regionStop);
     }
 
     @Requires("! isEmpty()")
     public int getContigIndex() {
-        return regionStartLoc.getContigIndex();
+        return contigIndex;
     }
 
     @Requires("! isEmpty()")
     public int getStop() {
-        return regionStopLoc.getStop();
+        return regionStop;
     }
 
     /**
      * Get the list of active profile results in this object
+     *
+     * The states are created by this call, so changes to them are not reflected in this profile
+     *
      * @return a non-null, ordered list of active profile results
      */
     @Ensures("result != null")
     protected List<ActivityProfileState> getStateList() {
-        return stateList;
+        return isEmpty() ? Collections.<ActivityProfileState>emptyList()
+                : new ArrayList<>(new ActivityProfileStateList(parser, contig, contigIndex, regionStart, getProbabilitiesAsArray()));
     }
 
     /**
@@ -158,36 +183,25 @@ public class ActivityProfile {
      */
     @Ensures("result != null")
     protected double[] getProbabilitiesAsArray() {
-        final double[] probs = new double[getStateList().size()];
-        int i = 0;
-        for ( final ActivityProfileState state : getStateList() )
-            probs[i++] = state.isActiveProb;
-        return probs;
+        return copyProbs(nStates);
     }
 
     /**
-     * Helper function that gets the genome loc for a site offset from relativeLoc, protecting ourselves from
-     * falling off the edge of the contig.
+     * Is position a valid position on the current contig?
      *
-     * @param relativeLoc the location offset is relative to
-     * @param offset the offset from relativeLoc where we'd like to create a GenomeLoc
-     * @return a genome loc with relativeLoc.start + offset, if this is on the contig, null otherwise
+     * @param position a position on the contig of the current profile
+     * @return true if position isn't before the start or after the end of the contig
      */
-    @Requires("relativeLoc != null")
-    protected GenomeLoc getLocForOffset(final GenomeLoc relativeLoc, final int offset) {
-        final int start = relativeLoc.getStart() + offset;
-        if ( start < 0 || start > getCurrentContigLength() ) {
-            return null;
-        } else {
-            return parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start);
-        }
+    @Requires("regionStart != -1")
+    protected boolean isOnCurrentContig(final int position) {
+        return position >= 0 && position <= getCurrentContigLength();
     }
 
     /**
      * Get the length of the current contig
      * @return the length in bp
      */
-    @Requires("regionStartLoc != null")
+    @Requires("regionStart != -1")
     @Ensures("result > 0")
     private int getCurrentContigLength() {
         return contigLength;
@@ -210,92 +224,98 @@ public class ActivityProfile {
     public void add(final ActivityProfileState state) {
         final GenomeLoc loc = state.getLoc();
 
-        if ( regionStartLoc == null ) {
-            regionStartLoc = loc;
-            regionStopLoc = loc;
-            contigLength = parser.getContigInfo(regionStartLoc.getContig()).getSequenceLength();
+        if ( regionStart == -1 ) {
+            contig = loc.getContig();
+            contigIndex = loc.getContigIndex();
+            regionStart = loc.getStart();
+            regionStop = loc.getStart();
+            contigLength = parser.getContigInfo(contig).getSequenceLength();
         } else {
-            if ( regionStopLoc.getStart() != loc.getStart() - 1 )
-                throw new IllegalArgumentException("Bad add call to ActivityProfile: loc " + loc + " not immediately after last loc " + regionStopLoc );
-            regionStopLoc = loc;
+            if ( regionStop != loc.getStart() - 1 )
+                throw new IllegalArgumentException("Bad add call to ActivityProfile: loc " + loc + " not immediately after last loc " + parser.createGenomeLoc(contig, contigIndex, regionStop, regionStop));
+            regionStop = loc.getStart();
         }
 
-        final Collection<ActivityProfileState> processedStates = processState(state);
-        for ( final ActivityProfileState processedState : processedStates ) {
-            incorporateSingleState(processedState);
-        }
+        processState(state);
     }
 
     /**
-     * Incorporate a single activity profile state into the current list of states
+     * Incorporate the probability of a single position into the current profile
      *
-     * If state's position occurs immediately after the last position in this profile, then
-     * the state is appended to the state list.  If it's within the existing states list,
-     * the prob of stateToAdd is added to its corresponding state in the list.  If the
-     * position would be before the start of this profile, stateToAdd is simply ignored.
+     * If position occurs immediately after the last position in this profile, then
+     * a new state is appended to the profile.  If it's within the existing states,
+     * prob is added to the probability of its corresponding state.  If the
+     * position would be before the start of this profile, prob is simply ignored.
      *
-     * @param stateToAdd the state we want to add to the states list
+     * @param position the position on the current contig of the probability
+     * @param prob the probability to add to the state at position
      */
-    @Requires("stateToAdd != null")
-    private void incorporateSingleState(final ActivityProfileState stateToAdd) {
-        final int position = stateToAdd.getOffset(regionStartLoc);
+    protected final void incorporateProbability(final int position, final double prob) {
+        final int offset = position - regionStart;
 
-        if ( position > size() )
+        if ( offset > nStates )
             // should we allow this?  probably not
-            throw new IllegalArgumentException("Must add state contiguous to existing states: adding " + stateToAdd);
+            throw new IllegalArgumentException("Must add state contiguous to existing states: adding state at " + contig + ":" + position + " with prob " + prob);
 
-        if ( position >= 0 ) {
+        if ( offset >= 0 ) {
             // ignore states starting before this region's start
-            if ( position < size() ) {
-                stateList.get(position).isActiveProb += stateToAdd.isActiveProb;
+            if ( offset < nStates ) {
+                probs[index(offset)] += prob;
             } else {
-                if ( position != size() ) throw new IllegalStateException("position == size but it wasn't");
-                stateList.add(stateToAdd);
+                if ( nStates == probs.length )
+                    growBuffer();
+                probs[index(nStates)] = prob;
+                nStates++;
             }
         }
     }
 
     /**
-     * Process justAddedState, returning a collection of derived states that actually be added to the stateList
+     * Process justAddedState, incorporating the derived probabilities we actually want to track into the profile
      *
-     * The purpose of this function is to transform justAddedStates, if needed, into a series of atomic states
-     * that we actually want to track.  For example, if state is for soft clips, we transform that single
-     * state into a list of states that surround the state up to the distance of the soft clip.
+     * The purpose of this function is to transform justAddedState, if needed, into a series of atomic states.
+     * For example, if state is for soft clips, we transform that single state into states that surround
+     * the state up to the distance of the soft clip.  Each derived state is passed to incorporateProcessedState.
      *
-     * Can be overridden by subclasses to transform states in any way
-     *
-     * There's no particular contract for the output states, except that they can never refer to states
-     * beyond the current end of the stateList unless the explicitly include preceding states before
-     * the reference.  So for example if the current state list is [1, 2, 3] this function could return
-     * [1,2,3,4,5] but not [1,2,3,5].
-     *
-     * @param justAddedState the state our client provided to use to add to the list
-     * @return a list of derived states that should actually be added to this profile's state list
+     * @param justAddedState the state our client provided to use to add to the profile
      */
-    protected Collection<ActivityProfileState> processState(final ActivityProfileState justAddedState) {
+    private void processState(final ActivityProfileState justAddedState) {
+        final int justAddedPosition = justAddedState.getLoc().getStart();
+
         if ( justAddedState.resultState.equals(ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS) ) {
             // special code to deal with the problem that high quality soft clipped bases aren't added to pileups
-            final List<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
             // add no more than the max prob propagation distance num HQ clips
             final int numHQClips = Math.min(justAddedState.resultValue.intValue(), getMaxProbPropagationDistance());
             for( int jjj = - numHQClips; jjj <= numHQClips; jjj++ ) {
-                final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
-                if ( loc != null )
-                    states.add(new ActivityProfileState(loc, justAddedState.isActiveProb));
+                if ( isOnCurrentContig(justAddedPosition + jjj) )
+                    incorporateProcessedState(justAddedPosition, justAddedPosition + jjj, justAddedState.isActiveProb);
             }
-
-            return states;
         } else {
-            return Collections.singletonList(justAddedState);
+            incorporateProcessedState(justAddedPosition, justAddedPosition, justAddedState.isActiveProb);
         }
     }
 
+    /**
+     * Incorporate a state derived from the state just added to this profile
+     *
+     * Can be overridden by subclasses to transform states in any way, as long as they only ever incorporate
+     * probabilities at positions within or immediately after the current states of the profile.
+     *
+     * @param justAddedPosition the position of the state our client just added to the profile
+     * @param position the position of the derived state
+     * @param prob the isActiveProb of the derived state
+     */
+    protected void incorporateProcessedState(final int justAddedPosition, final int position, final double prob) {
+        incorporateProbability(position, prob);
+    }
+
     // --------------------------------------------------------------------------------
     //
     // routines to get active regions from the profile
     //
     // --------------------------------------------------------------------------------
 
+
     /**
      * Get the next completed active regions from this profile, and remove all states supporting them from this profile
      *
@@ -314,7 +334,7 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
      * @return a non-null list of active regions
      */
@@ -334,7 +354,7 @@ public class ActivityProfile {
                 if ( restrictToIntervals == null )
                     regions.add(nextRegion);
                 else
-                    regions.addAll(nextRegion.splitAndTrimToIntervals(restrictToIntervals));
+                    regions.addAll(nextRegion.splitAndTrimToIntervals(restrictToIntervalsIndex));
             }
         }
     }
@@ -350,46 +370,39 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
      * @return a fully formed active region, or null if none can be made
      */
     private ActiveRegion popNextReadyActiveRegion(final int activeRegionExtension, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
-        if ( stateList.isEmpty() )
+        if ( isEmpty() )
             return null;
 
         // If we are flushing the activity profile we need to trim off the excess states so that we don't create regions outside of our current processing interval
         if( forceConversion ) {
-            final List<ActivityProfileState> statesToTrimAway = new ArrayList<ActivityProfileState>(stateList.subList(getSpan().size(), stateList.size()));
-            stateList.removeAll(statesToTrimAway);
+            nStates = Math.min(nStates, regionStop - regionStart + 1);
         }
 
-        final ActivityProfileState first = stateList.get(0);
-        final boolean isActiveRegion = first.isActiveProb > activeProbThreshold;
+        final boolean isActiveRegion = getProb(0) > activeProbThreshold;
         final int offsetOfNextRegionEnd = findEndOfRegion(isActiveRegion, minRegionSize, maxRegionSize, forceConversion);
         if ( offsetOfNextRegionEnd == -1 )
             // couldn't find a valid ending offset, so we return null
             return null;
 
         // we need to create the active region, and clip out the states we're extracting from this profile
-        final List<ActivityProfileState> sub = stateList.subList(0, offsetOfNextRegionEnd + 1);
-        final List<ActivityProfileState> supportingStates = new ArrayList<ActivityProfileState>(sub);
-        sub.clear();
+        final int start = regionStart;
+        final double[] supportingProbs = copyProbs(offsetOfNextRegionEnd + 1);
+        removeFirstStates(offsetOfNextRegionEnd + 1);
 
-        // update the start and stop locations as necessary
-        if ( stateList.isEmpty() ) {
-            regionStartLoc = regionStopLoc = null;
-        } else {
-            regionStartLoc = stateList.get(0).getLoc();
-        }
-        final GenomeLoc regionLoc = parser.createGenomeLoc(first.getLoc().getContig(), first.getLoc().getStart(), first.getLoc().getStart() + offsetOfNextRegionEnd);
+        final GenomeLoc regionLoc = parser.createGenomeLoc(contig, start, start + offsetOfNextRegionEnd);
+        final List<ActivityProfileState> supportingStates = new ActivityProfileStateList(parser, contig, contigIndex, start, supportingProbs);
         return new ActiveRegion(regionLoc, supportingStates, isActiveRegion, parser, activeRegionExtension);
     }
 
     /**
      * Find the end of the current region, returning the index into the element isActive element, or -1 if the region isn't done
      *
-     * The current region is defined from the start of the stateList, looking for elements that have the same isActiveRegion
+     * The current region is defined from the start of the profile, looking for elements that have the same isActiveRegion
      * flag (i.e., if isActiveRegion is true we are looking for states with isActiveProb > threshold, or alternatively
      * for states < threshold).  The maximize size of the returned region is maxRegionSize.  If forceConversion is
      * true, then we'll return the region end even if this isn't safely beyond the max prob propagation distance.
@@ -402,16 +415,16 @@ public class ActivityProfile {
      * @param minRegionSize the minimum region size, in the case where we have to cut up regions that are too large
      * @param maxRegionSize the maximize size of the returned region
      * @param forceConversion if true, we'll return a region whose end isn't sufficiently far from the end of the
-     *                        stateList.  Used to close out the active region when we've hit some kind of end (such
+     *                        profile.  Used to close out the active region when we've hit some kind of end (such
      *                        as the end of the contig)
-     * @return the index into stateList of the last element of this region, or -1 if it cannot be found
+     * @return the index into the profile of the last element of this region, or -1 if it cannot be found
      */
     @Ensures({
             "result >= -1",
             "result == -1 || result < maxRegionSize",
             "! (result == -1 && forceConversion)"})
     private int findEndOfRegion(final boolean isActiveRegion, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
-        if ( ! forceConversion && stateList.size() < maxRegionSize + getMaxProbPropagationDistance() ) {
+        if ( ! forceConversion && nStates < maxRegionSize + getMaxProbPropagationDistance() ) {
             // we really haven't finalized at the probability mass that might affect our decision, so keep
             // waiting until we do before we try to make any decisions
             return -1;
@@ -470,9 +483,8 @@ public class ActivityProfile {
      *         if no such element exists
      */
     @Requires({"maxRegionSize > 0"})
-    @Ensures({"result >= 0", "result <= stateList.size()"})
+    @Ensures({"result >= 0", "result <= size()"})
     private int findFirstActivityBoundary(final boolean isActiveRegion, final int maxRegionSize) {
-        final int nStates = stateList.size();
         int endOfActiveRegion = 0;
 
         while ( endOfActiveRegion < nStates && endOfActiveRegion < maxRegionSize ) {
@@ -490,9 +502,9 @@ public class ActivityProfile {
      * @param index a valid offset into the state list
      * @return the isActiveProb of the state at index
      */
-    @Requires({"index >= 0", "index < stateList.size()"})
+    @Requires({"index >= 0", "index < size()"})
     private double getProb(final int index) {
-        return stateList.get(index).isActiveProb;
+        return probs[index(index)];
     }
 
     /**
@@ -504,9 +516,9 @@ public class ActivityProfile {
      * @param index the index of the state we want to test
      * @return true if prob at state is a minimum, false otherwise
      */
-    @Requires({"index >= 0", "index < stateList.size()"})
+    @Requires({"index >= 0", "index < size()"})
     private boolean isMinimum(final int index) {
-        if ( index == stateList.size() - 1 )
+        if ( index == nStates - 1 )
             // we cannot be at a minimum if the current position is the last in the state list
             return false;
         else if ( index < 1 )
@@ -517,4 +529,58 @@ public class ActivityProfile {
             return indexP <= getProb(index+1) && indexP < getProb(index-1);
         }
     }
+
+    // --------------------------------------------------------------------------------
+    //
+    // ring buffer management
+    //
+    // --------------------------------------------------------------------------------
+
+    /**
+     * @param offset an offset from the start of this profile
+     * @return the index of the state at offset in the probs ring buffer
+     */
+    private int index(final int offset) {
+        return (head + offset) & (probs.length - 1);
+    }
+
+    /**
+     * Double the capacity of the ring buffer, moving the states to the start of the new buffer
+     */
+    private void growBuffer() {
+        probs = copyProbs(probs.length * 2);
+        head = 0;
+    }
+
+    /**
+     * Copy the probabilities of the first states of this profile into a new array
+     *
+     * @param length the length of the new array, which may exceed the number of states in this profile
+     * @return a new array with the probabilities of the first min(length, size()) states, followed by zeros
+     */
+    private double[] copyProbs(final int length) {
+        final double[] copy = new double[length];
+        final int n = Math.min(length, nStates);
+        final int firstChunk = Math.min(n, probs.length - head);
+        System.arraycopy(probs, head, copy, 0, firstChunk);
+        System.arraycopy(probs, 0, copy, firstChunk, n - firstChunk);
+        return copy;
+    }
+
+    /**
+     * Remove the first n states from this profile, updating its start accordingly
+     *
+     * @param n the number of states to remove
+     */
+    @Requires({"n >= 0", "n <= size()"})
+    private void removeFirstStates(final int n) {
+        head = index(n);
+        nStates -= n;
+        if ( nStates == 0 ) {
+            head = 0;
+            regionStart = regionStop = -1;
+        } else {
+            regionStart += n;
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+
+import java.util.AbstractList;
+
+/**
+ * An immutable list of the ActivityProfileStates at consecutive positions of a contig, backed by an array of probabilities
+ *
+ * The ActivityProfile keeps its probabilities in primitive arrays, and hands them to the regions it creates
+ * through this list.  The states themselves are only created when they are actually looked at, which for
+ * most regions (and almost all inactive ones) is never.  Every call to get() returns a new state, so changes
+ * to its isActiveProb are not reflected in the list.
+ */
+final class ActivityProfileStateList extends AbstractList<ActivityProfileState> {
+    private final GenomeLocParser parser;
+    private final String contig;
+    private final int contigIndex;
+    private final int start;
+    private final double[] probs;
+
+    /**
+     * @param parser the parser used to create the state locations
+     * @param contig the contig of the states
+     * @param contigIndex the index of contig
+     * @param start the position of the first state
+     * @param probs the isActiveProb of each state.  Not copied, so must not be modified afterwards
+     */
+    ActivityProfileStateList(final GenomeLocParser parser, final String contig, final int contigIndex, final int start, final double[] probs) {
+        this.parser = parser;
+        this.contig = contig;
+        this.contigIndex = contigIndex;
+        this.start = start;
+        this.probs = probs;
+    }
+
+    @Override
+    public ActivityProfileState get(final int index) {
+        if ( index < 0 || index >= probs.length ) throw new IndexOutOfBoundsException("index " + index + " not in [0, " + probs.length + ")");
+        final int position = start + index;
+        return new ActivityProfileState(parser.createGenomeLoc(contig, contigIndex, position, position), probs[index]);
+    }
+
+    @Override
+    public int size() {
+        return probs.length;
+    }
+}
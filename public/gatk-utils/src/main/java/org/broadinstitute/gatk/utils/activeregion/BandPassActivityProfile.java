@@ -26,14 +26,10 @@
 package org.broadinstitute.gatk.utils.activeregion;
 
 import com.google.java.contract.Ensures;
-import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.MathUtils;
 
-import java.util.Collection;
-import java.util.LinkedList;
-
 /**
  * A band pass filtering version of the activity profile
  *
@@ -168,27 +164,19 @@ public class BandPassActivityProfile extends ActivityProfile {
     }
 
     /**
-     * Band pass the probabilities in the ActivityProfile, producing a new profile that's band pass filtered
-     * @return a new double[] that's the band-pass filtered version of this profile
+     * Band pass the probabilities in the ActivityProfile, spreading each derived state's probability over the
+     * positions around the just added state according to the precomputed Gaussian kernel
      */
     @Override
-    protected Collection<ActivityProfileState> processState(final ActivityProfileState justAddedState) {
-        final Collection<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
-
-        for ( final ActivityProfileState superState : super.processState(justAddedState) ) {
-            if ( superState.isActiveProb > 0.0 ) {
-                for( int jjj = -filterSize; jjj <= filterSize; jjj++ ) {
-                    final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
-                    if ( loc != null ) {
-                        final double newProb = superState.isActiveProb * GaussianKernel[jjj + filterSize];
-                        states.add(new ActivityProfileState(loc, newProb));
-                    }
+    protected void incorporateProcessedState(final int justAddedPosition, final int position, final double prob) {
+        if ( prob > 0.0 ) {
+            for( int jjj = -filterSize; jjj <= filterSize; jjj++ ) {
+                if ( isOnCurrentContig(justAddedPosition + jjj) ) {
+                    incorporateProbability(justAddedPosition + jjj, prob * GaussianKernel[jjj + filterSize]);
                 }
-            } else {
-                states.add(justAddedState);
             }
+        } else {
+            incorporateProbability(justAddedPosition, prob);
         }
-
-        return states;
     }
 }
@@ -37,6 +37,8 @@ import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 
+import java.util.Arrays;
+
 /*
   The topology of the profile HMM:
 
@@ -161,35 +163,84 @@ public class BAQ {
     private final static double EM = 0.33333333333;
     private final static double EI = 0.25;
 
-    private double[][][] EPSILONS = new double[256][256][SAMUtils.MAX_PHRED_SCORE+1];
+    // the class of each base for the emission probabilities: 0-3 for ACGT (in either case), -1 for anything else
+    private final static int[] BASE_CLASSES = new int[256];
+    static {
+        Arrays.fill(BASE_CLASSES, -1);
+        final String bases = "ACGT";
+        for ( int i = 0; i < bases.length(); i++ ) {
+            BASE_CLASSES[bases.charAt(i)] = i;
+            BASE_CLASSES[Character.toLowerCase(bases.charAt(i))] = i;
+        }
+    }
 
-    private void initializeCachedData() {
-        for ( int i = 0; i < 256; i++ )
-            for ( int j = 0; j < 256; j++ )
-                for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
-                    EPSILONS[i][j][q] = 1.0;
-                }
+    // the emission probabilities of a read base with a given quality when it matches / mismatches the reference base.
+    // The emission probability is 1 when either base isn't one of ACGT
+    private final double[] MATCH_EPSILONS = new double[SAMUtils.MAX_PHRED_SCORE+1];
+    private final double[] MISMATCH_EPSILONS = new double[SAMUtils.MAX_PHRED_SCORE+1];
 
-        for ( char b1 : "ACGTacgt".toCharArray() ) {
-            for ( char b2 : "ACGTacgt".toCharArray() ) {
-                for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
-                    double qual = qual2prob[q < minBaseQual ? minBaseQual : q];
-                    double e = Character.toLowerCase(b1) == Character.toLowerCase(b2) ? 1 - qual : qual * EM;
-                    EPSILONS[(byte)b1][(byte)b2][q] = e;
-                }
-            }
+    private void initializeCachedData() {
+        for ( int q = 0; q <= SAMUtils.MAX_PHRED_SCORE; q++ ) {
+            double qual = qual2prob[q < minBaseQual ? minBaseQual : q];
+            MATCH_EPSILONS[q] = 1 - qual;
+            MISMATCH_EPSILONS[q] = qual * EM;
         }
     }
 
     protected double calcEpsilon( byte ref, byte read, byte qualB ) {
-        return EPSILONS[ref][read][qualB];
+        return calcEpsilon(BASE_CLASSES[ref], BASE_CLASSES[read], qualB);
+    }
+
+    private double calcEpsilon( final int refClass, final int readClass, final byte qualB ) {
+        if ( refClass < 0 || readClass < 0 ) return 1.0;
+        return refClass == readClass ? MATCH_EPSILONS[qualB] : MISMATCH_EPSILONS[qualB];
+    }
+
+    /**
+     * The buffers of hmm_glocal, reused across calls by the same thread
+     */
+    private static final class HMMBuffers {
+        // the forward and backward matrices, one band of rowLength values per query position
+        private double[] f = new double[0];
+        private double[] b = new double[0];
+        // the scaling factors
+        private double[] s = new double[0];
+        // the base classes of the reference
+        private int[] refClasses = new int[0];
+
+        private void ensureCapacity(final int nRows, final int rowLength, final int l_ref) {
+            final int matrixSize = nRows * rowLength;
+            if ( f.length < matrixSize ) {
+                f = new double[matrixSize];
+                b = new double[matrixSize];
+            } else {
+                // the recurrences rely on everything outside of the band being 0
+                Arrays.fill(f, 0, matrixSize, 0.0);
+                Arrays.fill(b, 0, matrixSize, 0.0);
+            }
+            if ( s.length < nRows + 1 )
+                s = new double[nRows + 1];
+            if ( refClasses.length < l_ref )
+                refClasses = new int[l_ref];
+        }
     }
 
+    private static final ThreadLocal<HMMBuffers> HMM_BUFFERS = new ThreadLocal<HMMBuffers>() {
+        @Override
+        protected HMMBuffers initialValue() {
+            return new HMMBuffers();
+        }
+    };
+
     // ####################################################################################################
     //
     // NOTE -- THIS CODE IS SYNCHRONIZED WITH CODE IN THE SAMTOOLS REPOSITORY.  CHANGES TO THIS CODE SHOULD BE
     // NOTE -- PUSHED BACK TO HENG LI
     //
+    // The forward and backward matrices f[][] and b[][] of the samtools code are kept here in flat, per-thread
+    // arrays that are reused across reads, with row i of the band starting at index i * rowLength.  Apart from
+    // that, and from looking up the emission probabilities by base class, the computation is unchanged.
+    //
     // ####################################################################################################
     public int hmm_glocal(final byte[] ref, final byte[] query, int qstart, int l_query, final byte[] _iqual, int[] state, byte[] q) {
         if ( ref == null ) throw new ReviewedGATKException("BUG: ref sequence is null");
@@ -223,71 +274,77 @@ public class BAQ {
         //System.out.printf("c->bw = %d, bw = %d, l_ref = %d, l_query = %d\n", cb, bw, l_ref, l_query);
 		bw2 = bw * 2 + 1;
 
-        // allocate the forward and backward matrices f[][] and b[][] and the scaling array s[]
-		double[][] f = new double[l_query+1][bw2*3 + 6];
-		double[][] b = new double[l_query+1][bw2*3 + 6];
-		double[] s = new double[l_query+2];
+        // get the (zeroed) forward and backward matrices f[][] and b[][] and the scaling array s[]
+        final int rowLength = bw2*3 + 6;
+        final HMMBuffers buffers = HMM_BUFFERS.get();
+        buffers.ensureCapacity(l_query+1, rowLength, l_ref);
+		final double[] f = buffers.f;
+		final double[] b = buffers.b;
+		final double[] s = buffers.s;
+        final int[] refClasses = buffers.refClasses;
+        for (k = 0; k < l_ref; ++k) refClasses[k] = BASE_CLASSES[ref[k]];
 
 		// initialize transition probabilities
 		double sM, sI, bM, bI;
 		sM = sI = 1. / (2 * l_query + 2);
         bM = (1 - cd) / l_ref; bI = cd / l_ref; // (bM+bI)*l_ref==1
 
-		double[] m = new double[9];
-		m[0*3+0] = (1 - cd - cd) * (1 - sM); m[0*3+1] = m[0*3+2] = cd * (1 - sM);
-		m[1*3+0] = (1 - ce) * (1 - sI); m[1*3+1] = ce * (1 - sI); m[1*3+2] = 0.;
-		m[2*3+0] = 1 - ce; m[2*3+1] = 0.; m[2*3+2] = ce;
+		final double m0 = (1 - cd - cd) * (1 - sM), m1 = cd * (1 - sM), m2 = m1;
+		final double m3 = (1 - ce) * (1 - sI), m4 = ce * (1 - sI);
+		final double m6 = 1 - ce, m8 = ce;
 
 
 		/*** forward ***/
 		// f[0]
-		f[0][set_u(bw, 0, 0)] = s[0] = 1.;
+		f[set_u(bw, 0, 0)] = s[0] = 1.;
 		{ // f[1]
-			double[] fi = f[1];
+			final int fi = rowLength;
 			double sum;
 			int beg = 1, end = l_ref < bw + 1? l_ref : bw + 1, _beg, _end;
+            final int qyClass = BASE_CLASSES[query[qstart]];
 			for (k = beg, sum = 0.; k <= end; ++k) {
 				int u;
-                double e = calcEpsilon(ref[k-1], query[qstart], _iqual[qstart]);
-				u = set_u(bw, 1, k);
-				fi[u+0] = e * bM; fi[u+1] = EI * bI;
-				sum += fi[u] + fi[u+1];
+                double e = calcEpsilon(refClasses[k-1], qyClass, _iqual[qstart]);
+				u = fi + set_u(bw, 1, k);
+				f[u+0] = e * bM; f[u+1] = EI * bI;
+				sum += f[u] + f[u+1];
 			}
 			// rescale
 			s[1] = sum;
-			_beg = set_u(bw, 1, beg); _end = set_u(bw, 1, end); _end += 2;
-			for (k = _beg; k <= _end; ++k) fi[k] /= sum;
+			_beg = fi + set_u(bw, 1, beg); _end = fi + set_u(bw, 1, end); _end += 2;
+			for (k = _beg; k <= _end; ++k) f[k] /= sum;
 		}
 
 		// f[2..l_query]
 		for (i = 2; i <= l_query; ++i) {
-			double[] fi = f[i], fi1 = f[i-1];
+			final int fi = i * rowLength, fi1 = fi - rowLength;
 			double sum;
 			int beg = 1, end = l_ref, x, _beg, _end;
-			byte qyi = query[qstart+i-1];
+			final int qyClass = BASE_CLASSES[query[qstart+i-1]];
+            final byte qual = _iqual[qstart+i-1];
 			x = i - bw; beg = beg > x? beg : x; // band start
 			x = i + bw; end = end < x? end : x; // band end
 			for (k = beg, sum = 0.; k <= end; ++k) {
 				int u, v11, v01, v10;
-                double e = calcEpsilon(ref[k-1], qyi, _iqual[qstart+i-1]);
-				u = set_u(bw, i, k); v11 = set_u(bw, i-1, k-1); v10 = set_u(bw, i-1, k); v01 = set_u(bw, i, k-1);
-				fi[u+0] = e * (m[0] * fi1[v11+0] + m[3] * fi1[v11+1] + m[6] * fi1[v11+2]);
-				fi[u+1] = EI * (m[1] * fi1[v10+0] + m[4] * fi1[v10+1]);
-				fi[u+2] = m[2] * fi[v01+0] + m[8] * fi[v01+2];
-				sum += fi[u] + fi[u+1] + fi[u+2];
-				//System.out.println("("+i+","+k+";"+u+"): "+fi[u]+","+fi[u+1]+","+fi[u+2]);
+                double e = calcEpsilon(refClasses[k-1], qyClass, qual);
+				u = fi + set_u(bw, i, k); v11 = fi1 + set_u(bw, i-1, k-1); v10 = fi1 + set_u(bw, i-1, k); v01 = fi + set_u(bw, i, k-1);
+				f[u+0] = e * (m0 * f[v11+0] + m3 * f[v11+1] + m6 * f[v11+2]);
+				f[u+1] = EI * (m1 * f[v10+0] + m4 * f[v10+1]);
+				f[u+2] = m2 * f[v01+0] + m8 * f[v01+2];
+				sum += f[u] + f[u+1] + f[u+2];
 			}
 			// rescale
 			s[i] = sum;
-			_beg = set_u(bw, i, beg); _end = set_u(bw, i, end); _end += 2;
-			for (k = _beg, sum = 1./sum; k <= _end; ++k) fi[k] *= sum;
+			_beg = fi + set_u(bw, i, beg); _end = fi + set_u(bw, i, end); _end += 2;
+			for (k = _beg, sum = 1./sum; k <= _end; ++k) f[k] *= sum;
 		}
 		{ // f[l_query+1]
+			final int fl = l_query * rowLength;
 			double sum;
 			for (k = 1, sum = 0.; k <= l_ref; ++k) {
 				int u = set_u(bw, l_query, k);
 				if (u < 3 || u >= bw2*3+3) continue;
-				sum += f[l_query][u+0] * sM + f[l_query][u+1] * sI;
+				sum += f[fl+u+0] * sM + f[fl+u+1] * sI;
 			}
 			s[l_query+1] = sum; // the last scaling factor
 		}
@@ -296,57 +353,59 @@ public class BAQ {
 		// b[l_query] (b[l_query+1][0]=1 and thus \tilde{b}[][]=1/s[l_query+1]; this is where s[l_query+1] comes from)
 		for (k = 1; k <= l_ref; ++k) {
 			int u = set_u(bw, l_query, k);
-			double[] bi = b[l_query];
+			final int bi = l_query * rowLength;
 			if (u < 3 || u >= bw2*3+3) continue;
-			bi[u+0] = sM / s[l_query] / s[l_query+1]; bi[u+1] = sI / s[l_query] / s[l_query+1];
+			b[bi+u+0] = sM / s[l_query] / s[l_query+1]; b[bi+u+1] = sI / s[l_query] / s[l_query+1];
 		}
 		// b[l_query-1..1]
 		for (i = l_query - 1; i >= 1; --i) {
 			int beg = 1, end = l_ref, x, _beg, _end;
-			double[] bi = b[i], bi1 = b[i+1];
+			final int bi = i * rowLength, bi1 = bi + rowLength;
 			double y = (i > 1)? 1. : 0.;
-			byte qyi1 = query[qstart+i];
+			final int qyClass1 = BASE_CLASSES[query[qstart+i]];
+            final byte qual1 = _iqual[qstart+i];
 			x = i - bw; beg = beg > x? beg : x;
 			x = i + bw; end = end < x? end : x;
 			for (k = end; k >= beg; --k) {
 				int u, v11, v01, v10;
-				u = set_u(bw, i, k); v11 = set_u(bw, i+1, k+1); v10 = set_u(bw, i+1, k); v01 = set_u(bw, i, k+1);
-                final double e = (k >= l_ref? 0 : calcEpsilon(ref[k], qyi1, _iqual[qstart+i])) * bi1[v11];
-                bi[u+0] = e * m[0] + EI * m[1] * bi1[v10+1] + m[2] * bi[v01+2]; // bi1[v11] has been folded into e.
-				bi[u+1] = e * m[3] + EI * m[4] * bi1[v10+1];
-				bi[u+2] = (e * m[6] + m[8] * bi[v01+2]) * y;
+				u = bi + set_u(bw, i, k); v11 = bi1 + set_u(bw, i+1, k+1); v10 = bi1 + set_u(bw, i+1, k); v01 = bi + set_u(bw, i, k+1);
+                final double e = (k >= l_ref? 0 : calcEpsilon(refClasses[k], qyClass1, qual1)) * b[v11];
+                b[u+0] = e * m0 + EI * m1 * b[v10+1] + m2 * b[v01+2]; // b[v11] has been folded into e.
+				b[u+1] = e * m3 + EI * m4 * b[v10+1];
+				b[u+2] = (e * m6 + m8 * b[v01+2]) * y;
 			}
 			// rescale
-			_beg = set_u(bw, i, beg); _end = set_u(bw, i, end); _end += 2;
-			for (k = _beg, y = 1./s[i]; k <= _end; ++k) bi[k] *= y;
+			_beg = bi + set_u(bw, i, beg); _end = bi + set_u(bw, i, end); _end += 2;
+			for (k = _beg, y = 1./s[i]; k <= _end; ++k) b[k] *= y;
 		}
 
  		double pb;
 		{ // b[0]
 			int beg = 1, end = l_ref < bw + 1? l_ref : bw + 1;
 			double sum = 0.;
+            final int qyClass = BASE_CLASSES[query[qstart]];
 			for (k = end; k >= beg; --k) {
 				int u = set_u(bw, 1, k);
-                double e = calcEpsilon(ref[k-1], query[qstart], _iqual[qstart]);
+                double e = calcEpsilon(refClasses[k-1], qyClass, _iqual[qstart]);
                 if (u < 3 || u >= bw2*3+3) continue;
-				sum += e * b[1][u+0] * bM + EI * b[1][u+1] * bI;
+				sum += e * b[rowLength+u+0] * bM + EI * b[rowLength+u+1] * bI;
 			}
-			pb = b[0][set_u(bw, 0, 0)] = sum / s[0]; // if everything works as is expected, pb == 1.0
+			pb = b[set_u(bw, 0, 0)] = sum / s[0]; // if everything works as is expected, pb == 1.0
 		}
 
         
 		/*** MAP ***/
 		for (i = 1; i <= l_query; ++i) {
 			double sum = 0., max = 0.;
-			final double[] fi = f[i], bi = b[i];
+			final int fi = i * rowLength;
 			int beg = 1, end = l_ref, x, max_k = -1;
 			x = i - bw; beg = beg > x? beg : x;
 			x = i + bw; end = end < x? end : x;
 			for (k = beg; k <= end; ++k) {
-				final int u = set_u(bw, i, k);
+				final int u = fi + set_u(bw, i, k);
 				double z;
-				sum += (z = fi[u+0] * bi[u+0]); if (z > max) { max = z; max_k = (k-1)<<2 | 0; }
-				sum += (z = fi[u+1] * bi[u+1]); if (z > max) { max = z; max_k = (k-1)<<2 | 1; }
+				sum += (z = f[u+0] * b[u+0]); if (z > max) { max = z; max_k = (k-1)<<2 | 0; }
+				sum += (z = f[u+1] * b[u+1]); if (z > max) { max = z; max_k = (k-1)<<2 | 1; }
 			}
 			max /= sum; sum *= s[i]; // if everything works as is expected, sum == 1.0
 			if (state != null) state[qstart+i-1] = max_k;
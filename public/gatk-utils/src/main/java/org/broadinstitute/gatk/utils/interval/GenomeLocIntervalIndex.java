@@ -0,0 +1,247 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+
+import java.util.*;
+
+/**
+ * An immutable index over a collection of GenomeLocs supporting O(log n) overlap and containment queries.
+ *
+ * The locs are partitioned by contig index, and within each contig they are stored sorted by start in
+ * primitive start / stop arrays together with a running maximum of the stops.  Because that maximum is
+ * non-decreasing, the locs that may overlap a query lie between two binary searches: one for the first loc
+ * whose running maximum reaches the query start, and one for the last loc starting at or before the query
+ * stop.  Unlike GenomeLocSortedSet, the indexed locs may overlap each other.
+ *
+ * Unmapped locs are not indexed, and are never reported as overlapping or containing anything.
+ */
+public final class GenomeLocIntervalIndex {
+    private static final ContigIntervals[] NO_CONTIGS = new ContigIntervals[0];
+
+    /**
+     * The per-contig indices, indexed by contig index.  Entries are null for contigs without any locs
+     */
+    private final ContigIntervals[] contigs;
+    private final int size;
+
+    private static final class ContigIntervals {
+        final GenomeLoc[] locs;
+        final int[] starts;
+        final int[] stops;
+        final int[] maxStops;
+
+        private ContigIntervals(final GenomeLoc[] sortedLocs, final int from, final int to) {
+            locs = Arrays.copyOfRange(sortedLocs, from, to);
+            starts = new int[locs.length];
+            stops = new int[locs.length];
+            maxStops = new int[locs.length];
+
+            int maxStop = Integer.MIN_VALUE;
+            for ( int i = 0; i < locs.length; i++ ) {
+                starts[i] = locs[i].getStart();
+                stops[i] = locs[i].getStop();
+                maxStop = Math.max(maxStop, stops[i]);
+                maxStops[i] = maxStop;
+            }
+        }
+
+        /**
+         * @return the index of the first loc whose running maximum stop is at or after pos, or the number of locs if there is none
+         */
+        private int firstMaxStopAtOrAfter(final int pos) {
+            int low = 0;
+            int high = maxStops.length - 1;
+            while ( low <= high ) {
+                final int mid = (low + high) >>> 1;
+                if ( maxStops[mid] < pos )
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the last loc starting at or before pos, or -1 if there is none
+         */
+        private int lastStartingAtOrBefore(final int pos) {
+            int low = 0;
+            int high = starts.length - 1;
+            while ( low <= high ) {
+                final int mid = (low + high) >>> 1;
+                if ( starts[mid] <= pos )
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return high;
+        }
+    }
+
+    /**
+     * Create an index over locs
+     *
+     * @param locs the locs to index, in any order and possibly overlapping.  Must not be null
+     */
+    public GenomeLocIntervalIndex(final Collection<GenomeLoc> locs) {
+        if ( locs == null ) throw new IllegalArgumentException("locs cannot be null");
+
+        final List<GenomeLoc> mapped = new ArrayList<>(locs.size());
+        int maxContigIndex = -1;
+        for ( final GenomeLoc loc : locs ) {
+            if ( loc == null || GenomeLoc.isUnmapped(loc) || loc.getContigIndex() < 0 )
+                continue;
+            mapped.add(loc);
+            maxContigIndex = Math.max(maxContigIndex, loc.getContigIndex());
+        }
+
+        final GenomeLoc[] sorted = mapped.toArray(new GenomeLoc[mapped.size()]);
+        Arrays.sort(sorted);
+
+        contigs = maxContigIndex == -1 ? NO_CONTIGS : new ContigIntervals[maxContigIndex + 1];
+        int contigStart = 0;
+        for ( int i = 1; i <= sorted.length; i++ ) {
+            if ( i == sorted.length || sorted[i].getContigIndex() != sorted[contigStart].getContigIndex() ) {
+                contigs[sorted[contigStart].getContigIndex()] = new ContigIntervals(sorted, contigStart, i);
+                contigStart = i;
+            }
+        }
+        size = sorted.length;
+    }
+
+    /**
+     * @return the number of locs in this index, excluding any unmapped ones
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no locs in this index
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get all of the indexed locs on a contig
+     *
+     * @param contigIndex the index of the contig
+     * @return a non-null, unmodifiable list of the locs on contigIndex, sorted by start
+     */
+    public List<GenomeLoc> getLocsOnContig(final int contigIndex) {
+        final ContigIntervals contig = getContig(contigIndex);
+        return contig == null ? Collections.<GenomeLoc>emptyList() : Collections.unmodifiableList(Arrays.asList(contig.locs));
+    }
+
+    /**
+     * Does loc overlap any of the indexed locs?
+     *
+     * @param loc the location to test.  Must not be null
+     * @return true if any indexed loc shares at least one position with loc
+     */
+    public boolean overlaps(final GenomeLoc loc) {
+        final ContigIntervals contig = getContig(loc);
+        if ( contig == null ) return false;
+        final int last = contig.lastStartingAtOrBefore(loc.getStop());
+        return last >= 0 && contig.maxStops[last] >= loc.getStart();
+    }
+
+    /**
+     * Is loc fully contained within a single one of the indexed locs?
+     *
+     * @param loc the location to test.  Must not be null
+     * @return true if some indexed loc starts at or before loc's start and stops at or after loc's stop
+     */
+    public boolean containsFully(final GenomeLoc loc) {
+        final ContigIntervals contig = getContig(loc);
+        if ( contig == null ) return false;
+        final int last = contig.lastStartingAtOrBefore(loc.getStart());
+        return last >= 0 && contig.maxStops[last] >= loc.getStop();
+    }
+
+    /**
+     * Get the indexed locs overlapping loc
+     *
+     * Takes O(log n + m), where m is the number of locs starting between the first one that can reach loc and loc's stop
+     *
+     * @param loc the location to query.  Must not be null
+     * @return a non-null list of the indexed locs overlapping loc, sorted by start
+     */
+    public List<GenomeLoc> getOverlapping(final GenomeLoc loc) {
+        final ContigIntervals contig = getContig(loc);
+        if ( contig == null ) return Collections.emptyList();
+
+        final int first = contig.firstMaxStopAtOrAfter(loc.getStart());
+        final int last = contig.lastStartingAtOrBefore(loc.getStop());
+
+        final List<GenomeLoc> overlapping = new ArrayList<>(Math.max(0, last - first + 1));
+        for ( int i = first; i <= last; i++ ) {
+            if ( contig.stops[i] >= loc.getStart() )
+                overlapping.add(contig.locs[i]);
+        }
+        return overlapping;
+    }
+
+    /**
+     * Batched version of overlaps(GenomeLoc)
+     *
+     * @param locs the locations to test.  Must not be null
+     * @return an array with, for each element of locs, whether it overlaps any of the indexed locs
+     */
+    public boolean[] overlaps(final List<GenomeLoc> locs) {
+        final boolean[] result = new boolean[locs.size()];
+        int i = 0;
+        for ( final GenomeLoc loc : locs )
+            result[i++] = overlaps(loc);
+        return result;
+    }
+
+    /**
+     * Batched version of containsFully(GenomeLoc)
+     *
+     * @param locs the locations to test.  Must not be null
+     * @return an array with, for each element of locs, whether it is contained within one of the indexed locs
+     */
+    public boolean[] containsFully(final List<GenomeLoc> locs) {
+        final boolean[] result = new boolean[locs.size()];
+        int i = 0;
+        for ( final GenomeLoc loc : locs )
+            result[i++] = containsFully(loc);
+        return result;
+    }
+
+    private ContigIntervals getContig(final GenomeLoc loc) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        return GenomeLoc.isUnmapped(loc) ? null : getContig(loc.getContigIndex());
+    }
+
+    private ContigIntervals getContig(final int contigIndex) {
+        return contigIndex >= 0 && contigIndex < contigs.length ? contigs[contigIndex] : null;
+    }
+}
@@ -202,40 +202,32 @@ public class IntervalUtils {
         if (setOne == null || setOne.size() == 0 || setTwo == null || setTwo.size() == 0)
             return Collections.unmodifiableList((setOne == null || setOne.size() == 0) ? setTwo : setOne);
 
-        // our master list, since we can't guarantee removal time in a generic list
-        LinkedList<GenomeLoc> retList = new LinkedList<GenomeLoc>();
-
         // if we're set to UNION, just add them all
         if (rule == null || rule == IntervalSetRule.UNION) {
+            final List<GenomeLoc> retList = new ArrayList<GenomeLoc>(setOne.size() + setTwo.size());
             retList.addAll(setOne);
             retList.addAll(setTwo);
             return Collections.unmodifiableList(retList);
         }
 
-        // else we're INTERSECTION, create two indexes into the lists
-        int iOne = 0;
-        int iTwo = 0;
-
-        // merge the second into the first using the rule
-        while (iTwo < setTwo.size() && iOne < setOne.size())
-            // if the first list is ahead, drop items off the second until we overlap
-            if (setTwo.get(iTwo).isBefore(setOne.get(iOne)))
-                iTwo++;
-            // if the second is ahead, drop intervals off the first until we overlap
-            else if (setOne.get(iOne).isBefore(setTwo.get(iTwo)))
-                iOne++;
-            // we overlap, intersect the two intervals and add the result.  Then remove the interval that ends first.
-            else {
-                retList.add(setOne.get(iOne).intersect(setTwo.get(iTwo)));
-                if (setOne.get(iOne).getStop() < setTwo.get(iTwo).getStop()) iOne++;
-                else iTwo++;
+        // else we're INTERSECTION: index the second list, and intersect each interval in the first list with every
+        // interval of the second that it overlaps.  Unlike walking both lists in parallel, this doesn't need random
+        // access into the lists and works even if either list contains overlapping intervals.
+        final GenomeLocIntervalIndex setTwoIndex = new GenomeLocIntervalIndex(setTwo);
+        final List<GenomeLoc> retList = new ArrayList<GenomeLoc>();
+        for (final GenomeLoc loc : setOne) {
+            if (GenomeLoc.isUnmapped(loc)) {
+                if (setTwo.contains(GenomeLoc.UNMAPPED)) retList.add(loc);
+                continue;
             }
+            for (final GenomeLoc overlapping : setTwoIndex.getOverlapping(loc))
+                retList.add(loc.intersect(overlapping));
+        }
 
         //if we have an empty list, throw an exception.  If they specified intersection and there are no items, this is bad.
         if (retList.size() == 0)
                 throw new UserException.BadInput("The INTERSECTION of your -L options produced no intervals.");
 
-        // we don't need to add the rest of remaining locations, since we know they don't overlap. return what we have
         return Collections.unmodifiableList(retList);
     }
 
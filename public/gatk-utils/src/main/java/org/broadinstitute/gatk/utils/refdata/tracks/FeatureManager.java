@@ -35,6 +35,7 @@ import org.broadinstitute.gatk.utils.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.classloader.PluginManager;
 import htsjdk.variant.vcf.AbstractVCFCodec;
+import htsjdk.variant.vcf.VCFCodec;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.help.GATKDocUtils;
 
@@ -85,6 +86,7 @@ public class FeatureManager  {
     private final PluginManager<FeatureCodec> pluginManager;
     private final Collection<FeatureDescriptor> featureDescriptors = new TreeSet<FeatureDescriptor>();
     private final boolean lenientVCFProcessing;
+    private final Set<String> requiredGenotypeFields;
 
     /**
      * Construct a FeatureManager without a master VCF header
@@ -94,7 +96,17 @@ public class FeatureManager  {
     }
 
     public FeatureManager(final boolean lenientVCFProcessing) {
+        this(lenientVCFProcessing, null);
+    }
+
+    /**
+     * @param lenientVCFProcessing if true, VCF codecs will not perform on-the-fly modifications
+     * @param requiredGenotypeFields if not null, VCF codecs will only decode these FORMAT fields
+     *                               (see GenotypeFieldRestrictedVCFCodecs); null means decode everything
+     */
+    public FeatureManager(final boolean lenientVCFProcessing, final Set<String> requiredGenotypeFields) {
         this.lenientVCFProcessing = lenientVCFProcessing;
+        this.requiredGenotypeFields = requiredGenotypeFields;
         pluginManager = new PluginManager<FeatureCodec>(FeatureCodec.class, "Codecs", "Codec");
 
         for (final String rawName: pluginManager.getPluginsByName().keySet()) {
@@ -261,7 +273,9 @@ public class FeatureManager  {
     @Ensures("result != null")
     public FeatureCodec createCodec(final FeatureDescriptor descriptor, final String name, final GenomeLocParser genomeLocParser,
                                     final String remappedSampleName) {
-        FeatureCodec codex = pluginManager.createByType(descriptor.getCodecClass());
+        FeatureCodec codex = requiredGenotypeFields != null && descriptor.getCodecClass().equals(VCFCodec.class)
+                ? GenotypeFieldRestrictedVCFCodecs.createCodec(requiredGenotypeFields)
+                : pluginManager.createByType(descriptor.getCodecClass());
         if ( codex instanceof NameAwareCodec )
             ((NameAwareCodec)codex).setName(name);
         if ( codex instanceof ReferenceDependentFeatureCodec )
@@ -0,0 +1,151 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Factory for VCF codecs that only decode a restricted set of FORMAT fields.
+ *
+ * The VCF codec already defers genotype parsing until a VariantContext's genotypes are first
+ * touched, but when that happens every FORMAT field of every sample is parsed.  Walkers that
+ * only need a handful of fields (or none at all) can declare them, and the codecs created here
+ * strip the unused sub-fields from the raw sample columns before handing them to the standard
+ * genotype parser, so that the expensive fields (PL, AD, ...) are never split or converted.
+ *
+ * The GT field is always retained when any field is requested.  An empty set of fields means
+ * that the walker never looks at genotypes, in which case the sample columns are not scanned at
+ * all and every sample gets an unavailable (allele-less) genotype.
+ *
+ * The codecs are anonymous subclasses of VCFCodec on purpose: the PluginManager ignores
+ * anonymous classes, so they never show up as a separate ROD type.
+ */
+public final class GenotypeFieldRestrictedVCFCodecs {
+    private GenotypeFieldRestrictedVCFCodecs() {}
+
+    /**
+     * Create a VCFCodec that only decodes the given FORMAT fields
+     *
+     * @param requiredGenotypeFields the FORMAT keys to decode; empty means no genotype data at all.  Must not be null
+     * @return a new codec, never null
+     */
+    public static VCFCodec createCodec(final Set<String> requiredGenotypeFields) {
+        if ( requiredGenotypeFields == null ) throw new IllegalArgumentException("requiredGenotypeFields cannot be null");
+
+        final Set<String> fieldsToKeep = new HashSet<>(requiredGenotypeFields);
+        if ( ! fieldsToKeep.isEmpty() )
+            fieldsToKeep.add(VCFConstants.GENOTYPE_KEY);
+
+        return new VCFCodec() {
+            @Override
+            public LazyGenotypesContext.LazyData createGenotypeMap(final String str, final List<Allele> alleles, final String chr, final int pos) {
+                final String restricted = fieldsToKeep.isEmpty() ? null : stripUnusedGenotypeFields(str, fieldsToKeep);
+                if ( restricted != null )
+                    return super.createGenotypeMap(restricted, alleles, chr, pos);
+
+                final ArrayList<Genotype> genotypes = new ArrayList<>(header.getNGenotypeSamples());
+                for ( final String sample : header.getGenotypeSamples() )
+                    genotypes.add(new GenotypeBuilder(sample).make());
+                return new LazyGenotypesContext.LazyData(genotypes, header.getSampleNamesInOrder(), header.getSampleNameToOffset());
+            }
+        };
+    }
+
+    /**
+     * Remove every FORMAT sub-field not in fieldsToKeep from the raw genotype columns of a VCF line
+     *
+     * @param genotypeColumns the tab-separated FORMAT and sample columns, exactly as they appear in the VCF line
+     * @param fieldsToKeep the FORMAT keys to keep
+     * @return the restricted columns (the input itself if all keys are kept), or null if none of the keys are kept
+     */
+    protected static String stripUnusedGenotypeFields(final String genotypeColumns, final Set<String> fieldsToKeep) {
+        final int formatEnd = genotypeColumns.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR);
+        final String format = formatEnd == -1 ? genotypeColumns : genotypeColumns.substring(0, formatEnd);
+
+        final List<String> keys = splitFormat(format);
+        final boolean[] keep = new boolean[keys.size()];
+        int nKept = 0;
+        for ( int i = 0; i < keep.length; i++ ) {
+            keep[i] = fieldsToKeep.contains(keys.get(i));
+            if ( keep[i] ) nKept++;
+        }
+
+        if ( nKept == 0 ) return null;
+        if ( nKept == keep.length ) return genotypeColumns;
+
+        final StringBuilder builder = new StringBuilder(genotypeColumns.length());
+        boolean firstInColumn = true;
+        int fieldIndex = 0;
+        int fieldStart = 0;
+        for ( int i = 0; i <= genotypeColumns.length(); i++ ) {
+            final char c = i == genotypeColumns.length() ? VCFConstants.FIELD_SEPARATOR_CHAR : genotypeColumns.charAt(i);
+            if ( c != VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR && c != VCFConstants.FIELD_SEPARATOR_CHAR )
+                continue;
+
+            if ( fieldIndex < keep.length && keep[fieldIndex] ) {
+                if ( ! firstInColumn ) builder.append(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                builder.append(genotypeColumns, fieldStart, i);
+                firstInColumn = false;
+            }
+
+            if ( c == VCFConstants.FIELD_SEPARATOR_CHAR ) {
+                // a sample may drop trailing fields, so it can be left with none of the kept ones
+                if ( firstInColumn ) builder.append(VCFConstants.MISSING_VALUE_v4);
+                if ( i < genotypeColumns.length() ) builder.append(VCFConstants.FIELD_SEPARATOR_CHAR);
+                firstInColumn = true;
+                fieldIndex = 0;
+            } else {
+                fieldIndex++;
+            }
+            fieldStart = i + 1;
+        }
+
+        return builder.toString();
+    }
+
+    private static List<String> splitFormat(final String format) {
+        final List<String> keys = new ArrayList<>();
+        int start = 0;
+        for ( int i = 0; i <= format.length(); i++ ) {
+            if ( i == format.length() || format.charAt(i) == VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR ) {
+                keys.add(format.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return Collections.unmodifiableList(keys);
+    }
+}
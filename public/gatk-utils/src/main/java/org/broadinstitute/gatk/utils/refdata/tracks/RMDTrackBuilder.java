@@ -56,6 +56,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -113,10 +114,28 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
                            final ValidationExclusion.TYPE validationExclusionType,
                            final boolean disableAutoIndexCreation,
                            final Map<String, String> sampleRenameMap) {
+        this(dict, genomeLocParser, validationExclusionType, disableAutoIndexCreation, sampleRenameMap, null);
+    }
+
+    /**
+     * Construct an RMDTrackerBuilder whose VCF tracks only decode the given FORMAT fields.
+     * @param dict Sequence dictionary to use.
+     * @param genomeLocParser Location parser to use.
+     * @param validationExclusionType Types of validations to exclude, for sequence dictionary verification.
+     * @param disableAutoIndexCreation Do not auto-create index files, and do not use file locking when accessing index files.
+     * @param sampleRenameMap Map of file name -> new sample name used when performing on-the-fly sample renaming
+     * @param requiredGenotypeFields FORMAT fields to decode in VCF tracks, or null to decode all of them
+     */
+    public RMDTrackBuilder(final SAMSequenceDictionary dict,
+                           final GenomeLocParser genomeLocParser,
+                           final ValidationExclusion.TYPE validationExclusionType,
+                           final boolean disableAutoIndexCreation,
+                           final Map<String, String> sampleRenameMap,
+                           final Set<String> requiredGenotypeFields) {
         this.dict = dict;
         this.validationExclusionType = validationExclusionType;
         this.genomeLocParser = genomeLocParser;
-        this.featureManager = new FeatureManager(ValidationExclusion.lenientVCFProcessing(validationExclusionType));
+        this.featureManager = new FeatureManager(ValidationExclusion.lenientVCFProcessing(validationExclusionType), requiredGenotypeFields);
         this.disableAutoIndexCreation = disableAutoIndexCreation;
         this.sampleRenameMap = sampleRenameMap;
     }
@@ -0,0 +1,241 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import java.util.Arrays;
+
+/**
+ * Pairwise discrete smith-waterman alignment producing exactly the same alignments as SWPairwiseAlignment, faster
+ *
+ * SWPairwiseAlignment allocates a full score matrix and a full back track matrix for every alignment.  Only the
+ * back track matrix is needed to trace the alignment, and of the scores only the previous row, the last column
+ * and the bottom row are ever looked at.  This implementation keeps just those, in per-thread buffers that are
+ * reused across alignments, and keeps the horizontal gap state of the current row in locals.
+ *
+ * The scoring matrix is never materialized, so keepScoringMatrix has no effect here.
+ *
+ * ************************************************************************
+ * ****                    IMPORTANT NOTE:                             ****
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ * ************************************************************************
+ */
+public class FastSWPairwiseAlignment extends SWPairwiseAlignment {
+    /**
+     * Alignments with more cells than this get freshly allocated buffers, so that a single huge alignment
+     * doesn't pin its buffers to the thread for the rest of the run
+     */
+    private static final int MAX_CACHED_CELLS = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * The working memory of an alignment.  All arrays may be larger than needed by the current alignment
+     */
+    private static final class Buffers {
+        int[][] btrack = new int[0][0];
+        int[] prevRow = new int[0];
+        int[] curRow = new int[0];
+        int[] lastColumn = new int[0];
+        int[] bestGapV = new int[0];
+        int[] gapSizeV = new int[0];
+
+        private void ensureCapacity(final int nrow, final int ncol) {
+            if ( btrack.length < nrow || btrack[0].length < ncol ) {
+                final int rows = Math.max(nrow, btrack.length);
+                final int cols = Math.max(ncol, btrack.length == 0 ? 0 : btrack[0].length);
+                btrack = new int[rows][cols];
+            }
+            if ( prevRow.length < ncol ) {
+                prevRow = new int[ncol];
+                curRow = new int[ncol];
+                bestGapV = new int[ncol];
+                gapSizeV = new int[ncol];
+            }
+            if ( lastColumn.length < nrow )
+                lastColumn = new int[nrow];
+        }
+    }
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param seq1 the first sequence we want to align
+     * @param seq2 the second sequence we want to align
+     * @param parameters the SW parameters to use
+     */
+    public FastSWPairwiseAlignment(final byte[] seq1, final byte[] seq2, final Parameters parameters) {
+        super(parameters);
+        align(seq1, seq2);
+    }
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param seq1 the first sequence we want to align
+     * @param seq2 the second sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     */
+    public FastSWPairwiseAlignment(final byte[] seq1, final byte[] seq2, final SWParameterSet parameters, final OVERHANG_STRATEGY strategy) {
+        super(parameters.parameters);
+        overhang_strategy = strategy;
+        align(seq1, seq2);
+    }
+
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param seq1 the first sequence we want to align
+     * @param seq2 the second sequence we want to align
+     * @param namedParameters the named parameter set to get our parameters from
+     */
+    public FastSWPairwiseAlignment(final byte[] seq1, final byte[] seq2, final SWParameterSet namedParameters) {
+        this(seq1, seq2, namedParameters.parameters);
+    }
+
+    public FastSWPairwiseAlignment(final byte[] seq1, final byte[] seq2) {
+        this(seq1, seq2, SWParameterSet.ORIGINAL_DEFAULT);
+    }
+
+    @Override
+    protected void align(final byte[] reference, final byte[] alternate) {
+        if ( reference == null || reference.length == 0 || alternate == null || alternate.length == 0 )
+            throw new IllegalArgumentException("Non-null, non-empty sequences are required for the Smith-Waterman calculation");
+
+        final int nrow = reference.length + 1;
+        final int ncol = alternate.length + 1;
+        final Buffers buffers = (long)nrow * ncol <= MAX_CACHED_CELLS ? BUFFERS.get() : new Buffers();
+        buffers.ensureCapacity(nrow, ncol);
+
+        final int[] bottomRow = calculateMatrix(reference, alternate, buffers);
+        alignmentResult = calculateCigar(reference.length, alternate.length, buffers.lastColumn, bottomRow, buffers.btrack, overhang_strategy);
+    }
+
+    /**
+     * Calculates the back track matrix and last column of the SW matrix for the given sequences
+     *
+     * This is the same recurrence, with the same tie breaking, as SWPairwiseAlignment.calculateMatrix
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     * @param buffers    the buffers to fill in, with enough capacity for the sequences
+     * @return the bottom row of the SW matrix, which is one of the row buffers
+     */
+    private int[] calculateMatrix(final byte[] reference, final byte[] alternate, final Buffers buffers) {
+        final int ncol = alternate.length + 1;
+        final int nrow = reference.length + 1;
+
+        final int w_match = parameters.w_match;
+        final int w_mismatch = parameters.w_mismatch;
+        final int w_open = parameters.w_open;
+        final int w_extend = parameters.w_extend;
+
+        final int MATRIX_MIN_CUTOFF = cutoff ? 0 : (int) -1e8;   // never let matrix elements drop below this cutoff
+        final int lowInitValue = Integer.MIN_VALUE / 2;
+        final boolean initializeEdges = overhang_strategy == OVERHANG_STRATEGY.INDEL || overhang_strategy == OVERHANG_STRATEGY.LEADING_INDEL;
+
+        final int[][] btrack = buffers.btrack;
+        final int[] lastColumn = buffers.lastColumn;
+        final int[] best_gap_v = buffers.bestGapV;
+        final int[] gap_size_v = buffers.gapSizeV;
+        Arrays.fill(best_gap_v, 0, ncol, lowInitValue);
+        Arrays.fill(gap_size_v, 0, ncol, 0);
+
+        // the first row, initialized with gap penalties if we want to keep track of indels at the edges of alignments
+        int[] lastRow = buffers.prevRow;
+        int[] curRow = buffers.curRow;
+        lastRow[0] = 0;
+        for ( int j = 1; j < ncol; j++ )
+            lastRow[j] = initializeEdges ? w_open + (j - 1) * w_extend : 0;
+        lastColumn[0] = lastRow[ncol - 1];
+
+        for ( int i = 1; i < nrow; i++ ) {
+            final byte a_base = reference[i-1];
+            final int[] curBackTrackRow = btrack[i];
+            curRow[0] = initializeEdges ? w_open + (i - 1) * w_extend : 0;
+
+            // the horizontal gap state only ever depends on the current row
+            int best_gap_h = lowInitValue;
+            int gap_size_h = 0;
+
+            for ( int j = 1; j < ncol; j++ ) {
+                final int step_diag = lastRow[j-1] + (a_base == alternate[j-1] ? w_match : w_mismatch);
+
+                // see SWPairwiseAlignment.calculateMatrix for the derivation of these gap updates, which
+                // only work for linear w(k)=wopen+(k-1)*wextend
+                int prev_gap = lastRow[j] + w_open;
+                best_gap_v[j] += w_extend;
+                if ( prev_gap > best_gap_v[j] ) {
+                    best_gap_v[j] = prev_gap;
+                    gap_size_v[j] = 1;
+                } else {
+                    gap_size_v[j]++;
+                }
+                final int step_down = best_gap_v[j];
+
+                prev_gap = curRow[j-1] + w_open;
+                best_gap_h += w_extend;
+                if ( prev_gap > best_gap_h ) {
+                    best_gap_h = prev_gap;
+                    gap_size_h = 1;
+                } else {
+                    gap_size_h++;
+                }
+                final int step_right = best_gap_h;
+
+                //priority here will be step diagonal, step right, step down
+                if ( step_diag >= step_down && step_diag >= step_right ) {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_diag);
+                    curBackTrackRow[j] = 0;
+                } else if ( step_right >= step_down ) {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_right);
+                    curBackTrackRow[j] = -gap_size_h; // negative = horizontal
+                } else {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_down);
+                    curBackTrackRow[j] = gap_size_v[j]; // positive=vertical
+                }
+            }
+
+            lastColumn[i] = curRow[ncol - 1];
+            final int[] tmp = lastRow;
+            lastRow = curRow;
+            curRow = tmp;
+        }
+
+        return lastRow;
+    }
+}
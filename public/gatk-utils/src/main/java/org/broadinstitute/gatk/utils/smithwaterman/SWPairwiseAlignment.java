@@ -352,12 +352,35 @@ public class SWPairwiseAlignment implements SmithWaterman {
      * @return non-null SWPairwiseAlignmentResult object
      */
     protected SWPairwiseAlignmentResult calculateCigar(final int[][] sw, final int[][] btrack, final OVERHANG_STRATEGY overhang_strategy) {
+        final int refLength = sw.length-1;
+        final int altLength = sw[0].length-1;
+
+        final int[] lastColumn = new int[refLength+1];
+        for ( int i = 0; i < lastColumn.length; i++ )
+            lastColumn[i] = sw[i][altLength];
+
+        return calculateCigar(refLength, altLength, lastColumn, sw[refLength], btrack, overhang_strategy);
+    }
+
+    /**
+     * Calculates the CIGAR for the alignment from the back track matrix, given only the last column and
+     * bottom row of the Smith-Waterman matrix
+     *
+     * The arrays may be larger than needed, so that implementations can reuse them across alignments.
+     *
+     * @param refLength            the length of the reference sequence
+     * @param altLength            the length of the alternate sequence
+     * @param lastColumn           the scores of the last column (j == altLength) of the SW matrix, indexed by row
+     * @param bottomRow            the scores of the bottom row (i == refLength) of the SW matrix, indexed by column
+     * @param btrack               the back track matrix to use
+     * @param overhang_strategy    the strategy to use for dealing with overhangs
+     * @return non-null SWPairwiseAlignmentResult object
+     */
+    protected SWPairwiseAlignmentResult calculateCigar(final int refLength, final int altLength, final int[] lastColumn, final int[] bottomRow,
+                                                       final int[][] btrack, final OVERHANG_STRATEGY overhang_strategy) {
         // p holds the position we start backtracking from; we will be assembling a cigar in the backwards order
         int p1 = 0, p2 = 0;
 
-        int refLength = sw.length-1;
-        int altLength = sw[0].length-1;
-
         int maxscore = Integer.MIN_VALUE; // sw scores are allowed to be negative
         int segment_length = 0; // length of the segment (continuous matches, insertions or deletions)
 
@@ -372,8 +395,8 @@ public class SWPairwiseAlignment implements SmithWaterman {
             //excluding high scoring local alignments
             p2=altLength;
 
-            for(int i=1;i<sw.length;i++)  {
-               final int curScore = sw[i][altLength];
+            for(int i=1;i<=refLength;i++)  {
+               final int curScore = lastColumn[i];
                if (curScore >= maxscore ) {
                     p1 = i;
                     maxscore = curScore;
@@ -381,8 +404,7 @@ public class SWPairwiseAlignment implements SmithWaterman {
             }
             // now look for a larger score on the bottom-most row
             if ( overhang_strategy != OVERHANG_STRATEGY.LEADING_INDEL ) {
-                final int[] bottomRow=sw[refLength];
-                for ( int j = 1 ; j < bottomRow.length; j++) {
+                for ( int j = 1 ; j <= altLength; j++) {
                     int curScore=bottomRow[j];
                     // data_offset is the offset of [n][j]
                     if ( curScore > maxscore ||
@@ -38,14 +38,26 @@ import java.util.concurrent.ThreadFactory;
 public class NamedThreadFactory implements ThreadFactory {
     static int id = 0;
     final String format;
+    final boolean daemon;
 
     public NamedThreadFactory(String format) {
+        this(format, false);
+    }
+
+    /**
+     * @param format the name pattern of the threads
+     * @param daemon if true, the threads are daemons, so a pool that is never shut down can't keep the JVM alive
+     */
+    public NamedThreadFactory(String format, boolean daemon) {
         this.format = format;
+        this.daemon = daemon;
         String.format(format, id); // test the name
     }
 
     @Override
     public Thread newThread(Runnable r) {
-        return new Thread(r, String.format(format, id++));
+        final Thread thread = new Thread(r, String.format(format, id++));
+        thread.setDaemon(daemon);
+        return thread;
     }
 }
@@ -151,6 +151,7 @@ public final class GATKVCFConstants {
     public static final String PL_FOR_ALL_SNP_ALLELES_KEY =         "APL";
     public static final String RBP_HAPLOTYPE_KEY =                  "HP"; //ReadBackedPhasing
     public static final String AVG_INTERVAL_DP_BY_SAMPLE_KEY =      "IDP"; //DiagnoseTargets
+    public static final String INTERVAL_DP_QUARTILES_BY_SAMPLE_KEY = "IDQ"; //DiagnoseTargets
     public static final String JOINT_LIKELIHOOD_TAG_NAME =          "JL"; //FamilyLikelihoodsUtils
     public static final String JOINT_POSTERIOR_TAG_NAME =           "JP"; //FamilyLikelihoodsUtils
     public static final String LOW_COVERAGE_LOCI =                  "LL"; //DiagnoseTargets
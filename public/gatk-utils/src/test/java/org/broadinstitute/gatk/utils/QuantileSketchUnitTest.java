@@ -0,0 +1,157 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+
+package org.broadinstitute.gatk.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class QuantileSketchUnitTest extends BaseTest {
+
+    private static final double[] QUANTILES = {0.0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 1.0};
+
+    /**
+     * @return the smallest value v of sortedValues such that at least a fraction q of them are <= v
+     */
+    private static long exactQuantile(final long[] sortedValues, final double q) {
+        final int rank = Math.max(1, (int)Math.ceil(q * sortedValues.length));
+        return sortedValues[rank - 1];
+    }
+
+    private static long[] makeValues(final Random random, final int n, final int maxValue) {
+        final long[] values = new long[n];
+        for ( int i = 0; i < n; i++ )
+            values[i] = random.nextInt(maxValue);
+        return values;
+    }
+
+    @DataProvider(name = "Values")
+    public Object[][] makeValuesData() {
+        return new Object[][]{
+                {1, 10, 0},
+                {1000, 5, 3},
+                {1000, 256, 7},
+                {10000, 100000, 7},
+                {10000, 1000000000, 7},
+                {10000, 100000, 0},
+                {10000, 100000, 12}
+        };
+    }
+
+    @Test(dataProvider = "Values")
+    public void testQuantiles(final int n, final int maxValue, final int precision) {
+        final long[] values = makeValues(new Random(n + maxValue + precision), n, maxValue);
+        final QuantileSketch sketch = new QuantileSketch(precision);
+        for ( final long value : values )
+            sketch.add(value);
+        Arrays.sort(values);
+
+        Assert.assertEquals(sketch.getCount(), n);
+        Assert.assertEquals(sketch.getMin(), values[0]);
+        Assert.assertEquals(sketch.getMax(), values[n - 1]);
+        final double maxRelativeError = Math.pow(2, -(precision + 1));
+        for ( final double q : QUANTILES ) {
+            final long expected = exactQuantile(values, q);
+            final long actual = sketch.getQuantile(q);
+            if ( expected < 2L << precision )
+                Assert.assertEquals(actual, expected, "quantile " + q);
+            else
+                Assert.assertTrue(Math.abs(actual - expected) <= maxRelativeError * expected,
+                        "quantile " + q + " expected " + expected + " but got " + actual);
+        }
+    }
+
+    @Test(dataProvider = "Values")
+    public void testMerge(final int n, final int maxValue, final int precision) {
+        final long[] values = makeValues(new Random(n * precision + maxValue), n, maxValue);
+        final QuantileSketch all = new QuantileSketch(precision);
+        final QuantileSketch left = new QuantileSketch(precision);
+        final QuantileSketch right = new QuantileSketch(precision);
+        for ( int i = 0; i < n; i++ ) {
+            all.add(values[i]);
+            (i % 3 == 0 ? left : right).add(values[i]);
+        }
+        left.merge(right);
+
+        Assert.assertEquals(left.getCount(), all.getCount());
+        Assert.assertEquals(left.getMin(), all.getMin());
+        Assert.assertEquals(left.getMax(), all.getMax());
+        for ( final double q : QUANTILES )
+            Assert.assertEquals(left.getQuantile(q), all.getQuantile(q));
+    }
+
+    @Test
+    public void testMergeEmpty() {
+        final QuantileSketch sketch = new QuantileSketch();
+        sketch.add(12, 3);
+        sketch.merge(new QuantileSketch());
+        Assert.assertEquals(sketch.getCount(), 3);
+        Assert.assertEquals(sketch.getMin(), 12);
+        Assert.assertEquals(sketch.getMedian(), 12);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentPrecisions() {
+        new QuantileSketch(3).merge(new QuantileSketch(4));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        final QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1);
+        final QuantileSketch copy = new QuantileSketch(sketch);
+        copy.add(100000, 10);
+        Assert.assertEquals(sketch.getCount(), 1);
+        Assert.assertEquals(sketch.getMax(), 1);
+        Assert.assertEquals(copy.getCount(), 11);
+        Assert.assertEquals(copy.getMedian(), 100000);
+    }
+
+    @Test
+    public void testCountAtLeast() {
+        final QuantileSketch sketch = new QuantileSketch(2);
+        for ( int value = 0; value < 20; value++ )
+            sketch.add(value, 2);
+        Assert.assertEquals(sketch.getCountAtLeast(0), 40);
+        Assert.assertEquals(sketch.getCountAtLeast(5), 30);
+        Assert.assertEquals(sketch.getCountAtLeast(16), 8);
+        Assert.assertEquals(sketch.getCountAtLeast(1000), 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testQuantileOfEmptySketch() {
+        new QuantileSketch().getMedian();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeValue() {
+        new QuantileSketch().add(-1);
+    }
+}
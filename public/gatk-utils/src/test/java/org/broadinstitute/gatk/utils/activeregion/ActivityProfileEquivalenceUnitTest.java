@@ -0,0 +1,388 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.activeregion;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.*;
+
+/**
+ * Compares the array-backed ActivityProfile and BandPassActivityProfile against a straight copy of the
+ * original list-of-states implementation on randomly generated activity, checking that both produce the
+ * same active regions with the same supporting state probabilities.
+ */
+public class ActivityProfileEquivalenceUnitTest extends BaseTest {
+    private final static int MAX_PROB_PROPAGATION_DISTANCE = 50;
+    private final static double ACTIVE_PROB_THRESHOLD = 0.002;
+
+    private GenomeLocParser genomeLocParser;
+    private String contig;
+    private int contigLength;
+
+    @BeforeClass
+    public void init() throws FileNotFoundException {
+        final ReferenceSequenceFile seq = new CachingIndexedFastaSequenceFile(new File(exampleFASTA));
+        genomeLocParser = new GenomeLocParser(seq);
+        contig = genomeLocParser.getContigs().getSequences().get(0).getSequenceName();
+        contigLength = genomeLocParser.getContigs().getSequences().get(0).getSequenceLength();
+    }
+
+    @DataProvider(name = "RandomProfiles")
+    public Object[][] makeRandomProfiles() {
+        final List<Object[]> tests = new LinkedList<Object[]>();
+        int seed = 0;
+        for ( final boolean bandPass : Arrays.asList(false, true) ) {
+            for ( final boolean restrictToIntervals : Arrays.asList(false, true) ) {
+                for ( final int start : Arrays.asList(1, 5, 1000, contigLength - 3000) ) {
+                    for ( int i = 0; i < 5; i++ ) {
+                        tests.add(new Object[]{bandPass, restrictToIntervals, start, seed++});
+                    }
+                }
+            }
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomProfiles")
+    public void testMatchesListImplementation(final boolean bandPass, final boolean restrictToIntervals, final int start, final int seed) {
+        final Random random = new Random(seed);
+        final int end = Math.min(contigLength, start + 2000 + random.nextInt(1000));
+
+        GenomeLocSortedSet intervals = null;
+        if ( restrictToIntervals ) {
+            intervals = new GenomeLocSortedSet(genomeLocParser);
+            for ( int pos = start + random.nextInt(100); pos < end; pos += 100 + random.nextInt(400) ) {
+                final int stop = Math.min(end, pos + 1 + random.nextInt(300));
+                intervals.add(genomeLocParser.createGenomeLoc(contig, pos, stop));
+                pos = stop;
+            }
+        }
+
+        final ActivityProfile profile = bandPass
+                ? new BandPassActivityProfile(genomeLocParser, intervals, MAX_PROB_PROPAGATION_DISTANCE, ACTIVE_PROB_THRESHOLD)
+                : new ActivityProfile(genomeLocParser, MAX_PROB_PROPAGATION_DISTANCE, ACTIVE_PROB_THRESHOLD, intervals);
+        final ListActivityProfile expected = bandPass
+                ? new ListActivityProfile(genomeLocParser, MAX_PROB_PROPAGATION_DISTANCE, ACTIVE_PROB_THRESHOLD, intervals,
+                                          ((BandPassActivityProfile)profile).getFilteredSize(), ((BandPassActivityProfile)profile).getKernel())
+                : new ListActivityProfile(genomeLocParser, MAX_PROB_PROPAGATION_DISTANCE, ACTIVE_PROB_THRESHOLD, intervals, -1, null);
+
+        final int minRegionSize = 1 + random.nextInt(50);
+        final int maxRegionSize = minRegionSize + random.nextInt(300);
+        final int extension = random.nextInt(100);
+
+        double prob = 0.0;
+        for ( int pos = start; pos <= end; pos++ ) {
+            // activity comes in runs, like it does in real data
+            if ( random.nextDouble() < 0.05 )
+                prob = random.nextDouble() < 0.5 ? 0.0 : (random.nextBoolean() ? 1.0 : random.nextDouble());
+
+            final GenomeLoc loc = genomeLocParser.createGenomeLoc(contig, pos);
+            if ( random.nextDouble() < 0.01 ) {
+                final int nClips = random.nextInt(100);
+                profile.add(new ActivityProfileState(loc, prob, ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS, nClips));
+                expected.add(new ActivityProfileState(loc, prob, ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS, nClips));
+            } else {
+                profile.add(new ActivityProfileState(loc, prob));
+                expected.add(new ActivityProfileState(loc, prob));
+            }
+
+            Assert.assertEquals(profile.size(), expected.size(), "Profile sizes differ at " + loc);
+            if ( random.nextDouble() < 0.1 ) {
+                final boolean force = random.nextDouble() < 0.05;
+                assertSameRegions(profile.popReadyActiveRegions(extension, minRegionSize, maxRegionSize, force),
+                        expected.popReadyActiveRegions(extension, minRegionSize, maxRegionSize, force));
+                Assert.assertEquals(profile.getProbabilitiesAsArray(), expected.getProbabilitiesAsArray(), "Remaining probabilities differ at " + loc);
+            }
+        }
+
+        assertSameRegions(profile.popReadyActiveRegions(extension, minRegionSize, maxRegionSize, true),
+                expected.popReadyActiveRegions(extension, minRegionSize, maxRegionSize, true));
+        Assert.assertTrue(profile.isEmpty());
+        Assert.assertTrue(expected.isEmpty());
+    }
+
+    private void assertSameRegions(final List<ActiveRegion> actual, final List<ActiveRegion> expected) {
+        Assert.assertEquals(actual.size(), expected.size(), "Different number of regions popped");
+        for ( int i = 0; i < actual.size(); i++ ) {
+            final ActiveRegion a = actual.get(i);
+            final ActiveRegion e = expected.get(i);
+            Assert.assertEquals(a.getLocation(), e.getLocation());
+            Assert.assertEquals(a.getExtendedLoc(), e.getExtendedLoc());
+            Assert.assertEquals(a.isActive(), e.isActive(), "Wrong activity for " + e);
+
+            final List<ActivityProfileState> aStates = a.getSupportingStates();
+            final List<ActivityProfileState> eStates = e.getSupportingStates();
+            Assert.assertEquals(aStates.size(), eStates.size(), "Wrong number of supporting states for " + e);
+            for ( int j = 0; j < aStates.size(); j++ ) {
+                Assert.assertEquals(aStates.get(j).getLoc(), eStates.get(j).getLoc());
+                Assert.assertEquals(aStates.get(j).isActiveProb, eStates.get(j).isActiveProb, "Wrong probability at " + eStates.get(j).getLoc());
+            }
+        }
+    }
+
+    /**
+     * The ActivityProfile and BandPassActivityProfile implementation that kept one ActivityProfileState
+     * per base in a list, kept here as the reference for the array-backed version.  A filterSize of -1
+     * disables the band pass filter.
+     */
+    private static class ListActivityProfile {
+        private final List<ActivityProfileState> stateList = new ArrayList<ActivityProfileState>();
+        private final GenomeLocParser parser;
+        private final GenomeLocSortedSet restrictToIntervals;
+        private final int maxProbPropagationDistance;
+        private final double activeProbThreshold;
+        private final int filterSize;
+        private final double[] kernel;
+
+        private GenomeLoc regionStartLoc = null;
+        private GenomeLoc regionStopLoc = null;
+        private int contigLength = -1;
+
+        private ListActivityProfile(final GenomeLocParser parser, final int maxProbPropagationDistance, final double activeProbThreshold,
+                                    final GenomeLocSortedSet intervals, final int filterSize, final double[] kernel) {
+            this.parser = parser;
+            this.restrictToIntervals = intervals;
+            this.maxProbPropagationDistance = maxProbPropagationDistance;
+            this.activeProbThreshold = activeProbThreshold;
+            this.filterSize = filterSize;
+            this.kernel = kernel;
+        }
+
+        private int getMaxProbPropagationDistance() {
+            return maxProbPropagationDistance + Math.max(filterSize, 0);
+        }
+
+        private int size() {
+            return stateList.size();
+        }
+
+        private boolean isEmpty() {
+            return stateList.isEmpty();
+        }
+
+        private GenomeLoc getSpan() {
+            return isEmpty() ? null : regionStartLoc.endpointSpan(regionStopLoc);
+        }
+
+        private double[] getProbabilitiesAsArray() {
+            final double[] probs = new double[stateList.size()];
+            int i = 0;
+            for ( final ActivityProfileState state : stateList )
+                probs[i++] = state.isActiveProb;
+            return probs;
+        }
+
+        private GenomeLoc getLocForOffset(final GenomeLoc relativeLoc, final int offset) {
+            final int start = relativeLoc.getStart() + offset;
+            if ( start < 0 || start > contigLength ) {
+                return null;
+            } else {
+                return parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start);
+            }
+        }
+
+        private void add(final ActivityProfileState state) {
+            final GenomeLoc loc = state.getLoc();
+
+            if ( regionStartLoc == null ) {
+                regionStartLoc = loc;
+                regionStopLoc = loc;
+                contigLength = parser.getContigInfo(regionStartLoc.getContig()).getSequenceLength();
+            } else {
+                if ( regionStopLoc.getStart() != loc.getStart() - 1 )
+                    throw new IllegalArgumentException("Bad add call to ActivityProfile: loc " + loc + " not immediately after last loc " + regionStopLoc );
+                regionStopLoc = loc;
+            }
+
+            final Collection<ActivityProfileState> processedStates = filterSize < 0 ? processState(state) : bandPassProcessState(state);
+            for ( final ActivityProfileState processedState : processedStates ) {
+                incorporateSingleState(processedState);
+            }
+        }
+
+        private void incorporateSingleState(final ActivityProfileState stateToAdd) {
+            final int position = stateToAdd.getOffset(regionStartLoc);
+
+            if ( position > size() )
+                throw new IllegalArgumentException("Must add state contiguous to existing states: adding " + stateToAdd);
+
+            if ( position >= 0 ) {
+                if ( position < size() ) {
+                    stateList.get(position).isActiveProb += stateToAdd.isActiveProb;
+                } else {
+                    stateList.add(stateToAdd);
+                }
+            }
+        }
+
+        private Collection<ActivityProfileState> processState(final ActivityProfileState justAddedState) {
+            if ( justAddedState.resultState.equals(ActivityProfileState.Type.HIGH_QUALITY_SOFT_CLIPS) ) {
+                final List<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
+                final int numHQClips = Math.min(justAddedState.resultValue.intValue(), getMaxProbPropagationDistance());
+                for( int jjj = - numHQClips; jjj <= numHQClips; jjj++ ) {
+                    final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
+                    if ( loc != null )
+                        states.add(new ActivityProfileState(loc, justAddedState.isActiveProb));
+                }
+                return states;
+            } else {
+                return Collections.singletonList(justAddedState);
+            }
+        }
+
+        private Collection<ActivityProfileState> bandPassProcessState(final ActivityProfileState justAddedState) {
+            final Collection<ActivityProfileState> states = new LinkedList<ActivityProfileState>();
+
+            for ( final ActivityProfileState superState : processState(justAddedState) ) {
+                if ( superState.isActiveProb > 0.0 ) {
+                    for( int jjj = -filterSize; jjj <= filterSize; jjj++ ) {
+                        final GenomeLoc loc = getLocForOffset(justAddedState.getLoc(), jjj);
+                        if ( loc != null ) {
+                            final double newProb = superState.isActiveProb * kernel[jjj + filterSize];
+                            states.add(new ActivityProfileState(loc, newProb));
+                        }
+                    }
+                } else {
+                    states.add(justAddedState);
+                }
+            }
+
+            return states;
+        }
+
+        private List<ActiveRegion> popReadyActiveRegions(final int activeRegionExtension, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
+            final LinkedList<ActiveRegion> regions = new LinkedList<ActiveRegion>();
+
+            while ( true ) {
+                final ActiveRegion nextRegion = popNextReadyActiveRegion(activeRegionExtension, minRegionSize, maxRegionSize, forceConversion);
+                if ( nextRegion == null )
+                    return regions;
+                else {
+                    if ( restrictToIntervals == null )
+                        regions.add(nextRegion);
+                    else
+                        regions.addAll(nextRegion.splitAndTrimToIntervals(restrictToIntervals));
+                }
+            }
+        }
+
+        private ActiveRegion popNextReadyActiveRegion(final int activeRegionExtension, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
+            if ( stateList.isEmpty() )
+                return null;
+
+            if( forceConversion ) {
+                final List<ActivityProfileState> statesToTrimAway = new ArrayList<ActivityProfileState>(stateList.subList(getSpan().size(), stateList.size()));
+                stateList.removeAll(statesToTrimAway);
+            }
+
+            final ActivityProfileState first = stateList.get(0);
+            final boolean isActiveRegion = first.isActiveProb > activeProbThreshold;
+            final int offsetOfNextRegionEnd = findEndOfRegion(isActiveRegion, minRegionSize, maxRegionSize, forceConversion);
+            if ( offsetOfNextRegionEnd == -1 )
+                return null;
+
+            final List<ActivityProfileState> sub = stateList.subList(0, offsetOfNextRegionEnd + 1);
+            final List<ActivityProfileState> supportingStates = new ArrayList<ActivityProfileState>(sub);
+            sub.clear();
+
+            if ( stateList.isEmpty() ) {
+                regionStartLoc = regionStopLoc = null;
+            } else {
+                regionStartLoc = stateList.get(0).getLoc();
+            }
+            final GenomeLoc regionLoc = parser.createGenomeLoc(first.getLoc().getContig(), first.getLoc().getStart(), first.getLoc().getStart() + offsetOfNextRegionEnd);
+            return new ActiveRegion(regionLoc, supportingStates, isActiveRegion, parser, activeRegionExtension);
+        }
+
+        private int findEndOfRegion(final boolean isActiveRegion, final int minRegionSize, final int maxRegionSize, final boolean forceConversion) {
+            if ( ! forceConversion && stateList.size() < maxRegionSize + getMaxProbPropagationDistance() ) {
+                return -1;
+            }
+
+            int endOfActiveRegion = findFirstActivityBoundary(isActiveRegion, maxRegionSize);
+
+            if ( isActiveRegion && endOfActiveRegion == maxRegionSize )
+                endOfActiveRegion = findBestCutSite(endOfActiveRegion, minRegionSize);
+
+            return endOfActiveRegion - 1;
+        }
+
+        private int findBestCutSite(final int endOfActiveRegion, final int minRegionSize) {
+            int minI = endOfActiveRegion - 1;
+            double minP = Double.MAX_VALUE;
+
+            for ( int i = minI; i >= minRegionSize - 1; i-- ) {
+                double cur = getProb(i);
+                if ( cur < minP && isMinimum(i) ) {
+                    minP = cur;
+                    minI = i;
+                }
+            }
+
+            return minI + 1;
+        }
+
+        private int findFirstActivityBoundary(final boolean isActiveRegion, final int maxRegionSize) {
+            final int nStates = stateList.size();
+            int endOfActiveRegion = 0;
+
+            while ( endOfActiveRegion < nStates && endOfActiveRegion < maxRegionSize ) {
+                if ( getProb(endOfActiveRegion) > activeProbThreshold != isActiveRegion ) {
+                    break;
+                }
+                endOfActiveRegion++;
+            }
+
+            return endOfActiveRegion;
+        }
+
+        private double getProb(final int index) {
+            return stateList.get(index).isActiveProb;
+        }
+
+        private boolean isMinimum(final int index) {
+            if ( index == stateList.size() - 1 )
+                return false;
+            else if ( index < 1 )
+                return false;
+            else {
+                final double indexP = getProb(index);
+                return indexP <= getProb(index+1) && indexP < getProb(index-1);
+            }
+        }
+    }
+}
@@ -142,10 +142,10 @@ public class ActivityProfileUnitTest extends BaseTest {
             profile.add(new ActivityProfileState(loc, p));
             Assert.assertFalse(profile.isEmpty(), "Profile shouldn't be empty after adding a state");
         }
-        Assert.assertEquals(profile.regionStartLoc, genomeLocParser.createGenomeLoc(cfg.regionStart.getContig(), cfg.regionStart.getStart(), cfg.regionStart.getStart() ), "Start loc should be the start of the region");
+        Assert.assertEquals(profile.getSpan().getStartLocation(), genomeLocParser.createGenomeLoc(cfg.regionStart.getContig(), cfg.regionStart.getStart(), cfg.regionStart.getStart() ), "Start loc should be the start of the region");
 
         Assert.assertEquals(profile.size(), cfg.probs.size(), "Should have exactly the number of states we expected to add");
-        assertProbsAreEqual(profile.stateList, cfg.probs);
+        assertProbsAreEqual(profile.getStateList(), cfg.probs);
 
         // TODO -- reanble tests
         //assertRegionsAreEqual(profile.createActiveRegions(0, 100), cfg.expectedRegions);
@@ -194,6 +194,18 @@ public class BAQUnitTest extends BaseTest {
         }
     }
 
+    @Test(dataProvider = "data", enabled = true)
+    public void testBAQWithProvidedReferenceAfterLongerRead(BAQTest test) {
+        if ( test.refBases != null ) {
+            // the HMM reuses its matrices across reads, so make sure a longer read doesn't leave anything behind
+            final BAQ baqHMM = new BAQ(1e-3, 0.1, 7, (byte)4, false);
+            final byte[] bases = Utils.dupBytes((byte)'A', 2 * test.readBases.length());
+            final byte[] quals = Utils.dupBytes((byte)30, bases.length);
+            baqHMM.hmm_glocal(Utils.dupBytes((byte)'C', bases.length + 10), bases, 0, bases.length, quals, new int[bases.length], new byte[bases.length]);
+            testBAQ(test, false);
+        }
+    }
+
     @Test(enabled = true)
     public void testBAQQualRange() {
         BAQ baq = new BAQ(1e-3, 0.1, 7, (byte)4, false);         // matches current samtools parameters
@@ -0,0 +1,144 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class GenomeLocIntervalIndexUnitTest extends BaseTest {
+    private static final int CONTIG_SIZE = 1000;
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void setup() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, CONTIG_SIZE);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    }
+
+    @Test
+    public void testEmpty() {
+        final GenomeLocIntervalIndex index = new GenomeLocIntervalIndex(Collections.<GenomeLoc>emptyList());
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc("chr1", 10, 20);
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertFalse(index.overlaps(loc));
+        Assert.assertFalse(index.containsFully(loc));
+        Assert.assertTrue(index.getOverlapping(loc).isEmpty());
+        Assert.assertTrue(index.getLocsOnContig(0).isEmpty());
+    }
+
+    @Test
+    public void testUnmappedIsIgnored() {
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc("chr1", 10, 20);
+        final GenomeLocIntervalIndex index = new GenomeLocIntervalIndex(Arrays.asList(GenomeLoc.UNMAPPED, loc));
+        Assert.assertEquals(index.size(), 1);
+        Assert.assertFalse(index.overlaps(GenomeLoc.UNMAPPED));
+        Assert.assertEquals(index.getOverlapping(loc), Collections.singletonList(loc));
+    }
+
+    @Test
+    public void testLocsOnContig() {
+        final GenomeLoc a = genomeLocParser.createGenomeLoc("chr3", 50, 60);
+        final GenomeLoc b = genomeLocParser.createGenomeLoc("chr1", 10, 20);
+        final GenomeLoc c = genomeLocParser.createGenomeLoc("chr3", 5, 8);
+        final GenomeLocIntervalIndex index = new GenomeLocIntervalIndex(Arrays.asList(a, b, c));
+
+        Assert.assertEquals(index.getLocsOnContig(b.getContigIndex()), Collections.singletonList(b));
+        Assert.assertEquals(index.getLocsOnContig(a.getContigIndex()), Arrays.asList(c, a));
+        Assert.assertTrue(index.getLocsOnContig(genomeLocParser.createGenomeLoc("chr2", 1, 1).getContigIndex()).isEmpty());
+    }
+
+    @DataProvider(name = "RandomQueries")
+    public Object[][] makeRandomQueries() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final int nLocs : Arrays.asList(1, 2, 10, 100, 1000) )
+            for ( final int maxSize : Arrays.asList(1, 10, 200) )
+                tests.add(new Object[]{nLocs, maxSize});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomQueries")
+    public void testAgainstFullSearch(final int nLocs, final int maxSize) {
+        final Random random = new Random(nLocs * 31 + maxSize);
+        final List<GenomeLoc> locs = randomLocs(random, nLocs, maxSize);
+        final List<GenomeLoc> queries = randomLocs(random, 500, maxSize);
+        final GenomeLocIntervalIndex index = new GenomeLocIntervalIndex(locs);
+
+        final boolean[] batchedOverlaps = index.overlaps(queries);
+        final boolean[] batchedContains = index.containsFully(queries);
+        for ( int i = 0; i < queries.size(); i++ ) {
+            final GenomeLoc query = queries.get(i);
+            final List<GenomeLoc> expected = new ArrayList<>();
+            boolean contained = false;
+            for ( final GenomeLoc loc : locs ) {
+                if ( loc.overlapsP(query) ) expected.add(loc);
+                if ( loc.containsP(query) ) contained = true;
+            }
+
+            final List<GenomeLoc> actual = index.getOverlapping(query);
+            Assert.assertEquals(new HashSet<>(actual), new HashSet<>(expected), "overlapping locs for " + query);
+            Assert.assertEquals(actual.size(), expected.size(), "overlapping locs for " + query);
+            Assert.assertEquals(index.overlaps(query), ! expected.isEmpty());
+            Assert.assertEquals(batchedOverlaps[i], ! expected.isEmpty());
+            Assert.assertEquals(index.containsFully(query), contained);
+            Assert.assertEquals(batchedContains[i], contained);
+        }
+    }
+
+    @Test
+    public void testEarlyLongLoc() {
+        final List<GenomeLoc> locs = new ArrayList<>();
+        final GenomeLoc longLoc = genomeLocParser.createGenomeLoc("chr1", 1, 500);
+        locs.add(longLoc);
+        for ( int start = 600; start < CONTIG_SIZE; start += 10 )
+            locs.add(genomeLocParser.createGenomeLoc("chr1", start, start + 2));
+        final GenomeLocIntervalIndex index = new GenomeLocIntervalIndex(locs);
+
+        Assert.assertEquals(index.getOverlapping(genomeLocParser.createGenomeLoc("chr1", 450, 455)), Collections.singletonList(longLoc));
+        Assert.assertEquals(index.getOverlapping(genomeLocParser.createGenomeLoc("chr1", 801, 811)),
+                Arrays.asList(genomeLocParser.createGenomeLoc("chr1", 800, 802), genomeLocParser.createGenomeLoc("chr1", 810, 812)));
+        Assert.assertTrue(index.getOverlapping(genomeLocParser.createGenomeLoc("chr1", 504, 506)).isEmpty());
+    }
+
+    private List<GenomeLoc> randomLocs(final Random random, final int n, final int maxSize) {
+        final List<GenomeLoc> locs = new ArrayList<>(n);
+        for ( int i = 0; i < n; i++ ) {
+            final String contig = "chr" + (random.nextInt(2) + 1);
+            final int start = random.nextInt(CONTIG_SIZE) + 1;
+            final int stop = Math.min(CONTIG_SIZE, start + random.nextInt(maxSize));
+            locs.add(genomeLocParser.createGenomeLoc(contig, start, stop));
+        }
+        return locs;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+*
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.refdata.tracks;
+
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public class GenotypeFieldRestrictedVCFCodecsUnitTest extends BaseTest {
+    private static final String SITE = "1\t100\t.\tA\tC\t50\tPASS\t.\t";
+
+    @DataProvider(name = "StripData")
+    public Object[][] makeStripData() {
+        final List<Object[]> tests = new ArrayList<>();
+
+        tests.add(new Object[]{"GT:AD:DP:PL\t0/1:3,4:7:10,0,20\t0/0:7,0:7:0,20,200", Arrays.asList("GT"), "GT\t0/1\t0/0"});
+        tests.add(new Object[]{"GT:AD:DP:PL\t0/1:3,4:7:10,0,20\t0/0:7,0:7:0,20,200", Arrays.asList("GT", "DP"), "GT:DP\t0/1:7\t0/0:7"});
+        tests.add(new Object[]{"GT:AD:DP:PL\t0/1:3,4:7:10,0,20", Arrays.asList("PL", "GT"), "GT:PL\t0/1:10,0,20"});
+        tests.add(new Object[]{"GT:AD:DP\t0/1:3,4:7", Arrays.asList("GT", "AD", "DP"), "GT:AD:DP\t0/1:3,4:7"});
+        tests.add(new Object[]{"GT:AD:DP\t./.\t0/1:3,4:7", Arrays.asList("DP"), "DP\t.\t7"});
+        tests.add(new Object[]{"AD:DP\t3,4:7", Arrays.asList("GT"), null});
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "StripData")
+    public void testStripUnusedGenotypeFields(final String columns, final List<String> fieldsToKeep, final String expected) {
+        Assert.assertEquals(GenotypeFieldRestrictedVCFCodecs.stripUnusedGenotypeFields(columns, new HashSet<>(fieldsToKeep)), expected);
+    }
+
+    @Test
+    public void testDecodeRestrictedFields() {
+        final VCFCodec codec = createCodec(Collections.singleton("DP"));
+        final VariantContext vc = codec.decode(SITE + "GT:AD:DP:PL\t0/1:3,4:7:10,0,20\t1/1:0,7:7:200,20,0");
+
+        final Genotype g = vc.getGenotype("s1");
+        Assert.assertTrue(g.isHet());
+        Assert.assertEquals(g.getDP(), 7);
+        Assert.assertFalse(g.hasAD());
+        Assert.assertFalse(g.hasPL());
+        Assert.assertTrue(vc.getGenotype("s2").isHomVar());
+    }
+
+    @Test
+    public void testDecodeNoGenotypeFields() {
+        final VCFCodec codec = createCodec(Collections.<String>emptySet());
+        final VariantContext vc = codec.decode(SITE + "GT:AD:DP:PL\t0/1:3,4:7:10,0,20\t1/1:0,7:7:200,20,0");
+
+        Assert.assertEquals(vc.getNSamples(), 2);
+        Assert.assertEquals(vc.getAlternateAllele(0).getBaseString(), "C");
+        for ( final Genotype g : vc.getGenotypes() ) {
+            Assert.assertFalse(g.isAvailable());
+            Assert.assertFalse(g.hasDP());
+        }
+    }
+
+    private VCFCodec createCodec(final Set<String> requiredGenotypeFields) {
+        final Set<VCFHeaderLine> headerLines = new LinkedHashSet<>();
+        VCFStandardHeaderLines.addStandardFormatLines(headerLines, true, "GT", "AD", "DP", "PL");
+        final VCFCodec codec = GenotypeFieldRestrictedVCFCodecs.createCodec(requiredGenotypeFields);
+        codec.setVCFHeader(new VCFHeader(headerLines, Arrays.asList("s1", "s2")), VCFHeaderVersion.VCF4_1);
+        return codec;
+    }
+}
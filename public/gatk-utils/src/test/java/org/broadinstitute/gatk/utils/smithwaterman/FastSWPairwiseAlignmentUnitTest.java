@@ -0,0 +1,115 @@
+/*
+* Copyright 2012-2016 Broad Institute, Inc.
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FastSWPairwiseAlignmentUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "SameAsSWPairwiseAlignment")
+    public Object[][] makeSameAsSWPairwiseAlignment() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final SWParameterSet parameterSet : SWParameterSet.values() )
+            for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() )
+                for ( final int refLength : new int[]{1, 10, 100} )
+                    for ( final int altLength : new int[]{1, 7, 50, 150} )
+                        tests.add(new Object[]{parameterSet, strategy, refLength, altLength});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SameAsSWPairwiseAlignment")
+    public void testSameAsSWPairwiseAlignment(final SWParameterSet parameterSet, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy,
+                                              final int refLength, final int altLength) {
+        final Random random = new Random(refLength * 1000 + altLength);
+        for ( int i = 0; i < 20; i++ ) {
+            final byte[] ref = randomBases(random, refLength);
+            // half of the alts are mutated copies of the ref, so that we get real alignments and not just noise
+            final byte[] alt = i % 2 == 0 ? randomBases(random, altLength) : mutate(random, ref, altLength);
+
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(ref, alt, parameterSet, strategy);
+            final SWPairwiseAlignment actual = new FastSWPairwiseAlignment(ref, alt, parameterSet, strategy);
+            Assert.assertEquals(actual.getCigar(), expected.getCigar(), "cigar differs for " + new String(ref) + " vs " + new String(alt));
+            Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), "offset differs for " + new String(ref) + " vs " + new String(alt));
+        }
+    }
+
+    @Test
+    public void testBuffersAreReusedSafely() {
+        // a large alignment followed by a small one must not see anything left over by the large one
+        final Random random = new Random(42);
+        final byte[] bigRef = randomBases(random, 300);
+        final byte[] bigAlt = mutate(random, bigRef, 250);
+        final byte[] smallRef = randomBases(random, 20);
+        final byte[] smallAlt = mutate(random, smallRef, 15);
+
+        for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() ) {
+            new FastSWPairwiseAlignment(bigRef, bigAlt, SWParameterSet.STANDARD_NGS, strategy);
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(smallRef, smallAlt, SWParameterSet.STANDARD_NGS, strategy);
+            final SWPairwiseAlignment actual = new FastSWPairwiseAlignment(smallRef, smallAlt, SWParameterSet.STANDARD_NGS, strategy);
+            Assert.assertEquals(actual.getCigar(), expected.getCigar());
+            Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptySequence() {
+        new FastSWPairwiseAlignment(new byte[0], "ACGT".getBytes());
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    /**
+     * Makes a sequence of the given length out of the source, with a few substitutions, insertions and deletions
+     */
+    private static byte[] mutate(final Random random, final byte[] source, final int length) {
+        final byte[] result = new byte[length];
+        int j = random.nextInt(Math.max(1, source.length / 4));
+        for ( int i = 0; i < length; i++ ) {
+            final int event = random.nextInt(20);
+            if ( event == 0 ) j++;                        // deletion
+            if ( event == 1 || j >= source.length ) {     // insertion, or ran past the end of the source
+                result[i] = BASES[random.nextInt(BASES.length)];
+            } else {
+                result[i] = event == 2 ? BASES[random.nextInt(BASES.length)] : source[j];
+                j++;
+            }
+        }
+        return result;
+    }
+}
@@ -34,7 +34,7 @@ import org.broadinstitute.gatk.utils.Utils;
  */
 public class SmithWatermanBenchmark extends SimpleBenchmark {
 
-    @Param({"Original"})
+    @Param({"Original", "Fast"})
     String version; // set automatically by framework
 
     @Param({"10", "50", "100", "500"})
@@ -76,7 +76,10 @@ public class SmithWatermanBenchmark extends SimpleBenchmark {
             final SmithWaterman sw;
             if ( version.equals("Greedy") )
                 throw new IllegalArgumentException("Unsupported implementation");
-            sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
+            else if ( version.equals("Fast") )
+                sw = new FastSWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
+            else
+                sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
             sw.getCigar();
         }
     }